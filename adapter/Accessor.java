@@ -0,0 +1,314 @@
+package sepher.saf.adapter;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Gives read and write access to one aspect of a domain object. The getter and
+ * setter are resolved once, when the <code>Accessor</code> is created, so that
+ * getting or setting a value does not go through <code>Method.invoke</code>
+ * and does not allocate an argument array on every call.
+ * <p>
+ * Accessors for reflected methods are compiled into a <code>Function</code>
+ * and a <code>BiConsumer</code> by the <code>LambdaMetafactory</code>. The
+ * generated classes are defined next to the class declaring the methods, so
+ * that they do not keep the domain class (or its class loader) reachable.
+ * When that is not possible (for instance because the module of the domain
+ * class does not open its package) a <code>MethodHandle</code> is used
+ * instead, and as a last resort the <code>Method</code> itself. Adapters that do not need reflection at all can
+ * be given lambdas directly:
+ *
+ * <pre><code>
+ *     Accessor.of(Person::getName, Person::setName)
+ *     Accessor.bound(aPerson::getName, aPerson::setName)
+ * </code></pre>
+ *
+ * @see AspectAdapter
+ * @see java.lang.invoke.LambdaMetafactory
+ */
+public abstract class Accessor {
+
+    /**
+     * Lookup used to unreflect methods, and to get the lookups that define
+     * the generated lambdas.
+     */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Answer the value of the aspect of <code>target</code>.
+     *
+     * @param target
+     *        the object to get the value from
+     * @return the value, <code>null</code> is valid
+     * @throws InvocationTargetException
+     *         wrapping anything thrown by the getter itself
+     */
+    public abstract Object get(Object target) throws InvocationTargetException;
+
+    /**
+     * Set the aspect of <code>target</code> to <code>value</code>.
+     *
+     * @param target
+     *        the object that must set the new value
+     * @param value
+     *        the new value
+     * @throws InvocationTargetException
+     *         wrapping anything thrown by the setter itself
+     */
+    public abstract void set(Object target, Object value)
+            throws InvocationTargetException;
+
+    /**
+     * Create an accessor for a getter and a setter of the same class. The
+     * fastest form that the accessibility of the methods allows is chosen.
+     *
+     * @param getMethod
+     *        the method without parameters answering the value
+     * @param setMethod
+     *        the method with one parameter setting the value
+     * @return the accessor
+     */
+    public static Accessor forMethods(final Method getMethod,
+            final Method setMethod) {
+        MethodHandle getter;
+        MethodHandle setter;
+        try {
+            getter = unreflect(getMethod);
+            setter = unreflect(setMethod);
+        } catch (IllegalAccessException e) {
+            return new ReflectiveAccessor(getMethod, setMethod);
+        } catch (RuntimeException e) {
+            // the module system refused setAccessible
+            return new ReflectiveAccessor(getMethod, setMethod);
+        }
+        try {
+            return new FunctionAccessor(getterFunction(MethodHandles
+                    .privateLookupIn(getMethod.getDeclaringClass(), LOOKUP),
+                    getter), setterFunction(MethodHandles.privateLookupIn(
+                    setMethod.getDeclaringClass(), LOOKUP), setter));
+        } catch (Throwable e) {
+            // the metafactory could not spin a class for these methods
+            return new HandleAccessor(getter, setter);
+        }
+    }
+
+    /**
+     * Create an accessor from an unbound getter and setter, typically method
+     * references to the domain class. No reflection is involved.
+     *
+     * @param getter
+     *        function answering the value of a target
+     * @param setter
+     *        consumer setting the value of a target
+     * @return the accessor
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, V> Accessor of(final Function<T, V> getter,
+            final BiConsumer<T, V> setter) {
+        return new FunctionAccessor((Function<Object, Object>) getter,
+                (BiConsumer<Object, Object>) setter);
+    }
+
+    /**
+     * Create an accessor from a getter and setter that are already bound to
+     * one object. The target passed to <code>get</code> and <code>set</code>
+     * is ignored, so such an accessor does not follow a change of subject.
+     *
+     * @param getter
+     *        supplier answering the value
+     * @param setter
+     *        consumer setting the value
+     * @return the accessor
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> Accessor bound(final Supplier<? extends V> getter,
+            final Consumer<? super V> setter) {
+        return new BoundAccessor(getter, (Consumer<Object>) setter);
+    }
+
+    /**
+     * Answer a method handle for the argument, making it accessible first if
+     * the declaring class is not public.
+     */
+    private static MethodHandle unreflect(final Method method)
+            throws IllegalAccessException {
+        try {
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            method.setAccessible(true);
+            return LOOKUP.unreflect(method);
+        }
+    }
+
+    /**
+     * Spin a <code>Function</code> that invokes the getter directly, in the
+     * class loader of the lookup class.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getterFunction(
+            final MethodHandles.Lookup lookup, final MethodHandle getter)
+            throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class), MethodType.methodType(
+                        Object.class, Object.class), getter, getter.type()
+                        .wrap());
+        return (Function<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    /**
+     * Spin a <code>BiConsumer</code> that invokes the setter directly, in the
+     * class loader of the lookup class.
+     */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setterFunction(
+            final MethodHandles.Lookup lookup, final MethodHandle setter)
+            throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                MethodType.methodType(BiConsumer.class), MethodType
+                        .methodType(void.class, Object.class, Object.class),
+                setter, setter.type().wrap().changeReturnType(void.class));
+        return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+    }
+
+    /**
+     * Accessor calling a getter function and a setter consumer.
+     */
+    private static final class FunctionAccessor extends Accessor {
+        private final Function<Object, Object> getter;
+
+        private final BiConsumer<Object, Object> setter;
+
+        FunctionAccessor(final Function<Object, Object> getter,
+                final BiConsumer<Object, Object> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public Object get(final Object target)
+                throws InvocationTargetException {
+            try {
+                return this.getter.apply(target);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        public void set(final Object target, final Object value)
+                throws InvocationTargetException {
+            try {
+                this.setter.accept(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    /**
+     * Accessor invoking method handles adapted to <code>Object</code>
+     * signatures.
+     */
+    private static final class HandleAccessor extends Accessor {
+        private final MethodHandle getter;
+
+        private final MethodHandle setter;
+
+        HandleAccessor(final MethodHandle getter, final MethodHandle setter) {
+            this.getter = getter.asType(MethodType.methodType(Object.class,
+                    Object.class));
+            this.setter = setter.asType(MethodType.methodType(void.class,
+                    Object.class, Object.class));
+        }
+
+        public Object get(final Object target)
+                throws InvocationTargetException {
+            try {
+                return (Object) this.getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        public void set(final Object target, final Object value)
+                throws InvocationTargetException {
+            try {
+                this.setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    /**
+     * Accessor calling lambdas that are bound to their object.
+     */
+    private static final class BoundAccessor extends Accessor {
+        private final Supplier<?> getter;
+
+        private final Consumer<Object> setter;
+
+        BoundAccessor(final Supplier<?> getter, final Consumer<Object> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public Object get(final Object target)
+                throws InvocationTargetException {
+            try {
+                return this.getter.get();
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        public void set(final Object target, final Object value)
+                throws InvocationTargetException {
+            try {
+                this.setter.accept(value);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    /**
+     * Accessor falling back on <code>Method.invoke</code>, for methods that
+     * cannot be unreflected.
+     */
+    private static final class ReflectiveAccessor extends Accessor {
+        private final Method getMethod;
+
+        private final Method setMethod;
+
+        ReflectiveAccessor(final Method getMethod, final Method setMethod) {
+            this.getMethod = getMethod;
+            this.setMethod = setMethod;
+        }
+
+        public Object get(final Object target)
+                throws InvocationTargetException {
+            try {
+                return this.getMethod.invoke(target);
+            } catch (IllegalAccessException e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        public void set(final Object target, final Object value)
+                throws InvocationTargetException {
+            try {
+                this.setMethod.invoke(target, value);
+            } catch (IllegalAccessException e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+}
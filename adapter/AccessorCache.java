@@ -0,0 +1,260 @@
+package sepher.saf.adapter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global registry of resolved accessors, keyed by class and aspect. Looking up
+ * the getter and setter of an aspect (building the method names and calling
+ * <code>Class.getMethod</code>) is done once per class and aspect, after
+ * which constructing an <code>AspectAdapter</code> is a single lookup.
+ * <p>
+ * The registry is held in a <code>ClassValue</code>, so it does not keep
+ * the classes it knows about (or their class loaders) reachable. It is safe to
+ * use from any thread. Applications that want to pay the lookup cost at
+ * startup instead of when the first screen is built can pre-warm it:
+ *
+ * <pre><code>
+ *     AccessorCache.prewarm(new Class&lt;?&gt;[] { Person.class, Address.class });
+ * </code></pre>
+ *
+ * @see Accessor
+ * @see AspectAdapter
+ */
+public final class AccessorCache {
+
+    /**
+     * The accessors per class.
+     */
+    private static final ClassValue<ClassAccessors> ACCESSORS = new ClassValue<ClassAccessors>() {
+        protected ClassAccessors computeValue(final Class<?> type) {
+            return new ClassAccessors();
+        }
+    };
+
+    /**
+     * The accessors resolved for one class.
+     */
+    private static final class ClassAccessors {
+        /**
+         * Accessors keyed by aspect name.
+         */
+        final ConcurrentHashMap<String, Accessor> aspects = new ConcurrentHashMap<String, Accessor>();
+
+        /**
+         * Accessors keyed by get signature and then by set signature.
+         */
+        final ConcurrentHashMap<String, ConcurrentHashMap<String, Accessor>> signatures = new ConcurrentHashMap<String, ConcurrentHashMap<String, Accessor>>();
+
+        /**
+         * The names of the aspects of the class, sorted; <code>null</code>
+         * until they are asked for.
+         */
+        volatile String[] names;
+    }
+
+    /**
+     * No instances, all access is static.
+     */
+    private AccessorCache() {
+    }
+
+    /**
+     * Answer the accessor for a generic aspect name of a class. The getter and
+     * setter are found by prefixing the aspect with <code>get</code> and
+     * <code>set</code>.
+     *
+     * @param type
+     *        the class of the subject
+     * @param aspect
+     *        the generic aspect name
+     * @return the accessor
+     * @throws NoSuchMethodException
+     *         when the class has no such getter and setter
+     */
+    public static Accessor forAspect(final Class<?> type, final String aspect)
+            throws NoSuchMethodException {
+        ClassAccessors accessors = ACCESSORS.get(type);
+        Accessor accessor = accessors.aspects.get(aspect);
+        if (accessor == null) {
+            String postFix = getAspectPostFix(aspect);
+            accessor = forSignatures(type, "set" + postFix, "get" + postFix);
+            Accessor previous = accessors.aspects.putIfAbsent(aspect,
+                    accessor);
+            if (previous != null) {
+                accessor = previous;
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * Answer the accessor for explicitly named get and set methods of a class.
+     *
+     * @param type
+     *        the class of the subject
+     * @param setSignature
+     *        the name of the set message
+     * @param getSignature
+     *        the name of the get message
+     * @return the accessor
+     * @throws NoSuchMethodException
+     *         when the class has no such getter and setter
+     */
+    public static Accessor forSignatures(final Class<?> type,
+            final String setSignature, final String getSignature)
+            throws NoSuchMethodException {
+        ClassAccessors accessors = ACCESSORS.get(type);
+        ConcurrentHashMap<String, Accessor> setters = accessors.signatures
+                .get(getSignature);
+        if (setters == null) {
+            setters = new ConcurrentHashMap<String, Accessor>();
+            ConcurrentHashMap<String, Accessor> previous = accessors.signatures
+                    .putIfAbsent(getSignature, setters);
+            if (previous != null) {
+                setters = previous;
+            }
+        }
+        Accessor accessor = setters.get(setSignature);
+        if (accessor == null) {
+            Method getMethod = type.getMethod(getSignature, new Class<?>[0]);
+            Method setMethod = type.getMethod(setSignature,
+                    new Class<?>[] { getMethod.getReturnType() });
+            accessor = Accessor.forMethods(getMethod, setMethod);
+            Accessor previous = setters.putIfAbsent(setSignature, accessor);
+            if (previous != null) {
+                accessor = previous;
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * Resolve the accessors of every aspect of the given classes. An aspect is
+     * any public <code>getX()</code> method with a matching
+     * <code>setX(..)</code> method; it is registered under the name
+     * <code>x</code>.
+     *
+     * @param types
+     *        the domain classes to pre-warm
+     */
+    public static void prewarm(final Class<?>[] types) {
+        for (int i = 0; i < types.length; i++) {
+            prewarm(types[i]);
+        }
+    }
+
+    /**
+     * Resolve the accessors of every aspect of the given classes.
+     *
+     * @param types
+     *        the domain classes to pre-warm
+     * @see #prewarm(Class[])
+     */
+    public static void prewarm(final Collection<Class<?>> types) {
+        Iterator<Class<?>> it = types.iterator();
+        while (it.hasNext()) {
+            prewarm(it.next());
+        }
+    }
+
+    /**
+     * Resolve the accessors of every aspect of one class.
+     *
+     * @param type
+     *        the domain class to pre-warm
+     */
+    public static void prewarm(final Class<?> type) {
+        ClassAccessors accessors = ACCESSORS.get(type);
+        Method[] methods = type.getMethods();
+        for (int i = 0; i < methods.length; i++) {
+            Method getMethod = methods[i];
+            String name = getMethod.getName();
+            if (!name.startsWith("get") || name.length() == 3
+                    || getMethod.getParameterTypes().length != 0
+                    || getMethod.getReturnType() == void.class
+                    || Modifier.isStatic(getMethod.getModifiers())) {
+                continue;
+            }
+            String postFix = name.substring(3);
+            try {
+                Accessor accessor = forSignatures(type, "set" + postFix, name);
+                accessors.aspects.putIfAbsent(Character.toLowerCase(postFix
+                        .charAt(0))
+                        + postFix.substring(1), accessor);
+            } catch (NoSuchMethodException e) {
+                // a getter without a setter is not an aspect
+            }
+        }
+    }
+
+    /**
+     * Answer the names of the aspects of a class: every public
+     * <code>getX()</code> method with a matching <code>setX(..)</code>
+     * method, registered under the name <code>x</code>. Getters declared by
+     * <code>SAFObservable</code> and <code>ChangingObservable</code>, such as
+     * <code>getDispatcher</code>, hold the state of the framework rather than
+     * of the domain and are left out.
+     *
+     * @param type
+     *        the domain class
+     * @return the aspect names, sorted
+     */
+    public static String[] aspectsOf(final Class<?> type) {
+        ClassAccessors accessors = ACCESSORS.get(type);
+        String[] names = accessors.names;
+        if (names == null) {
+            List<String> found = new ArrayList<String>();
+            Method[] methods = type.getMethods();
+            for (int i = 0; i < methods.length; i++) {
+                Method getMethod = methods[i];
+                String name = getMethod.getName();
+                Class<?> declaring = getMethod.getDeclaringClass();
+                if (!name.startsWith("get") || name.length() == 3
+                        || getMethod.getParameterTypes().length != 0
+                        || getMethod.getReturnType() == void.class
+                        || Modifier.isStatic(getMethod.getModifiers())
+                        || declaring == Object.class
+                        || declaring == SAFObservable.class
+                        || declaring == ChangingObservable.class) {
+                    continue;
+                }
+                String postFix = name.substring(3);
+                String aspect = Character.toLowerCase(postFix.charAt(0))
+                        + postFix.substring(1);
+                try {
+                    forAspect(type, aspect);
+                    found.add(aspect);
+                } catch (NoSuchMethodException e) {
+                    // a getter without a setter is not an aspect
+                }
+            }
+            Collections.sort(found);
+            names = found.toArray(new String[found.size()]);
+            accessors.names = names;
+        }
+        return names.clone();
+    }
+
+    /**
+     * The argument is a String, the aspect of an object. To prefix this with
+     * the get and set we must try to convert the first character to uppercase.
+     * Creation date: (10-5-2001 19:11:01)
+     *
+     * @return java.lang.String
+     * @param signature
+     *        java.lang.String
+     */
+    private static String getAspectPostFix(final String signature) {
+        StringBuffer aspectPostfix = new StringBuffer(signature);
+        char firstCharacter = Character.toUpperCase(signature.charAt(0));
+        aspectPostfix.setCharAt(0, firstCharacter);
+        return new String(aspectPostfix);
+    }
+}
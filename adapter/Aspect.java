@@ -0,0 +1,244 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The key of a kind of change of a domain object, such as <code>name</code>
+ * or <code>value</code>. Aspects are interned: for a domain there is exactly
+ * one <code>Aspect</code> instance per name, so aspects can be compared with
+ * <code>==</code>, and each has a dense integer id that can be used to index
+ * arrays and bit sets.
+ * <p>
+ * A domain is a class hierarchy of observables: the topmost subclass of
+ * <code>ChangingObservable</code> (or <code>SAFObservable</code>) and all of
+ * its subclasses share one set of aspects. This way the aspect
+ * <code>name</code> of a <code>Person</code> is the same instance for every
+ * subclass of <code>Person</code>. Domain classes typically declare their
+ * aspects as constants:
+ *
+ * <pre><code>
+ *     public static final Aspect NAME = Aspect.of(Person.class, &quot;name&quot;);
+ *
+ *     public void setName(String newName) {
+ *         this.name = newName;
+ *         this.setChanged(NAME);
+ *     }
+ * </code></pre>
+ *
+ * String aspects remain supported: they are mapped to the interned aspect of
+ * the domain of the observable that sends them. A name that is not an aspect
+ * of the domain is delivered as it is, without being interned.
+ *
+ * @see ChangingObservable#setChanged(Aspect)
+ * @see SAFObserver#update(Object, Aspect)
+ */
+public final class Aspect {
+
+    /**
+     * The domain of every class.
+     */
+    private static final ClassValue<Domain> DOMAINS = new ClassValue<Domain>() {
+        protected Domain computeValue(final Class<?> type) {
+            Class<?> root = rootOf(type);
+            if (root == type) {
+                return new Domain(type);
+            }
+            return DOMAINS.get(root);
+        }
+    };
+
+    /**
+     * The name of the aspect.
+     */
+    private final String name;
+
+    /**
+     * The dense id of the aspect within its domain.
+     */
+    private final int id;
+
+    /**
+     * The domain the aspect belongs to.
+     */
+    final Domain domain;
+
+    /**
+     * Aspects are only created by their domain.
+     */
+    private Aspect(final Domain domain, final String name, final int id) {
+        this.domain = domain;
+        this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * Answer the canonical aspect with the given name for the domain of a
+     * class, creating it when it does not yet exist.
+     *
+     * @param type
+     *        the domain class, or any of its subclasses
+     * @param name
+     *        the name of the aspect
+     * @return the interned aspect
+     */
+    public static Aspect of(final Class<?> type, final String name) {
+        return DOMAINS.get(type).intern(name);
+    }
+
+    /**
+     * Answer the aspect with the given name in the domain of a class without
+     * creating it. Used for free-form names, which must not grow a domain
+     * without bounds.
+     *
+     * @return the interned aspect, or <code>null</code> when no aspect with
+     *         the name exists
+     */
+    static Aspect find(final Class<?> type, final String name) {
+        return DOMAINS.get(type).find(name);
+    }
+
+    /**
+     * Answer all aspects interned so far for the domain of a class, indexed by
+     * their id.
+     *
+     * @param type
+     *        the domain class, or any of its subclasses
+     * @return a copy of the aspects of the domain
+     */
+    public static Aspect[] aspectsOf(final Class<?> type) {
+        return DOMAINS.get(type).aspects.clone();
+    }
+
+    /**
+     * Answer the name of the aspect.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Answer the id of the aspect, which is unique within its domain. The ids
+     * of a domain are numbered from 0 without gaps.
+     *
+     * @return the id
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Answer the root class of the domain this aspect belongs to.
+     *
+     * @return the domain class
+     */
+    public Class<?> getDomainClass() {
+        return this.domain.type;
+    }
+
+    /**
+     * Answer whether this aspect belongs to the domain of the class, so that
+     * its id can be used for instances of that class.
+     *
+     * @param type
+     *        the class of an observable
+     * @return <code>true</code> when the class is in my domain
+     */
+    public boolean isAspectOf(final Class<?> type) {
+        return DOMAINS.get(type) == this.domain;
+    }
+
+    /**
+     * Answer the aspect with my name in the domain of the class: myself when
+     * the class belongs to my domain.
+     *
+     * @param type
+     *        the class of an observable
+     * @return the aspect to use for instances of the class
+     */
+    public Aspect in(final Class<?> type) {
+        Domain other = DOMAINS.get(type);
+        return other == this.domain ? this : other.intern(this.name);
+    }
+
+    /**
+     * Answer the topmost class below the framework classes in the hierarchy of
+     * the argument.
+     */
+    private static Class<?> rootOf(final Class<?> type) {
+        Class<?> root = type;
+        Class<?> parent = root.getSuperclass();
+        while (parent != null && parent != Object.class
+                && parent != SAFObservable.class
+                && parent != ChangingObservable.class) {
+            root = parent;
+            parent = root.getSuperclass();
+        }
+        return root;
+    }
+
+    /**
+     * Print the receiver as its name.
+     *
+     * @return the name
+     */
+    public String toString() {
+        return this.name;
+    }
+
+    /**
+     * The aspects of one class hierarchy.
+     */
+    static final class Domain {
+        /**
+         * The root class of the domain.
+         */
+        final Class<?> type;
+
+        /**
+         * The aspects by name.
+         */
+        private final ConcurrentHashMap<String, Aspect> byName = new ConcurrentHashMap<String, Aspect>();
+
+        /**
+         * The aspects by id. Replaced, never modified, when an aspect is
+         * added.
+         */
+        private volatile Aspect[] aspects = new Aspect[0];
+
+        Domain(final Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * Answer the aspect with the given name, creating it if necessary.
+         */
+        Aspect intern(final String name) {
+            Aspect aspect = this.byName.get(name);
+            if (aspect == null) {
+                synchronized (this) {
+                    aspect = this.byName.get(name);
+                    if (aspect == null) {
+                        Aspect[] current = this.aspects;
+                        aspect = new Aspect(this, name, current.length);
+                        Aspect[] next = new Aspect[current.length + 1];
+                        System.arraycopy(current, 0, next, 0, current.length);
+                        next[current.length] = aspect;
+                        this.aspects = next;
+                        this.byName.put(name, aspect);
+                    }
+                }
+            }
+            return aspect;
+        }
+
+        /**
+         * Answer the aspect with the given name, or <code>null</code> when it
+         * has not been interned.
+         */
+        Aspect find(final String name) {
+            return this.byName.get(name);
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package sepher.saf.adapter;
 
-import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Connects any interface (usually in a more domain centered class) to the value
@@ -18,23 +19,26 @@ import java.lang.reflect.InvocationTargetException;
  *   
  *  
  * </code></pre>
+ * <p>
+ * The getter and setter are resolved once into an <code>Accessor</code>, so
+ * getting and setting the value does not use <code>Method.invoke</code>. An
+ * adapter can also be given its accessor or lambdas directly, in which case no
+ * reflection is used at all:
+ * 
+ * <pre><code>
+ *     new AspectAdapter(aPerson, &quot;name&quot;, aPerson::getName, aPerson::setName)
+ * </code></pre>
  * 
  * @created May 3, 2001
  * @author Rob Vens
- * @see java.lang.reflect.Method
+ * @see Accessor
  */
 public class AspectAdapter extends InterfaceAdapter {
     /**
-     * The <code>setMethod</code> variable stores the Method to execute (with
-     * necessary parameters) to send a setter message to the subject.
-     */
-    private Method setMethod;
-
-    /**
-     * The <code>getMethod</code> variable stores the Method to execute
-     * (usually without parameters) to send a getter message to the subject.
+     * The <code>accessor</code> variable stores the resolved getter and setter
+     * used to send get and set messages to the subject.
      */
-    private Method getMethod;
+    private Accessor accessor;
 
     /**
      * The <code>aspect</code> is an optional member storing a String which is
@@ -43,6 +47,12 @@ public class AspectAdapter extends InterfaceAdapter {
      */
     private java.lang.String aspect;
 
+    /**
+     * The interned <code>Aspect</code> for <code>aspect</code> in the domain
+     * of the current subject. Resolved when I register with a subject.
+     */
+    private Aspect aspectKey;
+
     /**
      * Constructor for the AspectAdapter object. Use this constructor if you
      * want a default connection to a value interface of a ChangingObservable.
@@ -62,7 +72,8 @@ public class AspectAdapter extends InterfaceAdapter {
     /**
      * Constructor for the AspectAdapter object with only a generic aspect name
      * specified. This will generate getter and setter methods by prefixing the
-     * given <code>String</code> parameter.
+     * given <code>String</code> parameter. The methods are looked up once per
+     * class and aspect in the <code>AccessorCache</code>.
      * 
      * @param subject
      *        The object we want to adapt
@@ -70,17 +81,18 @@ public class AspectAdapter extends InterfaceAdapter {
      *        The generic aspect name
      * @throws NoSuchMethodException
      *         Thrown when the method we want to adapt does not exist
+     * @see AccessorCache#forAspect
      */
     public AspectAdapter(final ChangingObservable subject,
             final String signature) throws NoSuchMethodException {
-        this(subject, "set" + getAspectPostFix(signature), "get"
-                + getAspectPostFix(signature));
-        aspect = signature;
+        this(subject, signature, AccessorCache.forAspect(subject.getClass(),
+                signature));
     }
 
     /**
      * Constructor for the AspectAdapter object where specific get and set
-     * method names are specified. Other constructors fall through to this one.
+     * method names are specified. The methods are looked up once per class in
+     * the <code>AccessorCache</code>.
      * 
      * @param subject
      *        The object we want to connect to
@@ -95,45 +107,72 @@ public class AspectAdapter extends InterfaceAdapter {
     public AspectAdapter(final ChangingObservable subject,
             final String setSignature, final String getSignature)
             throws NoSuchMethodException {
-        try {
-            // get the class of the subject
-            Class theClass = subject.getClass();
-            // parameter array for get method is empty
-            Class[] getterTypes = new Class[0];
-            // now get the get method from the subject class
-            this.getMethod = theClass.getMethod(getSignature, getterTypes);
-
-            // parameter array for the set method is an array with one element
-            // the type of which is fetched from the subject class
-            Class[] setterTypes = { this.getMethod.getReturnType() };
-            this.setMethod = theClass.getMethod(setSignature, setterTypes);
-        } catch (NoSuchMethodException ex) {
-            // to be handled by the villain that tried to create this adapter
-            throw (ex);
-        }
+        this(subject, null, AccessorCache.forSignatures(subject.getClass(),
+                setSignature, getSignature));
+    }
 
-        this.setSubject((ChangingObservable) subject);
+    /**
+     * Constructor for the AspectAdapter object with an accessor that is
+     * already resolved. No reflection is used to find getters and setters.
+     * Other constructors fall through to this one.
+     * 
+     * @param subject
+     *        The object we want to adapt
+     * @param signature
+     *        The generic aspect name
+     * @param accessor
+     *        The accessor used to get and set the value of the subject
+     */
+    public AspectAdapter(final ChangingObservable subject,
+            final String signature, final Accessor accessor) {
+        this.accessor = accessor;
+        this.aspect = signature;
+        this.setSubject(subject);
     }
 
     /**
-     * The argument is a String, the aspect of an object. To prefix this with
-     * the get and set we must try to convert the first character to uppercase.
-     * Creation date: (10-5-2001 19:11:01)
+     * Constructor for the AspectAdapter object with a getter and setter that
+     * are bound to the subject, usually method references such as
+     * <code>aPerson::getName</code>. Because the lambdas are bound they do
+     * not follow a change of subject through the subject channel.
      * 
-     * @return java.lang.String
+     * @param subject
+     *        The object we want to adapt
      * @param signature
-     *        java.lang.String
+     *        The generic aspect name
+     * @param getter
+     *        Answers the value of the subject
+     * @param setter
+     *        Sets the value of the subject
      */
-    private static String getAspectPostFix(final String signature) {
-        StringBuffer aspectPostfix = new StringBuffer(signature);
-        char firstCharacter = signature.toUpperCase().charAt(0);
-        aspectPostfix.setCharAt(0, firstCharacter);
-        return new String(aspectPostfix);
+    public <V> AspectAdapter(final ChangingObservable subject,
+            final String signature, final Supplier<? extends V> getter,
+            final Consumer<? super V> setter) {
+        this(subject, signature, Accessor.bound(getter, setter));
     }
 
     /**
-     * Get the value from the domain object by invoking the
-     * <code>getMethod</code> on it. Return value of null is valid.
+     * Answer the aspect I adapt, interned for the class of my subject, so
+     * that I am registered with my subject for changes of that aspect only.
+     * 
+     * @return the aspect or <code>null</code> when I was created with
+     *         explicit get and set signatures
+     */
+    public final Aspect getAspect() {
+        if (this.aspect == null || this.subject == null) {
+            return null;
+        }
+        Aspect key = this.aspectKey;
+        if (key == null || !key.isAspectOf(this.subject.getClass())) {
+            key = Aspect.of(this.subject.getClass(), this.aspect);
+            this.aspectKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Get the value from the domain object through the <code>accessor</code>.
+     * Return value of null is valid.
      * 
      * @param anObject
      *        the target object to be used to get the value
@@ -148,15 +187,16 @@ public class AspectAdapter extends InterfaceAdapter {
     protected final Object getValueUsingTarget(final Object anObject)
             throws IllegalAccessException, InvocationTargetException {
         if (subject != null) {
-            return this.getMethod.invoke(anObject, null);
+            return this.accessor.get(anObject);
         } else {
             return null;
         }
     }
 
     /**
-     * Set the value of anObject through invoking the set method with newValue
-     * as the argument. Creation date: (10-5-2001 16:19:18)
+     * Set the value of anObject through the setter of the
+     * <code>accessor</code> with newValue as the argument. Creation date:
+     * (10-5-2001 16:19:18)
      * 
      * @param anObject
      *        the object that must set the new value
@@ -166,11 +206,9 @@ public class AspectAdapter extends InterfaceAdapter {
     protected final void setValueUsingTarget(final Object anObject,
             final Object newValue) {
         try {
-            this.setMethod.invoke(anObject, new Object[] { newValue });
+            this.accessor.set(anObject, newValue);
         } catch (NullPointerException e) { // do nothing
             e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
         } catch (InvocationTargetException e) {
             e.printStackTrace();
         }
@@ -188,7 +226,7 @@ public class AspectAdapter extends InterfaceAdapter {
             sb.append(this.getTarget().toString());
             sb.append(" ");
         }
-        // when using an aspect path which is currently not implemented
+        // only a PathAdapter has an aspect path
         this.printPathOn(sb);
 
         sb.append(this.aspect);
@@ -218,4 +256,22 @@ public class AspectAdapter extends InterfaceAdapter {
             super.update(sender, anAspect);
         }
     }
+
+    /**
+     * Same as <code>update(Object, Object)</code> for interned aspects, which
+     * are compared by identity.
+     * 
+     * @param sender
+     *        the object that wants to notify its observers
+     * @param anAspect
+     *        the aspect that changed
+     */
+    public final void update(final Object sender, final Aspect anAspect) {
+        if (sender == subject && anAspect == this.aspectKey) {
+            this.setChanged();
+            this.notifyObservers(anAspect);
+        } else {
+            this.update(sender, (Object) anAspect.getName());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package sepher.saf.adapter;
+
+/**
+ * A <code>DynamicValue</code> holding a <code>boolean</code>, typically the
+ * trigger channel of a <code>BufferedDynamicValue</code>. Observers
+ * implementing <code>PrimitiveObserver</code> receive the value as a
+ * <code>boolean</code>. Through the <code>IValue</code> interface the value
+ * is <code>Boolean.TRUE</code> or <code>Boolean.FALSE</code>.
+ *
+ * @see PrimitiveObserver#booleanChanged
+ * @see BufferedDynamicValue#setTriggerChannel
+ */
+public class BooleanValue extends DynamicValue {
+
+    /**
+     * The value that is contained.
+     */
+    private volatile boolean booleanValue;
+
+    /**
+     * Constructor for a value of <code>false</code>.
+     */
+    public BooleanValue() {
+    }
+
+    /**
+     * Constructor for a value.
+     *
+     * @param newValue
+     *        the initial value
+     */
+    public BooleanValue(final boolean newValue) {
+        this.booleanValue = newValue;
+    }
+
+    /**
+     * Answer the value.
+     *
+     * @return the value
+     */
+    public final boolean getAsBoolean() {
+        this.accessed(VALUE);
+        return this.booleanValue;
+    }
+
+    /**
+     * Set the value and notify observers, unless my change policy does not
+     * consider it a change.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setBoolean(final boolean newValue) {
+        ChangePolicy policy = this.getChangePolicy();
+        if (policy != ChangePolicy.ALWAYS
+                && !policy.isChange(Boolean.valueOf(this.booleanValue),
+                        Boolean.valueOf(newValue))) {
+            return;
+        }
+        boolean oldValue = this.booleanValue;
+        this.booleanValue = newValue;
+        if (this.hasEventObservers()) {
+            this.setChanged(VALUE, Boolean.valueOf(oldValue), Boolean
+                    .valueOf(newValue));
+        } else {
+            this.setChanged(VALUE);
+        }
+    }
+
+    /**
+     * Set the value without notifying observers.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setBooleanSilently(final boolean newValue) {
+        this.booleanValue = newValue;
+    }
+
+    /**
+     * Answer the value as a <code>Boolean</code>.
+     *
+     * @return the value
+     */
+    public Object getValue() {
+        this.accessed(VALUE);
+        return Boolean.valueOf(this.booleanValue);
+    }
+
+    /**
+     * Set the value from a <code>Boolean</code>.
+     *
+     * @param anObject
+     *        the new value, a <code>Boolean</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a
+     *         <code>Boolean</code>
+     */
+    public void setValue(final Object anObject) {
+        this.setBoolean(booleanOf(anObject));
+    }
+
+    /**
+     * Set the value from a <code>Boolean</code> without notifying observers.
+     *
+     * @param newValue
+     *        the new value, a <code>Boolean</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a
+     *         <code>Boolean</code>
+     */
+    public void setValueSilently(final Object newValue) {
+        this.setBooleanSilently(booleanOf(newValue));
+    }
+
+    /**
+     * Answer a value set through <code>IValue</code> as a
+     * <code>boolean</code>.
+     */
+    private static boolean booleanOf(final Object newValue) {
+        if (!(newValue instanceof Boolean)) {
+            throw new IllegalArgumentException("not a Boolean: " + newValue);
+        }
+        return ((Boolean) newValue).booleanValue();
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "(" + this.getClass().getName() + "@"
+                + Integer.toHexString(this.hashCode()) + " on: "
+                + this.booleanValue;
+    }
+}
@@ -37,6 +37,12 @@ public class BufferedDynamicValue extends DynamicValue {
      */
     private IValue subject;
 
+    /**
+     * Whether I register with my subject and trigger channel without being
+     * kept reachable by them.
+     */
+    private boolean weakHookup;
+
     static {
 
     }
@@ -75,6 +81,22 @@ public class BufferedDynamicValue extends DynamicValue {
         super.addObserver(obs);
     }
 
+    /**
+     * Add the argument as an <code>Observer</code> of one aspect of the
+     * receiver.
+     * 
+     * @param obs
+     *        the object that wants to register itself as an observer
+     * @param aspect
+     *        the aspect it is interested in
+     */
+    public final void addObserver(final SAFObserver obs, final Aspect aspect) {
+        if (this.countObservers() == 0) {
+            this.hookupToSubject();
+        }
+        super.addObserver(obs, aspect);
+    }
+
     /**
      * The receiver is an observer of the trigger, and receives an update from
      * it. This is handled by the update method, and propagated to this method.
@@ -86,7 +108,7 @@ public class BufferedDynamicValue extends DynamicValue {
      * the real value from the real subject. Creation date: (18-5-2001 11:21:22)
      */
     private void changedTrigger() {
-        if (this.triggerChannel.getValue().equals(Boolean.TRUE)) {
+        if (this.isTriggered()) {
             // Send the buffered value to the subject
             if (this.value.equals(NOTYETASSIGNED)) {
                 return;
@@ -104,6 +126,62 @@ public class BufferedDynamicValue extends DynamicValue {
         }
     }
 
+    /**
+     * Answer whether I hold a value that has not yet been flushed to my
+     * subject.
+     * 
+     * @return <code>true</code> when a value was set since the last flush or
+     *         discard
+     */
+    public final boolean hasPendingValue() {
+        return this.value != NOTYETASSIGNED;
+    }
+
+    /**
+     * Flush my pending value to my subject, for a <code>CommitGroup</code>.
+     * Unlike a flush by the trigger I stay registered with my subject: the
+     * group commits inside a <code>ChangeBatch</code>, so the notification of
+     * my subject arrives when my cache is already empty. When my subject
+     * throws, the value stays pending.
+     * 
+     * @return <code>true</code> when there was a pending value
+     */
+    final boolean commitPending() {
+        Object pending = this.value;
+        if (pending == NOTYETASSIGNED) {
+            return false;
+        }
+        this.getSubject().setValue(pending);
+        this.value = NOTYETASSIGNED;
+        return true;
+    }
+
+    /**
+     * Discard my pending value, for a <code>CommitGroup</code>, and notify my
+     * observers that my value is that of my subject again.
+     * 
+     * @return <code>true</code> when there was a pending value
+     */
+    final boolean discardPending() {
+        if (this.value == NOTYETASSIGNED) {
+            return false;
+        }
+        this.value = NOTYETASSIGNED;
+        this.setChanged(VALUE);
+        return true;
+    }
+
+    /**
+     * Answer whether the trigger channel holds <code>TRUE</code>, without
+     * boxing when it is a <code>BooleanValue</code>.
+     */
+    private boolean isTriggered() {
+        if (this.triggerChannel instanceof BooleanValue) {
+            return ((BooleanValue) this.triggerChannel).getAsBoolean();
+        }
+        return Boolean.TRUE.equals(this.triggerChannel.getValue());
+    }
+
     /**
      * Remove the argument as an observer of the receiver. Creation date:
      * (17-5-2001 21:06:38)
@@ -118,6 +196,22 @@ public class BufferedDynamicValue extends DynamicValue {
         }
     }
 
+    /**
+     * Remove the argument as an observer of one aspect of the receiver.
+     * 
+     * @param obs
+     *        the object that wants to unregister itself as an observer
+     * @param aspect
+     *        the aspect it registered for
+     */
+    public final void deleteObserver(final SAFObserver obs,
+            final Aspect aspect) {
+        super.deleteObserver(obs, aspect);
+        if (this.countObservers() == 0) {
+            this.unhookFromSubject();
+        }
+    }
+
     /**
      * Return the subject of the receiver. This is an object implementing the
      * value interface. Creation date: (17-5-2001 21:13:32)
@@ -147,6 +241,7 @@ public class BufferedDynamicValue extends DynamicValue {
      * @return Object
      */
     public final Object getValue() {
+        this.accessed(VALUE);
         if (this.value.equals(NOTYETASSIGNED)) {
             return this.subject.getValue();
         } else {
@@ -162,7 +257,58 @@ public class BufferedDynamicValue extends DynamicValue {
      */
     protected final void hookupToSubject()
 	  throws ClassCastException {
-        ((ChangingObservable) this.subject).addObserver(this);
+        if (this.weakHookup) {
+            ((ChangingObservable) this.subject).addWeakObserver(this);
+        } else {
+            ((ChangingObservable) this.subject).addObserver(this);
+        }
+    }
+
+    /**
+     * Answer whether I register with my subject and trigger channel as a weak
+     * observer.
+     * 
+     * @return <code>true</code> when they do not keep me reachable
+     * @see SAFObservable#addWeakObserver(SAFObserver)
+     */
+    public final boolean isWeakHookup() {
+        return this.weakHookup;
+    }
+
+    /**
+     * Set whether I register with my subject and trigger channel as a weak
+     * observer, so that they do not keep me reachable once whoever uses me is
+     * gone.
+     * 
+     * @param newWeakHookup
+     *        <code>true</code> to register weakly
+     */
+    public final void setWeakHookup(final boolean newWeakHookup) {
+        boolean hooked = this.subject != null && this.countObservers() > 0;
+        if (hooked) {
+            this.unhookFromSubject();
+        }
+        if (this.triggerChannel != null) {
+            this.triggerChannel.deleteObserver(this);
+        }
+        this.weakHookup = newWeakHookup;
+        if (hooked) {
+            this.hookupToSubject();
+        }
+        if (this.triggerChannel != null) {
+            this.observeTrigger();
+        }
+    }
+
+    /**
+     * Register with the trigger channel, weakly when I am set to.
+     */
+    private void observeTrigger() {
+        if (this.weakHookup) {
+            this.triggerChannel.addWeakObserver(this);
+        } else {
+            this.triggerChannel.addObserver(this);
+        }
     }
 
     /**
@@ -187,7 +333,9 @@ public class BufferedDynamicValue extends DynamicValue {
             this.unhookFromSubject();
         }
         this.subject = newSubject;
-        this.setValue(NOTYETASSIGNED);
+        // a new subject is a change, whatever the change policy says
+        this.setValueSilently(NOTYETASSIGNED);
+        this.setChanged(VALUE);
         if ((this.subject != null) && (this.countObservers() > 0)) {
             this.hookupToSubject();
         }
@@ -195,7 +343,8 @@ public class BufferedDynamicValue extends DynamicValue {
 
     /**
      * Hook up the receiver to a trigger, which is a <code>DynamicValue</code>
-     * containing a <code>Boolean</code>. Creation date: (17-5-2001 21:14:08)
+     * containing a <code>Boolean</code>, preferably a
+     * <code>BooleanValue</code>. Creation date: (17-5-2001 21:14:08)
      * 
      * @param newTriggerChannel
      *        sepher.saf.adapter.DynamicValue
@@ -206,7 +355,7 @@ public class BufferedDynamicValue extends DynamicValue {
         }
         triggerChannel = newTriggerChannel;
         if (this.triggerChannel != null) {
-            this.triggerChannel.addObserver(this);
+            this.observeTrigger();
         }
     }
 
@@ -242,11 +391,10 @@ public class BufferedDynamicValue extends DynamicValue {
      * Handle updates from the objects I registered with as an observer.
      * Special case when this object is the triggerChannel. Otherwise simply
      * propagate the update to my observers.
-     * @param anAspect Object
      * @param sender java.util.Observable
+     * @param anAspect Object
      */
-    public final void update(final Object anAspect,
-            final SAFObservable sender) {
+    public final void update(final Object sender, final Object anAspect) {
         if (sender == this.triggerChannel) {
             this.changedTrigger();
         } else if (sender.equals(this.subject)) {
@@ -0,0 +1,281 @@
+package sepher.saf.adapter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the changes made by one thread and delivers them when the batch is
+ * closed. Inside a batch <code>setChanged</code> does not notify observers;
+ * it records the change, once per subject and aspect. When the outermost
+ * batch of the thread is closed every recorded change is delivered once, in
+ * the order in which it was first made. Setting ten fields of a domain object
+ * inside a batch thus results in one notification per field instead of one
+ * per assignment, and setting the same field ten times in one notification.
+ * <p>
+ * A batch covers every <code>ChangingObservable</code> changed by the thread:
+ *
+ * <pre><code>
+ *     ChangeBatch batch = ChangeBatch.begin();
+ *     try {
+ *         aPerson.setName(&quot;Janssen&quot;);
+ *         anAddress.setStreet(&quot;Dorpsstraat&quot;);
+ *     } finally {
+ *         batch.close();
+ *     }
+ * </code></pre>
+ *
+ * or, shorter, <code>ChangeBatch.run(aRunnable)</code> or
+ * <code>aPerson.batch(aRunnable)</code>. Batches nest: an inner batch joins
+ * the outer one, and only closing the outer one delivers.
+ *
+ * @see ChangingObservable#batch
+ */
+public final class ChangeBatch implements AutoCloseable {
+
+    /**
+     * The open batch of each thread.
+     */
+    private static final ThreadLocal<ChangeBatch> CURRENT = new ThreadLocal<ChangeBatch>();
+
+    /**
+     * The number of threads with an open batch, so that changes made while no
+     * batch is open anywhere do not need to look at the thread local.
+     */
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    /**
+     * The subjects in the order in which they first changed.
+     */
+    private final ArrayList<ChangingObservable> subjects = new ArrayList<ChangingObservable>();
+
+    /**
+     * The distinct aspects that changed per subject, in order.
+     */
+    private final IdentityHashMap<ChangingObservable, ArrayList<Object>> aspects = new IdentityHashMap<ChangingObservable, ArrayList<Object>>();
+
+    /**
+     * The number of changes recorded, including duplicates.
+     */
+    private int recorded;
+
+    /**
+     * The nesting depth of the batch.
+     */
+    private int depth;
+
+    /**
+     * Set while changes are suppressed instead of recorded.
+     */
+    private boolean silent;
+
+    /**
+     * Batches are created by <code>begin</code>.
+     */
+    private ChangeBatch() {
+    }
+
+    /**
+     * Open a batch for the current thread, or join the batch that is already
+     * open. Every <code>begin</code> must be matched by a
+     * <code>close</code>.
+     *
+     * @return the batch of the current thread
+     */
+    public static ChangeBatch begin() {
+        ChangeBatch batch = CURRENT.get();
+        if (batch == null) {
+            batch = new ChangeBatch();
+            CURRENT.set(batch);
+            ACTIVE.incrementAndGet();
+        }
+        batch.depth++;
+        return batch;
+    }
+
+    /**
+     * Run the argument inside a batch.
+     *
+     * @param changes
+     *        the code making the changes
+     */
+    public static void run(final Runnable changes) {
+        ChangeBatch batch = begin();
+        try {
+            changes.run();
+        } finally {
+            batch.close();
+        }
+    }
+
+    /**
+     * Run the argument with notifications suppressed: the changes it makes on
+     * the current thread are dropped instead of delivered, also when the
+     * thread has a batch open already. Used to restore domain objects
+     * without notifying anyone of every value set.
+     *
+     * @param changes
+     *        the code making the changes
+     */
+    public static void suppress(final Runnable changes) {
+        ChangeBatch batch = begin();
+        boolean wasSilent = batch.silent;
+        batch.silent = true;
+        try {
+            changes.run();
+        } finally {
+            batch.silent = wasSilent;
+            batch.close();
+        }
+    }
+
+    /**
+     * Answer whether the current thread has an open batch.
+     *
+     * @return <code>true</code> inside a batch
+     */
+    public static boolean isOpen() {
+        return ACTIVE.get() > 0 && CURRENT.get() != null;
+    }
+
+    /**
+     * Record a change in the batch of the current thread, if there is one.
+     * Called by <code>ChangingObservable.setChanged</code>.
+     *
+     * @return <code>true</code> when the change was recorded, so that it
+     *         must not be delivered now
+     */
+    static boolean record(final ChangingObservable subject, final Object arg) {
+        if (ACTIVE.get() == 0) {
+            return false;
+        }
+        ChangeBatch batch = CURRENT.get();
+        if (batch == null) {
+            return false;
+        }
+        batch.add(subject, arg);
+        return true;
+    }
+
+    /**
+     * Add a change unless the same aspect of the subject is already recorded.
+     * A <code>ChangeEvent</code> is kept as a copy; when its aspect is
+     * already recorded the recorded event keeps its old value and takes the
+     * new value and sequence number of the later one.
+     */
+    private void add(final ChangingObservable subject, final Object arg) {
+        this.recorded++;
+        if (this.silent) {
+            return;
+        }
+        Object aspect = arg;
+        if (aspect instanceof String) {
+            Aspect known = Aspect.find(subject.getClass(), (String) aspect);
+            if (known != null) {
+                aspect = known;
+            }
+        }
+        ArrayList<Object> changed = this.aspects.get(subject);
+        if (changed == null) {
+            changed = new ArrayList<Object>(4);
+            this.aspects.put(subject, changed);
+            this.subjects.add(subject);
+        } else {
+            int index = indexOf(changed, aspectOf(aspect));
+            if (index >= 0) {
+                if (aspect instanceof ChangeEvent) {
+                    Object previous = changed.get(index);
+                    if (previous instanceof ChangeEvent) {
+                        ((ChangeEvent) previous).coalesce((ChangeEvent) aspect);
+                    } else {
+                        changed.set(index, ((ChangeEvent) aspect).retained());
+                    }
+                }
+                return;
+            }
+        }
+        changed.add(aspect instanceof ChangeEvent ? ((ChangeEvent) aspect)
+                .retained() : aspect);
+    }
+
+    /**
+     * Answer the index of the change of an aspect, or -1.
+     */
+    private static int indexOf(final ArrayList<Object> changed,
+            final Object aspect) {
+        for (int i = 0; i < changed.size(); i++) {
+            Object other = aspectOf(changed.get(i));
+            if (aspect == null ? other == null : aspect.equals(other)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Answer the aspect of a recorded change.
+     */
+    private static Object aspectOf(final Object change) {
+        return change instanceof ChangeEvent ? ((ChangeEvent) change)
+                .getAspect() : change;
+    }
+
+    /**
+     * Answer the number of changes recorded in this batch, including those
+     * that were coalesced.
+     *
+     * @return the number of calls of <code>setChanged</code>
+     */
+    public int getRecordedCount() {
+        return this.recorded;
+    }
+
+    /**
+     * Answer the number of notifications that will be delivered when this
+     * batch is closed.
+     *
+     * @return the number of distinct subject and aspect pairs
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (int i = 0; i < this.subjects.size(); i++) {
+            count += this.aspects.get(this.subjects.get(i)).size();
+        }
+        return count;
+    }
+
+    /**
+     * Close the batch. Closing the outermost batch delivers the recorded
+     * changes; changes made by observers during delivery are delivered
+     * immediately. When an observer throws, the remaining changes are still
+     * delivered and the first exception is thrown afterwards.
+     */
+    public void close() {
+        if (CURRENT.get() != this) {
+            throw new IllegalStateException(
+                    "batch is not open on the current thread");
+        }
+        if (--this.depth > 0) {
+            return;
+        }
+        CURRENT.remove();
+        ACTIVE.decrementAndGet();
+        RuntimeException failure = null;
+        for (int i = 0; i < this.subjects.size(); i++) {
+            ChangingObservable subject = this.subjects.get(i);
+            ArrayList<Object> changed = this.aspects.get(subject);
+            for (int j = 0; j < changed.size(); j++) {
+                try {
+                    subject.publishChange(changed.get(j));
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package sepher.saf.adapter;
+
+/**
+ * A change of one aspect of an observable: its old and new value, a sequence
+ * number that increases with every event of the same observable, and the
+ * time of the change. Observers implementing
+ * <code>ChangeEventObserver</code> receive it, so they can act on the change
+ * without reading the observable again.
+ * <p>
+ * Events delivered synchronously are recycled: an event is only valid during
+ * the call of <code>changed</code> it is passed to. An observer that keeps an
+ * event, or hands it to another thread, keeps a <code>copy()</code>. Events
+ * recorded by a <code>ChangeBatch</code> or passed to a
+ * <code>NotificationDispatcher</code> are copied by the framework.
+ *
+ * @see ChangeEventObserver
+ * @see ChangingObservable#setChanged(Aspect, Object, Object)
+ */
+public final class ChangeEvent {
+
+    /**
+     * The recycled events of each thread, one per level of nested
+     * notification.
+     */
+    private static final ThreadLocal<Pool> POOL = new ThreadLocal<Pool>() {
+        protected Pool initialValue() {
+            return new Pool();
+        }
+    };
+
+    /**
+     * A stack of recycled events.
+     */
+    private static final class Pool {
+        ChangeEvent[] events = new ChangeEvent[4];
+
+        int depth;
+    }
+
+    /**
+     * The pool the event belongs to, <code>null</code> for a copy.
+     */
+    private final Pool pool;
+
+    private Object source;
+
+    private Aspect aspect;
+
+    private Object oldValue;
+
+    private Object newValue;
+
+    private long sequence;
+
+    private long timestamp;
+
+    /**
+     * Events are created by <code>acquire</code> and <code>copy</code>.
+     */
+    private ChangeEvent(final Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Answer a recycled event of the current thread filled with the
+     * arguments. Every <code>acquire</code> must be matched by a
+     * <code>release</code>, in reverse order.
+     */
+    static ChangeEvent acquire(final Object source, final Aspect aspect,
+            final Object oldValue, final Object newValue, final long sequence) {
+        Pool pool = POOL.get();
+        if (pool.depth == pool.events.length) {
+            ChangeEvent[] grown = new ChangeEvent[pool.depth * 2];
+            System.arraycopy(pool.events, 0, grown, 0, pool.depth);
+            pool.events = grown;
+        }
+        ChangeEvent event = pool.events[pool.depth];
+        if (event == null) {
+            event = new ChangeEvent(pool);
+            pool.events[pool.depth] = event;
+        }
+        pool.depth++;
+        event.source = source;
+        event.aspect = aspect;
+        event.oldValue = oldValue;
+        event.newValue = newValue;
+        event.sequence = sequence;
+        event.timestamp = System.currentTimeMillis();
+        return event;
+    }
+
+    /**
+     * Answer an event, not recycled, for a change that was notified without
+     * its values: both values are <code>null</code> and the sequence is 0.
+     */
+    static ChangeEvent withoutValues(final Object source, final Aspect aspect) {
+        ChangeEvent event = new ChangeEvent(null);
+        event.source = source;
+        event.aspect = aspect;
+        event.timestamp = System.currentTimeMillis();
+        return event;
+    }
+
+    /**
+     * Return a recycled event to its pool, dropping its references so that
+     * the pool keeps no values reachable.
+     */
+    void release() {
+        if (this.pool == null) {
+            return;
+        }
+        this.source = null;
+        this.oldValue = null;
+        this.newValue = null;
+        this.pool.depth--;
+    }
+
+    /**
+     * Answer a copy of the event that is not recycled, and so may be kept.
+     *
+     * @return a new event with the same contents
+     */
+    public ChangeEvent copy() {
+        ChangeEvent copy = new ChangeEvent(null);
+        copy.source = this.source;
+        copy.aspect = this.aspect;
+        copy.oldValue = this.oldValue;
+        copy.newValue = this.newValue;
+        copy.sequence = this.sequence;
+        copy.timestamp = this.timestamp;
+        return copy;
+    }
+
+    /**
+     * Answer the event itself when it is not recycled, otherwise a copy.
+     */
+    ChangeEvent retained() {
+        return this.pool == null ? this : this.copy();
+    }
+
+    /**
+     * Take the new value, sequence and time of a later event of the same
+     * aspect, keeping my old value. Used by <code>ChangeBatch</code> to
+     * coalesce events; only for copies.
+     */
+    void coalesce(final ChangeEvent later) {
+        this.newValue = later.newValue;
+        this.sequence = later.sequence;
+        this.timestamp = later.timestamp;
+    }
+
+    /**
+     * Answer a new event with my old value and the new value, sequence and
+     * time of a later event of the same aspect. Neither event is changed, so
+     * it may be used on events that were delivered to other observers.
+     */
+    ChangeEvent coalesced(final ChangeEvent later) {
+        ChangeEvent merged = this.copy();
+        merged.coalesce(later);
+        return merged;
+    }
+
+    /**
+     * @return the observable that changed
+     */
+    public Object getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return the aspect that changed
+     */
+    public Aspect getAspect() {
+        return this.aspect;
+    }
+
+    /**
+     * @return the value before the change
+     */
+    public Object getOldValue() {
+        return this.oldValue;
+    }
+
+    /**
+     * @return the value after the change
+     */
+    public Object getNewValue() {
+        return this.newValue;
+    }
+
+    /**
+     * @return the number of the event, increasing with every event of its
+     *         observable
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * @return the time of the change, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public String toString() {
+        return "(" + this.aspect + " #" + this.sequence + ": " + this.oldValue
+                + " -> " + this.newValue + ")";
+    }
+}
@@ -0,0 +1,35 @@
+package sepher.saf.adapter;
+
+/**
+ * An observer that receives a <code>ChangeEvent</code> with the old and new
+ * value of every change an observable reports with
+ * <code>setChanged(Aspect, Object, Object)</code>. Changes reported without
+ * values, and observables that do not report values, still arrive through
+ * <code>update</code>.
+ *
+ * <pre><code>
+ *     aPerson.addObserver(new ChangeEventObserver() {
+ *         public void changed(ChangeEvent event) {
+ *             journal.write(event.getSequence(), event.getNewValue());
+ *         }
+ *
+ *         public void update(Object sender, Object aspect) {
+ *         }
+ *     });
+ * </code></pre>
+ *
+ * The event is recycled once <code>changed</code> returns; keep a
+ * <code>copy()</code> of it to use it later.
+ *
+ * @see ChangeEvent
+ */
+public interface ChangeEventObserver extends SAFObserver {
+
+    /**
+     * Called when an observable changed.
+     *
+     * @param event
+     *        the change, only valid during this call
+     */
+    void changed(ChangeEvent event);
+}
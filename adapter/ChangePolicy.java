@@ -0,0 +1,274 @@
+package sepher.saf.adapter;
+
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether setting a value is a change that observers must be notified
+ * of. Services that rewrite values periodically (polling, synchronization)
+ * mostly write the value that is already there; with a policy other than
+ * <code>ALWAYS</code> such writes are dropped before they fan out through the
+ * observer graph.
+ * <p>
+ * <code>IntValue</code>, <code>LongValue</code> and <code>DoubleValue</code>
+ * compare their primitive values without boxing them, except for a policy
+ * made with <code>comparing</code>.
+ * <p>
+ * Every policy counts the notifications it suppressed, so that the work saved
+ * can be monitored. The shared policies count for all values using them; use
+ * a policy of your own to count separately:
+ *
+ * <pre><code>
+ *     aValue.setChangePolicy(ChangePolicy.EQUALS);
+ *     aTemperature.setChangePolicy(ChangePolicy.within(0.05));
+ *     ...
+ *     ChangePolicy.EQUALS.getSuppressedCount();
+ * </code></pre>
+ *
+ * @see DynamicValue#setChangePolicy
+ * @see InterfaceAdapter#setChangePolicy
+ */
+public abstract class ChangePolicy {
+
+    /**
+     * Every value set is a change, also when it equals the old value. This is
+     * the default.
+     */
+    public static final ChangePolicy ALWAYS = new ChangePolicy() {
+        protected boolean differ(final Object oldValue, final Object newValue) {
+            return true;
+        }
+
+        protected boolean differ(final long oldValue, final long newValue) {
+            return true;
+        }
+
+        protected boolean differ(final double oldValue, final double newValue) {
+            return true;
+        }
+    };
+
+    /**
+     * A value is changed when it is another object than the old value.
+     */
+    public static final ChangePolicy IDENTITY = new ChangePolicy() {
+        protected boolean differ(final Object oldValue, final Object newValue) {
+            return oldValue != newValue;
+        }
+
+        protected boolean differ(final long oldValue, final long newValue) {
+            return oldValue != newValue;
+        }
+
+        protected boolean differ(final double oldValue, final double newValue) {
+            return Double.compare(oldValue, newValue) != 0;
+        }
+    };
+
+    /**
+     * A value is changed when it does not equal the old value.
+     */
+    public static final ChangePolicy EQUALS = new ChangePolicy() {
+        protected boolean differ(final Object oldValue, final Object newValue) {
+            return !equal(oldValue, newValue);
+        }
+
+        protected boolean differ(final long oldValue, final long newValue) {
+            return oldValue != newValue;
+        }
+
+        protected boolean differ(final double oldValue, final double newValue) {
+            return Double.compare(oldValue, newValue) != 0;
+        }
+    };
+
+    /**
+     * The number of notifications suppressed by this policy.
+     */
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * Answer a policy treating a value as changed when the comparator does not
+     * answer 0. <code>null</code> is only unchanged when replaced by
+     * <code>null</code>.
+     *
+     * @param comparator
+     *        compares the old and the new value
+     * @return a new policy
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ChangePolicy comparing(final Comparator<? super T> comparator) {
+        final Comparator<Object> order = (Comparator<Object>) comparator;
+        return new ChangePolicy() {
+            protected boolean differ(final Object oldValue, final Object newValue) {
+                if (oldValue == null || newValue == null) {
+                    return oldValue != newValue;
+                }
+                return order.compare(oldValue, newValue) != 0;
+            }
+        };
+    }
+
+    /**
+     * Answer a policy for numeric values, treating a value as changed when it
+     * differs more than <code>epsilon</code> from the old value. Because an
+     * unchanged value is not stored, small steps do not add up unnoticed: the
+     * value is compared with the value last notified. Values that are not both
+     * <code>Number</code>s are compared with <code>equals</code>.
+     *
+     * @param epsilon
+     *        the largest difference that is not a change
+     * @return a new policy
+     */
+    public static ChangePolicy within(final double epsilon) {
+        if (!(epsilon >= 0)) {
+            throw new IllegalArgumentException("epsilon must not be negative");
+        }
+        return new ChangePolicy() {
+            protected boolean differ(final Object oldValue, final Object newValue) {
+                if (oldValue instanceof Number && newValue instanceof Number) {
+                    double oldNumber = ((Number) oldValue).doubleValue();
+                    double newNumber = ((Number) newValue).doubleValue();
+                    if (Double.isNaN(oldNumber) || Double.isNaN(newNumber)) {
+                        return Double.isNaN(oldNumber) != Double.isNaN(newNumber);
+                    }
+                    return Math.abs(oldNumber - newNumber) > epsilon;
+                }
+                return !equal(oldValue, newValue);
+            }
+
+            protected boolean differ(final long oldValue, final long newValue) {
+                return Math.abs((double) oldValue - (double) newValue) > epsilon;
+            }
+
+            protected boolean differ(final double oldValue, final double newValue) {
+                if (Double.isNaN(oldValue) || Double.isNaN(newValue)) {
+                    return Double.isNaN(oldValue) != Double.isNaN(newValue);
+                }
+                return Math.abs(oldValue - newValue) > epsilon;
+            }
+        };
+    }
+
+    /**
+     * Answer whether replacing the old value by the new one is a change,
+     * counting it as suppressed when it is not.
+     *
+     * @param oldValue
+     *        the current value
+     * @param newValue
+     *        the value being set
+     * @return <code>true</code> when observers must be notified
+     */
+    public final boolean isChange(final Object oldValue, final Object newValue) {
+        if (this.differ(oldValue, newValue)) {
+            return true;
+        }
+        this.suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Answer whether replacing the old primitive value by the new one is a
+     * change, counting it as suppressed when it is not.
+     *
+     * @param oldValue
+     *        the current value
+     * @param newValue
+     *        the value being set
+     * @return <code>true</code> when observers must be notified
+     * @see IntValue
+     * @see LongValue
+     */
+    public final boolean isChange(final long oldValue, final long newValue) {
+        if (this.differ(oldValue, newValue)) {
+            return true;
+        }
+        this.suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Answer whether replacing the old primitive value by the new one is a
+     * change, counting it as suppressed when it is not.
+     *
+     * @param oldValue
+     *        the current value
+     * @param newValue
+     *        the value being set
+     * @return <code>true</code> when observers must be notified
+     * @see DoubleValue
+     */
+    public final boolean isChange(final double oldValue, final double newValue) {
+        if (this.differ(oldValue, newValue)) {
+            return true;
+        }
+        this.suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Answer whether the values differ according to this policy.
+     *
+     * @param oldValue
+     *        the current value
+     * @param newValue
+     *        the value being set
+     * @return <code>true</code> when the values differ
+     */
+    protected abstract boolean differ(Object oldValue, Object newValue);
+
+    /**
+     * Answer whether the primitive values differ according to this policy.
+     * The shared policies compare without boxing; the default boxes the
+     * values as <code>Long</code>s, which is also what a comparator given to
+     * <code>comparing</code> receives for an <code>IntValue</code> or a
+     * <code>LongValue</code>.
+     *
+     * @param oldValue
+     *        the current value
+     * @param newValue
+     *        the value being set
+     * @return <code>true</code> when the values differ
+     */
+    protected boolean differ(final long oldValue, final long newValue) {
+        return this.differ(Long.valueOf(oldValue), Long.valueOf(newValue));
+    }
+
+    /**
+     * Answer whether the primitive values differ according to this policy.
+     * The default boxes the values as <code>Double</code>s.
+     *
+     * @param oldValue
+     *        the current value
+     * @param newValue
+     *        the value being set
+     * @return <code>true</code> when the values differ
+     */
+    protected boolean differ(final double oldValue, final double newValue) {
+        return this.differ(Double.valueOf(oldValue), Double.valueOf(newValue));
+    }
+
+    /**
+     * Answer the number of notifications this policy suppressed.
+     *
+     * @return the number of values set that were not a change
+     */
+    public final long getSuppressedCount() {
+        return this.suppressed.sum();
+    }
+
+    /**
+     * Reset the number of suppressed notifications to 0.
+     */
+    public final void resetSuppressedCount() {
+        this.suppressed.reset();
+    }
+
+    /**
+     * Answer whether the arguments are equal, or both <code>null</code>.
+     */
+    private static boolean equal(final Object oldValue, final Object newValue) {
+        return oldValue == null ? newValue == null : oldValue.equals(newValue);
+    }
+}
@@ -0,0 +1,579 @@
+package sepher.saf.adapter;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes the changes of an observable, or the values of an
+ * <code>IValue</code>, to <code>Flow.Subscriber</code>s, so that changes can
+ * be consumed by demand-driven pipelines rather than by observers.
+ * <p>
+ * Every subscriber gets its own registration with the subject and its own
+ * buffer of <code>bufferSize</code> items. Items are only passed to
+ * <code>onNext</code> as far as the subscriber has requested them; until then
+ * they wait in the buffer. What happens to a change when the buffer is full
+ * is decided by the <code>OverflowPolicy</code>: <code>BLOCK</code> holds up
+ * the thread that made the change, so that nothing is lost, and
+ * <code>CONFLATE</code> keeps only the latest item per aspect. As the thread
+ * that made the change may hold the lock of its subject, <code>BLOCK</code>
+ * is only for subscribers that keep requesting. Items are delivered on a
+ * shared pool of daemon threads unless an executor is given.
+ * <p>
+ * <code>changesOf</code> publishes <code>ChangeEvent</code>s. A change
+ * notified without its values is published as an event whose values are
+ * <code>null</code>, and whose aspect is <code>null</code> when the change
+ * was not an aspect of the subject. <code>valuesOf</code> publishes the values of an
+ * <code>IValue</code>, starting with its current value. As a
+ * <code>Flow</code> does not allow <code>null</code> items, a
+ * <code>null</code> value is not published.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     ChangePublisher&lt;ChangeEvent&gt; names = ChangePublisher.changesOf(aPerson,
+ *             Person.NAME, 100, OverflowPolicy.CONFLATE);
+ *     names.subscribe(aSubscriber);
+ *     ...
+ *     names.close();
+ * </code></pre>
+ *
+ * <code>close</code> completes the subscribers once they have received the
+ * items still buffered for them.
+ *
+ * @see ValueSubscriber
+ */
+public final class ChangePublisher<T> implements Flow.Publisher<T>,
+        AutoCloseable {
+
+    /**
+     * The buffer size of publishers created without one.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = Flow.defaultBufferSize();
+
+    /**
+     * The number of items delivered by one task, after which the task gives
+     * its thread to other subscribers.
+     */
+    private static final int DRAIN_LIMIT = 256;
+
+    /**
+     * The key of the changes of an aspect that is not an <code>Aspect</code>
+     * or a name, and of all changes of a value.
+     */
+    private static final Object OTHER = new Object();
+
+    private final SAFObservable subject;
+
+    /**
+     * The aspect the subscribers are registered for, <code>null</code> for
+     * all changes.
+     */
+    private final Aspect aspect;
+
+    /**
+     * The value whose values are published, <code>null</code> when changes
+     * are published.
+     */
+    private final IValue value;
+
+    private final int bufferSize;
+
+    private final OverflowPolicy policy;
+
+    private final Executor executor;
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    private volatile boolean closed;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder conflated = new LongAdder();
+
+    /**
+     * Constructor for a publisher.
+     *
+     * @param subject
+     *        the observable to subscribe to
+     * @param aspect
+     *        the aspect to subscribe to, or <code>null</code> for all
+     * @param value
+     *        the value to publish the values of, or <code>null</code>
+     * @param bufferSize
+     *        the maximum number of items buffered per subscriber
+     * @param policy
+     *        what to do with a change when a buffer is full
+     * @param executor
+     *        runs the tasks that deliver the items
+     */
+    private ChangePublisher(final SAFObservable subject, final Aspect aspect,
+            final IValue value, final int bufferSize,
+            final OverflowPolicy policy, final Executor executor) {
+        if (subject == null || policy == null || executor == null) {
+            throw new NullPointerException();
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("buffer size " + bufferSize);
+        }
+        this.subject = subject;
+        this.aspect = aspect;
+        this.value = value;
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+        this.executor = executor;
+    }
+
+    /**
+     * Answer a publisher of all changes of a subject, buffering
+     * <code>DEFAULT_BUFFER_SIZE</code> changes per subscriber and conflating
+     * the changes of an aspect while they wait, so that a subscriber that
+     * does not request never holds up the subject.
+     *
+     * @param subject
+     *        the observable
+     * @return the publisher
+     */
+    public static ChangePublisher<ChangeEvent> changesOf(
+            final SAFObservable subject) {
+        return changesOf(subject, null, DEFAULT_BUFFER_SIZE,
+                OverflowPolicy.CONFLATE);
+    }
+
+    /**
+     * Answer a publisher of the changes of a subject.
+     *
+     * @param subject
+     *        the observable
+     * @param aspect
+     *        the aspect to publish the changes of, or <code>null</code> for
+     *        all changes
+     * @param bufferSize
+     *        the maximum number of changes buffered per subscriber
+     * @param policy
+     *        what to do with a change when a buffer is full
+     * @return the publisher
+     */
+    public static ChangePublisher<ChangeEvent> changesOf(
+            final SAFObservable subject, final Aspect aspect,
+            final int bufferSize, final OverflowPolicy policy) {
+        return new ChangePublisher<ChangeEvent>(subject, aspect, null,
+                bufferSize, policy, QueuedObserver.SHARED_EXECUTOR);
+    }
+
+    /**
+     * Answer a publisher of the values of a value, conflated to the latest
+     * value for a subscriber that has not requested it yet.
+     *
+     * @param value
+     *        the value, which must be an <code>SAFObservable</code>
+     * @return the publisher
+     */
+    public static ChangePublisher<Object> valuesOf(final IValue value) {
+        return valuesOf(value, 1, OverflowPolicy.CONFLATE);
+    }
+
+    /**
+     * Answer a publisher of the values of a value.
+     *
+     * @param value
+     *        the value, which must be an <code>SAFObservable</code>
+     * @param bufferSize
+     *        the maximum number of values buffered per subscriber
+     * @param policy
+     *        what to do with a value when a buffer is full
+     * @return the publisher
+     */
+    public static ChangePublisher<Object> valuesOf(final IValue value,
+            final int bufferSize, final OverflowPolicy policy) {
+        if (!(value instanceof SAFObservable)) {
+            throw new IllegalArgumentException(value
+                    + " does not notify its changes");
+        }
+        return new ChangePublisher<Object>((SAFObservable) value, null,
+                value, bufferSize, policy, QueuedObserver.SHARED_EXECUTOR);
+    }
+
+    /**
+     * Answer a publisher like me that delivers on another executor.
+     *
+     * @param other
+     *        runs the tasks that deliver the items
+     * @return the publisher
+     */
+    public ChangePublisher<T> deliveringOn(final Executor other) {
+        return new ChangePublisher<T>(this.subject, this.aspect, this.value,
+                this.bufferSize, this.policy, other);
+    }
+
+    /**
+     * Pass the subscriber its subscription and register it with the
+     * subject. Subscribing to a closed publisher completes the subscriber at
+     * once.
+     *
+     * @param subscriber
+     *        the subscriber
+     */
+    public void subscribe(final Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        Subscription subscription = new Subscription(subscriber);
+        // before anything can be signalled to it
+        subscriber.onSubscribe(subscription);
+        if (this.value != null) {
+            Object current = this.value.getValue();
+            if (current != null) {
+                subscription.offer(OTHER, current);
+            }
+        }
+        this.subscriptions.add(subscription);
+        if (this.aspect != null) {
+            this.subject.addObserver(subscription, this.aspect);
+        } else {
+            this.subject.addObserver(subscription);
+        }
+        if (subscription.isCancelled()) {
+            // cancelled before it was registered
+            subscription.unregister();
+        } else if (this.closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Stop publishing: every subscriber is completed once it has received
+     * the items buffered for it.
+     */
+    public void close() {
+        this.closed = true;
+        for (Iterator<Subscription> it = this.subscriptions.iterator(); it
+                .hasNext();) {
+            it.next().complete();
+        }
+    }
+
+    /**
+     * @return the number of subscribers that did not cancel and were not
+     *         completed yet
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /**
+     * @return the number of items dropped because a buffer was full
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return the number of items merged into a buffered item of the same
+     *         aspect
+     */
+    public long getConflatedCount() {
+        return this.conflated.sum();
+    }
+
+    /**
+     * The subscription of one subscriber, which is also its registration
+     * with the subject.
+     */
+    private final class Subscription implements Flow.Subscription,
+            ChangeEventObserver, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        /**
+         * The buffered items, oldest first, each preceded by its key.
+         */
+        private final ArrayDeque<Object> buffer = new ArrayDeque<Object>();
+
+        /**
+         * The number of buffered items.
+         */
+        private int size;
+
+        /**
+         * The buffered item of each key, when conflating.
+         */
+        private final HashMap<Object, Object[]> latest;
+
+        /**
+         * The number of items requested and not yet delivered.
+         */
+        private long demand;
+
+        /**
+         * Set while a task to deliver items is submitted or running.
+         */
+        private boolean scheduled;
+
+        private boolean cancelled;
+
+        private boolean completing;
+
+        private Throwable failure;
+
+        /**
+         * The thread delivering the items, so that it does not wait for
+         * itself when the subscriber makes a change.
+         */
+        private volatile Thread deliverer;
+
+        Subscription(final Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            this.latest = ChangePublisher.this.policy == OverflowPolicy.CONFLATE ? new HashMap<Object, Object[]>()
+                    : null;
+        }
+
+        public void update(final Object sender, final Object arg) {
+            if (ChangePublisher.this.value != null) {
+                this.offer(OTHER, ChangePublisher.this.value.getValue());
+            } else if (arg instanceof String) {
+                this.offer(arg, ChangeEvent.withoutValues(sender, Aspect.find(
+                        sender.getClass(), (String) arg)));
+            } else {
+                this.offer(OTHER, ChangeEvent.withoutValues(sender, null));
+            }
+        }
+
+        public void update(final Object sender, final Aspect changed) {
+            if (ChangePublisher.this.value != null) {
+                this.offer(OTHER, ChangePublisher.this.value.getValue());
+            } else {
+                this.offer(changed.getName(), ChangeEvent.withoutValues(
+                        sender, changed));
+            }
+        }
+
+        public void changed(final ChangeEvent event) {
+            if (ChangePublisher.this.value != null) {
+                this.offer(OTHER, event.getNewValue());
+            } else {
+                this.offer(event.getAspect().getName(), event.retained());
+            }
+        }
+
+        /**
+         * @return true when the subscriber cancelled
+         */
+        synchronized boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * Buffer an item according to the policy, and submit a task to
+         * deliver it when it has been requested.
+         */
+        synchronized void offer(final Object key, final Object item) {
+            if (item == null || this.cancelled || this.completing) {
+                return;
+            }
+            if (this.latest != null) {
+                Object[] entry = this.latest.get(key);
+                if (entry != null) {
+                    if (entry[0] instanceof ChangeEvent
+                            && item instanceof ChangeEvent) {
+                        // the buffered event may be shared with others
+                        entry[0] = ((ChangeEvent) entry[0])
+                                .coalesced((ChangeEvent) item);
+                    } else {
+                        entry[0] = item;
+                    }
+                    ChangePublisher.this.conflated.increment();
+                    return;
+                }
+            }
+            if (this.size >= ChangePublisher.this.bufferSize
+                    && !this.makeRoom()) {
+                ChangePublisher.this.dropped.increment();
+                return;
+            }
+            Object[] entry = { item };
+            this.buffer.addLast(key);
+            this.buffer.addLast(entry);
+            this.size++;
+            if (this.latest != null) {
+                this.latest.put(key, entry);
+            }
+            this.schedule();
+        }
+
+        /**
+         * Make room in the full buffer for a new item.
+         *
+         * @return false when the new item is to be dropped
+         */
+        private boolean makeRoom() {
+            switch (ChangePublisher.this.policy) {
+            case BLOCK:
+                if (Thread.currentThread() == this.deliverer) {
+                    return true;
+                }
+                try {
+                    while (this.size >= ChangePublisher.this.bufferSize
+                            && !this.cancelled) {
+                        this.wait();
+                    }
+                    return !this.cancelled;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            case DROP_NEWEST:
+                return false;
+            default:
+                this.poll();
+                ChangePublisher.this.dropped.increment();
+                return true;
+            }
+        }
+
+        /**
+         * Take the oldest buffered item.
+         */
+        private Object poll() {
+            Object key = this.buffer.pollFirst();
+            Object[] entry = (Object[]) this.buffer.pollFirst();
+            this.size--;
+            if (this.latest != null) {
+                this.latest.remove(key);
+            }
+            return entry[0];
+        }
+
+        public void request(final long n) {
+            synchronized (this) {
+                if (this.cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    this.failure = new IllegalArgumentException(
+                            "non-positive request " + n);
+                } else {
+                    this.demand = this.demand + n < 0 ? Long.MAX_VALUE
+                            : this.demand + n;
+                }
+                this.schedule();
+            }
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                if (this.cancelled) {
+                    return;
+                }
+                this.cancelled = true;
+                this.buffer.clear();
+                this.size = 0;
+                if (this.latest != null) {
+                    this.latest.clear();
+                }
+                this.notifyAll();
+            }
+            this.unregister();
+        }
+
+        /**
+         * Complete the subscriber once the buffer has been delivered.
+         */
+        synchronized void complete() {
+            this.completing = true;
+            this.schedule();
+        }
+
+        /**
+         * Remove me from the subject and the publisher.
+         */
+        private void unregister() {
+            if (ChangePublisher.this.aspect != null) {
+                ChangePublisher.this.subject.deleteObserver(this,
+                        ChangePublisher.this.aspect);
+            } else {
+                ChangePublisher.this.subject.deleteObserver(this);
+            }
+            ChangePublisher.this.subscriptions.remove(this);
+        }
+
+        /**
+         * Submit a task to deliver items unless one is pending. Called while
+         * locked.
+         */
+        private void schedule() {
+            if (this.scheduled) {
+                return;
+            }
+            this.scheduled = true;
+            ChangePublisher.this.executor.execute(this);
+        }
+
+        /**
+         * Deliver the requested items, at most <code>DRAIN_LIMIT</code> of
+         * them before submitting another task for the rest, followed by
+         * <code>onError</code> or <code>onComplete</code> when due.
+         */
+        @SuppressWarnings("unchecked")
+        public void run() {
+            this.deliverer = Thread.currentThread();
+            try {
+                for (int i = 0; i < DRAIN_LIMIT; i++) {
+                    Object item;
+                    Throwable error = null;
+                    boolean done = false;
+                    synchronized (this) {
+                        if (this.cancelled) {
+                            this.scheduled = false;
+                            return;
+                        }
+                        if (this.failure != null) {
+                            error = this.failure;
+                            item = null;
+                        } else if (this.size > 0 && this.demand > 0) {
+                            item = this.poll();
+                            if (this.demand != Long.MAX_VALUE) {
+                                this.demand--;
+                            }
+                            if (ChangePublisher.this.policy == OverflowPolicy.BLOCK) {
+                                this.notifyAll();
+                            }
+                        } else if (this.size == 0 && this.completing) {
+                            done = true;
+                            item = null;
+                        } else {
+                            this.scheduled = false;
+                            return;
+                        }
+                    }
+                    if (error != null || done) {
+                        this.cancel();
+                        if (error != null) {
+                            this.subscriber.onError(error);
+                        } else {
+                            this.subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    try {
+                        this.subscriber.onNext((T) item);
+                    } catch (RuntimeException e) {
+                        // a subscriber must not throw; treat as cancelled
+                        this.cancel();
+                        return;
+                    }
+                }
+            } finally {
+                this.deliverer = null;
+            }
+            synchronized (this) {
+                this.scheduled = false;
+                this.schedule();
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package sepher.saf.adapter;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * Extends the <code>SAFObservable</code> functionality by updating
  * <code>Observer</code>s when <code>setChanged</code> has been called. This class
@@ -7,15 +10,70 @@ package sepher.saf.adapter;
  * <p> These classes are linked with other components by the event mechanism
  * implemented here. Observers that are contained in the collection of observers
  * are Adapters as a rule.
+ * <p> By default observers are notified synchronously, on the thread that
+ * calls <code>setChanged</code>. A <code>NotificationDispatcher</code> can be
+ * set to deliver the notifications in another way, for instance
+ * asynchronously through a <code>RingBufferDispatcher</code>.
+ * <p> Changes made inside a <code>ChangeBatch</code> are coalesced and
+ * delivered when the batch is closed.
+ * <p> Changes reported with <code>setChanged(aspect, oldValue, newValue)</code>
+ * reach <code>ChangeEventObserver</code>s as a numbered
+ * <code>ChangeEvent</code>.
  * @created    7 mei 2001
  * @see                 java.util.Observable#setChanged
  * @see                 java.util.Observable#notifyObservers
  * @author Rob Vens
  * @version 1.0
  * @updated 21-jun-2005 13:37:24
+ * @see NotificationDispatcher
+ * @see ChangeBatch
+ * @see ChangeEvent
  */
 public class ChangingObservable extends SAFObservable {
 
+    /**
+     * Updater used to install the dispatcher state atomically.
+     */
+    private static final AtomicReferenceFieldUpdater<ChangingObservable, Object> DISPATCH_STATE = AtomicReferenceFieldUpdater
+            .newUpdater(ChangingObservable.class, Object.class,
+                    "dispatchState");
+
+    /**
+     * Updater used to number my change events.
+     */
+    private static final AtomicLongFieldUpdater<ChangingObservable> SEQUENCE = AtomicLongFieldUpdater
+            .newUpdater(ChangingObservable.class, "sequence");
+
+    /**
+     * Updater used to count my changes.
+     */
+    private static final AtomicLongFieldUpdater<ChangingObservable> VERSION = AtomicLongFieldUpdater
+            .newUpdater(ChangingObservable.class, "version");
+
+    /**
+     * Delivers my notifications, <code>null</code> when they are delivered
+     * synchronously.
+     */
+    private volatile NotificationDispatcher dispatcher;
+
+    /**
+     * State kept by my dispatcher for me, such as the queue of an
+     * <code>OrderedDispatcher</code>; <code>null</code> until it is needed.
+     */
+    private volatile Object dispatchState;
+
+    /**
+     * The number of my last change event.
+     */
+    private volatile long sequence;
+
+    /**
+     * The number of my changes since the first <code>ComputedValue</code> was
+     * made; compared by computed values to tell whether what they read of me
+     * is still current.
+     */
+    private volatile long version;
+
     /**
      * Default constructor
      */
@@ -42,10 +100,204 @@ public class ChangingObservable extends SAFObservable {
 	 * 
 	 * @param arg    an Object representing information about the changed value.
 	 */
-    protected synchronized final void setChanged(Object arg) {
-        // only set the changed flag
-        super.setChanged();
-        this.notifyObservers(arg);
+    protected final void setChanged(Object arg) {
+        if (ComputedValue.inUse) {
+            this.changedVersion();
+        }
+        if (NotificationMetrics.enabled) {
+            NotificationMetrics.changed(this, arg);
+        }
+        if (ChangeBatch.record(this, arg)) {
+            return;
+        }
+        this.publishChange(arg);
+    }
+
+    /**
+     * Notify all observers of a change of the given aspect. This is the
+     * preferred form: the aspect is interned, so no lookup is needed to map
+     * a <code>String</code> to its <code>Aspect</code>.
+     * 
+     * @param aspect
+     *        the aspect that changed
+     * @see #setChanged(Object)
+     */
+    protected final void setChanged(Aspect aspect) {
+        if (ComputedValue.inUse) {
+            this.changedVersion();
+        }
+        if (NotificationMetrics.enabled) {
+            NotificationMetrics.changed(this, aspect);
+        }
+        if (ChangeBatch.record(this, aspect)) {
+            return;
+        }
+        this.publishChange(aspect);
+    }
+
+    /**
+     * Notify all observers of a change of the given aspect from
+     * <code>oldValue</code> to <code>newValue</code>.
+     * <code>ChangeEventObserver</code>s receive a <code>ChangeEvent</code>
+     * with both values and the next number of my events; other observers
+     * receive the aspect, as with <code>setChanged(Aspect)</code>. As long
+     * as no <code>ChangeEventObserver</code> was ever added no event is made
+     * at all; otherwise the event is recycled after delivery, so reporting a
+     * change allocates nothing.
+     * 
+     * @param aspect
+     *        the aspect that changed
+     * @param oldValue
+     *        the value before the change
+     * @param newValue
+     *        the value after the change
+     * @see ChangeEventObserver
+     */
+    protected final void setChanged(final Aspect aspect,
+            final Object oldValue, final Object newValue) {
+        if (!this.hasEventObservers()) {
+            this.setChanged(aspect);
+            return;
+        }
+        if (ComputedValue.inUse) {
+            this.changedVersion();
+        }
+        ChangeEvent event = ChangeEvent.acquire(this, aspect, oldValue,
+                newValue, SEQUENCE.incrementAndGet(this));
+        try {
+            if (NotificationMetrics.enabled) {
+                NotificationMetrics.changed(this, event);
+            }
+            if (ChangeBatch.record(this, event)) {
+                return;
+            }
+            this.publishChange(event);
+        } finally {
+            event.release();
+        }
+    }
+
+    /**
+     * Answer the number of my last <code>ChangeEvent</code>.
+     * 
+     * @return the sequence number, 0 before the first event
+     */
+    public final long getChangeSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Tell the <code>ComputedValue</code> being computed on this thread, if
+     * any, that it read an aspect of me, so that it is computed again when
+     * that aspect changes. Getters of domain classes call this as their
+     * setters call <code>setChanged</code>; it costs nothing while nothing
+     * is being computed.
+     * 
+     * @param aspect
+     *        the aspect read
+     * @see ComputedValue
+     */
+    protected final void accessed(final Aspect aspect) {
+        if (ComputedValue.evaluating != 0) {
+            ComputedValue.accessed(this, aspect);
+        }
+    }
+
+    /**
+     * Answer the number of my changes, for a <code>ComputedValue</code>.
+     */
+    final long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Count a change. A <code>ComputedValue</code> counts its changes itself,
+     * when it computes a new value.
+     */
+    void changedVersion() {
+        VERSION.incrementAndGet(this);
+    }
+
+    /**
+     * Deliver a change through my dispatcher, or to my observers directly.
+     * Called by <code>setChanged</code>, and by a <code>ChangeBatch</code>
+     * when it is closed. Observers notified directly are called while I am
+     * locked; a dispatcher is called without the lock, and receives a copy
+     * of a recycled <code>ChangeEvent</code>.
+     */
+    final void publishChange(final Object arg) {
+        NotificationDispatcher current = this.dispatcher;
+        if (current != null) {
+            current.dispatch(this, arg instanceof ChangeEvent
+                    ? ((ChangeEvent) arg).retained() : arg);
+            return;
+        }
+        synchronized (this) {
+            // only set the changed flag
+            super.setChanged();
+            this.notifyObservers(arg);
+        }
+    }
+
+    /**
+     * Run the argument inside a <code>ChangeBatch</code>: the changes it
+     * makes, to me or to any other <code>ChangingObservable</code>, are
+     * delivered once per subject and aspect when it returns.
+     * 
+     * @param changes
+     *        the code making the changes
+     * @see ChangeBatch
+     */
+    public final void batch(final Runnable changes) {
+        ChangeBatch.run(changes);
+    }
+
+    /**
+     * Answer the dispatcher that delivers my notifications.
+     * 
+     * @return the dispatcher, or <code>null</code> when observers are
+     *         notified synchronously
+     */
+    public final NotificationDispatcher getDispatcher() {
+        return this.dispatcher;
+    }
+
+    /**
+     * Set the dispatcher that delivers my notifications, or
+     * <code>null</code> to notify observers synchronously again.
+     * 
+     * @param newDispatcher
+     *        the dispatcher to use
+     */
+    public final void setDispatcher(
+            final NotificationDispatcher newDispatcher) {
+        this.dispatcher = newDispatcher;
+        this.dispatchState = null;
+    }
+
+    /**
+     * Answer the state my dispatcher keeps for me.
+     * 
+     * @return the state, or <code>null</code> when none has been installed
+     */
+    final Object getDispatchState() {
+        return this.dispatchState;
+    }
+
+    /**
+     * Install the state my dispatcher keeps for me, unless another thread
+     * installed it first.
+     * 
+     * @param state
+     *        the new state
+     * @return the state that is installed
+     */
+    final Object installDispatchState(final Object state) {
+        if (DISPATCH_STATE.compareAndSet(this, null, state)) {
+            return state;
+        }
+        Object current = this.dispatchState;
+        return current != null ? current : state;
     }
 
     /**
@@ -0,0 +1,224 @@
+package sepher.saf.adapter;
+
+import java.util.ArrayList;
+
+/**
+ * Commits or discards the pending values of a group of
+ * <code>BufferedDynamicValue</code>s together, such as the fields of a form.
+ * <p>
+ * Buffered values that each observe a shared trigger channel flush one by
+ * one: every flush unhooks from and re-hooks onto its subject, and every
+ * value written notifies the domain object's observers separately. A group
+ * observes the trigger channel in their place and writes all pending values
+ * in one pass inside a single <code>ChangeBatch</code>, so observers of the
+ * domain object get one notification per changed aspect. Values that were
+ * never assigned are skipped.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     CommitGroup form = new CommitGroup(aTrigger);
+ *     form.add(nameBuffer);
+ *     form.add(streetBuffer);
+ *     ...
+ *     aTrigger.setBoolean(true);    // or form.commit()
+ *     aTrigger.setBoolean(false);   // or form.rollback()
+ * </code></pre>
+ *
+ * @see BufferedDynamicValue
+ * @see ChangeBatch
+ */
+public class CommitGroup implements SAFObserver {
+
+    /**
+     * The buffered values of the group, in the order in which they were
+     * added.
+     */
+    private final ArrayList<BufferedDynamicValue> members = new ArrayList<BufferedDynamicValue>();
+
+    /**
+     * Contains a <code>Boolean</code>: <code>TRUE</code> commits the group,
+     * <code>FALSE</code> discards its pending values. May be
+     * <code>null</code>.
+     */
+    private DynamicValue triggerChannel;
+
+    /**
+     * Constructor for a group that is committed and rolled back explicitly.
+     */
+    public CommitGroup() {
+    }
+
+    /**
+     * Constructor for a group that observes a trigger channel.
+     *
+     * @param newTriggerChannel
+     *        the <code>DynamicValue</code> containing the <code>Boolean</code>
+     *        that triggers commit and rollback, preferably a
+     *        <code>BooleanValue</code>
+     */
+    public CommitGroup(final DynamicValue newTriggerChannel) {
+        this.setTriggerChannel(newTriggerChannel);
+    }
+
+    /**
+     * Add a buffered value to the group. It is detached from its own trigger
+     * channel, so that only the group flushes it.
+     *
+     * @param member
+     *        the buffered value
+     */
+    public synchronized void add(final BufferedDynamicValue member) {
+        if (this.members.contains(member)) {
+            return;
+        }
+        member.setTriggerChannel(null);
+        this.members.add(member);
+    }
+
+    /**
+     * Remove a buffered value from the group. Its pending value is kept.
+     *
+     * @param member
+     *        the buffered value
+     */
+    public synchronized void remove(final BufferedDynamicValue member) {
+        this.members.remove(member);
+    }
+
+    /**
+     * Answer the number of buffered values in the group.
+     *
+     * @return the size of the group
+     */
+    public synchronized int size() {
+        return this.members.size();
+    }
+
+    /**
+     * Answer the number of buffered values holding a value that has not been
+     * committed.
+     *
+     * @return the number of pending values
+     */
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (int i = 0; i < this.members.size(); i++) {
+            if (this.members.get(i).hasPendingValue()) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Write every pending value to its subject, inside one
+     * <code>ChangeBatch</code>. When a subject throws, the values written so
+     * far stay written and are notified, and the others stay pending.
+     *
+     * @return the number of values written
+     */
+    public int commit() {
+        BufferedDynamicValue[] current = this.snapshot();
+        int committed = 0;
+        ChangeBatch batch = ChangeBatch.begin();
+        try {
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].commitPending()) {
+                    committed++;
+                }
+            }
+        } finally {
+            batch.close();
+        }
+        return committed;
+    }
+
+    /**
+     * Discard every pending value, inside one <code>ChangeBatch</code>. The
+     * buffered values answer the values of their subjects again.
+     *
+     * @return the number of values discarded
+     */
+    public int rollback() {
+        BufferedDynamicValue[] current = this.snapshot();
+        int discarded = 0;
+        ChangeBatch batch = ChangeBatch.begin();
+        try {
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].discardPending()) {
+                    discarded++;
+                }
+            }
+        } finally {
+            batch.close();
+        }
+        return discarded;
+    }
+
+    /**
+     * Answer the trigger channel of the group.
+     *
+     * @return the trigger channel, or <code>null</code>
+     */
+    public final synchronized DynamicValue getTriggerChannel() {
+        return this.triggerChannel;
+    }
+
+    /**
+     * Observe another trigger channel.
+     *
+     * @param newTriggerChannel
+     *        the <code>DynamicValue</code> containing the <code>Boolean</code>
+     *        that triggers commit and rollback, or <code>null</code>
+     */
+    public final synchronized void setTriggerChannel(
+            final DynamicValue newTriggerChannel) {
+        if (this.triggerChannel != null) {
+            this.triggerChannel.deleteObserver(this);
+        }
+        this.triggerChannel = newTriggerChannel;
+        if (this.triggerChannel != null) {
+            this.triggerChannel.addObserver(this);
+        }
+    }
+
+    /**
+     * Remove the group from its trigger channel.
+     */
+    public void untie() {
+        this.setTriggerChannel(null);
+    }
+
+    /**
+     * The trigger channel changed: commit on <code>TRUE</code>, roll back on
+     * <code>FALSE</code>.
+     *
+     * @param sender
+     *        the trigger channel
+     * @param arg
+     *        the aspect that changed
+     */
+    public void update(final Object sender, final Object arg) {
+        DynamicValue trigger = this.getTriggerChannel();
+        if (sender != trigger) {
+            return;
+        }
+        boolean triggered = trigger instanceof BooleanValue ? ((BooleanValue) trigger)
+                .getAsBoolean()
+                : Boolean.TRUE.equals(trigger.getValue());
+        if (triggered) {
+            this.commit();
+        } else {
+            this.rollback();
+        }
+    }
+
+    /**
+     * Answer the members, so that they are flushed without holding my lock.
+     */
+    private synchronized BufferedDynamicValue[] snapshot() {
+        return this.members.toArray(new BufferedDynamicValue[this.members
+                .size()]);
+    }
+}
@@ -0,0 +1,518 @@
+package sepher.saf.adapter;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A value computed from other values, such as a total from a price and a
+ * quantity. The computation is an ordinary <code>Supplier</code>; whatever it
+ * reads while it runs becomes what the value depends on: other values, aspects
+ * read through an <code>AspectAdapter</code>, and aspects of domain objects
+ * whose getters call <code>accessed</code>. When one of them changes I am
+ * computed again, so nobody has to wire observers by hand, and what I depend
+ * on may differ from one computation to the next.
+ * <p>
+ * I am computed lazily, when my value is asked for, and only when something I
+ * read changed since the last computation; a computation that answers an
+ * equal value notifies nobody. When I have observers, a change of what I read
+ * is propagated to them in a wave: the computed values affected are computed
+ * again in the order of their height, the length of the longest chain of
+ * computed values below them, so every computed value sees the final values
+ * of what it reads and is computed at most once per change. In a diamond, a
+ * price feeding both a total and a tax which are both read by an invoice,
+ * the invoice is computed once, after the total and the tax, and never sees
+ * a new total with an old tax.
+ * <p>
+ * Whether what I read is current is decided by counting the changes of each
+ * observable I read, rather than by the order in which notifications arrive,
+ * so a value asked for in the middle of a change is consistent as well.
+ * Changes count when they are reported by <code>setChanged</code>; a
+ * <code>PathAdapter</code> is tracked by its root subject only. Computations
+ * are serialized by one lock and should not block. Setting my value is not
+ * supported. <code>untie()</code> detaches me from what I read.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     final DoubleValue price = new DoubleValue(2.5);
+ *     final IntValue quantity = new IntValue(4);
+ *     ComputedValue total = new ComputedValue(new Supplier&lt;Object&gt;() {
+ *         public Object get() {
+ *             return Double.valueOf(price.getAsDouble() * quantity.getAsInt());
+ *         }
+ *     });
+ * </code></pre>
+ *
+ * @see ChangingObservable#accessed(Aspect)
+ */
+public class ComputedValue extends DynamicValue {
+
+    /**
+     * Set when the first computed value is made; from then on observables
+     * count their changes.
+     */
+    static volatile boolean inUse;
+
+    /**
+     * The number of computations running, so that reading a value costs
+     * nothing extra when it is 0.
+     */
+    static volatile int evaluating;
+
+    /**
+     * Serializes all computations.
+     */
+    private static final ReentrantLock LOCK = new ReentrantLock();
+
+    /**
+     * The computed value whose computation is running on the thread holding
+     * <code>LOCK</code>.
+     */
+    private static ComputedValue current;
+
+    /**
+     * Numbers computed values in the order they were made, to order values
+     * of equal height.
+     */
+    private static final AtomicLong ORDER = new AtomicLong();
+
+    /**
+     * Orders a wave: lowest height first.
+     */
+    private static final Comparator<ComputedValue> BY_HEIGHT = new Comparator<ComputedValue>() {
+        public int compare(final ComputedValue a, final ComputedValue b) {
+            if (a.height != b.height) {
+                return a.height < b.height ? -1 : 1;
+            }
+            return a.order < b.order ? -1 : a.order == b.order ? 0 : 1;
+        }
+    };
+
+    /**
+     * The wave of each thread: the computed values to bring up to date and
+     * notify the observers of.
+     */
+    private static final ThreadLocal<Wave> WAVE = new ThreadLocal<Wave>() {
+        protected Wave initialValue() {
+            return new Wave();
+        }
+    };
+
+    /**
+     * The computed values a thread has to propagate, lowest height first.
+     */
+    private static final class Wave {
+        final PriorityQueue<ComputedValue> queue = new PriorityQueue<ComputedValue>(
+                16, BY_HEIGHT);
+
+        boolean propagating;
+    }
+
+    /**
+     * An aspect of an observable read by the last computation, and the
+     * number of changes of the observable when it was read.
+     */
+    private static final class Dependency {
+        final ChangingObservable subject;
+
+        final Aspect aspect;
+
+        long version;
+
+        Dependency(final ChangingObservable subject, final Aspect aspect) {
+            this.subject = subject;
+            this.aspect = aspect;
+        }
+    }
+
+    private static final Dependency[] NONE = new Dependency[0];
+
+    private final Supplier<?> computation;
+
+    private final long order = ORDER.incrementAndGet();
+
+    /**
+     * What the last computation read; <code>count</code> entries are used.
+     * Guarded by <code>LOCK</code>, like the fields below it.
+     */
+    private Dependency[] dependencies = NONE;
+
+    private int count;
+
+    /**
+     * Set when my value was computed from what I read.
+     */
+    private boolean valid;
+
+    /**
+     * Set once a computation succeeded; the first one notifies nobody, as
+     * there was no value to change.
+     */
+    private boolean computed;
+
+    /**
+     * Set while my computation runs, to detect cycles.
+     */
+    private boolean computing;
+
+    /**
+     * One more than the height of the highest computed value I read.
+     */
+    private int height = 1;
+
+    /**
+     * Set when a computation changed my value and my observers have not yet
+     * been notified; the value before is kept for their event.
+     */
+    private boolean notifyPending;
+
+    private Object pendingOld;
+
+    /**
+     * Set while I am in the wave of a thread.
+     */
+    private volatile boolean queued;
+
+    /**
+     * Set while a wave brings me up to date. Guarded by <code>LOCK</code>.
+     */
+    private boolean propagating;
+
+    /**
+     * Constructor for a computed value. Nothing is computed until the value
+     * is asked for.
+     *
+     * @param newComputation
+     *        answers the value
+     */
+    public ComputedValue(final Supplier<?> newComputation) {
+        if (newComputation == null) {
+            throw new NullPointerException();
+        }
+        this.computation = newComputation;
+        this.setChangePolicy(ChangePolicy.EQUALS);
+        inUse = true;
+    }
+
+    /**
+     * Record that the computation running on this thread read an aspect of
+     * an observable.
+     */
+    static void accessed(final ChangingObservable subject, final Aspect aspect) {
+        if (LOCK.isHeldByCurrentThread() && current != null) {
+            current.depend(subject, aspect);
+        }
+    }
+
+    /**
+     * Answer my value, computing it first when something I read changed.
+     *
+     * @return the value
+     */
+    public Object getValue() {
+        Object result;
+        LOCK.lock();
+        try {
+            this.refresh();
+            this.accessed(VALUE);
+            result = this.value;
+        } finally {
+            LOCK.unlock();
+        }
+        if (!LOCK.isHeldByCurrentThread()) {
+            propagate(WAVE.get());
+        }
+        return result;
+    }
+
+    /**
+     * Not supported: my value is set by my computation.
+     *
+     * @param anObject
+     *        ignored
+     */
+    public void setValue(final Object anObject) {
+        throw new UnsupportedOperationException(
+                "a computed value is set by its computation");
+    }
+
+    /**
+     * Something I read changed: when I have observers, bring me up to date
+     * and notify them in the wave of this thread.
+     *
+     * @param sender
+     *        the observable that changed
+     * @param aspect
+     *        the aspect that changed
+     */
+    public void update(final Object sender, final Object aspect) {
+        if (this.countObservers() == 0) {
+            // computed when asked for
+            return;
+        }
+        Wave wave = WAVE.get();
+        if (!this.queued) {
+            this.queued = true;
+            wave.queue.add(this);
+        }
+        if (!LOCK.isHeldByCurrentThread()) {
+            propagate(wave);
+        }
+    }
+
+    /**
+     * Bring the computed values of a wave up to date, lowest first, and
+     * notify the observers of those whose value changed; the computed values
+     * among them join the wave. An exception of a computation does not stop
+     * the wave; the first one is rethrown when it is done.
+     */
+    private static void propagate(final Wave wave) {
+        if (wave.propagating) {
+            return;
+        }
+        wave.propagating = true;
+        RuntimeException failure = null;
+        try {
+            ComputedValue next;
+            while ((next = wave.queue.poll()) != null) {
+                next.queued = false;
+                boolean notify;
+                Object oldValue;
+                Object newValue;
+                LOCK.lock();
+                try {
+                    next.propagating = true;
+                    next.refresh();
+                    notify = next.notifyPending;
+                    oldValue = next.pendingOld;
+                    newValue = next.value;
+                    next.notifyPending = false;
+                    next.pendingOld = null;
+                } catch (RuntimeException e) {
+                    failure = failure != null ? failure : e;
+                    continue;
+                } finally {
+                    next.propagating = false;
+                    LOCK.unlock();
+                }
+                if (notify) {
+                    next.setChanged(VALUE, oldValue, newValue);
+                }
+            }
+        } finally {
+            wave.propagating = false;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Compute my value when I have not been computed or something I read
+     * changed. What I read that is computed is brought up to date first.
+     */
+    private void refresh() {
+        if (this.valid && this.isCurrent()) {
+            return;
+        }
+        this.compute();
+    }
+
+    /**
+     * Answer whether nothing I read changed since my last computation.
+     */
+    private boolean isCurrent() {
+        for (int i = 0; i < this.count; i++) {
+            Dependency dependency = this.dependencies[i];
+            if (dependency.subject instanceof ComputedValue) {
+                ((ComputedValue) dependency.subject).refresh();
+            }
+            if (dependency.subject.getVersion() != dependency.version) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run the computation, recording what it reads, and register with what
+     * it read.
+     */
+    private void compute() {
+        if (this.computing) {
+            throw new IllegalStateException("cycle through " + this);
+        }
+        Dependency[] previous = this.dependencies;
+        int previousCount = this.count;
+        this.dependencies = new Dependency[Math.max(previousCount, 4)];
+        this.count = 0;
+        ComputedValue outer = current;
+        current = this;
+        this.computing = true;
+        evaluating++;
+        Object result;
+        try {
+            result = this.computation.get();
+            this.valid = true;
+        } catch (RuntimeException e) {
+            this.valid = false;
+            throw e;
+        } finally {
+            evaluating--;
+            this.computing = false;
+            current = outer;
+            this.register(previous, previousCount);
+        }
+        if (!this.queued) {
+            // not in a queue, so the height may change
+            int highest = 0;
+            for (int i = 0; i < this.count; i++) {
+                if (this.dependencies[i].subject instanceof ComputedValue) {
+                    highest = Math.max(highest,
+                            ((ComputedValue) this.dependencies[i].subject).height);
+                }
+            }
+            this.height = highest + 1;
+        }
+        boolean first = !this.computed;
+        this.computed = true;
+        Object oldValue = this.value;
+        if (!this.getChangePolicy().isChange(oldValue, result)) {
+            return;
+        }
+        this.value = result;
+        super.changedVersion();
+        if (first || this.countObservers() == 0) {
+            return;
+        }
+        if (!this.notifyPending) {
+            this.notifyPending = true;
+            this.pendingOld = oldValue;
+        }
+        if (!this.queued && !this.propagating) {
+            this.queued = true;
+            WAVE.get().queue.add(this);
+        }
+    }
+
+    /**
+     * Record that my computation read an aspect of an observable.
+     */
+    private void depend(final ChangingObservable subject, final Aspect aspect) {
+        if (subject == this) {
+            return;
+        }
+        for (int i = 0; i < this.count; i++) {
+            if (this.dependencies[i].subject == subject
+                    && this.dependencies[i].aspect == aspect) {
+                return;
+            }
+        }
+        if (this.count == this.dependencies.length) {
+            Dependency[] grown = new Dependency[this.count * 2];
+            System.arraycopy(this.dependencies, 0, grown, 0, this.count);
+            this.dependencies = grown;
+        }
+        Dependency dependency = new Dependency(subject, aspect);
+        dependency.version = subject.getVersion();
+        this.dependencies[this.count++] = dependency;
+    }
+
+    /**
+     * Move my registrations from what the previous computation read to what
+     * the last one read.
+     */
+    private void register(final Dependency[] previous, final int previousCount) {
+        for (int i = 0; i < previousCount; i++) {
+            if (indexOf(this.dependencies, this.count, previous[i]) < 0) {
+                unregister(previous[i]);
+            }
+        }
+        for (int i = 0; i < this.count; i++) {
+            Dependency dependency = this.dependencies[i];
+            if (indexOf(previous, previousCount, dependency) < 0) {
+                if (dependency.aspect != null) {
+                    dependency.subject.addObserver(this, dependency.aspect);
+                } else {
+                    dependency.subject.addObserver(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove my registration for a dependency.
+     */
+    private void unregister(final Dependency dependency) {
+        if (dependency.aspect != null) {
+            dependency.subject.deleteObserver(this, dependency.aspect);
+        } else {
+            dependency.subject.deleteObserver(this);
+        }
+    }
+
+    /**
+     * Answer the index of the dependency on the same aspect of the same
+     * observable, or -1.
+     */
+    private static int indexOf(final Dependency[] dependencies,
+            final int count, final Dependency dependency) {
+        for (int i = 0; i < count; i++) {
+            if (dependencies[i].subject == dependency.subject
+                    && dependencies[i].aspect == dependency.aspect) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * My changes are counted when I compute a new value, not when my
+     * observers are notified of it, so that the values computed from me in
+     * the same wave are not computed twice.
+     */
+    void changedVersion() {
+    }
+
+    /**
+     * Answer the number of observables I read in my last computation.
+     *
+     * @return the number of dependencies
+     */
+    public int getDependencyCount() {
+        LOCK.lock();
+        try {
+            return this.count;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Detach me from what I read; I am computed again when asked for.
+     */
+    public void untie() {
+        LOCK.lock();
+        try {
+            for (int i = 0; i < this.count; i++) {
+                unregister(this.dependencies[i]);
+            }
+            this.dependencies = NONE;
+            this.count = 0;
+            this.valid = false;
+        } finally {
+            LOCK.unlock();
+        }
+        super.untie();
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "(computed " + this.value + ")";
+    }
+}
@@ -0,0 +1,54 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes over the value of its source once the source has not changed for an
+ * interval. For values that settle, such as a search field or a slider: a
+ * burst of changes is passed on once, with its last value.
+ *
+ * @see TimedValue
+ */
+public final class DebouncedValue extends TimedValue {
+
+    /**
+     * Constructor for a debounced value on the shared wheel.
+     *
+     * @param source
+     *        the value to follow
+     * @param quietPeriod
+     *        how long the source must be quiet
+     * @param unit
+     *        the unit of <code>quietPeriod</code>
+     */
+    public DebouncedValue(final IValue source, final long quietPeriod,
+            final TimeUnit unit) {
+        this(source, quietPeriod, unit, TimingWheel.SHARED);
+    }
+
+    /**
+     * Constructor for a debounced value.
+     *
+     * @param source
+     *        the value to follow
+     * @param quietPeriod
+     *        how long the source must be quiet
+     * @param unit
+     *        the unit of <code>quietPeriod</code>
+     * @param wheel
+     *        the wheel to time the quiet period on
+     */
+    public DebouncedValue(final IValue source, final long quietPeriod,
+            final TimeUnit unit, final TimingWheel wheel) {
+        super(source, quietPeriod, unit, wheel);
+    }
+
+    boolean sourceChanged() {
+        this.startInterval();
+        return false;
+    }
+
+    boolean intervalEnded() {
+        return true;
+    }
+}
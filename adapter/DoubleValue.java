@@ -0,0 +1,122 @@
+package sepher.saf.adapter;
+
+/**
+ * A <code>DynamicValue</code> holding a <code>double</code>. Setting the
+ * value through <code>setDouble</code> does not box it, and observers
+ * implementing <code>PrimitiveObserver</code> receive it as a
+ * <code>double</code>. Through the <code>IValue</code> interface the value
+ * is a <code>Double</code>. Use <code>ChangePolicy.within</code> to ignore
+ * changes smaller than the precision of the measurement.
+ *
+ * @see PrimitiveObserver#doubleChanged
+ */
+public class DoubleValue extends DynamicValue {
+
+    /**
+     * The value that is contained, volatile so that it is never read half
+     * written.
+     */
+    private volatile double doubleValue;
+
+    /**
+     * Constructor for a value of 0.
+     */
+    public DoubleValue() {
+    }
+
+    /**
+     * Constructor for a value.
+     *
+     * @param newValue
+     *        the initial value
+     */
+    public DoubleValue(final double newValue) {
+        this.doubleValue = newValue;
+    }
+
+    /**
+     * Answer the value.
+     *
+     * @return the value
+     */
+    public final double getAsDouble() {
+        this.accessed(VALUE);
+        return this.doubleValue;
+    }
+
+    /**
+     * Set the value and notify observers, unless my change policy does not
+     * consider it a change.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setDouble(final double newValue) {
+        ChangePolicy policy = this.getChangePolicy();
+        if (policy != ChangePolicy.ALWAYS
+                && !policy.isChange(this.doubleValue, newValue)) {
+            return;
+        }
+        double oldValue = this.doubleValue;
+        this.doubleValue = newValue;
+        if (this.hasEventObservers()) {
+            this.setChanged(VALUE, Double.valueOf(oldValue), Double
+                    .valueOf(newValue));
+        } else {
+            this.setChanged(VALUE);
+        }
+    }
+
+    /**
+     * Set the value without notifying observers.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setDoubleSilently(final double newValue) {
+        this.doubleValue = newValue;
+    }
+
+    /**
+     * Answer the value as a <code>Double</code>.
+     *
+     * @return the value
+     */
+    public Object getValue() {
+        this.accessed(VALUE);
+        return Double.valueOf(this.doubleValue);
+    }
+
+    /**
+     * Set the value from a <code>Number</code>.
+     *
+     * @param anObject
+     *        the new value, a <code>Number</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a <code>Number</code>
+     */
+    public void setValue(final Object anObject) {
+        this.setDouble(numberOf(anObject).doubleValue());
+    }
+
+    /**
+     * Set the value from a <code>Number</code> without notifying observers.
+     *
+     * @param newValue
+     *        the new value, a <code>Number</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a <code>Number</code>
+     */
+    public void setValueSilently(final Object newValue) {
+        this.setDoubleSilently(numberOf(newValue).doubleValue());
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "(" + this.getClass().getName() + "@"
+                + Integer.toHexString(this.hashCode()) + " on: "
+                + this.doubleValue;
+    }
+}
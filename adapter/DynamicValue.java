@@ -16,9 +16,20 @@ package sepher.saf.adapter;
 public class DynamicValue extends ChangingObservable implements IValue {
 
     /**
-     * The value <code>Object</code> that is contained.
+     * The aspect sent to observers when the value changes.
      */
-    protected Object value;
+    public static final Aspect VALUE = Aspect.of(DynamicValue.class, "value");
+
+    /**
+     * The value <code>Object</code> that is contained. Volatile, so that it
+     * can be read and set without locking me.
+     */
+    protected volatile Object value;
+
+    /**
+     * Decides whether a value set is a change to notify observers of.
+     */
+    private volatile ChangePolicy changePolicy = ChangePolicy.ALWAYS;
 
     /**
      * Default constructor for the DynamicValue object
@@ -40,12 +51,36 @@ public class DynamicValue extends ChangingObservable implements IValue {
         this.value = newValue;
     }
 
+    /**
+     * Answer the policy deciding whether a value set is a change.
+     * 
+     * @return the change policy, <code>ChangePolicy.ALWAYS</code> by default
+     */
+    public final ChangePolicy getChangePolicy() {
+        return this.changePolicy;
+    }
+
+    /**
+     * Set the policy deciding whether a value set is a change. A value that
+     * is not a change is neither stored nor notified.
+     * 
+     * @param newPolicy
+     *        the change policy
+     */
+    public final void setChangePolicy(final ChangePolicy newPolicy) {
+        if (newPolicy == null) {
+            throw new NullPointerException();
+        }
+        this.changePolicy = newPolicy;
+    }
+
     /**
      * Gets the Value attribute of the DynamicValue object
      * 
      * @return The Value value
      */
     public Object getValue() {
+        this.accessed(VALUE);
         return (this.value);
     }
 
@@ -60,14 +95,22 @@ public class DynamicValue extends ChangingObservable implements IValue {
     }
 
     /**
-     * Sets the value attribute of the DynamicValue object.
+     * Sets the value attribute of the DynamicValue object. Nothing happens
+     * when my change policy does not consider the new value a change.
      * 
      * @param anObject
      *        the object which is held
+     * @see #setChangePolicy
      */
     public void setValue(Object anObject) {
+        ChangePolicy policy = this.changePolicy;
+        if (policy != ChangePolicy.ALWAYS
+                && !policy.isChange(this.value, anObject)) {
+            return;
+        }
+        Object oldValue = this.hasEventObservers() ? this.value : null;
         this.setValueSilently(anObject);
-        this.setChanged("value");
+        this.setChanged(VALUE, oldValue, anObject);
     }
 
     /**
@@ -77,10 +120,23 @@ public class DynamicValue extends ChangingObservable implements IValue {
      * @param value
      *        the Object which is to be contained
      */
-    public synchronized void setValueSilently(Object newValue) {
+    public void setValueSilently(Object newValue) {
         this.value = newValue;
     }
 
+    /**
+     * Answer a value set on a primitive value as a <code>Number</code>.
+     * 
+     * @throws IllegalArgumentException
+     *         when it is <code>null</code> or not a <code>Number</code>
+     */
+    static Number numberOf(final Object newValue) {
+        if (!(newValue instanceof Number)) {
+            throw new IllegalArgumentException("not a Number: " + newValue);
+        }
+        return (Number) newValue;
+    }
+
     /**
      * @author rob
      * @return String describing the receiver
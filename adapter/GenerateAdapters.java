@@ -0,0 +1,36 @@
+package sepher.saf.adapter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a subclass of <code>ChangingObservable</code> for which the
+ * <code>AdapterProcessor</code> generates, at compile time, a class named
+ * after it with the suffix <code>Aspects</code>. The generated class declares
+ * an <code>Aspect</code> constant for every property of the annotated class,
+ * and an <code>InterfaceAdapter</code> per property that calls its getter and
+ * setter directly:
+ *
+ * <pre><code>
+ *     &#064;GenerateAdapters
+ *     public class Person extends ChangingObservable { ... }
+ *
+ *     new PersonAspects.NameAdapter(aPerson)
+ * </code></pre>
+ *
+ * A property is a public <code>getX()</code> method with a public
+ * <code>setX</code> method taking the type it answers, the same rule the
+ * <code>AccessorCache</code> uses at runtime. The generated adapters use no
+ * reflection and no method lookup at all.
+ *
+ * @see sepher.saf.adapter.processor.AdapterProcessor
+ * @see AspectAdapter
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateAdapters {
+}
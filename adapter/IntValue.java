@@ -0,0 +1,121 @@
+package sepher.saf.adapter;
+
+/**
+ * A <code>DynamicValue</code> holding an <code>int</code>. Setting the value
+ * through <code>setInt</code> does not box it, and observers implementing
+ * <code>PrimitiveObserver</code> receive it as an <code>int</code>. Through
+ * the <code>IValue</code> interface the value is an <code>Integer</code>, so
+ * I can be used anywhere in an adapter chain where a
+ * <code>DynamicValue</code> is expected.
+ *
+ * @see PrimitiveObserver#intChanged
+ */
+public class IntValue extends DynamicValue {
+
+    /**
+     * The value that is contained.
+     */
+    private volatile int intValue;
+
+    /**
+     * Constructor for a value of 0.
+     */
+    public IntValue() {
+    }
+
+    /**
+     * Constructor for a value.
+     *
+     * @param newValue
+     *        the initial value
+     */
+    public IntValue(final int newValue) {
+        this.intValue = newValue;
+    }
+
+    /**
+     * Answer the value.
+     *
+     * @return the value
+     */
+    public final int getAsInt() {
+        this.accessed(VALUE);
+        return this.intValue;
+    }
+
+    /**
+     * Set the value and notify observers, unless my change policy does not
+     * consider it a change.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setInt(final int newValue) {
+        ChangePolicy policy = this.getChangePolicy();
+        if (policy != ChangePolicy.ALWAYS
+                && !policy.isChange(this.intValue, newValue)) {
+            return;
+        }
+        int oldValue = this.intValue;
+        this.intValue = newValue;
+        if (this.hasEventObservers()) {
+            this.setChanged(VALUE, Integer.valueOf(oldValue), Integer
+                    .valueOf(newValue));
+        } else {
+            this.setChanged(VALUE);
+        }
+    }
+
+    /**
+     * Set the value without notifying observers.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setIntSilently(final int newValue) {
+        this.intValue = newValue;
+    }
+
+    /**
+     * Answer the value as an <code>Integer</code>.
+     *
+     * @return the value
+     */
+    public Object getValue() {
+        this.accessed(VALUE);
+        return Integer.valueOf(this.intValue);
+    }
+
+    /**
+     * Set the value from a <code>Number</code>.
+     *
+     * @param anObject
+     *        the new value, a <code>Number</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a <code>Number</code>
+     */
+    public void setValue(final Object anObject) {
+        this.setInt(numberOf(anObject).intValue());
+    }
+
+    /**
+     * Set the value from a <code>Number</code> without notifying observers.
+     *
+     * @param newValue
+     *        the new value, a <code>Number</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a <code>Number</code>
+     */
+    public void setValueSilently(final Object newValue) {
+        this.setIntSilently(numberOf(newValue).intValue());
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "(" + this.getClass().getName() + "@"
+                + Integer.toHexString(this.hashCode()) + " on: "
+                + this.intValue;
+    }
+}
@@ -23,6 +23,12 @@ import java.lang.reflect.*;
 public abstract class InterfaceAdapter extends ChangingObservable implements
         IValue {
 
+    /**
+     * The aspect sent to observers when the value changes.
+     */
+    public static final Aspect VALUE = Aspect.of(InterfaceAdapter.class,
+            "value");
+
     /**
      * Boolean to set whether the object whose interface is adapted sends
      * updates i.e. whether I am registered as an Observer.
@@ -43,6 +49,17 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
      */
     protected DynamicValue subjectChannel;
 
+    /**
+     * Decides whether a value set is a change to notify observers of.
+     */
+    private volatile ChangePolicy changePolicy = ChangePolicy.ALWAYS;
+
+    /**
+     * Whether I register with my subject and subject channel without being
+     * kept reachable by them.
+     */
+    private boolean weakHookup;
+
     /**
      * Constructor for the InterfaceAdapter object. Subclasses are expected to
      * send super().
@@ -53,10 +70,12 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
     }
 
     /**
-     * The subject has changed.
+     * The subject has changed. The new subject comes from the subject
+     * channel, so it is not set in the channel again: that would notify me
+     * once more, without end.
      */
     protected final void changedSubject() {
-        this.setSubject((ChangingObservable) this.getSubjectChannel()
+        this.setSubjectPrivately((ChangingObservable) this.getSubjectChannel()
                 .getValue());
     }
 
@@ -69,6 +88,89 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
         return this.subjectSendsUpdates;
     }
 
+    /**
+     * Answer the aspect of the subject that I adapt. When it is not
+     * <code>null</code> I register as an observer of that aspect only, so
+     * that I am not notified of changes of other aspects of the subject. The
+     * default is <code>null</code>: all changes of the subject.
+     * 
+     * @return the aspect or <code>null</code>
+     * @see SAFObservable#addObserver(SAFObserver, Aspect)
+     */
+    public Aspect getAspect() {
+        return null;
+    }
+
+    /**
+     * Answer the policy deciding whether a value set is a change.
+     * 
+     * @return the change policy, <code>ChangePolicy.ALWAYS</code> by default
+     */
+    public final ChangePolicy getChangePolicy() {
+        return this.changePolicy;
+    }
+
+    /**
+     * Set the policy deciding whether a value set is a change. A value that
+     * is not a change is neither stored nor notified.
+     * 
+     * @param newPolicy
+     *        the change policy
+     */
+    public final void setChangePolicy(final ChangePolicy newPolicy) {
+        if (newPolicy == null) {
+            throw new NullPointerException();
+        }
+        this.changePolicy = newPolicy;
+    }
+
+    /**
+     * Answer whether I register with my subject and subject channel as a
+     * weak observer.
+     * 
+     * @return <code>true</code> when my subject does not keep me reachable
+     * @see SAFObservable#addWeakObserver(SAFObserver)
+     */
+    public final boolean isWeakHookup() {
+        return this.weakHookup;
+    }
+
+    /**
+     * Set whether I register with my subject and subject channel as a weak
+     * observer, so that a long-lived subject does not keep me reachable once
+     * whoever uses me is gone, even when nobody sends me
+     * <code>untie()</code>.
+     * 
+     * @param newWeakHookup
+     *        <code>true</code> to register weakly
+     */
+    public void setWeakHookup(final boolean newWeakHookup) {
+        if (this.subject != null) {
+            this.unhookFromSubject();
+        }
+        if (this.subjectChannel != null) {
+            this.subjectChannel.deleteObserver(this);
+        }
+        this.weakHookup = newWeakHookup;
+        if (this.subject != null) {
+            this.hookupToSubject();
+        }
+        if (this.subjectChannel != null) {
+            this.observe(this.subjectChannel);
+        }
+    }
+
+    /**
+     * Register with an observable, weakly when I am set to.
+     */
+    private void observe(final SAFObservable observable) {
+        if (this.weakHookup) {
+            observable.addWeakObserver(this);
+        } else {
+            observable.addObserver(this);
+        }
+    }
+
     /**
      * Gets the Subject attribute of the InterfaceAdapter object. Use
      * <code>subjectChannel</code> if you want to get to the
@@ -103,16 +205,15 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
     }
 
     /**
-     * Stub method for nested access through an access path. This is a
-     * collection of objects that need to be traversed as a chain to get the
-     * real subject. This is not yet implemented. Creation date: (20-5-2001
-     * 12:41:18)
+     * Answer the object whose value I adapt. This is the subject itself; a
+     * <code>PathAdapter</code> answers the last object of its path. Creation
+     * date: (20-5-2001 12:41:18)
      * 
      * @param subject
      *        the subject used to find the target object
      * @return the object that is the target
      */
-    protected final Object getTargetUsingSubject(java.lang.Object subject) {
+    protected Object getTargetUsingSubject(java.lang.Object subject) {
         return this.subject;
     }
 
@@ -123,6 +224,15 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
      * @return Object
      */
     public final Object getValue() {
+        this.accessed(VALUE);
+        return this.currentValue();
+    }
+
+    /**
+     * Answer my value like <code>getValue</code>, without recording it as
+     * read by a computed value.
+     */
+    private Object currentValue() {
         try {
             return this.getValueUsingTarget(subject);
         } catch (InvocationTargetException e) {
@@ -161,12 +271,20 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
             throws IllegalAccessException, InvocationTargetException;
 
     /**
-     * Re-establish the relation of the receiver as an observer of the subject.
+     * Re-establish the relation of the receiver as an observer of the subject,
+     * for my aspect only when I have one.
      */
     protected void hookupToSubject() {
 
         if (subjectSendsUpdates.booleanValue() && (subject != null)) {
-            subject.addObserver(this);
+            Aspect anAspect = this.getAspect();
+            if (anAspect == null) {
+                this.observe(subject);
+            } else if (this.weakHookup) {
+                subject.addWeakObserver(this, anAspect);
+            } else {
+                subject.addObserver(this, anAspect);
+            }
         }
     }
 
@@ -179,8 +297,9 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
     }
 
     /**
-     * Do nothing for now because we do not yet implement access paths. Creation
-     * date: (13-11-2001 14:58:12)
+     * Print the access path to my value. I have none; a
+     * <code>PathAdapter</code> prints its dotted path. Creation date:
+     * (13-11-2001 14:58:12)
      * 
      * @param param
      *        java.lang.StringBuffer
@@ -230,7 +349,7 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
         }
         this.subjectChannel = aValueInterface;
         if (this.subjectChannel != null) {
-            this.subjectChannel.addObserver(this);
+            this.observe(this.subjectChannel);
         }
         this.changedSubject();
 
@@ -253,7 +372,7 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
             this.hookupToSubject();
         }
         ;
-        this.setChanged("value");
+        this.setChanged(VALUE);
     }
 
     /**
@@ -276,15 +395,24 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
     }
 
     /**
-     * Set the value and notify observers. Creation date: (10-5-2001 16:06:24)
+     * Set the value and notify observers. When my change policy does not
+     * consider the value a change it is not written to the subject at all, so
+     * the subject does not notify its observers either. Creation date:
+     * (10-5-2001 16:06:24)
      * 
      * @param value
      *        java.lang.Object
+     * @see #setChangePolicy
      */
     public void setValue(Object value) {
+        ChangePolicy policy = this.changePolicy;
+        if (policy != ChangePolicy.ALWAYS
+                && !policy.isChange(this.currentValue(), value)) {
+            return;
+        }
         this.setValuePrivately(value);
         if (!this.subjectSendsUpdates.booleanValue()) {
-            this.setChanged("value");
+            this.setChanged(VALUE);
         }
     }
 
@@ -314,7 +442,12 @@ public abstract class InterfaceAdapter extends ChangingObservable implements
     protected void unhookFromSubject() {
 
         if (subjectSendsUpdates.booleanValue() && (subject != null)) {
-            this.subject.deleteObserver(this);
+            Aspect anAspect = this.getAspect();
+            if (anAspect == null) {
+                this.subject.deleteObserver(this);
+            } else {
+                this.subject.deleteObserver(this, anAspect);
+            }
         }
     }
 
@@ -0,0 +1,120 @@
+package sepher.saf.adapter;
+
+/**
+ * A <code>DynamicValue</code> holding a <code>long</code>. Setting the value
+ * through <code>setLong</code> does not box it, and observers implementing
+ * <code>PrimitiveObserver</code> receive it as a <code>long</code>. Through
+ * the <code>IValue</code> interface the value is a <code>Long</code>.
+ *
+ * @see PrimitiveObserver#longChanged
+ */
+public class LongValue extends DynamicValue {
+
+    /**
+     * The value that is contained, volatile so that it is never read half
+     * written.
+     */
+    private volatile long longValue;
+
+    /**
+     * Constructor for a value of 0.
+     */
+    public LongValue() {
+    }
+
+    /**
+     * Constructor for a value.
+     *
+     * @param newValue
+     *        the initial value
+     */
+    public LongValue(final long newValue) {
+        this.longValue = newValue;
+    }
+
+    /**
+     * Answer the value.
+     *
+     * @return the value
+     */
+    public final long getAsLong() {
+        this.accessed(VALUE);
+        return this.longValue;
+    }
+
+    /**
+     * Set the value and notify observers, unless my change policy does not
+     * consider it a change.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setLong(final long newValue) {
+        ChangePolicy policy = this.getChangePolicy();
+        if (policy != ChangePolicy.ALWAYS
+                && !policy.isChange(this.longValue, newValue)) {
+            return;
+        }
+        long oldValue = this.longValue;
+        this.longValue = newValue;
+        if (this.hasEventObservers()) {
+            this.setChanged(VALUE, Long.valueOf(oldValue), Long
+                    .valueOf(newValue));
+        } else {
+            this.setChanged(VALUE);
+        }
+    }
+
+    /**
+     * Set the value without notifying observers.
+     *
+     * @param newValue
+     *        the new value
+     */
+    public final void setLongSilently(final long newValue) {
+        this.longValue = newValue;
+    }
+
+    /**
+     * Answer the value as a <code>Long</code>.
+     *
+     * @return the value
+     */
+    public Object getValue() {
+        this.accessed(VALUE);
+        return Long.valueOf(this.longValue);
+    }
+
+    /**
+     * Set the value from a <code>Number</code>.
+     *
+     * @param anObject
+     *        the new value, a <code>Number</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a <code>Number</code>
+     */
+    public void setValue(final Object anObject) {
+        this.setLong(numberOf(anObject).longValue());
+    }
+
+    /**
+     * Set the value from a <code>Number</code> without notifying observers.
+     *
+     * @param newValue
+     *        the new value, a <code>Number</code>
+     * @throws IllegalArgumentException
+     *         when the value is <code>null</code> or not a <code>Number</code>
+     */
+    public void setValueSilently(final Object newValue) {
+        this.setLongSilently(numberOf(newValue).longValue());
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "(" + this.getClass().getName() + "@"
+                + Integer.toHexString(this.hashCode()) + " on: "
+                + this.longValue;
+    }
+}
@@ -0,0 +1,42 @@
+package sepher.saf.adapter;
+
+/**
+ * Delivers the change notifications of a <code>ChangingObservable</code> in
+ * some other way than calling its observers synchronously. A dispatcher is set
+ * with <code>ChangingObservable.setDispatcher</code>; from then on
+ * <code>setChanged</code> hands every change to <code>dispatch</code>, and
+ * the dispatcher eventually calls <code>deliver</code> to notify the
+ * observers.
+ * 
+ * @see ChangingObservable#setDispatcher
+ * @see RingBufferDispatcher
+ * @see OrderedDispatcher
+ */
+public abstract class NotificationDispatcher {
+
+    /**
+     * Accept a change of a subject. Called by <code>setChanged</code>, on the
+     * thread that made the change and without the subject being locked.
+     * 
+     * @param subject
+     *        the subject that changed
+     * @param aspect
+     *        the argument of <code>setChanged</code>, usually an
+     *        <code>Aspect</code>
+     */
+    public abstract void dispatch(ChangingObservable subject, Object aspect);
+
+    /**
+     * Notify the observers of <code>subject</code> of a change, on the
+     * current thread.
+     * 
+     * @param subject
+     *        the subject that changed
+     * @param aspect
+     *        the argument that was given to <code>dispatch</code>
+     */
+    protected final void deliver(final ChangingObservable subject,
+            final Object aspect) {
+        subject.dispatch(aspect);
+    }
+}
@@ -0,0 +1,674 @@
+package sepher.saf.adapter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Measures the notifications of all observables: per observable class and
+ * aspect the number of changes, notifications and observer calls and the
+ * latency of notifying all observers, and per observer class the time spent
+ * in <code>update</code>. An observer class is flagged slow when more than one
+ * percent of its calls took longer than the slow observer threshold, so that
+ * a single pause of the virtual machine does not flag a class that does
+ * nothing.
+ * <p>
+ * Metrics are disabled by default. While they are disabled a notification
+ * only reads one flag; while they are enabled every notification and every
+ * observer call is timed with <code>System.nanoTime</code>.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     NotificationMetrics.enable();
+ *     NotificationMetrics.registerMBean();
+ *     ...
+ *     for (NotificationMetrics.ObserverStatistics each : NotificationMetrics
+ *             .getSlowObservers()) {
+ *         ...
+ *     }
+ * </code></pre>
+ *
+ * The same figures are available in JMX as
+ * <code>sepher.saf.adapter:type=NotificationMetrics</code>.
+ *
+ * @see NotificationMetricsMXBean
+ */
+public final class NotificationMetrics {
+
+    /**
+     * The name of the MBean.
+     */
+    public static final String OBJECT_NAME = "sepher.saf.adapter:type=NotificationMetrics";
+
+    /**
+     * Whether notifications are measured; read on every notification.
+     */
+    static volatile boolean enabled;
+
+    /**
+     * Calls taking longer than this many nanoseconds make an observer slow.
+     */
+    private static volatile long slowObserverThreshold = 1000000L;
+
+    /**
+     * Incremented by <code>reset</code>; the figures of a class measured
+     * before are dropped when it is next measured.
+     */
+    private static volatile int generation;
+
+    /**
+     * The figures per observable and observer class. They are held in a
+     * <code>ClassValue</code> and keep only the name of the class, so they
+     * do not keep the classes measured (or their class loaders) reachable.
+     */
+    private static final ClassValue<ClassStatistics> CLASSES = new ClassValue<ClassStatistics>() {
+        protected ClassStatistics computeValue(final Class<?> type) {
+            return new ClassStatistics(type.getName());
+        }
+    };
+
+    /**
+     * The statistics of all aspects measured since the last reset.
+     */
+    private static final ConcurrentLinkedQueue<AspectStatistics> ASPECTS = new ConcurrentLinkedQueue<AspectStatistics>();
+
+    /**
+     * The statistics of all observer classes measured since the last reset.
+     */
+    private static final ConcurrentLinkedQueue<ObserverStatistics> OBSERVERS = new ConcurrentLinkedQueue<ObserverStatistics>();
+
+    /**
+     * Orders statistics by descending notification count.
+     */
+    private static final Comparator<AspectStatistics> BY_NOTIFICATIONS = new Comparator<AspectStatistics>() {
+        public int compare(final AspectStatistics a, final AspectStatistics b) {
+            return Long.compare(b.getNotificationCount(), a
+                    .getNotificationCount());
+        }
+    };
+
+    /**
+     * Orders statistics by descending total time.
+     */
+    private static final Comparator<ObserverStatistics> BY_TIME = new Comparator<ObserverStatistics>() {
+        public int compare(final ObserverStatistics a,
+                final ObserverStatistics b) {
+            return Long.compare(b.getTotalNanos(), a.getTotalNanos());
+        }
+    };
+
+    /**
+     * No instances.
+     */
+    private NotificationMetrics() {
+    }
+
+    /**
+     * Start measuring notifications.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Stop measuring notifications. The figures measured so far are kept.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Answer whether notifications are measured.
+     *
+     * @return <code>true</code> when enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Forget all figures measured so far.
+     */
+    public static synchronized void reset() {
+        generation++;
+        ASPECTS.clear();
+        OBSERVERS.clear();
+    }
+
+    /**
+     * Answer the duration of an observer call above which the call counts as
+     * slow.
+     *
+     * @return the threshold in nanoseconds
+     */
+    public static long getSlowObserverThreshold() {
+        return slowObserverThreshold;
+    }
+
+    /**
+     * Set the duration of an observer call above which the call counts as
+     * slow. The default is one millisecond.
+     *
+     * @param nanos
+     *        the threshold in nanoseconds
+     */
+    public static void setSlowObserverThreshold(final long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException();
+        }
+        slowObserverThreshold = nanos;
+    }
+
+    /**
+     * Answer the statistics of every observable class and aspect that has
+     * been measured, the most notified first.
+     *
+     * @return a new list
+     */
+    public static List<AspectStatistics> getAspectStatistics() {
+        List<AspectStatistics> all = new ArrayList<AspectStatistics>(ASPECTS);
+        Collections.sort(all, BY_NOTIFICATIONS);
+        return all;
+    }
+
+    /**
+     * Answer the statistics of an aspect of an observable class.
+     *
+     * @param type
+     *        the class of the observable
+     * @param aspect
+     *        the name of the aspect
+     * @return the statistics, or <code>null</code> when nothing has been
+     *         measured
+     */
+    public static AspectStatistics getAspectStatistics(final Class<?> type,
+            final String aspect) {
+        return CLASSES.get(type).figures().aspects.get(aspect);
+    }
+
+    /**
+     * Answer the statistics of every observer class that has been measured,
+     * the one that took most time first.
+     *
+     * @return a new list
+     */
+    public static List<ObserverStatistics> getObserverStatistics() {
+        List<ObserverStatistics> all = new ArrayList<ObserverStatistics>(
+                OBSERVERS);
+        Collections.sort(all, BY_TIME);
+        return all;
+    }
+
+    /**
+     * Answer the statistics of an observer class.
+     *
+     * @param type
+     *        the class of the observer
+     * @return the statistics, or <code>null</code> when nothing has been
+     *         measured
+     */
+    public static ObserverStatistics getObserverStatistics(final Class<?> type) {
+        return CLASSES.get(type).figures().observer;
+    }
+
+    /**
+     * Answer the statistics of the observer classes flagged slow, the one
+     * that took most time first.
+     *
+     * @return a new list
+     */
+    public static List<ObserverStatistics> getSlowObservers() {
+        List<ObserverStatistics> slow = getObserverStatistics();
+        for (Iterator<ObserverStatistics> it = slow.iterator(); it.hasNext();) {
+            if (!it.next().isSlow()) {
+                it.remove();
+            }
+        }
+        return slow;
+    }
+
+    /**
+     * Register the MBean with the platform MBean server, unless it is
+     * registered already.
+     *
+     * @return the name of the MBean
+     * @throws JMException
+     *         when the MBean cannot be registered
+     */
+    public static synchronized ObjectName registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(new Bean(), name);
+        }
+        return name;
+    }
+
+    /**
+     * Unregister the MBean from the platform MBean server, if it is
+     * registered.
+     *
+     * @throws JMException
+     *         when the MBean cannot be unregistered
+     */
+    public static synchronized void unregisterMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Count a change of an observable. Called by <code>setChanged</code>
+     * when enabled.
+     */
+    static void changed(final SAFObservable sender, final Object arg) {
+        statisticsOf(sender, arg).changes.increment();
+    }
+
+    /**
+     * Record a notification of an observable. Called by
+     * <code>SAFObservable</code> when enabled.
+     */
+    static void notified(final SAFObservable sender, final Object arg,
+            final int observers, final long nanos) {
+        AspectStatistics statistics = statisticsOf(sender, arg);
+        statistics.notifications.increment();
+        statistics.observerCalls.add(observers);
+        statistics.latency.record(nanos);
+    }
+
+    /**
+     * Record a call of an observer. Called by <code>SAFObservable</code> when
+     * enabled.
+     */
+    static void observed(final Object observer, final long nanos) {
+        ClassStatistics type = CLASSES.get(observer.getClass());
+        Figures figures = type.figures();
+        ObserverStatistics statistics = figures.observer;
+        if (statistics == null) {
+            synchronized (figures) {
+                statistics = figures.observer;
+                if (statistics == null) {
+                    statistics = new ObserverStatistics(type.name);
+                    figures.observer = statistics;
+                    OBSERVERS.add(statistics);
+                }
+            }
+        }
+        statistics.latency.record(nanos);
+        if (nanos > slowObserverThreshold) {
+            statistics.slowCalls.increment();
+        }
+    }
+
+    /**
+     * Answer the statistics of the class of an observable and an aspect,
+     * creating them on first use. Arguments that are not aspects, including
+     * names that are not aspects of the class, are counted by their class, so
+     * that free-form arguments do not grow the table without bounds.
+     */
+    private static AspectStatistics statisticsOf(final SAFObservable sender,
+            final Object arg) {
+        ClassStatistics type = CLASSES.get(sender.getClass());
+        String aspect;
+        if (arg instanceof Aspect) {
+            aspect = ((Aspect) arg).getName();
+        } else if (arg instanceof ChangeEvent) {
+            aspect = ((ChangeEvent) arg).getAspect().getName();
+        } else if (arg instanceof String) {
+            Aspect known = Aspect.find(sender.getClass(), (String) arg);
+            aspect = known != null ? known.getName() : String.class.getName();
+        } else if (arg == null) {
+            aspect = "null";
+        } else {
+            aspect = arg.getClass().getName();
+        }
+        ConcurrentHashMap<String, AspectStatistics> aspects = type.figures().aspects;
+        AspectStatistics statistics = aspects.get(aspect);
+        if (statistics == null) {
+            statistics = new AspectStatistics(type.name, aspect);
+            AspectStatistics other = aspects.putIfAbsent(aspect, statistics);
+            if (other != null) {
+                statistics = other;
+            } else {
+                ASPECTS.add(statistics);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * The figures of one class since the last reset.
+     */
+    private static final class ClassStatistics {
+        final String name;
+
+        private volatile Figures figures = new Figures(generation);
+
+        ClassStatistics(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Answer the figures of the current generation, dropping older ones.
+         */
+        Figures figures() {
+            Figures current = this.figures;
+            int now = generation;
+            if (current.generation != now) {
+                synchronized (this) {
+                    current = this.figures;
+                    if (current.generation != now) {
+                        current = new Figures(now);
+                        this.figures = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * The statistics of the aspects of a class as an observable, and of the
+     * class as an observer, in one generation.
+     */
+    private static final class Figures {
+        final int generation;
+
+        final ConcurrentHashMap<String, AspectStatistics> aspects = new ConcurrentHashMap<String, AspectStatistics>();
+
+        volatile ObserverStatistics observer;
+
+        Figures(final int generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * A histogram of durations in nanoseconds, with a bucket per power of
+     * two. Percentiles are answered as the upper bound of their bucket, so
+     * they are accurate to within a factor of two.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder total = new LongAdder();
+
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram() {
+        }
+
+        void record(final long nanos) {
+            long value = Math.max(0, nanos);
+            this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            this.count.increment();
+            this.total.add(value);
+            long current = this.max.get();
+            while (value > current && !this.max.compareAndSet(current, value)) {
+                current = this.max.get();
+            }
+        }
+
+        /**
+         * @return the number of durations recorded
+         */
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        /**
+         * @return the mean duration in nanoseconds, 0 when none was recorded
+         */
+        public long getMeanNanos() {
+            long n = this.count.sum();
+            return n == 0 ? 0 : this.total.sum() / n;
+        }
+
+        /**
+         * @return the longest duration in nanoseconds
+         */
+        public long getMaxNanos() {
+            return this.max.get();
+        }
+
+        /**
+         * @return the median duration in nanoseconds
+         */
+        public long getMedianNanos() {
+            return this.getPercentile(50.0);
+        }
+
+        /**
+         * @return the 99th percentile of the durations in nanoseconds
+         */
+        public long getP99Nanos() {
+            return this.getPercentile(99.0);
+        }
+
+        /**
+         * Answer a percentile of the durations.
+         *
+         * @param percentile
+         *        between 0 and 100
+         * @return the upper bound in nanoseconds of the bucket holding the
+         *         percentile, at most the longest duration
+         */
+        public long getPercentile(final double percentile) {
+            long n = 0;
+            for (int i = 0; i < 64; i++) {
+                n += this.buckets.get(i);
+            }
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(n * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= Math.max(1, rank)) {
+                    long bound = i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE
+                            : (1L << i) - 1;
+                    return Math.min(bound, this.getMaxNanos());
+                }
+            }
+            return this.getMaxNanos();
+        }
+    }
+
+    /**
+     * The figures of one aspect of an observable class.
+     */
+    public static final class AspectStatistics {
+        private final String type;
+
+        private final String aspect;
+
+        final LongAdder changes = new LongAdder();
+
+        final LongAdder notifications = new LongAdder();
+
+        final LongAdder observerCalls = new LongAdder();
+
+        final Histogram latency = new Histogram();
+
+        AspectStatistics(final String type, final String aspect) {
+            this.type = type;
+            this.aspect = aspect;
+        }
+
+        /**
+         * @return the name of the class of the observable
+         */
+        public String getObservableClass() {
+            return this.type;
+        }
+
+        /**
+         * @return the name of the aspect
+         */
+        public String getAspect() {
+            return this.aspect;
+        }
+
+        /**
+         * @return the number of calls of <code>setChanged</code>, including
+         *         those coalesced by a <code>ChangeBatch</code>
+         */
+        public long getChangeCount() {
+            return this.changes.sum();
+        }
+
+        /**
+         * @return the number of notifications delivered
+         */
+        public long getNotificationCount() {
+            return this.notifications.sum();
+        }
+
+        /**
+         * @return the number of observer calls of all notifications
+         */
+        public long getObserverCallCount() {
+            return this.observerCalls.sum();
+        }
+
+        /**
+         * @return the mean number of observers called per notification
+         */
+        public double getMeanFanOut() {
+            long n = this.notifications.sum();
+            return n == 0 ? 0.0 : (double) this.observerCalls.sum() / n;
+        }
+
+        /**
+         * @return the durations of notifying all observers
+         */
+        public Histogram getLatency() {
+            return this.latency;
+        }
+
+        public String toString() {
+            return this.getObservableClass() + "." + this.aspect + ": "
+                    + this.getNotificationCount() + " notifications, "
+                    + this.getObserverCallCount() + " observer calls";
+        }
+    }
+
+    /**
+     * The figures of one observer class.
+     */
+    public static final class ObserverStatistics {
+        private final String type;
+
+        final LongAdder slowCalls = new LongAdder();
+
+        final Histogram latency = new Histogram();
+
+        ObserverStatistics(final String type) {
+            this.type = type;
+        }
+
+        /**
+         * @return the name of the class of the observer
+         */
+        public String getObserverClass() {
+            return this.type;
+        }
+
+        /**
+         * @return the number of calls of <code>update</code>
+         */
+        public long getCallCount() {
+            return this.latency.getCount();
+        }
+
+        /**
+         * @return the time spent in <code>update</code> in nanoseconds
+         */
+        public long getTotalNanos() {
+            return this.latency.total.sum();
+        }
+
+        /**
+         * @return the number of calls longer than the slow observer threshold
+         */
+        public long getSlowCallCount() {
+            return this.slowCalls.sum();
+        }
+
+        /**
+         * @return whether more than one percent of the calls took longer
+         *         than the slow observer threshold
+         */
+        public boolean isSlow() {
+            return this.slowCalls.sum() * 100 > this.latency.getCount();
+        }
+
+        /**
+         * @return the durations of the calls of <code>update</code>
+         */
+        public Histogram getLatency() {
+            return this.latency;
+        }
+
+        public String toString() {
+            return this.getObserverClass() + ": " + this.getCallCount()
+                    + " calls, " + this.getSlowCallCount() + " slow";
+        }
+    }
+
+    /**
+     * The MBean, delegating to the static methods.
+     */
+    private static final class Bean implements NotificationMetricsMXBean {
+        public boolean isEnabled() {
+            return NotificationMetrics.isEnabled();
+        }
+
+        public void setEnabled(final boolean enable) {
+            enabled = enable;
+        }
+
+        public long getSlowObserverThreshold() {
+            return NotificationMetrics.getSlowObserverThreshold();
+        }
+
+        public void setSlowObserverThreshold(final long nanos) {
+            NotificationMetrics.setSlowObserverThreshold(nanos);
+        }
+
+        public List<AspectStatistics> getAspectStatistics() {
+            return NotificationMetrics.getAspectStatistics();
+        }
+
+        public List<ObserverStatistics> getObserverStatistics() {
+            return NotificationMetrics.getObserverStatistics();
+        }
+
+        public List<ObserverStatistics> getSlowObservers() {
+            return NotificationMetrics.getSlowObservers();
+        }
+
+        public void reset() {
+            NotificationMetrics.reset();
+        }
+    }
+}
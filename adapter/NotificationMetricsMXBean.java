@@ -0,0 +1,56 @@
+package sepher.saf.adapter;
+
+import java.util.List;
+
+/**
+ * The JMX view of <code>NotificationMetrics</code>, registered as
+ * <code>sepher.saf.adapter:type=NotificationMetrics</code>. The statistics
+ * are shown as composite data, most notified aspects and slowest observers
+ * first.
+ *
+ * @see NotificationMetrics#registerMBean
+ */
+public interface NotificationMetricsMXBean {
+
+    /**
+     * @return whether notifications are measured
+     */
+    boolean isEnabled();
+
+    /**
+     * @param enable
+     *        whether to measure notifications
+     */
+    void setEnabled(boolean enable);
+
+    /**
+     * @return the slow observer threshold in nanoseconds
+     */
+    long getSlowObserverThreshold();
+
+    /**
+     * @param nanos
+     *        the slow observer threshold in nanoseconds
+     */
+    void setSlowObserverThreshold(long nanos);
+
+    /**
+     * @return the statistics per observable class and aspect
+     */
+    List<NotificationMetrics.AspectStatistics> getAspectStatistics();
+
+    /**
+     * @return the statistics per observer class
+     */
+    List<NotificationMetrics.ObserverStatistics> getObserverStatistics();
+
+    /**
+     * @return the statistics of the observer classes flagged slow
+     */
+    List<NotificationMetrics.ObserverStatistics> getSlowObservers();
+
+    /**
+     * Forget all figures measured so far.
+     */
+    void reset();
+}
@@ -0,0 +1,112 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers change notifications on the threads that make the changes, without
+ * locking the subject, in the order in which the changes were made.
+ * <p>
+ * Every subject gets a lock-free queue of pending notifications. A thread
+ * that changes the subject appends its notification; when no other thread is
+ * notifying the observers of that subject it drains the queue, otherwise it
+ * returns at once and the thread that is draining delivers the notification
+ * after the ones before it. So the observers of a subject are never called by
+ * two threads at the same time, always see its notifications in order, and a
+ * writer never waits for a lock held by a slow observer.
+ * <p>
+ * The queue is a release of the state set before the change and the drain an
+ * acquire, so an observer always sees at least the state that was published
+ * with the notification. A change made by an observer to the subject it is
+ * notified of is delivered after the current notification, not inside it.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     aPerson.setDispatcher(OrderedDispatcher.SHARED);
+ * </code></pre>
+ *
+ * @see ChangingObservable#setDispatcher
+ */
+public final class OrderedDispatcher extends NotificationDispatcher {
+
+    /**
+     * A dispatcher that can be shared by any number of subjects; it keeps no
+     * state of its own.
+     */
+    public static final OrderedDispatcher SHARED = new OrderedDispatcher();
+
+    /**
+     * Queued in place of a <code>null</code> argument.
+     */
+    private static final Object NONE = new Object();
+
+    /**
+     * The pending notifications of a subject. The count is the number of
+     * notifications queued and not yet delivered; the thread that raises it
+     * from zero drains the queue.
+     */
+    private static final class Queue extends AtomicInteger {
+        private static final long serialVersionUID = 1L;
+
+        final ConcurrentLinkedQueue<Object> pending = new ConcurrentLinkedQueue<Object>();
+    }
+
+    /**
+     * Constructor for a dispatcher. Subjects may as well share
+     * <code>SHARED</code>.
+     */
+    public OrderedDispatcher() {
+    }
+
+    /**
+     * Queue the change, and deliver the queued notifications of the subject
+     * unless another thread is delivering them already. An exception thrown
+     * by an observer does not stop the delivery of the other notifications;
+     * the first one is rethrown when the queue has been drained.
+     * 
+     * @param subject
+     *        the subject that changed
+     * @param aspect
+     *        the argument of <code>setChanged</code>
+     */
+    public void dispatch(final ChangingObservable subject, final Object aspect) {
+        Queue queue = queueOf(subject);
+        queue.pending.offer(aspect != null ? aspect : NONE);
+        if (queue.getAndIncrement() != 0) {
+            return;
+        }
+        Throwable failure = null;
+        do {
+            Object next = queue.pending.poll();
+            try {
+                this.deliver(subject, next != NONE ? next : null);
+            } catch (RuntimeException e) {
+                failure = failure != null ? failure : e;
+            } catch (Error e) {
+                failure = failure != null ? failure : e;
+            }
+        } while (queue.decrementAndGet() != 0);
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Answer the queue of a subject, installing it on first use.
+     */
+    private static Queue queueOf(final ChangingObservable subject) {
+        Object state = subject.getDispatchState();
+        if (state instanceof Queue) {
+            return (Queue) state;
+        }
+        Object installed = subject.installDispatchState(new Queue());
+        if (installed instanceof Queue) {
+            return (Queue) installed;
+        }
+        throw new IllegalStateException("subject has another dispatcher");
+    }
+}
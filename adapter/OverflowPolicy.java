@@ -0,0 +1,41 @@
+package sepher.saf.adapter;
+
+/**
+ * What a <code>QueuedObserver</code> does with a change when its queue is
+ * full.
+ *
+ * @see QueuedObserver
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Make the thread that made the change wait until the observer has caught
+     * up. Nothing is lost, but a slow observer slows down the domain again,
+     * only later: when its queue is full rather than at once. Subjects
+     * notify while they are locked, so an observer that locks its subject
+     * must not be queued with this policy.
+     */
+    BLOCK,
+
+    /**
+     * Drop the oldest queued change to make room for the new one. For
+     * observers that only care about recent changes, such as a monitor.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop the new change. For observers for which the first changes matter
+     * most, or that catch up from the subject anyway.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Keep one queued change per aspect of a subject: a change of an aspect
+     * that is still queued replaces it in place, keeping the old value of the
+     * queued event and taking the new value of the later one. The queue only
+     * overflows when more aspects change than it can hold; then the oldest
+     * is dropped. For observers that need the latest state rather than every
+     * step, such as persistence or a screen.
+     */
+    CONFLATE
+}
@@ -0,0 +1,366 @@
+package sepher.saf.adapter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+/**
+ * Adapts a value at the end of a path through a graph of domain objects,
+ * such as the street of the address of a person:
+ *
+ * <pre><code>
+ *     new PathAdapter(aPerson, &quot;address.street&quot;)
+ * </code></pre>
+ *
+ * Every segment of the dotted path is an aspect of the object reached by the
+ * segments before it, read and written through the getter and setter of that
+ * aspect. The accessors are looked up in the <code>AccessorCache</code> for
+ * the class of the object actually reached, so a hop may hold a subclass.
+ * <p>
+ * When my subject sends updates I register with every object on the path for
+ * the aspect of its segment, and keep the objects reached. When an
+ * intermediate object is replaced only the part of the path below it is read
+ * again and registered with; a change of the last aspect is only read. Either
+ * way my observers are notified only when the value at the end of the path is
+ * no longer equal to what it was. Without updates every access reads the path
+ * from the subject.
+ * <p>
+ * A <code>null</code> on the path makes the value <code>null</code>; setting
+ * the value then does nothing.
+ *
+ * @see AspectAdapter
+ * @see AccessorCache#forAspect
+ */
+public class PathAdapter extends InterfaceAdapter {
+
+    /**
+     * Marks the value at the end of the path as not yet read.
+     */
+    private static final Object NOT_READ = new Object();
+
+    /**
+     * The dotted path, as given.
+     */
+    private final String path;
+
+    /**
+     * The aspect names of the path.
+     */
+    private final String[] segments;
+
+    /**
+     * The objects reached: <code>hops[i]</code> is the object segment
+     * <code>i</code> is read from, <code>hops[0]</code> being my subject.
+     * Only kept while <code>resolved</code>.
+     */
+    private final Object[] hops;
+
+    /**
+     * The accessor of each segment for the class of its hop.
+     */
+    private final Accessor[] accessors;
+
+    /**
+     * The aspect I am registered with each intermediate hop for, or
+     * <code>null</code>.
+     */
+    private final Aspect[] observed;
+
+    /**
+     * Whether the hops are kept up to date by notifications.
+     */
+    private boolean resolved;
+
+    /**
+     * The value at the end of the path when it was last read.
+     */
+    private Object lastValue = NOT_READ;
+
+    /**
+     * Constructor for the PathAdapter object.
+     *
+     * @param subject
+     *        the object the path starts from
+     * @param path
+     *        the aspects to follow, separated by dots
+     * @throws NoSuchMethodException
+     *         when an object on the path has no getter and setter for its
+     *         segment
+     */
+    public PathAdapter(final ChangingObservable subject, final String path)
+            throws NoSuchMethodException {
+        this.path = path;
+        this.segments = path.split("\\.");
+        for (int i = 0; i < this.segments.length; i++) {
+            if (this.segments[i].length() == 0) {
+                throw new IllegalArgumentException("Empty segment in path "
+                        + path);
+            }
+        }
+        this.hops = new Object[this.segments.length];
+        this.accessors = new Accessor[this.segments.length];
+        this.observed = new Aspect[this.segments.length];
+        Object hop = subject;
+        for (int i = 0; i < this.segments.length && hop != null; i++) {
+            Accessor accessor = AccessorCache.forAspect(hop.getClass(),
+                    this.segments[i]);
+            try {
+                hop = i < this.segments.length - 1 ? accessor.get(hop) : null;
+            } catch (InvocationTargetException e) {
+                hop = null;
+            }
+        }
+        this.setSubject(subject);
+    }
+
+    /**
+     * Answer the dotted path I follow.
+     *
+     * @return the path
+     */
+    public final String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Answer the first aspect of the path, interned for the class of my
+     * subject, so that I am registered with my subject for that aspect only.
+     *
+     * @return the aspect, or <code>null</code> without a subject
+     */
+    public final Aspect getAspect() {
+        if (this.subject == null) {
+            return null;
+        }
+        return Aspect.of(this.subject.getClass(), this.segments[0]);
+    }
+
+    /**
+     * Answer the object the last segment of the path is read from.
+     *
+     * @param subject
+     *        the object the path starts from
+     * @return the object, or <code>null</code> when the path is broken
+     */
+    protected Object getTargetUsingSubject(final Object subject) {
+        if (this.resolved) {
+            return this.hops[this.hops.length - 1];
+        }
+        return this.walk(subject);
+    }
+
+    /**
+     * Read the value at the end of the path.
+     *
+     * @param subject
+     *        the object the path starts from
+     * @return the value, <code>null</code> when the path is broken
+     * @throws InvocationTargetException
+     *         when a getter fails
+     */
+    protected final Object getValueUsingTarget(final Object subject)
+            throws InvocationTargetException {
+        int last = this.segments.length - 1;
+        Object target;
+        Accessor accessor;
+        if (this.resolved) {
+            target = this.hops[last];
+            accessor = this.accessors[last];
+        } else {
+            target = this.walk(subject);
+            accessor = target == null ? null : this.accessorOf(target, last);
+        }
+        return accessor == null ? null : accessor.get(target);
+    }
+
+    /**
+     * Write the value at the end of the path.
+     *
+     * @param subject
+     *        the object the path starts from
+     * @param newValue
+     *        the new value
+     */
+    protected final void setValueUsingTarget(final Object subject,
+            final Object newValue) {
+        Object target = this.getTargetUsingSubject(subject);
+        Accessor accessor = target == null ? null : this.accessorOf(target,
+                this.segments.length - 1);
+        if (accessor == null) {
+            return;
+        }
+        try {
+            accessor.set(target, newValue);
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Register with my subject, and with every object on the path.
+     */
+    protected void hookupToSubject() {
+        super.hookupToSubject();
+        if (this.subjectSendsUpdates.booleanValue() && this.subject != null) {
+            this.hops[0] = this.subject;
+            this.accessors[0] = this.accessorOf(this.subject, 0);
+            this.resolveFrom(1);
+            this.resolved = true;
+            this.lastValue = this.getValue();
+        }
+    }
+
+    /**
+     * Remove my registrations with my subject and the objects on the path.
+     */
+    protected void unhookFromSubject() {
+        if (this.resolved) {
+            this.unhookFrom(1);
+            this.resolved = false;
+            Arrays.fill(this.hops, null);
+            this.lastValue = NOT_READ;
+        }
+        super.unhookFromSubject();
+    }
+
+    /**
+     * An object on the path changed the aspect I follow: read the path below
+     * it again, and notify my observers when the value at its end changed.
+     *
+     * @param sender
+     *        the object that changed
+     * @param arg
+     *        the name of the aspect that changed
+     */
+    public void update(final Object sender, final Object arg) {
+        if (sender == this.subjectChannel) {
+            super.update(sender, arg);
+            return;
+        }
+        if (!this.resolved) {
+            return;
+        }
+        for (int i = 0; i < this.segments.length; i++) {
+            if (this.hops[i] == sender && this.segments[i].equals(arg)) {
+                if (i < this.segments.length - 1) {
+                    this.unhookFrom(i + 1);
+                    this.resolveFrom(i + 1);
+                }
+                this.changedValue();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notify my observers when the value at the end of the path is no longer
+     * equal to the value last read.
+     */
+    private void changedValue() {
+        Object newValue = this.getValue();
+        Object oldValue = this.lastValue;
+        if (oldValue != NOT_READ
+                && (oldValue == null ? newValue == null : oldValue
+                        .equals(newValue))) {
+            return;
+        }
+        this.lastValue = newValue;
+        this.setChanged(VALUE);
+    }
+
+    /**
+     * Read the hops from <code>start</code> on from the hop before it, and
+     * register with the ones that are observable.
+     */
+    private void resolveFrom(final int start) {
+        for (int i = start; i < this.segments.length; i++) {
+            Object previous = this.hops[i - 1];
+            Object hop = null;
+            if (previous != null && this.accessors[i - 1] != null) {
+                try {
+                    hop = this.accessors[i - 1].get(previous);
+                } catch (InvocationTargetException e) {
+                    hop = null;
+                }
+            }
+            this.hops[i] = hop;
+            this.accessors[i] = hop == null ? null : this.accessorOf(hop, i);
+            if (hop instanceof ChangingObservable && this.accessors[i] != null) {
+                Aspect anAspect = Aspect.of(hop.getClass(), this.segments[i]);
+                if (this.isWeakHookup()) {
+                    ((ChangingObservable) hop).addWeakObserver(this, anAspect);
+                } else {
+                    ((ChangingObservable) hop).addObserver(this, anAspect);
+                }
+                this.observed[i] = anAspect;
+            }
+        }
+    }
+
+    /**
+     * Remove my registrations with the hops from <code>start</code> on.
+     */
+    private void unhookFrom(final int start) {
+        for (int i = start; i < this.segments.length; i++) {
+            if (this.observed[i] != null) {
+                ((ChangingObservable) this.hops[i]).deleteObserver(this,
+                        this.observed[i]);
+                this.observed[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Answer the object the last segment is read from, reading every hop.
+     */
+    private Object walk(final Object subject) {
+        Object hop = subject;
+        for (int i = 0; i < this.segments.length - 1 && hop != null; i++) {
+            Accessor accessor = this.accessorOf(hop, i);
+            try {
+                hop = accessor == null ? null : accessor.get(hop);
+            } catch (InvocationTargetException e) {
+                hop = null;
+            }
+        }
+        return hop;
+    }
+
+    /**
+     * Answer the accessor of a segment for the class of a hop, or
+     * <code>null</code> when it has none, which breaks the path.
+     */
+    private Accessor accessorOf(final Object hop, final int segment) {
+        try {
+            return AccessorCache.forAspect(hop.getClass(),
+                    this.segments[segment]);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Print my path.
+     *
+     * @param sb
+     *        the buffer to print on
+     */
+    public void printPathOn(final StringBuffer sb) {
+        sb.append(this.path);
+    }
+
+    /**
+     * Print the receiver.
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer("(");
+        if (this.subject != null) {
+            sb.append(this.subject.toString());
+            sb.append(" ");
+        }
+        this.printPathOn(sb);
+        sb.append(")");
+        return sb.toString();
+    }
+}
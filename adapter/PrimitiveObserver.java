@@ -0,0 +1,107 @@
+package sepher.saf.adapter;
+
+/**
+ * An observer that receives the value of an <code>IntValue</code>,
+ * <code>LongValue</code>, <code>DoubleValue</code> or
+ * <code>BooleanValue</code> as a primitive, without it being boxed.
+ * Implementors override the callbacks for the kinds of value they observe;
+ * the others fall back to <code>update(Object, Object)</code>, as do changes
+ * of any other observable.
+ *
+ * <pre><code>
+ *     aPrice.addObserver(new PrimitiveObserver() {
+ *         public void doubleChanged(DoubleValue sender, double newValue) {
+ *             ...
+ *         }
+ *
+ *         public void update(Object sender, Object aspect) {
+ *         }
+ *     });
+ * </code></pre>
+ *
+ * The value passed is the value when the observer is notified, which may be
+ * newer than the value that was set when notifications are asynchronous or
+ * batched.
+ */
+public interface PrimitiveObserver extends SAFObserver {
+
+    /**
+     * Called when an <code>IntValue</code> changed.
+     *
+     * @param sender
+     *        the value that changed
+     * @param newValue
+     *        its value
+     */
+    default void intChanged(IntValue sender, int newValue) {
+        this.update(sender, (Object) DynamicValue.VALUE.getName());
+    }
+
+    /**
+     * Called when a <code>LongValue</code> changed.
+     *
+     * @param sender
+     *        the value that changed
+     * @param newValue
+     *        its value
+     */
+    default void longChanged(LongValue sender, long newValue) {
+        this.update(sender, (Object) DynamicValue.VALUE.getName());
+    }
+
+    /**
+     * Called when a <code>DoubleValue</code> changed.
+     *
+     * @param sender
+     *        the value that changed
+     * @param newValue
+     *        its value
+     */
+    default void doubleChanged(DoubleValue sender, double newValue) {
+        this.update(sender, (Object) DynamicValue.VALUE.getName());
+    }
+
+    /**
+     * Called when a <code>BooleanValue</code> changed.
+     *
+     * @param sender
+     *        the value that changed
+     * @param newValue
+     *        its value
+     */
+    default void booleanChanged(BooleanValue sender, boolean newValue) {
+        this.update(sender, (Object) DynamicValue.VALUE.getName());
+    }
+
+    /**
+     * Route a change of a primitive value to its typed callback.
+     *
+     * @param o
+     *        the observable object
+     * @param aspect
+     *        the aspect that changed
+     */
+    default void update(Object o, Aspect aspect) {
+        if (aspect == DynamicValue.VALUE) {
+            if (o instanceof IntValue) {
+                this.intChanged((IntValue) o, ((IntValue) o).getAsInt());
+                return;
+            }
+            if (o instanceof LongValue) {
+                this.longChanged((LongValue) o, ((LongValue) o).getAsLong());
+                return;
+            }
+            if (o instanceof DoubleValue) {
+                this.doubleChanged((DoubleValue) o, ((DoubleValue) o)
+                        .getAsDouble());
+                return;
+            }
+            if (o instanceof BooleanValue) {
+                this.booleanChanged((BooleanValue) o, ((BooleanValue) o)
+                        .getAsBoolean());
+                return;
+            }
+        }
+        this.update(o, aspect == null ? null : aspect.getName());
+    }
+}
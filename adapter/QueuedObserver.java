@@ -0,0 +1,501 @@
+package sepher.saf.adapter;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registration of an observer behind a bounded queue of its own. Notifying
+ * a queued observer only appends the change to its queue; the changes are
+ * delivered to the observer in order on another thread. So a slow observer,
+ * such as an audit trail or a remote service, no longer holds up every
+ * <code>setChanged</code> of its subject and the other observers of it.
+ * <p>
+ * The queue holds at most <code>capacity</code> changes. What happens to a
+ * change when it is full is decided by the <code>OverflowPolicy</code>: wait,
+ * drop the oldest change, drop the new change, or conflate the changes to
+ * the latest value per aspect. Dropped and conflated changes are counted,
+ * and so is the depth of the queue.
+ * <p>
+ * Use <code>addQueuedObserver</code> rather than creating instances
+ * directly, and remove the answered registration rather than the observer:
+ *
+ * <pre><code>
+ *     QueuedObserver audit = aPerson.addQueuedObserver(anAuditTrail, 1000,
+ *             OverflowPolicy.CONFLATE);
+ *     ...
+ *     aPerson.deleteObserver(audit);
+ * </code></pre>
+ *
+ * Changes are delivered on a shared pool of daemon threads, one thread per
+ * queue at a time, unless an executor is given. A change reported by a
+ * <code>ChangeEvent</code> is delivered as an event to an observer that
+ * takes events, as an update of its aspect to other observers.
+ *
+ * @see OverflowPolicy
+ * @see SAFObservable#addQueuedObserver(SAFObserver, int, OverflowPolicy)
+ */
+public final class QueuedObserver implements ChangeEventObserver {
+
+    /**
+     * The executor of queues created without one, shared with
+     * <code>ChangePublisher</code>.
+     */
+    static final ExecutorService SHARED_EXECUTOR = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(r, "saf-queued-observer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * The number of changes delivered by one task, after which the task
+     * gives its thread to the queues of other observers.
+     */
+    private static final int DRAIN_LIMIT = 256;
+
+    /**
+     * Queued in place of a <code>null</code> argument.
+     */
+    private static final Object NONE = new Object();
+
+    /**
+     * A queued change: the argument of the update, an <code>Aspect</code>
+     * or a <code>ChangeEvent</code> that may be kept.
+     */
+    private static final class Pending {
+        final Object sender;
+
+        Object arg;
+
+        final Key key;
+
+        Pending(final Object sender, final Object arg, final Key key) {
+            this.sender = sender;
+            this.arg = arg;
+            this.key = key;
+        }
+    }
+
+    /**
+     * An aspect of a subject, the subject compared by identity.
+     */
+    private static final class Key {
+        private final Object subject;
+
+        private final Object aspect;
+
+        Key(final Object subject, final Object aspect) {
+            this.subject = subject;
+            this.aspect = aspect;
+        }
+
+        public boolean equals(final Object other) {
+            return other instanceof Key && ((Key) other).subject == this.subject
+                    && ((Key) other).aspect.equals(this.aspect);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(this.subject) * 31
+                    + this.aspect.hashCode();
+        }
+    }
+
+    private final SAFObserver observer;
+
+    private final int capacity;
+
+    private final OverflowPolicy policy;
+
+    private final Executor executor;
+
+    /**
+     * The queued changes, oldest first.
+     */
+    private final ArrayDeque<Pending> queue;
+
+    /**
+     * The queued changes by aspect, when conflating.
+     */
+    private final HashMap<Key, Pending> index;
+
+    /**
+     * Set while a task to deliver the queued changes is submitted or
+     * running.
+     */
+    private boolean scheduled;
+
+    /**
+     * The thread delivering the queued changes, so that it does not wait for
+     * itself when its observer makes a change.
+     */
+    private volatile Thread deliverer;
+
+    private int maxQueueDepth;
+
+    private final Runnable drainer = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    private final LongAdder queued = new LongAdder();
+
+    private final LongAdder delivered = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder conflated = new LongAdder();
+
+    private final LongAdder blocked = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * Constructor for a queued registration of an observer, delivering on
+     * the shared pool.
+     *
+     * @param observer
+     *        the observer to notify
+     * @param capacity
+     *        the maximum number of queued changes
+     * @param policy
+     *        what to do with a change when the queue is full
+     */
+    public QueuedObserver(final SAFObserver observer, final int capacity,
+            final OverflowPolicy policy) {
+        this(observer, capacity, policy, SHARED_EXECUTOR);
+    }
+
+    /**
+     * Constructor for a queued registration of an observer.
+     *
+     * @param observer
+     *        the observer to notify
+     * @param capacity
+     *        the maximum number of queued changes
+     * @param policy
+     *        what to do with a change when the queue is full
+     * @param executor
+     *        runs the tasks that deliver the queued changes
+     */
+    public QueuedObserver(final SAFObserver observer, final int capacity,
+            final OverflowPolicy policy, final Executor executor) {
+        if (observer == null || policy == null || executor == null) {
+            throw new NullPointerException();
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        this.observer = observer;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.executor = executor;
+        this.queue = new ArrayDeque<Pending>(Math.min(capacity, 1024));
+        this.index = policy == OverflowPolicy.CONFLATE ? new HashMap<Key, Pending>()
+                : null;
+    }
+
+    /**
+     * Answer the observer.
+     *
+     * @return the observer the changes are delivered to
+     */
+    public SAFObserver get() {
+        return this.observer;
+    }
+
+    /**
+     * @return the overflow policy
+     */
+    public OverflowPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * @return the maximum number of queued changes
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Queue the update.
+     *
+     * @param sender
+     *        the observable object
+     * @param arg
+     *        the argument of <code>notifyObservers</code>
+     */
+    public void update(final Object sender, final Object arg) {
+        this.offer(sender, arg != null ? arg : NONE, arg != null ? arg : NONE);
+    }
+
+    /**
+     * Queue the update.
+     *
+     * @param sender
+     *        the observable object
+     * @param aspect
+     *        the aspect that changed
+     */
+    public void update(final Object sender, final Aspect aspect) {
+        this.offer(sender, aspect != null ? aspect : NONE,
+                aspect != null ? aspect : NONE);
+    }
+
+    /**
+     * Queue the event.
+     *
+     * @param event
+     *        the change
+     */
+    public void changed(final ChangeEvent event) {
+        this.offer(event.getSource(), event.retained(), event.getAspect());
+    }
+
+    /**
+     * Queue a change according to the policy, and submit a task to deliver
+     * it unless one is pending.
+     */
+    private void offer(final Object sender, final Object arg,
+            final Object aspect) {
+        synchronized (this) {
+            this.queued.increment();
+            Key key = null;
+            if (this.index != null) {
+                key = new Key(sender, aspect);
+                Pending pending = this.index.get(key);
+                if (pending != null) {
+                    this.merge(pending, arg);
+                    this.conflated.increment();
+                    return;
+                }
+            }
+            if (this.queue.size() >= this.capacity && !this.makeRoom()) {
+                this.dropped.increment();
+                return;
+            }
+            Pending pending = new Pending(sender, arg, key);
+            this.queue.addLast(pending);
+            if (key != null) {
+                this.index.put(key, pending);
+            }
+            if (this.queue.size() > this.maxQueueDepth) {
+                this.maxQueueDepth = this.queue.size();
+            }
+            if (this.scheduled) {
+                return;
+            }
+            this.scheduled = true;
+        }
+        this.executor.execute(this.drainer);
+    }
+
+    /**
+     * Make room in the full queue for a new change.
+     *
+     * @return false when the new change is to be dropped
+     */
+    private boolean makeRoom() {
+        switch (this.policy) {
+        case BLOCK:
+            if (Thread.currentThread() == this.deliverer) {
+                // waiting for itself; let the queue grow instead
+                return true;
+            }
+            this.blocked.increment();
+            try {
+                while (this.queue.size() >= this.capacity) {
+                    this.wait();
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        case DROP_NEWEST:
+            return false;
+        default:
+            Pending oldest = this.queue.pollFirst();
+            if (oldest.key != null) {
+                this.index.remove(oldest.key);
+            }
+            this.dropped.increment();
+            return true;
+        }
+    }
+
+    /**
+     * Replace a queued change of an aspect by a later one.
+     */
+    private void merge(final Pending pending, final Object arg) {
+        if (pending.arg instanceof ChangeEvent && arg instanceof ChangeEvent) {
+            // the queued event may be shared with other observers
+            pending.arg = ((ChangeEvent) pending.arg)
+                    .coalesced((ChangeEvent) arg);
+        } else {
+            pending.arg = arg;
+        }
+    }
+
+    /**
+     * Deliver the queued changes, at most <code>DRAIN_LIMIT</code> of them
+     * before submitting another task for the rest.
+     */
+    private void drain() {
+        this.deliverer = Thread.currentThread();
+        try {
+            for (int i = 0; i < DRAIN_LIMIT; i++) {
+                Pending next;
+                synchronized (this) {
+                    next = this.queue.pollFirst();
+                    if (next == null) {
+                        this.scheduled = false;
+                        this.notifyAll();
+                        return;
+                    }
+                    if (next.key != null) {
+                        this.index.remove(next.key);
+                    }
+                    if (this.policy == OverflowPolicy.BLOCK) {
+                        this.notifyAll();
+                    }
+                }
+                this.deliver(next);
+            }
+        } finally {
+            this.deliverer = null;
+        }
+        this.executor.execute(this.drainer);
+    }
+
+    /**
+     * Deliver a change to the observer. An exception thrown by the observer
+     * is counted and does not stop the delivery of later changes.
+     */
+    private void deliver(final Pending pending) {
+        try {
+            Object arg = pending.arg;
+            if (arg instanceof ChangeEvent) {
+                ChangeEvent event = (ChangeEvent) arg;
+                if (this.observer instanceof ChangeEventObserver) {
+                    ((ChangeEventObserver) this.observer).changed(event);
+                } else {
+                    this.observer.update(pending.sender, event.getAspect());
+                }
+            } else if (arg instanceof Aspect) {
+                this.observer.update(pending.sender, (Aspect) arg);
+            } else {
+                this.observer.update(pending.sender, arg != NONE ? arg : null);
+            }
+            this.delivered.increment();
+        } catch (RuntimeException e) {
+            this.failures.increment();
+            this.lastFailure = e;
+        }
+    }
+
+    /**
+     * Wait until every queued change has been delivered.
+     *
+     * @param timeout
+     *        the maximum number of milliseconds to wait
+     * @return false when changes were still queued after the timeout
+     * @throws InterruptedException
+     *         when interrupted while waiting
+     */
+    public synchronized boolean awaitDelivery(final long timeout)
+            throws InterruptedException {
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long wait;
+        while (this.scheduled && (wait = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+        }
+        return !this.scheduled;
+    }
+
+    /**
+     * Answer the number of changes waiting to be delivered.
+     *
+     * @return the queue depth
+     */
+    public synchronized int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * @return the largest queue depth so far
+     */
+    public synchronized int getMaxQueueDepth() {
+        return this.maxQueueDepth;
+    }
+
+    /**
+     * @return the number of changes received
+     */
+    public long getQueuedCount() {
+        return this.queued.sum();
+    }
+
+    /**
+     * @return the number of changes delivered to the observer
+     */
+    public long getDeliveredCount() {
+        return this.delivered.sum();
+    }
+
+    /**
+     * @return the number of changes dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return the number of changes merged into a queued change of the same
+     *         aspect
+     */
+    public long getConflatedCount() {
+        return this.conflated.sum();
+    }
+
+    /**
+     * @return the number of times a thread waited for room in the queue
+     */
+    public long getBlockedCount() {
+        return this.blocked.sum();
+    }
+
+    /**
+     * @return the number of changes the observer threw an exception for
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return the last exception thrown by the observer, or
+     *         <code>null</code>
+     */
+    public RuntimeException getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "queued " + this.observer;
+    }
+}
@@ -0,0 +1,369 @@
+package sepher.saf.adapter;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers change notifications asynchronously. A change is published into a
+ * preallocated, bounded ring buffer, so the thread that changed the subject
+ * returns immediately; consumer threads drain the ring in batches and notify
+ * the observers.
+ * <p>
+ * There is one ring and one consumer thread per partition. A subject is
+ * always published to the same partition, so the notifications of a subject
+ * are delivered in the order in which its changes were made. When a ring is
+ * full the publishing thread waits for a free slot, using the same
+ * <code>WaitStrategy</code> as the consumers use when the ring is empty. An
+ * observer that changes a subject of its own partition while the ring is full
+ * cannot wait for itself; its notification is kept aside by the consumer and
+ * delivered after those published before it.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     RingBufferDispatcher dispatcher = new RingBufferDispatcher(2, 4096,
+ *             WaitStrategy.PARK);
+ *     aPerson.setDispatcher(dispatcher);
+ *     ...
+ *     dispatcher.shutdown();
+ * </code></pre>
+ *
+ * Observers are notified on a consumer thread, without the subject being
+ * locked, so they must be prepared to see a subject that has changed again
+ * in the meantime. An exception of an observer does not stop the consumer;
+ * it is counted and the last one is kept.
+ *
+ * @see ChangingObservable#setDispatcher
+ * @see WaitStrategy
+ */
+public class RingBufferDispatcher extends NotificationDispatcher {
+
+    /**
+     * The maximum number of notifications a consumer delivers before it
+     * releases their slots.
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * The partitions, each with its own ring and consumer.
+     */
+    private final Partition[] partitions;
+
+    /**
+     * How producers and consumers wait.
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Cleared by <code>shutdown</code>.
+     */
+    private volatile boolean running = true;
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile Throwable lastFailure;
+
+    /**
+     * Constructor for a dispatcher with one consumer thread, a ring of 1024
+     * slots and the <code>PARK</code> wait strategy.
+     */
+    public RingBufferDispatcher() {
+        this(1, 1024, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructor for a dispatcher.
+     *
+     * @param consumers
+     *        the number of partitions and consumer threads
+     * @param capacity
+     *        the number of slots of the ring of each partition, rounded up to
+     *        a power of two
+     * @param waitStrategy
+     *        how to wait for notifications or free slots
+     */
+    public RingBufferDispatcher(final int consumers, final int capacity,
+            final WaitStrategy waitStrategy) {
+        if (consumers < 1 || capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.waitStrategy = waitStrategy;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size = size << 1;
+        }
+        this.partitions = new Partition[consumers];
+        for (int i = 0; i < consumers; i++) {
+            this.partitions[i] = new Partition(size);
+            Thread consumer = new Thread(this.partitions[i],
+                    "saf-dispatcher-" + i);
+            consumer.setDaemon(true);
+            this.partitions[i].consumer = consumer;
+            consumer.start();
+        }
+    }
+
+    /**
+     * Publish the change into the ring of the partition of the subject.
+     *
+     * @param subject
+     *        the subject that changed
+     * @param aspect
+     *        the aspect that changed
+     */
+    public void dispatch(final ChangingObservable subject, final Object aspect) {
+        if (!this.running) {
+            throw new IllegalStateException("dispatcher has been shut down");
+        }
+        this.partitionOf(subject).publish(subject, aspect);
+    }
+
+    /**
+     * Wait until every notification published before this call has been
+     * delivered.
+     */
+    public void flush() {
+        for (int i = 0; i < this.partitions.length; i++) {
+            Partition partition = this.partitions[i];
+            long target = partition.claimed.get();
+            int counter = 0;
+            while (partition.consumed < target || partition.overflowing > 0) {
+                counter = this.waitStrategy.idle(counter);
+            }
+        }
+    }
+
+    /**
+     * Stop accepting notifications, deliver the ones already published and
+     * stop the consumer threads. Changes made while the dispatcher is shutting
+     * down may be rejected or lost; detach the dispatcher from its subjects
+     * first.
+     *
+     * @throws InterruptedException
+     *         when interrupted while waiting for the consumers to stop
+     */
+    public void shutdown() throws InterruptedException {
+        this.running = false;
+        for (int i = 0; i < this.partitions.length; i++) {
+            this.partitions[i].consumer.join();
+        }
+    }
+
+    /**
+     * Answer the number of notifications published but not yet delivered.
+     *
+     * @return the number of pending notifications of all partitions
+     */
+    public long getPendingCount() {
+        long pending = 0;
+        for (int i = 0; i < this.partitions.length; i++) {
+            pending += this.partitions[i].claimed.get()
+                    - this.partitions[i].consumed
+                    + this.partitions[i].overflowing;
+        }
+        return pending;
+    }
+
+    /**
+     * @return the number of exceptions thrown by observers
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return the last exception thrown by an observer, or <code>null</code>
+     */
+    public Throwable getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * Answer the partition a subject is always published to.
+     */
+    private Partition partitionOf(final Object subject) {
+        int hash = System.identityHashCode(subject) & 0x7fffffff;
+        return this.partitions[hash % this.partitions.length];
+    }
+
+    /**
+     * A notification the consumer published to its own full ring, to be
+     * delivered after the sequence that was claimed last when it was made.
+     */
+    private static final class Overflow {
+        final ChangingObservable subject;
+
+        final Object aspect;
+
+        final long after;
+
+        Overflow(final ChangingObservable subject, final Object aspect,
+                final long after) {
+            this.subject = subject;
+            this.aspect = aspect;
+            this.after = after;
+        }
+    }
+
+    /**
+     * A multi-producer, single-consumer ring of notifications.
+     */
+    private final class Partition implements Runnable {
+        /**
+         * The subjects of the slots.
+         */
+        private final ChangingObservable[] subjects;
+
+        /**
+         * The aspects of the slots.
+         */
+        private final Object[] aspects;
+
+        /**
+         * The sequence number last published in each slot, -1 initially. A
+         * slot can be consumed when it holds the expected sequence.
+         */
+        private final AtomicLongArray published;
+
+        /**
+         * Mask to map a sequence number to a slot.
+         */
+        private final int mask;
+
+        /**
+         * The last sequence number claimed by a producer.
+         */
+        final AtomicLong claimed = new AtomicLong(-1);
+
+        /**
+         * The last sequence number delivered by the consumer.
+         */
+        volatile long consumed = -1;
+
+        /**
+         * The notifications the consumer could not publish to its own full
+         * ring, in order. Only used by the consumer.
+         */
+        private final ArrayDeque<Overflow> overflow = new ArrayDeque<Overflow>();
+
+        /**
+         * The number of notifications in <code>overflow</code>.
+         */
+        volatile int overflowing;
+
+        /**
+         * The consumer thread.
+         */
+        Thread consumer;
+
+        Partition(final int size) {
+            this.subjects = new ChangingObservable[size];
+            this.aspects = new Object[size];
+            this.published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                this.published.set(i, -1);
+            }
+            this.mask = size - 1;
+        }
+
+        /**
+         * Claim the next slot, wait until it is free and publish the
+         * notification in it.
+         */
+        void publish(final ChangingObservable subject, final Object aspect) {
+            long sequence;
+            if (Thread.currentThread() == this.consumer) {
+                // an observer changed a subject of its own partition: claim a
+                // slot only when one is free, as waiting would never end
+                do {
+                    sequence = this.claimed.get();
+                    if (sequence + 1 - this.consumed > this.mask + 1) {
+                        this.overflow.addLast(new Overflow(subject, aspect,
+                                sequence));
+                        this.overflowing = this.overflow.size();
+                        return;
+                    }
+                } while (!this.claimed.compareAndSet(sequence, sequence + 1));
+                sequence++;
+            } else {
+                sequence = this.claimed.incrementAndGet();
+            }
+            int counter = 0;
+            while (sequence - this.consumed > this.mask + 1) {
+                counter = waitStrategy.idle(counter);
+            }
+            int slot = (int) sequence & this.mask;
+            this.subjects[slot] = subject;
+            this.aspects[slot] = aspect;
+            this.published.lazySet(slot, sequence);
+        }
+
+        /**
+         * Deliver published notifications in batches until the dispatcher is
+         * shut down and the ring is empty.
+         */
+        public void run() {
+            long next = this.consumed + 1;
+            int counter = 0;
+            while (true) {
+                this.deliverOverflow(next);
+                if (this.published.get((int) next & this.mask) != next) {
+                    if (!running && this.claimed.get() < next
+                            && this.overflow.isEmpty()) {
+                        return;
+                    }
+                    counter = waitStrategy.idle(counter);
+                    continue;
+                }
+                counter = 0;
+                long last = next;
+                while (last - next < BATCH - 1
+                        && this.published.get((int) (last + 1) & this.mask)
+                                == last + 1) {
+                    last++;
+                }
+                for (long sequence = next; sequence <= last; sequence++) {
+                    this.deliverOverflow(sequence);
+                    int slot = (int) sequence & this.mask;
+                    ChangingObservable subject = this.subjects[slot];
+                    Object aspect = this.aspects[slot];
+                    this.subjects[slot] = null;
+                    this.aspects[slot] = null;
+                    this.deliverSafely(subject, aspect);
+                }
+                this.consumed = last;
+                next = last + 1;
+            }
+        }
+
+        /**
+         * Deliver the notifications kept aside before a sequence was
+         * claimed.
+         */
+        private void deliverOverflow(final long sequence) {
+            Overflow first;
+            while ((first = this.overflow.peekFirst()) != null
+                    && first.after < sequence) {
+                this.overflow.pollFirst();
+                this.deliverSafely(first.subject, first.aspect);
+                this.overflowing = this.overflow.size();
+            }
+        }
+
+        /**
+         * Deliver a notification; an observer failing must not stop the
+         * consumer.
+         */
+        private void deliverSafely(final ChangingObservable subject,
+                final Object aspect) {
+            try {
+                deliver(subject, aspect);
+            } catch (Throwable e) {
+                failures.increment();
+                lastFailure = e;
+            }
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package sepher.saf.adapter;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Iterator;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /*
  * @(#)src/classes/sov/java/util/Observable.java, hs122, hs122, 20001020 1.2.1.2
@@ -38,6 +41,31 @@ import java.util.Set;
  * <p> When an observable object is newly created, its set of observers is empty.
  * Two observers are considered the same if and only if the
  * <tt>equals</tt> method returns true for them.
+ * <p> The observers are stored compactly, because most observables have none
+ * or one: no observers take no storage at all, a single observer is held in
+ * the field itself, and a few observers are kept in an immutable array that is
+ * replaced atomically when an observer is added or deleted. Beyond
+ * <code>SMALL</code> observers a hash set is used, so that adding and deleting
+ * stays cheap for large fan-outs; observers held that way must have a
+ * <code>hashCode</code> consistent with their <code>equals</code>.
+ * <p> Notification loops over the observers that were registered when it
+ * started, without locking, so observers may be added or deleted from any
+ * thread, also by an observer while it is being notified. Such a change takes
+ * effect from the next notification on.
+ * <p> An observer can also be added for one aspect only, with
+ * <code>addObserver(observer, aspect)</code>. It is then only notified when the
+ * argument of <code>notifyObservers</code> is that aspect, so that the cost of a
+ * notification depends on the number of interested observers instead of on the
+ * number of all observers. Observers added without an aspect are notified of
+ * every change.
+ * <p> Observers added with <code>addWeakObserver</code> are not kept reachable by
+ * this observable. Their registration is purged during the first notification
+ * after they have been reclaimed.
+ * <p> Aspects are <code>Aspect</code> keys. A <code>String</code> argument that
+ * names an existing <code>Aspect</code> of the class of this observable is
+ * mapped to it, and observers receive it through
+ * <code>update(Object, Aspect)</code>; other strings are passed on as they
+ * are.
  * @see     java.util.Observable#notifyObservers()
  * @see     java.util.Observable#notifyObservers(java.lang.Object)
  * @see     java.util.Observer
@@ -49,16 +77,81 @@ import java.util.Set;
  */
 
 public class SAFObservable {
-    private boolean changed = false;
+    /**
+     * The array shared by all observables without observers.
+     */
+    private static final SAFObserver[] NO_OBSERVERS = new SAFObserver[0];
 
-    private Set<SAFObserver> obs;
+    /**
+     * The largest number of observers kept in an array; beyond it they are
+     * kept in an <code>ObserverSet</code>.
+     */
+    static final int SMALL = 8;
+
+    /**
+     * Updater used to swap the observers atomically.
+     */
+    private static final AtomicReferenceFieldUpdater<SAFObservable, Object> OBSERVERS = AtomicReferenceFieldUpdater
+            .newUpdater(SAFObservable.class, Object.class, "obs");
+
+    /**
+     * Updater used to swap the aspect index atomically.
+     */
+    private static final AtomicReferenceFieldUpdater<SAFObservable, AspectIndex> ASPECT_OBSERVERS = AtomicReferenceFieldUpdater
+            .newUpdater(SAFObservable.class, AspectIndex.class, "aspectObs");
+
+    /**
+     * Handle used to test and clear the changed flag atomically.
+     */
+    private static final VarHandle CHANGED;
+
+    static {
+        try {
+            CHANGED = MethodHandles.lookup().findVarHandle(SAFObservable.class,
+                    "changed", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Set by <code>setChanged</code>, cleared when the change is notified.
+     * Volatile, so that <code>hasChanged</code> needs no lock.
+     */
+    private volatile boolean changed = false;
+
+    /**
+     * The current observers: <code>null</code> for none, the observer itself
+     * when there is one, an array of up to <code>SMALL</code> observers that
+     * is never modified, only replaced, or an <code>ObserverSet</code>.
+     */
+    private volatile Object obs;
+
+    /**
+     * The observers that are only interested in one aspect, indexed by the id
+     * of that aspect. Created when the first such observer is added, and like
+     * <code>obs</code> replaced instead of modified.
+     */
+    private volatile AspectIndex aspectObs;
+
+    /**
+     * Set when a weakly registered observer turned out to be reclaimed, so
+     * that the registrations are purged after the current notification.
+     */
+    private boolean purgeNeeded;
+
+    /**
+     * Set when a <code>ChangeEventObserver</code> is added, so that changes
+     * are only described by a <code>ChangeEvent</code> when someone reads
+     * it. Never cleared.
+     */
+    private volatile boolean eventObservers;
 
     /**
 	 * Construct an Observable with zero Observers
 	 */
 
     public SAFObservable() {
-        obs = new HashSet<SAFObserver>();
     }
 
     /**
@@ -70,17 +163,160 @@ public class SAFObservable {
 	 * @param o    an observer to be added.
 	 */
     public void addObserver(SAFObserver o) {
-        if (!obs.contains(o)) {
-            obs.add(o);
+        if (o == null) {
+            throw new NullPointerException();
         }
+        this.noteObserver(o);
+        for (;;) {
+            Object current = this.obs;
+            if (current instanceof ObserverSet) {
+                // the set is modified in place, so add again when
+                // deleteObservers replaced it in the meantime
+                ((ObserverSet) current).add(o);
+                if (this.obs == current) {
+                    return;
+                }
+            } else {
+                Object next = withObserver(current, o);
+                if (next == current
+                        || OBSERVERS.compareAndSet(this, current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an observer that is only notified of changes of one aspect, that
+     * is when <code>notifyObservers</code> is sent with that aspect as its
+     * argument. An observer that is also added without an aspect is notified
+     * twice of such a change.
+     * 
+     * @param o
+     *        an observer to be added.
+     * @param aspect
+     *        the aspect the observer is interested in.
+     */
+    public void addObserver(final SAFObserver o, final Aspect aspect) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        this.noteObserver(o);
+        Aspect key = aspect.in(this.getClass());
+        AspectIndex current;
+        AspectIndex next;
+        do {
+            current = this.aspectObs;
+            if (current == null) {
+                next = new AspectIndex(key.domain).with(key.getId(), o);
+            } else {
+                next = current.with(key.getId(), o);
+            }
+        } while (next != current
+                && !ASPECT_OBSERVERS.compareAndSet(this, current, next));
+    }
+
+    /**
+     * Adds an observer that is only notified of changes of the aspect with
+     * the given name.
+     * 
+     * @param o
+     *        an observer to be added.
+     * @param aspect
+     *        the name of the aspect the observer is interested in.
+     * @see #addObserver(SAFObserver, Aspect)
+     */
+    public void addObserver(final SAFObserver o, final String aspect) {
+        this.addObserver(o, Aspect.of(this.getClass(), aspect));
+    }
+
+    /**
+     * Adds an observer that is notified of changes of any of the given
+     * aspects.
+     * 
+     * @param o
+     *        an observer to be added.
+     * @param aspects
+     *        the aspects the observer is interested in.
+     * @see #addObserver(SAFObserver, Aspect)
+     */
+    public void addObserver(final SAFObserver o, final Aspect[] aspects) {
+        for (int i = 0; i < aspects.length; i++) {
+            this.addObserver(o, aspects[i]);
+        }
+    }
+
+    /**
+     * Adds an observer that is notified of changes of any of the aspects with
+     * the given names.
+     * 
+     * @param o
+     *        an observer to be added.
+     * @param aspects
+     *        the names of the aspects the observer is interested in.
+     * @see #addObserver(SAFObserver, Aspect)
+     */
+    public void addObserver(final SAFObserver o, final String[] aspects) {
+        for (int i = 0; i < aspects.length; i++) {
+            this.addObserver(o, Aspect.of(this.getClass(), aspects[i]));
+        }
+    }
+
+    /**
+     * Adds an observer without keeping it reachable: when nothing else refers
+     * to the observer it can be reclaimed, after which its registration is
+     * purged. This spares long-lived observables from keeping adapters alive
+     * that were never untied.
+     * 
+     * @param o
+     *        an observer to be added.
+     * @see WeakObserver
+     */
+    public void addWeakObserver(final SAFObserver o) {
+        this.addObserver(new WeakObserver(o));
+    }
+
+    /**
+     * Adds an observer of one aspect without keeping it reachable.
+     * 
+     * @param o
+     *        an observer to be added.
+     * @param aspect
+     *        the aspect the observer is interested in.
+     * @see #addWeakObserver(SAFObserver)
+     * @see #addObserver(SAFObserver, Aspect)
+     */
+    public void addWeakObserver(final SAFObserver o, final Aspect aspect) {
+        this.addObserver(new WeakObserver(o), aspect);
+    }
+
+    /**
+     * Adds an observer behind a bounded queue, so that a slow observer does
+     * not hold up the thread that makes a change. Delete the answered
+     * registration to remove it.
+     * 
+     * @param o
+     *        an observer to be added.
+     * @param capacity
+     *        the maximum number of changes queued for the observer.
+     * @param policy
+     *        what to do with a change when the queue is full.
+     * @return the registration
+     * @see QueuedObserver
+     */
+    public QueuedObserver addQueuedObserver(final SAFObserver o,
+            final int capacity, final OverflowPolicy policy) {
+        QueuedObserver queued = new QueuedObserver(o, capacity, policy);
+        this.addObserver(queued);
+        return queued;
     }
 
     /**
 	 * Indicates that this object has no longer changed, or that it has already
 	 * notified all of its observers of its most recent change, so that the
-	 * <tt>hasChanged</tt> method will now return <tt>false</tt>. This method is
-	 * called automatically by the
-	 * <code>notifyObservers</code> methods.
+	 * <tt>hasChanged</tt> method will now return <tt>false</tt>. The
+	 * <code>notifyObservers</code> methods clear the flag themselves, in the
+	 * same atomic step in which they test it.
 	 * @see     java.util.Observable#notifyObservers()
 	 * @see     java.util.Observable#notifyObservers(java.lang.Object)
 	 */
@@ -90,10 +326,26 @@ public class SAFObservable {
 
     /**
 	 * Returns the number of observers of this <tt>Observable</tt> object.
+	 * Weak registrations count until they have been purged.
 	 * @return  the number of observers of this object.
 	 */
     public int countObservers() {
-        return obs.size();
+        Object current = this.obs;
+        int count;
+        if (current == null) {
+            count = 0;
+        } else if (current instanceof SAFObserver) {
+            count = 1;
+        } else if (current instanceof ObserverSet) {
+            count = ((ObserverSet) current).size();
+        } else {
+            count = ((SAFObserver[]) current).length;
+        }
+        AspectIndex index = this.aspectObs;
+        if (index != null) {
+            count += index.count();
+        }
+        return count;
     }
 
     /**
@@ -103,14 +355,82 @@ public class SAFObservable {
      *        the observer to be deleted.
      */
     public void deleteObserver(SAFObserver o) {
-        obs.remove(o);
+        for (;;) {
+            Object current = this.obs;
+            if (current instanceof ObserverSet) {
+                ((ObserverSet) current).remove(o);
+                if (this.obs == current) {
+                    break;
+                }
+            } else {
+                Object next = withoutObserver(current, o);
+                if (next == current
+                        || OBSERVERS.compareAndSet(this, current, next)) {
+                    break;
+                }
+            }
+        }
+        AspectIndex currentIndex;
+        AspectIndex nextIndex;
+        do {
+            currentIndex = this.aspectObs;
+            if (currentIndex == null) {
+                return;
+            }
+            nextIndex = currentIndex.without(-1, o);
+        } while (nextIndex != currentIndex
+                && !ASPECT_OBSERVERS.compareAndSet(this, currentIndex,
+                        nextIndex));
+    }
+
+    /**
+     * Deletes an observer that was added for one aspect. Registrations of the
+     * same observer for other aspects or for all changes remain.
+     * 
+     * @param o
+     *        the observer to be deleted.
+     * @param aspect
+     *        the aspect it was added for.
+     */
+    public void deleteObserver(final SAFObserver o, final Aspect aspect) {
+        AspectIndex current;
+        AspectIndex next;
+        do {
+            current = this.aspectObs;
+            if (current == null) {
+                return;
+            }
+            Aspect key = current.find(aspect);
+            if (key == null) {
+                return;
+            }
+            next = current.without(key.getId(), o);
+        } while (next != current
+                && !ASPECT_OBSERVERS.compareAndSet(this, current, next));
+    }
+
+    /**
+     * Deletes an observer that was added for the aspect with the given name.
+     * 
+     * @param o
+     *        the observer to be deleted.
+     * @param aspect
+     *        the name of the aspect it was added for.
+     * @see #deleteObserver(SAFObserver, Aspect)
+     */
+    public void deleteObserver(final SAFObserver o, final String aspect) {
+        Aspect known = Aspect.find(this.getClass(), aspect);
+        if (known != null) {
+            this.deleteObserver(o, known);
+        }
     }
 
     /**
      * Clears the observer list so that this object no longer has any observers.
      */
     public void deleteObservers() {
-        obs.clear();
+        obs = null;
+        aspectObs = null;
     }
 
     /**
@@ -149,26 +469,247 @@ public class SAFObservable {
 	 * the <code>clearChanged</code> method to indicate that this object has no longer
 	 * changed.
 	 * <p> Each observer has its <code>update</code> method called with two arguments:
-	 * this observable object and the <code>arg</code> argument.
+	 * this observable object and the <code>arg</code> argument. When the argument
+	 * is the name of an existing <code>Aspect</code> it is first mapped to that
+	 * <code>Aspect</code>, and <code>update(Object, Aspect)</code> is called
+	 * instead.
+	 * <p> The changed flag is tested and cleared atomically, so when several
+	 * threads notify after one <code>setChanged</code> the change is notified
+	 * once.
+	 * 
+	 * @param arg    any object.
 	 * @see     java.util.Observable#clearChanged()
 	 * @see     java.util.Observable#hasChanged()
 	 * @see     java.util.SAFObserver#update(java.util.Observable, java.lang.Object)
-	 * 
-	 * @param arg    any object.
 	 */
     public void notifyObservers(Object arg) {
 
-        if (!changed)
+        if (!CHANGED.compareAndSet(this, true, false))
             return;
 
-        changed = false;
+        this.dispatch(arg);
+    }
+
+    /**
+     * Call <code>update</code> on all observers interested in
+     * <code>arg</code>, whether or not this object has changed. Used by
+     * <code>notifyObservers</code> and by dispatchers that deliver
+     * notifications on another thread or at a later time.
+     * 
+     * @param arg
+     *        any object, usually an aspect
+     */
+    final void dispatch(Object arg) {
+        if (arg instanceof String) {
+            // compatibility with free-form aspects; unknown names stay strings
+            Aspect known = Aspect.find(this.getClass(), (String) arg);
+            if (known != null) {
+                arg = known;
+            }
+        }
+        if (NotificationMetrics.enabled) {
+            this.dispatchMeasured(arg);
+            return;
+        }
+        if (arg instanceof ChangeEvent) {
+            this.dispatchEvent((ChangeEvent) arg);
+            return;
+        }
+        Object current = this.obs;
+        if (arg instanceof Aspect) {
+            Aspect aspect = (Aspect) arg;
+            if (current instanceof SAFObserver) {
+                ((SAFObserver) current).update(this, aspect);
+            } else if (current != null) {
+                SAFObserver[] snapshot = snapshotOf(current);
+                for (int i = 0; i < snapshot.length; i++) {
+                    snapshot[i].update(this, aspect);
+                }
+            }
+            AspectIndex index = this.aspectObs;
+            if (index != null) {
+                SAFObserver[] snapshot = index.observersOf(aspect);
+                for (int i = 0; i < snapshot.length; i++) {
+                    snapshot[i].update(this, aspect);
+                }
+            }
+        } else {
+            if (current instanceof SAFObserver) {
+                ((SAFObserver) current).update(this, arg);
+            } else if (current != null) {
+                SAFObserver[] snapshot = snapshotOf(current);
+                for (int i = 0; i < snapshot.length; i++) {
+                    snapshot[i].update(this, arg);
+                }
+            }
+        }
+        if (this.purgeNeeded) {
+            this.purgeObservers();
+        }
+    }
+
+    /**
+     * Deliver a change event: <code>ChangeEventObserver</code>s receive the
+     * event, other observers the aspect of the event.
+     */
+    private void dispatchEvent(final ChangeEvent event) {
+        Object current = this.obs;
+        if (current instanceof SAFObserver) {
+            this.deliver((SAFObserver) current, event);
+        } else if (current != null) {
+            SAFObserver[] snapshot = snapshotOf(current);
+            for (int i = 0; i < snapshot.length; i++) {
+                this.deliver(snapshot[i], event);
+            }
+        }
+        AspectIndex index = this.aspectObs;
+        if (index != null) {
+            SAFObserver[] snapshot = index.observersOf(event.getAspect());
+            for (int i = 0; i < snapshot.length; i++) {
+                this.deliver(snapshot[i], event);
+            }
+        }
+        if (this.purgeNeeded) {
+            this.purgeObservers();
+        }
+    }
+
+    /**
+     * Deliver a change event to one observer.
+     */
+    private void deliver(final SAFObserver o, final ChangeEvent event) {
+        if (o instanceof ChangeEventObserver) {
+            ((ChangeEventObserver) o).changed(event);
+        } else {
+            o.update(this, event.getAspect());
+        }
+    }
+
+    /**
+     * Like <code>dispatch</code>, timing the notification and every observer
+     * call for <code>NotificationMetrics</code>.
+     */
+    private void dispatchMeasured(final Object arg) {
+        Object current = this.obs;
+        SAFObserver[] observers;
+        if (current instanceof SAFObserver) {
+            observers = new SAFObserver[] { (SAFObserver) current };
+        } else {
+            observers = current == null ? NO_OBSERVERS : snapshotOf(current);
+        }
+        SAFObserver[] interested = NO_OBSERVERS;
+        AspectIndex index = this.aspectObs;
+        if (index != null && arg instanceof Aspect) {
+            interested = index.observersOf((Aspect) arg);
+        } else if (index != null && arg instanceof ChangeEvent) {
+            interested = index.observersOf(((ChangeEvent) arg).getAspect());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < observers.length; i++) {
+            this.updateMeasured(observers[i], arg);
+        }
+        for (int i = 0; i < interested.length; i++) {
+            this.updateMeasured(interested[i], arg);
+        }
+        NotificationMetrics.notified(this, arg, observers.length
+                + interested.length, System.nanoTime() - start);
+        if (this.purgeNeeded) {
+            this.purgeObservers();
+        }
+    }
 
-        Iterator<SAFObserver> it = this.obs.iterator();
-        while (it.hasNext()) {
-            ((SAFObserver) it.next()).update(this, arg);
+    /**
+     * Call <code>update</code> on an observer, timing the call.
+     */
+    private void updateMeasured(final SAFObserver o, final Object arg) {
+        long start = System.nanoTime();
+        try {
+            if (arg instanceof ChangeEvent) {
+                this.deliver(o, (ChangeEvent) arg);
+            } else if (arg instanceof Aspect) {
+                o.update(this, (Aspect) arg);
+            } else {
+                o.update(this, arg);
+            }
+        } finally {
+            SAFObserver observer = unwrap(o);
+            NotificationMetrics.observed(observer != null ? observer : o,
+                    System.nanoTime() - start);
         }
     }
 
+    /**
+     * Answer whether a <code>ChangeEventObserver</code> was ever added, so
+     * that changes are worth describing by a <code>ChangeEvent</code>.
+     */
+    final boolean hasEventObservers() {
+        return this.eventObservers;
+    }
+
+    /**
+     * Remember that an event observer was added.
+     */
+    private void noteObserver(final SAFObserver o) {
+        if (!this.eventObservers && unwrap(o) instanceof ChangeEventObserver) {
+            this.eventObservers = true;
+        }
+    }
+
+    /**
+     * Called by a <code>WeakObserver</code> whose observer was reclaimed.
+     */
+    final void observerCleared() {
+        this.purgeNeeded = true;
+    }
+
+    /**
+     * Remove the weak registrations whose observers have been reclaimed.
+     */
+    private void purgeObservers() {
+        this.purgeNeeded = false;
+        int purged = 0;
+        Object current;
+        Object next;
+        do {
+            current = this.obs;
+            if (current instanceof ObserverSet) {
+                purged = ((ObserverSet) current).purge();
+                break;
+            }
+            if (current instanceof SAFObserver) {
+                next = isCleared((SAFObserver) current) ? null : current;
+            } else if (current == null) {
+                next = null;
+            } else {
+                SAFObserver[] remaining = withoutCleared((SAFObserver[]) current);
+                if (remaining.length == 0) {
+                    next = null;
+                } else if (remaining.length == 1) {
+                    next = remaining[0];
+                } else {
+                    next = remaining;
+                }
+            }
+            purged = countOf(current) - countOf(next);
+        } while (next != current
+                && !OBSERVERS.compareAndSet(this, current, next));
+        AspectIndex currentIndex;
+        AspectIndex nextIndex = null;
+        do {
+            currentIndex = this.aspectObs;
+            if (currentIndex == null) {
+                break;
+            }
+            nextIndex = currentIndex.withoutCleared();
+        } while (nextIndex != currentIndex
+                && !ASPECT_OBSERVERS.compareAndSet(this, currentIndex,
+                        nextIndex));
+        if (currentIndex != null) {
+            purged += currentIndex.count() - nextIndex.count();
+        }
+        WeakObserver.purged(purged);
+    }
+
     /**
      * Marks this <tt>Observable</tt> object as having been changed; the
      * <tt>hasChanged</tt> method will now return <tt>true</tt>.
@@ -176,4 +717,432 @@ public class SAFObservable {
     protected void setChanged() {
         changed = true;
     }
+
+    /**
+     * Immutable index of the observers of single aspects, by aspect id.
+     */
+    private static final class AspectIndex {
+        /**
+         * The domain of the aspects in this index.
+         */
+        final Aspect.Domain domain;
+
+        /**
+         * The observers per aspect id, <code>null</code> for none.
+         */
+        final SAFObserver[][] buckets;
+
+        AspectIndex(final Aspect.Domain domain) {
+            this(domain, new SAFObserver[0][]);
+        }
+
+        private AspectIndex(final Aspect.Domain domain,
+                final SAFObserver[][] buckets) {
+            this.domain = domain;
+            this.buckets = buckets;
+        }
+
+        /**
+         * Answer the aspect of my domain with the name of the argument, or
+         * <code>null</code> when there is none.
+         */
+        Aspect find(final Aspect aspect) {
+            return aspect.domain == this.domain ? aspect : this.domain
+                    .find(aspect.getName());
+        }
+
+        /**
+         * Answer the observers of an aspect.
+         */
+        SAFObserver[] observersOf(final Aspect aspect) {
+            Aspect key = this.find(aspect);
+            if (key == null || key.getId() >= this.buckets.length) {
+                return NO_OBSERVERS;
+            }
+            SAFObserver[] bucket = this.buckets[key.getId()];
+            return bucket == null ? NO_OBSERVERS : bucket;
+        }
+
+        /**
+         * Answer the number of registrations.
+         */
+        int count() {
+            int count = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                if (this.buckets[i] != null) {
+                    count += this.buckets[i].length;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Answer an index with <code>o</code> added for aspect
+         * <code>id</code>, or myself when it is already there.
+         */
+        AspectIndex with(final int id, final SAFObserver o) {
+            SAFObserver[] bucket = id < this.buckets.length ? this.buckets[id]
+                    : null;
+            SAFObserver[] next = SAFObservable.with(bucket == null
+                    ? NO_OBSERVERS : bucket, o);
+            if (next == bucket) {
+                return this;
+            }
+            SAFObserver[][] nextBuckets = new SAFObserver[Math.max(
+                    this.buckets.length, id + 1)][];
+            System.arraycopy(this.buckets, 0, nextBuckets, 0,
+                    this.buckets.length);
+            nextBuckets[id] = next;
+            return new AspectIndex(this.domain, nextBuckets);
+        }
+
+        /**
+         * Answer an index without <code>o</code> for aspect <code>id</code>,
+         * or for all aspects when <code>id</code> is -1, or myself when
+         * nothing was removed.
+         */
+        AspectIndex without(final int id, final SAFObserver o) {
+            SAFObserver[][] nextBuckets = null;
+            for (int i = 0; i < this.buckets.length; i++) {
+                if ((id == -1 || id == i) && this.buckets[i] != null) {
+                    SAFObserver[] next = SAFObservable.without(
+                            this.buckets[i], o);
+                    if (next != this.buckets[i]) {
+                        if (nextBuckets == null) {
+                            nextBuckets = this.buckets.clone();
+                        }
+                        nextBuckets[i] = next.length == 0 ? null : next;
+                    }
+                }
+            }
+            return nextBuckets == null ? this : new AspectIndex(this.domain,
+                    nextBuckets);
+        }
+
+        /**
+         * Answer an index without the weak registrations of reclaimed
+         * observers, or myself when there are none.
+         */
+        AspectIndex withoutCleared() {
+            SAFObserver[][] nextBuckets = null;
+            for (int i = 0; i < this.buckets.length; i++) {
+                if (this.buckets[i] != null) {
+                    SAFObserver[] next = SAFObservable
+                            .withoutCleared(this.buckets[i]);
+                    if (next != this.buckets[i]) {
+                        if (nextBuckets == null) {
+                            nextBuckets = this.buckets.clone();
+                        }
+                        nextBuckets[i] = next.length == 0 ? null : next;
+                    }
+                }
+            }
+            return nextBuckets == null ? this : new AspectIndex(this.domain,
+                    nextBuckets);
+        }
+    }
+
+    /**
+     * Answer the observers stored in <code>current</code> with
+     * <code>o</code> added: the observer itself when there were none, an
+     * array, or an <code>ObserverSet</code> when the array would grow beyond
+     * <code>SMALL</code>. Answer <code>current</code> when it already holds
+     * <code>o</code>.
+     */
+    private static Object withObserver(final Object current,
+            final SAFObserver o) {
+        if (current == null) {
+            return o;
+        }
+        if (current instanceof SAFObserver) {
+            if (same((SAFObserver) current, o)) {
+                return current;
+            }
+            return new SAFObserver[] { (SAFObserver) current, o };
+        }
+        SAFObserver[] observers = (SAFObserver[]) current;
+        if (observers.length >= SMALL && indexOf(observers, o) < 0) {
+            return new ObserverSet(observers, o);
+        }
+        return with(observers, o);
+    }
+
+    /**
+     * Answer the observers stored in <code>current</code> without
+     * <code>o</code>, or <code>current</code> when it does not hold
+     * <code>o</code>.
+     */
+    private static Object withoutObserver(final Object current,
+            final SAFObserver o) {
+        if (current == null) {
+            return null;
+        }
+        if (current instanceof SAFObserver) {
+            return same((SAFObserver) current, o) ? null : current;
+        }
+        SAFObserver[] next = without((SAFObserver[]) current, o);
+        if (next.length == 0) {
+            return null;
+        }
+        return next.length == 1 ? next[0] : next;
+    }
+
+    /**
+     * Answer the observers stored in <code>current</code>, which is an array
+     * or an <code>ObserverSet</code>, as an array.
+     */
+    private static SAFObserver[] snapshotOf(final Object current) {
+        if (current instanceof ObserverSet) {
+            return ((ObserverSet) current).snapshot();
+        }
+        return (SAFObserver[]) current;
+    }
+
+    /**
+     * Answer the number of observers stored in <code>current</code>, which
+     * is not an <code>ObserverSet</code>.
+     */
+    private static int countOf(final Object current) {
+        if (current == null) {
+            return 0;
+        }
+        if (current instanceof SAFObserver) {
+            return 1;
+        }
+        return ((SAFObserver[]) current).length;
+    }
+
+    /**
+     * Observers beyond <code>SMALL</code>, in a hash map so that adding and
+     * deleting one does not scan or copy all of them. Unlike the arrays the
+     * set is modified in place, under its own lock; notification loops over a
+     * snapshot array that is rebuilt after a modification. A set is only
+     * replaced by <code>deleteObservers</code>, so whoever modified one checks
+     * afterwards that it is still the current one.
+     */
+    private static final class ObserverSet {
+        /**
+         * The registrations in the order they were added. A registration is
+         * keyed by its observer, except a weak one, which is keyed by itself
+         * so that the map does not keep its observer reachable.
+         */
+        private final LinkedHashMap<SAFObserver, SAFObserver> registrations = new LinkedHashMap<SAFObserver, SAFObserver>();
+
+        /**
+         * The number of weak registrations, which are found by a scan.
+         */
+        private int weak;
+
+        /**
+         * The registrations as an array, <code>null</code> after a
+         * modification.
+         */
+        private volatile SAFObserver[] snapshot;
+
+        ObserverSet(final SAFObserver[] observers, final SAFObserver o) {
+            for (int i = 0; i < observers.length; i++) {
+                this.put(observers[i]);
+            }
+            this.put(o);
+        }
+
+        synchronized void add(final SAFObserver o) {
+            if (this.find(o) == null) {
+                this.put(o);
+                this.snapshot = null;
+            }
+        }
+
+        synchronized void remove(final SAFObserver o) {
+            SAFObserver key = this.find(o);
+            if (key != null) {
+                if (this.registrations.remove(key) instanceof WeakObserver) {
+                    this.weak--;
+                }
+                this.snapshot = null;
+            }
+        }
+
+        synchronized int size() {
+            return this.registrations.size();
+        }
+
+        /**
+         * Remove the weak registrations of reclaimed observers and answer how
+         * many there were.
+         */
+        synchronized int purge() {
+            int purged = 0;
+            if (this.weak > 0) {
+                Iterator<SAFObserver> it = this.registrations.values()
+                        .iterator();
+                while (it.hasNext()) {
+                    if (isCleared(it.next())) {
+                        it.remove();
+                        purged++;
+                    }
+                }
+            }
+            if (purged > 0) {
+                this.weak -= purged;
+                this.snapshot = null;
+            }
+            return purged;
+        }
+
+        SAFObserver[] snapshot() {
+            SAFObserver[] observers = this.snapshot;
+            if (observers == null) {
+                synchronized (this) {
+                    observers = this.snapshot;
+                    if (observers == null) {
+                        observers = this.registrations.values().toArray(
+                                NO_OBSERVERS);
+                        this.snapshot = observers;
+                    }
+                }
+            }
+            return observers;
+        }
+
+        /**
+         * Add a registration known not to be present.
+         */
+        private void put(final SAFObserver o) {
+            this.registrations.put(o, o);
+            if (o instanceof WeakObserver) {
+                this.weak++;
+            }
+        }
+
+        /**
+         * Answer the key of the registration of the observer of
+         * <code>o</code>, or <code>null</code> when there is none.
+         */
+        private SAFObserver find(final SAFObserver o) {
+            SAFObserver target = unwrap(o);
+            if (target == null) {
+                return null;
+            }
+            if (this.registrations.containsKey(target)) {
+                return target;
+            }
+            if (this.weak > 0) {
+                Iterator<Map.Entry<SAFObserver, SAFObserver>> it = this.registrations
+                        .entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<SAFObserver, SAFObserver> entry = it.next();
+                    if (entry.getValue() instanceof WeakObserver
+                            && same(target, entry.getValue())) {
+                        return entry.getKey();
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Answer a copy of the array with <code>o</code> added at the end, or the
+     * array itself when it already contains <code>o</code>.
+     */
+    private static SAFObserver[] with(final SAFObserver[] observers,
+            final SAFObserver o) {
+        if (indexOf(observers, o) >= 0) {
+            return observers;
+        }
+        SAFObserver[] next = new SAFObserver[observers.length + 1];
+        System.arraycopy(observers, 0, next, 0, observers.length);
+        next[observers.length] = o;
+        return next;
+    }
+
+    /**
+     * Answer a copy of the array without <code>o</code>, or the array itself
+     * when it does not contain <code>o</code>.
+     */
+    private static SAFObserver[] without(final SAFObserver[] observers,
+            final SAFObserver o) {
+        int index = indexOf(observers, o);
+        if (index < 0) {
+            return observers;
+        }
+        if (observers.length == 1) {
+            return NO_OBSERVERS;
+        }
+        SAFObserver[] next = new SAFObserver[observers.length - 1];
+        System.arraycopy(observers, 0, next, 0, index);
+        System.arraycopy(observers, index + 1, next, index, next.length
+                - index);
+        return next;
+    }
+
+    /**
+     * Answer a copy of the array without the weak registrations of reclaimed
+     * observers, or the array itself when there are none.
+     */
+    private static SAFObserver[] withoutCleared(final SAFObserver[] observers) {
+        int cleared = 0;
+        for (int i = 0; i < observers.length; i++) {
+            if (isCleared(observers[i])) {
+                cleared++;
+            }
+        }
+        if (cleared == 0) {
+            return observers;
+        }
+        if (cleared == observers.length) {
+            return NO_OBSERVERS;
+        }
+        SAFObserver[] next = new SAFObserver[observers.length - cleared];
+        int j = 0;
+        for (int i = 0; i < observers.length; i++) {
+            if (!isCleared(observers[i])) {
+                next[j++] = observers[i];
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Answer whether the argument is a weak registration of a reclaimed
+     * observer.
+     */
+    private static boolean isCleared(final SAFObserver o) {
+        return o instanceof WeakObserver && ((WeakObserver) o).get() == null;
+    }
+
+    /**
+     * Answer the observer registered by the argument: the argument itself,
+     * or the observer of a weak registration.
+     */
+    private static SAFObserver unwrap(final SAFObserver o) {
+        return o instanceof WeakObserver ? ((WeakObserver) o).get() : o;
+    }
+
+    /**
+     * Answer the index of an observer equal to <code>o</code> in the array,
+     * or -1 when there is none. Weak registrations are compared by their
+     * observer.
+     */
+    private static int indexOf(final SAFObserver[] observers,
+            final SAFObserver o) {
+        for (int i = 0; i < observers.length; i++) {
+            if (same(o, observers[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Answer whether two registrations are of the same observer. Weak
+     * registrations are compared by their observer.
+     */
+    private static boolean same(final SAFObserver o, final SAFObserver other) {
+        SAFObserver target = unwrap(o);
+        SAFObserver observer = unwrap(other);
+        return target != null && observer != null
+                && (target == observer || target.equals(observer));
+    }
 }
@@ -36,4 +36,18 @@ public interface SAFObserver {
  *                 method.
  */
 void update(Object o, Object arg);
+/**
+ * This method is called instead of <code>update(Object, Object)</code> when
+ * the change is described by an <code>Aspect</code>. Aspects are interned, so
+ * observers that override this method can compare them with <code>==</code>.
+ * The default passes the name of the aspect to
+ * <code>update(Object, Object)</code>, so that observers expecting a
+ * <code>String</code> keep working.
+ *
+ * @param   o        the observable object.
+ * @param   aspect   the aspect that changed.
+ */
+default void update(Object o, Aspect aspect) {
+    this.update(o, aspect == null ? null : aspect.getName());
+}
 }
@@ -0,0 +1,75 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes over the latest value of its source at the end of every interval in
+ * which the source changed. The intervals start with the first change after a
+ * quiet interval, so a value that does not change costs nothing. For values
+ * that change continuously, such as prices and sensor readings.
+ *
+ * @see TimedValue
+ */
+public final class SampledValue extends TimedValue {
+
+    /**
+     * Set while intervals run.
+     */
+    private boolean sampling;
+
+    /**
+     * Set when the source changed during the current interval.
+     */
+    private boolean changed;
+
+    /**
+     * Constructor for a sampled value on the shared wheel.
+     *
+     * @param source
+     *        the value to follow
+     * @param interval
+     *        the time between two samples
+     * @param unit
+     *        the unit of <code>interval</code>
+     */
+    public SampledValue(final IValue source, final long interval,
+            final TimeUnit unit) {
+        this(source, interval, unit, TimingWheel.SHARED);
+    }
+
+    /**
+     * Constructor for a sampled value.
+     *
+     * @param source
+     *        the value to follow
+     * @param interval
+     *        the time between two samples
+     * @param unit
+     *        the unit of <code>interval</code>
+     * @param wheel
+     *        the wheel to time the intervals on
+     */
+    public SampledValue(final IValue source, final long interval,
+            final TimeUnit unit, final TimingWheel wheel) {
+        super(source, interval, unit, wheel);
+    }
+
+    boolean sourceChanged() {
+        this.changed = true;
+        if (!this.sampling) {
+            this.sampling = true;
+            this.startInterval();
+        }
+        return false;
+    }
+
+    boolean intervalEnded() {
+        if (!this.changed) {
+            this.sampling = false;
+            return false;
+        }
+        this.changed = false;
+        this.startInterval();
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes over the value of its source at most once per interval. The first
+ * change after a quiet interval is passed on at once; the changes made during
+ * the interval that follows are passed on at its end, with the last value.
+ * For values whose first change matters, such as a status or a progress
+ * counter.
+ *
+ * @see TimedValue
+ */
+public final class ThrottledValue extends TimedValue {
+
+    /**
+     * Set while an interval runs.
+     */
+    private boolean throttling;
+
+    /**
+     * Set when the source changed during the interval.
+     */
+    private boolean trailing;
+
+    /**
+     * Constructor for a throttled value on the shared wheel.
+     *
+     * @param source
+     *        the value to follow
+     * @param interval
+     *        the minimum time between two changes passed on
+     * @param unit
+     *        the unit of <code>interval</code>
+     */
+    public ThrottledValue(final IValue source, final long interval,
+            final TimeUnit unit) {
+        this(source, interval, unit, TimingWheel.SHARED);
+    }
+
+    /**
+     * Constructor for a throttled value.
+     *
+     * @param source
+     *        the value to follow
+     * @param interval
+     *        the minimum time between two changes passed on
+     * @param unit
+     *        the unit of <code>interval</code>
+     * @param wheel
+     *        the wheel to time the intervals on
+     */
+    public ThrottledValue(final IValue source, final long interval,
+            final TimeUnit unit, final TimingWheel wheel) {
+        super(source, interval, unit, wheel);
+    }
+
+    boolean sourceChanged() {
+        if (this.throttling) {
+            this.trailing = true;
+            return false;
+        }
+        this.throttling = true;
+        this.startInterval();
+        return true;
+    }
+
+    boolean intervalEnded() {
+        if (!this.trailing) {
+            this.throttling = false;
+            return false;
+        }
+        this.trailing = false;
+        this.startInterval();
+        return true;
+    }
+}
@@ -0,0 +1,191 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A value that follows another value, its source, at a slower pace: it takes
+ * over the value of the source when the changes of the source pass its timing
+ * rule, and only then notifies its own observers. So a price, reading or
+ * counter that changes a thousand times a second can be shown or stored a few
+ * times a second, by the same adapters as any other value.
+ * <p>
+ * The timing rule is that of the subclass: <code>DebouncedValue</code> waits
+ * until the source is quiet, <code>ThrottledValue</code> passes the first
+ * change at once and then at most one per interval, and
+ * <code>SampledValue</code> passes the latest value at the end of every
+ * interval in which the source changed. Setting my value sets the value of
+ * the source, so I can be the subject of an <code>AspectAdapter</code> or a
+ * <code>BufferedDynamicValue</code> like any <code>DynamicValue</code>.
+ * <p>
+ * All timed values share the <code>TimingWheel.SHARED</code> wheel unless
+ * given one, and each has one timeout on it, so they need no timer or thread
+ * of their own. The observers of a timed value are notified on the thread of
+ * the wheel. <code>untie()</code> detaches a timed value from its source.
+ *
+ * @see TimingWheel
+ */
+public abstract class TimedValue extends DynamicValue {
+
+    private final IValue source;
+
+    private final TimingWheel wheel;
+
+    private final long intervalNanos;
+
+    /**
+     * Ends the current interval; also the lock guarding the state of the
+     * timing rule.
+     */
+    private final TimingWheel.Timeout timeout = new TimingWheel.Timeout() {
+        protected void expired() {
+            boolean publish;
+            synchronized (this) {
+                publish = TimedValue.this.intervalEnded();
+            }
+            if (publish) {
+                TimedValue.this.publish();
+            }
+        }
+    };
+
+    private final LongAdder received = new LongAdder();
+
+    private final LongAdder published = new LongAdder();
+
+    /**
+     * Constructor for a timed value, registering with the source.
+     *
+     * @param newSource
+     *        the value to follow, which must be an <code>SAFObservable</code>
+     * @param interval
+     *        the interval of the timing rule
+     * @param unit
+     *        the unit of <code>interval</code>
+     * @param newWheel
+     *        the wheel to time the intervals on
+     * @throws IllegalArgumentException
+     *         when the source does not notify its changes, or the interval,
+     *         unit or wheel is not valid
+     */
+    TimedValue(final IValue newSource, final long interval,
+            final TimeUnit unit, final TimingWheel newWheel) {
+        super(initialValue(newSource, interval, unit, newWheel));
+        this.source = newSource;
+        this.wheel = newWheel;
+        this.intervalNanos = unit.toNanos(interval);
+        ((SAFObservable) newSource).addObserver(this);
+    }
+
+    /**
+     * Check the arguments of the constructor before the source is read, and
+     * answer the value of the source to start with.
+     */
+    private static Object initialValue(final IValue newSource,
+            final long interval, final TimeUnit unit,
+            final TimingWheel newWheel) {
+        if (!(newSource instanceof SAFObservable)) {
+            throw new IllegalArgumentException(newSource
+                    + " does not notify its changes");
+        }
+        if (interval < 1 || unit == null || newWheel == null) {
+            throw new IllegalArgumentException("interval " + interval + " "
+                    + unit);
+        }
+        return newSource.getValue();
+    }
+
+    /**
+     * Called, locked, when the source changed.
+     *
+     * @return true to take over the value of the source now
+     */
+    abstract boolean sourceChanged();
+
+    /**
+     * Called, locked, when an interval started by <code>startInterval</code>
+     * ended.
+     *
+     * @return true to take over the value of the source now
+     */
+    abstract boolean intervalEnded();
+
+    /**
+     * Start an interval, or start it again when one is running.
+     */
+    final void startInterval() {
+        this.wheel.schedule(this.timeout, this.intervalNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Take over the value of the source and notify my observers.
+     */
+    private void publish() {
+        this.published.increment();
+        super.setValue(this.source.getValue());
+    }
+
+    /**
+     * Apply the timing rule to a change of the source.
+     *
+     * @param sender
+     *        the Observable firing the update
+     * @param aspect
+     *        the Object describing the kind of change
+     */
+    public void update(final Object sender, final Object aspect) {
+        if (sender != this.source) {
+            return;
+        }
+        this.received.increment();
+        boolean publish;
+        synchronized (this.timeout) {
+            publish = this.sourceChanged();
+        }
+        if (publish) {
+            this.publish();
+        }
+    }
+
+    /**
+     * Set the value of the source; I take it over according to the timing
+     * rule.
+     *
+     * @param anObject
+     *        the new value
+     */
+    public void setValue(final Object anObject) {
+        this.source.setValue(anObject);
+    }
+
+    /**
+     * @return the value I follow
+     */
+    public IValue getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return the number of changes of the source
+     */
+    public long getReceivedCount() {
+        return this.received.sum();
+    }
+
+    /**
+     * @return the number of times I took over the value of the source
+     */
+    public long getPublishedCount() {
+        return this.published.sum();
+    }
+
+    /**
+     * Detach from the source and stop timing.
+     */
+    public void untie() {
+        ((SAFObservable) this.source).deleteObserver(this);
+        this.wheel.cancel(this.timeout);
+        super.untie();
+    }
+}
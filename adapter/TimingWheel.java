@@ -0,0 +1,349 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs timeouts for any number of objects on one thread. Scheduling,
+ * rescheduling and cancelling a timeout take constant time and allocate
+ * nothing, so a million values that each reset a timer on every change do
+ * not need a million timers, nor a priority queue of them.
+ * <p>
+ * Time is divided into ticks. The wheel has six levels of 64 slots; a slot of
+ * the first level holds the timeouts of one tick, a slot of the next level
+ * those of 64 ticks, and so on. A timeout is put in the slot of the lowest
+ * level that reaches its deadline, and moved down a level each time the
+ * level below has turned once, until it expires. With ticks of a millisecond
+ * the wheel reaches two thousand years.
+ * <p>
+ * A timeout expires on the thread of the wheel, at most one tick late. The
+ * thread only runs while timeouts are scheduled. A timeout that takes long to
+ * run delays the others, so it should hand slow work to another thread.
+ *
+ * @see Timeout
+ * @see TimedValue
+ */
+public final class TimingWheel {
+
+    /**
+     * A wheel with ticks of a millisecond, for all who need no other.
+     */
+    public static final TimingWheel SHARED = new TimingWheel(1,
+            TimeUnit.MILLISECONDS);
+
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int LEVELS = 6;
+
+    /**
+     * Something to run at a later time. A timeout is scheduled on one wheel
+     * at a time; scheduling it again moves it.
+     */
+    public abstract static class Timeout {
+
+        /**
+         * The tick in which I expire.
+         */
+        private long deadline;
+
+        private Timeout previous;
+
+        private Timeout next;
+
+        /**
+         * The next timeout expiring in the same tick.
+         */
+        private Timeout nextDue;
+
+        /**
+         * Set when I expire, cleared when I am scheduled or cancelled before
+         * I have run.
+         */
+        private boolean due;
+
+        /**
+         * The slot I am in, <code>null</code> when I am not scheduled.
+         */
+        private Timeout[] slot;
+
+        private int slotIndex;
+
+        /**
+         * Called on the thread of the wheel when the timeout expires.
+         */
+        protected abstract void expired();
+    }
+
+    private final long tickNanos;
+
+    private final long origin = System.nanoTime();
+
+    /**
+     * The heads of the lists of timeouts in each slot of each level.
+     */
+    private final Timeout[][] levels = new Timeout[LEVELS][SLOTS];
+
+    /**
+     * The tick up to which timeouts have expired.
+     */
+    private long now;
+
+    private int size;
+
+    private Thread thread;
+
+    private final LongAdder expired = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * Constructor for a wheel. Its thread is started when the first timeout
+     * is scheduled.
+     *
+     * @param tick
+     *        the length of a tick
+     * @param unit
+     *        the unit of <code>tick</code>
+     */
+    public TimingWheel(final long tick, final TimeUnit unit) {
+        if (tick < 1) {
+            throw new IllegalArgumentException("tick " + tick);
+        }
+        this.tickNanos = unit.toNanos(tick);
+    }
+
+    /**
+     * Answer the current tick.
+     */
+    private long currentTick() {
+        return (System.nanoTime() - this.origin) / this.tickNanos;
+    }
+
+    /**
+     * Schedule a timeout to expire after a delay, moving it when it is
+     * already scheduled. The delay is rounded up to whole ticks.
+     *
+     * @param timeout
+     *        the timeout
+     * @param delay
+     *        the delay, at least one tick
+     * @param unit
+     *        the unit of <code>delay</code>
+     */
+    public synchronized void schedule(final Timeout timeout, final long delay,
+            final TimeUnit unit) {
+        timeout.due = false;
+        if (timeout.slot != null) {
+            this.unlink(timeout);
+        } else {
+            this.size++;
+        }
+        if (this.size == 1) {
+            // idle until now: no timeouts to expire on the way
+            this.now = Math.max(this.now, this.currentTick());
+        }
+        // round the deadline up, so that the timeout never expires early
+        long end = System.nanoTime() - this.origin
+                + Math.max(unit.toNanos(delay), this.tickNanos);
+        timeout.deadline = (end + this.tickNanos - 1) / this.tickNanos;
+        this.link(timeout);
+        if (this.thread == null) {
+            this.thread = new Thread("saf-timing-wheel") {
+                public void run() {
+                    turn();
+                }
+            };
+            this.thread.setDaemon(true);
+            this.thread.start();
+        } else if (this.size == 1) {
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Cancel a timeout.
+     *
+     * @param timeout
+     *        the timeout
+     * @return false when it was not scheduled
+     */
+    public synchronized boolean cancel(final Timeout timeout) {
+        if (timeout.slot == null) {
+            boolean wasDue = timeout.due;
+            timeout.due = false;
+            return wasDue;
+        }
+        this.unlink(timeout);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Answer whether a timeout is scheduled.
+     *
+     * @param timeout
+     *        the timeout
+     * @return true when it has not yet expired or been cancelled
+     */
+    public synchronized boolean isScheduled(final Timeout timeout) {
+        return timeout.slot != null;
+    }
+
+    /**
+     * Put a timeout in the slot of the lowest level that reaches its
+     * deadline.
+     */
+    private void link(final Timeout timeout) {
+        long delta = timeout.deadline - this.now;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long deadline = level == LEVELS - 1 ? Math.min(timeout.deadline,
+                this.now + (1L << (SLOT_BITS * LEVELS)) - 1) : timeout.deadline;
+        Timeout[] slots = this.levels[level];
+        int index = (int) (deadline >>> (SLOT_BITS * level)) & (SLOTS - 1);
+        timeout.slot = slots;
+        timeout.slotIndex = index;
+        timeout.previous = null;
+        timeout.next = slots[index];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        slots[index] = timeout;
+    }
+
+    /**
+     * Take a timeout out of its slot.
+     */
+    private void unlink(final Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            timeout.slot[timeout.slotIndex] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.slot = null;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    /**
+     * Advance one tick: move the timeouts of the higher levels down when the
+     * level below has turned, and answer the list of timeouts that expire.
+     */
+    private Timeout advance() {
+        this.now++;
+        int top = 0;
+        while (top < LEVELS - 1
+                && (this.now & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        // from the top, so that nothing is moved into a slot already emptied
+        for (int level = top; level > 0; level--) {
+            Timeout[] slots = this.levels[level];
+            int index = (int) (this.now >>> (SLOT_BITS * level)) & (SLOTS - 1);
+            Timeout timeout = slots[index];
+            slots[index] = null;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                this.link(timeout);
+                timeout = next;
+            }
+        }
+        Timeout[] slots = this.levels[0];
+        int index = (int) this.now & (SLOTS - 1);
+        Timeout due = slots[index];
+        slots[index] = null;
+        for (Timeout timeout = due; timeout != null; timeout = timeout.next) {
+            timeout.slot = null;
+            timeout.due = true;
+            timeout.nextDue = timeout.next;
+            this.size--;
+        }
+        return due;
+    }
+
+    /**
+     * The loop of the thread of the wheel.
+     */
+    private void turn() {
+        while (true) {
+            Timeout due;
+            synchronized (this) {
+                try {
+                    while (this.size == 0) {
+                        this.wait();
+                    }
+                    long wait;
+                    while (this.size > 0
+                            && (wait = (this.now + 1) * this.tickNanos
+                                    - (System.nanoTime() - this.origin)) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, wait);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (this.size == 0) {
+                    continue;
+                }
+                due = this.advance();
+            }
+            while (due != null) {
+                Timeout timeout = due;
+                synchronized (this) {
+                    due = timeout.nextDue;
+                    timeout.nextDue = null;
+                    // unless an earlier one scheduled or cancelled it
+                    if (!timeout.due) {
+                        continue;
+                    }
+                    timeout.due = false;
+                    timeout.previous = null;
+                    timeout.next = null;
+                }
+                this.expired.increment();
+                try {
+                    timeout.expired();
+                } catch (RuntimeException e) {
+                    this.failures.increment();
+                    this.lastFailure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of timeouts scheduled
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of timeouts that expired
+     */
+    public long getExpiredCount() {
+        return this.expired.sum();
+    }
+
+    /**
+     * @return the number of timeouts that threw an exception
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return the last exception thrown by a timeout, or <code>null</code>
+     */
+    public RuntimeException getLastFailure() {
+        return this.lastFailure;
+    }
+}
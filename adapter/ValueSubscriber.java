@@ -0,0 +1,145 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Sets the items of a <code>Flow.Publisher</code> as the value of an
+ * <code>IValue</code>, so that a stream can drive a value model and
+ * everything adapted to it. Items are requested <code>batchSize</code> at a
+ * time; the next batch is requested when half of the previous one has been
+ * set, so that the publisher need not wait for the value.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     aPublisher.subscribe(new ValueSubscriber(aValue));
+ * </code></pre>
+ *
+ * @see ChangePublisher
+ */
+public class ValueSubscriber implements Flow.Subscriber<Object> {
+
+    private final IValue value;
+
+    private final int batchSize;
+
+    private volatile Flow.Subscription subscription;
+
+    /**
+     * The number of items set since the last request.
+     */
+    private int consumed;
+
+    private volatile boolean completed;
+
+    private volatile Throwable failure;
+
+    /**
+     * Constructor for a subscriber requesting 32 items at a time.
+     *
+     * @param value
+     *        the value to set
+     */
+    public ValueSubscriber(final IValue value) {
+        this(value, 32);
+    }
+
+    /**
+     * Constructor for a subscriber.
+     *
+     * @param value
+     *        the value to set
+     * @param batchSize
+     *        the number of items to request at a time
+     */
+    public ValueSubscriber(final IValue value, final int batchSize) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size " + batchSize);
+        }
+        this.value = value;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Request the first batch, or cancel the subscription when I am already
+     * subscribed.
+     *
+     * @param newSubscription
+     *        the subscription
+     */
+    public void onSubscribe(final Flow.Subscription newSubscription) {
+        if (this.subscription != null) {
+            newSubscription.cancel();
+            return;
+        }
+        this.subscription = newSubscription;
+        newSubscription.request(this.batchSize);
+    }
+
+    /**
+     * Set the item as the value, and request more when half of the batch
+     * has been set.
+     *
+     * @param item
+     *        the new value
+     */
+    public void onNext(final Object item) {
+        this.value.setValue(item);
+        if (++this.consumed >= (this.batchSize + 1) / 2) {
+            int n = this.consumed;
+            this.consumed = 0;
+            this.subscription.request(n);
+        }
+    }
+
+    /**
+     * Remember the failure of the publisher.
+     *
+     * @param throwable
+     *        the failure
+     */
+    public void onError(final Throwable throwable) {
+        this.failure = throwable;
+    }
+
+    /**
+     * Remember that the publisher completed.
+     */
+    public void onComplete() {
+        this.completed = true;
+    }
+
+    /**
+     * Stop setting the value.
+     */
+    public void cancel() {
+        Flow.Subscription current = this.subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * @return the value being set
+     */
+    public IValue getValue() {
+        return this.value;
+    }
+
+    /**
+     * @return true when the publisher completed
+     */
+    public boolean isCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * @return the failure the publisher signalled, or <code>null</code>
+     */
+    public Throwable getFailure() {
+        return this.failure;
+    }
+}
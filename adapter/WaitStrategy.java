@@ -0,0 +1,74 @@
+package sepher.saf.adapter;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits for a <code>RingBufferDispatcher</code>: a consumer
+ * waiting for new notifications, or a producer waiting for a free slot in a
+ * full ring. Each strategy is called in a loop with a counter of the number of
+ * times it has already waited, and answers the next value of that counter.
+ * 
+ * @see RingBufferDispatcher
+ */
+public enum WaitStrategy {
+
+    /**
+     * Busy spin. Lowest latency, but keeps a core busy.
+     */
+    SPIN {
+        public int idle(final int counter) {
+            Thread.onSpinWait();
+            return counter + 1;
+        }
+    },
+
+    /**
+     * Spin for a while, then yield the processor to other threads.
+     */
+    YIELD {
+        public int idle(final int counter) {
+            if (counter < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    },
+
+    /**
+     * Spin, then yield, then park for a short time. Leaves cores free when
+     * there is nothing to do, at the cost of some latency.
+     */
+    PARK {
+        public int idle(final int counter) {
+            if (counter < SPINS) {
+                Thread.onSpinWait();
+            } else if (counter < 2 * SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            return counter + 1;
+        }
+    };
+
+    /**
+     * The number of times to spin before backing off.
+     */
+    static final int SPINS = 100;
+
+    /**
+     * The time to park in nanoseconds.
+     */
+    static final long PARK_NANOS = 50000L;
+
+    /**
+     * Wait once.
+     * 
+     * @param counter
+     *        the number of times waited so far, 0 the first time
+     * @return the counter for the next call
+     */
+    public abstract int idle(int counter);
+}
@@ -0,0 +1,146 @@
+package sepher.saf.adapter;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registration of an observer that does not keep it reachable. A long-lived
+ * domain object keeps every adapter registered with it reachable until
+ * <code>untie()</code> is called; an adapter registered weakly is reclaimed
+ * as soon as nothing else refers to it, for instance when the screen it
+ * belongs to has been closed.
+ * <p>
+ * Use <code>addWeakObserver</code> rather than creating instances directly.
+ * A registration whose observer has been reclaimed is removed by the
+ * observable the next time it notifies its observers. The number of
+ * registrations removed that way is counted by
+ * <code>getPurgedCount</code>.
+ * <p>
+ * <code>deleteObserver</code> removes a weak registration when it is given
+ * the observer itself, so code that unhooks explicitly does not need to know
+ * how the observer was added.
+ *
+ * @see SAFObservable#addWeakObserver(SAFObserver)
+ */
+public final class WeakObserver implements ChangeEventObserver {
+
+    /**
+     * The number of registrations purged because their observer was
+     * reclaimed.
+     */
+    private static final LongAdder PURGED = new LongAdder();
+
+    /**
+     * The observer.
+     */
+    private final WeakReference<SAFObserver> reference;
+
+    /**
+     * Constructor for a weak registration of an observer.
+     *
+     * @param observer
+     *        the observer to notify while it is reachable
+     */
+    public WeakObserver(final SAFObserver observer) {
+        if (observer == null) {
+            throw new NullPointerException();
+        }
+        this.reference = new WeakReference<SAFObserver>(observer);
+    }
+
+    /**
+     * Answer the observer.
+     *
+     * @return the observer, or <code>null</code> when it has been reclaimed
+     */
+    public SAFObserver get() {
+        return this.reference.get();
+    }
+
+    /**
+     * Forward the update to the observer, or have the sender purge this
+     * registration when the observer has been reclaimed.
+     *
+     * @param sender
+     *        the observable object
+     * @param arg
+     *        the argument of <code>notifyObservers</code>
+     */
+    public void update(final Object sender, final Object arg) {
+        SAFObserver observer = this.reference.get();
+        if (observer == null) {
+            cleared(sender);
+        } else {
+            observer.update(sender, arg);
+        }
+    }
+
+    /**
+     * Forward the update to the observer, or have the sender purge this
+     * registration when the observer has been reclaimed.
+     *
+     * @param sender
+     *        the observable object
+     * @param aspect
+     *        the aspect that changed
+     */
+    public void update(final Object sender, final Aspect aspect) {
+        SAFObserver observer = this.reference.get();
+        if (observer == null) {
+            cleared(sender);
+        } else {
+            observer.update(sender, aspect);
+        }
+    }
+
+    /**
+     * Forward the event to the observer, as an update of its aspect when the
+     * observer does not take events.
+     *
+     * @param event
+     *        the change
+     */
+    public void changed(final ChangeEvent event) {
+        SAFObserver observer = this.reference.get();
+        if (observer == null) {
+            cleared(event.getSource());
+        } else if (observer instanceof ChangeEventObserver) {
+            ((ChangeEventObserver) observer).changed(event);
+        } else {
+            observer.update(event.getSource(), event.getAspect());
+        }
+    }
+
+    /**
+     * Answer the number of weak registrations removed from their observable
+     * because their observer had been reclaimed.
+     *
+     * @return the number of purged registrations
+     */
+    public static long getPurgedCount() {
+        return PURGED.sum();
+    }
+
+    /**
+     * Count purged registrations.
+     */
+    static void purged(final int count) {
+        PURGED.add(count);
+    }
+
+    /**
+     * Tell the sender that it holds a registration to purge.
+     */
+    private static void cleared(final Object sender) {
+        if (sender instanceof SAFObservable) {
+            ((SAFObservable) sender).observerCleared();
+        }
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "weak " + this.reference.get();
+    }
+}
@@ -0,0 +1,457 @@
+package sepher.saf.adapter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persists the changes of the subjects it observes behind their back. A
+ * change only marks the aspect of the subject dirty, which costs a map
+ * lookup on the thread that made it; a flusher thread writes the dirty
+ * aspects to a <code>Store</code> in batches. A batch is written when
+ * <code>batchSize</code> aspects are dirty or <code>flushInterval</code> has
+ * passed, whichever comes first. Changing an aspect that is already dirty
+ * only replaces its value, so ten changes of a field between two flushes are
+ * written once.
+ * <p>
+ * A change reported with its new value (a <code>ChangeEvent</code>) is
+ * written with that value; for other changes the value is read through the
+ * getter of the aspect when the batch is written. When the store fails the
+ * batch is kept, merged with the changes made since, and tried again after
+ * the next interval.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     WriteBehindObserver writeBehind = new WriteBehindObserver(aStore, 500,
+ *             100);
+ *     aPerson.addObserver(writeBehind);
+ *     ...
+ *     writeBehind.shutdown();
+ * </code></pre>
+ *
+ * <code>shutdown</code> writes everything still dirty before it returns;
+ * <code>installShutdownHook</code> has the JVM call it on exit.
+ *
+ * @see Store
+ */
+public class WriteBehindObserver implements ChangeEventObserver {
+
+    /**
+     * Marks a value to be read from the subject when it is written.
+     */
+    private static final Object NOT_READ = new Object();
+
+    /**
+     * Where a <code>WriteBehindObserver</code> writes to, such as a database
+     * or a <code>Journal</code>.
+     */
+    public interface Store {
+
+        /**
+         * Write a batch of changes. Called on one thread at a time.
+         *
+         * @param writes
+         *        the changes, one per aspect of a subject, in the order in
+         *        which the aspects first became dirty
+         * @throws Exception
+         *         when the batch could not be written; it is tried again
+         */
+        void write(List<Write> writes) throws Exception;
+    }
+
+    /**
+     * The latest value of an aspect of a subject, to be written.
+     */
+    public static final class Write {
+
+        private final Object subject;
+
+        private final String aspect;
+
+        private Object value;
+
+        Write(final Object subject, final String aspect, final Object value) {
+            this.subject = subject;
+            this.aspect = aspect;
+            this.value = value;
+        }
+
+        /**
+         * @return the subject that changed
+         */
+        public Object getSubject() {
+            return this.subject;
+        }
+
+        /**
+         * @return the name of the aspect that changed
+         */
+        public String getAspect() {
+            return this.aspect;
+        }
+
+        /**
+         * @return the value to write
+         */
+        public Object getValue() {
+            return this.value;
+        }
+
+        public String toString() {
+            return "(" + this.subject + " " + this.aspect + " = "
+                    + this.value + ")";
+        }
+    }
+
+    /**
+     * An aspect of a subject, the subject compared by identity.
+     */
+    private static final class Key {
+        private final Object subject;
+
+        private final String aspect;
+
+        Key(final Object subject, final String aspect) {
+            this.subject = subject;
+            this.aspect = aspect;
+        }
+
+        public boolean equals(final Object other) {
+            return other instanceof Key && ((Key) other).subject == this.subject
+                    && ((Key) other).aspect.equals(this.aspect);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(this.subject) * 31
+                    + this.aspect.hashCode();
+        }
+    }
+
+    private final Store store;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    /**
+     * The dirty aspects, in the order in which they became dirty. Replaced
+     * when a batch is taken.
+     */
+    private LinkedHashMap<Key, Write> dirty = new LinkedHashMap<Key, Write>();
+
+    private int maxQueueDepth;
+
+    /**
+     * Cleared by <code>shutdown</code>.
+     */
+    private boolean running = true;
+
+    /**
+     * Held while a batch is written, so that batches are written in order.
+     */
+    private final Object flushLock = new Object();
+
+    private final Thread flusher;
+
+    private final LongAdder recorded = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final NotificationMetrics.Histogram flushLatency = new NotificationMetrics.Histogram();
+
+    private volatile Exception lastFailure;
+
+    /**
+     * Constructor for a write-behind observer.
+     *
+     * @param store
+     *        where the changes are written
+     * @param batchSize
+     *        the number of dirty aspects that triggers a flush
+     * @param flushInterval
+     *        the maximum number of milliseconds between flushes
+     */
+    public WriteBehindObserver(final Store store, final int batchSize,
+            final long flushInterval) {
+        if (store == null || batchSize < 1 || flushInterval < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.store = store;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.flusher = new Thread("saf-write-behind") {
+            public void run() {
+                flushContinuously();
+            }
+        };
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Mark the aspect of the event dirty with its new value.
+     *
+     * @param event
+     *        the change
+     */
+    public void changed(final ChangeEvent event) {
+        this.record(event.getSource(), event.getAspect().getName(), event
+                .getNewValue());
+    }
+
+    /**
+     * Mark an aspect dirty, to be read when it is written.
+     *
+     * @param sender
+     *        the subject
+     * @param arg
+     *        the name of the aspect that changed
+     */
+    public void update(final Object sender, final Object arg) {
+        if (arg instanceof String) {
+            this.record(sender, (String) arg, NOT_READ);
+        }
+    }
+
+    /**
+     * Mark an aspect of a subject dirty.
+     */
+    private void record(final Object subject, final String aspect,
+            final Object value) {
+        this.recorded.increment();
+        synchronized (this) {
+            if (!this.running) {
+                return;
+            }
+            Key key = new Key(subject, aspect);
+            Write write = this.dirty.get(key);
+            if (write != null) {
+                write.value = value;
+                this.coalesced.increment();
+                return;
+            }
+            this.dirty.put(key, new Write(subject, aspect, value));
+            int depth = this.dirty.size();
+            if (depth > this.maxQueueDepth) {
+                this.maxQueueDepth = depth;
+            }
+            if (depth == this.batchSize) {
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Write the dirty aspects now, on the calling thread.
+     *
+     * @return the number of aspects written, 0 when the store failed
+     */
+    public int flush() {
+        synchronized (this.flushLock) {
+            LinkedHashMap<Key, Write> batch;
+            synchronized (this) {
+                if (this.dirty.isEmpty()) {
+                    return 0;
+                }
+                batch = this.dirty;
+                this.dirty = new LinkedHashMap<Key, Write>();
+            }
+            List<Write> writes = new ArrayList<Write>(batch.size());
+            for (Iterator<Write> it = batch.values().iterator(); it.hasNext();) {
+                Write write = it.next();
+                if (write.value == NOT_READ) {
+                    write.value = read(write);
+                }
+                if (write.value != NOT_READ) {
+                    writes.add(write);
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                this.store.write(writes);
+                this.written.add(writes.size());
+                return writes.size();
+            } catch (Exception e) {
+                this.failures.increment();
+                this.lastFailure = e;
+                this.requeue(batch);
+                return 0;
+            } finally {
+                this.flushLatency.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Put a batch the store failed to write back in front of the aspects
+     * that became dirty since, keeping their newer values.
+     */
+    private synchronized void requeue(final LinkedHashMap<Key, Write> batch) {
+        for (Iterator<Map.Entry<Key, Write>> it = this.dirty.entrySet()
+                .iterator(); it.hasNext();) {
+            Map.Entry<Key, Write> entry = it.next();
+            batch.put(entry.getKey(), entry.getValue());
+        }
+        this.dirty = batch;
+    }
+
+    /**
+     * Read the value of a write through the getter of its aspect.
+     */
+    private static Object read(final Write write) {
+        try {
+            return AccessorCache.forAspect(write.subject.getClass(),
+                    write.aspect).get(write.subject);
+        } catch (NoSuchMethodException e) {
+            return NOT_READ;
+        } catch (InvocationTargetException e) {
+            return NOT_READ;
+        }
+    }
+
+    /**
+     * The loop of the flusher thread.
+     */
+    private void flushContinuously() {
+        long deadline = System.nanoTime() + this.flushIntervalNanos;
+        while (true) {
+            synchronized (this) {
+                long wait;
+                while (this.running && this.dirty.size() < this.batchSize
+                        && (wait = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!this.running) {
+                    return;
+                }
+            }
+            long failed = this.failures.sum();
+            this.flush();
+            deadline = System.nanoTime() + this.flushIntervalNanos;
+            if (this.failures.sum() != failed) {
+                // let the store recover before the batch is tried again
+                synchronized (this) {
+                    try {
+                        while (this.running
+                                && (deadline - System.nanoTime()) > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this, deadline
+                                    - System.nanoTime());
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the flusher thread and write everything that is still dirty.
+     * Changes made after this call are not written; remove the observer from
+     * its subjects first.
+     *
+     * @return the number of aspects that could not be written because the
+     *         store failed, 0 when everything was written
+     * @throws InterruptedException
+     *         when interrupted while waiting for the flusher thread
+     */
+    public int shutdown() throws InterruptedException {
+        synchronized (this) {
+            this.running = false;
+            this.notifyAll();
+        }
+        this.flusher.join();
+        this.flush();
+        return this.getQueueDepth();
+    }
+
+    /**
+     * Have the JVM call <code>shutdown</code> when it exits.
+     */
+    public void installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(
+                new Thread("saf-write-behind-shutdown") {
+                    public void run() {
+                        try {
+                            WriteBehindObserver.this.shutdown();
+                        } catch (InterruptedException e) {
+                            // exiting anyway
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Answer the number of dirty aspects waiting to be written.
+     *
+     * @return the queue depth
+     */
+    public synchronized int getQueueDepth() {
+        return this.dirty.size();
+    }
+
+    /**
+     * @return the largest queue depth so far
+     */
+    public synchronized int getMaxQueueDepth() {
+        return this.maxQueueDepth;
+    }
+
+    /**
+     * @return the number of changes received
+     */
+    public long getRecordedCount() {
+        return this.recorded.sum();
+    }
+
+    /**
+     * @return the number of changes of aspects that were already dirty
+     */
+    public long getCoalescedCount() {
+        return this.coalesced.sum();
+    }
+
+    /**
+     * @return the number of aspects written to the store
+     */
+    public long getWrittenCount() {
+        return this.written.sum();
+    }
+
+    /**
+     * @return the number of batches the store failed to write
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return the exception of the last failed batch, or <code>null</code>
+     */
+    public Exception getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * Answer the time the store took to write each batch.
+     *
+     * @return the flush latencies
+     */
+    public NotificationMetrics.Histogram getFlushLatency() {
+        return this.flushLatency;
+    }
+}
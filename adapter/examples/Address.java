@@ -1,13 +1,26 @@
 package sepher.saf.adapter.examples;
+import sepher.saf.adapter.Aspect;
 import sepher.saf.adapter.ChangingObservable;
+import sepher.saf.adapter.GenerateAdapters;
 
 /**
  * @author Rob Vens
  * @version 1.0
  * @created 28-mei-2005 14:40:57
  */
+@GenerateAdapters
 public class Address extends ChangingObservable {
 
+	/**
+	 * The aspect sent to observers when the street changes.
+	 */
+	public static final Aspect STREET = Aspect.of(Address.class, "street");
+
+	/**
+	 * The <code>street</code> of the address.
+	 */
+	private String street = "";
+
 	public Address(){
 
 	}
@@ -16,4 +29,22 @@ public class Address extends ChangingObservable {
 		super.finalize();
 	}
 
+	/**
+	 * @return Returns the street.
+	 */
+	public String getStreet() {
+		this.accessed(STREET);
+		return street;
+	}
+
+	/**
+	 * @param newStreet
+	 *        The street to set.
+	 */
+	public void setStreet(String newStreet) {
+		String oldStreet = this.street;
+		this.street = newStreet;
+		this.setChanged(STREET, oldStreet, newStreet);
+	}
+
 }
\ No newline at end of file
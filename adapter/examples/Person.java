@@ -1,14 +1,27 @@
 package sepher.saf.adapter.examples;
 
+import sepher.saf.adapter.Aspect;
 import sepher.saf.adapter.ChangingObservable;
+import sepher.saf.adapter.GenerateAdapters;
 
 /**
  * @author Rob Vens
  * @version 1.0
  * @created 28-mei-2005 14:40:57
  */
+@GenerateAdapters
 public class Person extends ChangingObservable {
 
+    /**
+     * The aspect sent to observers when the name changes.
+     */
+    public static final Aspect NAME = Aspect.of(Person.class, "name");
+
+    /**
+     * The aspect sent to observers when the address is replaced.
+     */
+    public static final Aspect ADDRESS = Aspect.of(Person.class, "address");
+
     /**
      * The <code>name</code> of the person.
      */
@@ -28,6 +41,7 @@ public class Person extends ChangingObservable {
      * @return Returns the name.
      */
     public String getName() {
+        this.accessed(NAME);
         return name;
     }
 
@@ -36,8 +50,27 @@ public class Person extends ChangingObservable {
      *        The name to set.
      */
     public void setName(String newName) {
+        String oldName = this.name;
         this.name = newName;
-        this.setChanged("name");
+        this.setChanged(NAME, oldName, newName);
+    }
+
+    /**
+     * @return Returns the address.
+     */
+    public Address getAddress() {
+        this.accessed(ADDRESS);
+        return m_Address;
+    }
+
+    /**
+     * @param newAddress
+     *        The address to set.
+     */
+    public void setAddress(Address newAddress) {
+        Address oldAddress = this.m_Address;
+        this.m_Address = newAddress;
+        this.setChanged(ADDRESS, oldAddress, newAddress);
     }
 
 }
\ No newline at end of file
@@ -6,7 +6,12 @@
  */
 package sepher.saf.adapter.examples.tests;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import sepher.saf.adapter.SAFObserver;
 import sepher.saf.adapter.examples.Person;
+import sepher.saf.adapter.examples.PersonAspects;
 import junit.framework.TestCase;
 
 /**
@@ -52,4 +57,27 @@ public class PersonTest extends TestCase {
         assertEquals(person.getName(),"Janssen");
     }
 
+    /**
+     * The adapter generated for the name reads and writes the name of the
+     * person, and tells its observers when the person changes it.
+     */
+    public void testNameAdapter() {
+        assertSame(Person.NAME, PersonAspects.NAME);
+        PersonAspects.NameAdapter name = new PersonAspects.NameAdapter(
+                this.person);
+        name.setSubjectSendsUpdates(Boolean.TRUE);
+        final List<Object> updates = new ArrayList<Object>();
+        name.addObserver(new SAFObserver() {
+            public void update(Object sender, Object arg) {
+                updates.add(arg);
+            }
+        });
+        name.setValue("Janssen");
+        assertEquals("Janssen", this.person.getName());
+        this.person.setName("Pietersen");
+        assertEquals("Pietersen", name.getValue());
+        assertEquals(2, updates.size());
+        name.untie();
+    }
+
 }
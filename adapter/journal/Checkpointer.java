@@ -0,0 +1,459 @@
+package sepher.saf.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import sepher.saf.adapter.AccessorCache;
+import sepher.saf.adapter.ChangeEvent;
+import sepher.saf.adapter.ChangeEventObserver;
+import sepher.saf.adapter.ChangingObservable;
+
+/**
+ * Writes checkpoints of graphs of domain objects, so that a service can
+ * restart from its last checkpoint instead of rebuilding its objects from the
+ * backing store.
+ * <p>
+ * A tracked object is observed, and every change marks it dirty. A
+ * checkpoint writes the aspects of the dirty objects only, to a new file in
+ * the checkpoint directory; the first checkpoint, or a
+ * <code>fullCheckpoint</code>, writes every tracked object. An aspect whose
+ * value is another <code>ChangingObservable</code> is written as a
+ * <code>Reference</code> to it, and the object referred to is tracked as
+ * well, so tracking the root of an aggregate, such as a
+ * <code>Person</code>, tracks its <code>Address</code> too.
+ * <p>
+ * The files hold the same checksummed records as a <code>Journal</code>,
+ * one per aspect, and are written under a temporary name and renamed when
+ * complete. <code>load</code> reads them oldest first and restores the
+ * objects in parallel, with notifications suppressed.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     Map&lt;Long, Object&gt; restored = Checkpointer.load(directory);
+ *     Checkpointer checkpointer = new Checkpointer(directory);
+ *     checkpointer.attachAll(restored);
+ *     ...
+ *     checkpointer.checkpoint();
+ * </code></pre>
+ *
+ * A checkpoint taken while other threads change the objects is consistent
+ * per aspect only; an object changed during the checkpoint is dirty again
+ * and written by the next one.
+ *
+ * @see Journal
+ */
+public class Checkpointer implements ChangeEventObserver {
+
+    private static final String PREFIX = "checkpoint-";
+
+    private static final String SUFFIX = ".snap";
+
+    private final File directory;
+
+    /**
+     * The ids of the tracked objects.
+     */
+    private final IdentityHashMap<Object, Long> ids = new IdentityHashMap<Object, Long>();
+
+    private long nextId = 1;
+
+    /**
+     * The objects changed since the last checkpoint.
+     */
+    private Set<Object> dirty = newIdentitySet();
+
+    /**
+     * The number of the next checkpoint file.
+     */
+    private long nextNumber;
+
+    /**
+     * Constructor for a checkpointer writing to a directory.
+     *
+     * @param directory
+     *        the directory holding the checkpoints, created when needed
+     * @throws IOException
+     *         when the directory cannot be created
+     */
+    public Checkpointer(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        File[] files = checkpointFiles(directory);
+        this.nextNumber = files.length == 0 ? 0
+                : numberOf(files[files.length - 1]) + 1;
+    }
+
+    /**
+     * Track an object and every object reachable from it through aspects.
+     * Newly tracked objects are dirty.
+     *
+     * @param root
+     *        the object
+     * @return its id
+     */
+    public synchronized long track(final ChangingObservable root) {
+        long id = this.trackOne(root, null);
+        ArrayDeque<Object> work = new ArrayDeque<Object>();
+        work.add(root);
+        Set<Object> seen = newIdentitySet();
+        while (!work.isEmpty()) {
+            Object subject = work.poll();
+            if (!seen.add(subject)) {
+                continue;
+            }
+            String[] aspects = AccessorCache.aspectsOf(subject.getClass());
+            for (int i = 0; i < aspects.length; i++) {
+                Object value;
+                try {
+                    value = read(subject, aspects[i]);
+                } catch (IOException e) {
+                    // reported when the subject is written to a checkpoint
+                    continue;
+                }
+                if (value instanceof ChangingObservable) {
+                    this.trackOne((ChangingObservable) value, null);
+                    work.add(value);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Track the objects answered by <code>load</code> under their ids. They
+     * are not dirty.
+     *
+     * @param subjects
+     *        the objects by id
+     */
+    public synchronized void attachAll(final Map<Long, ?> subjects) {
+        for (Iterator<? extends Map.Entry<Long, ?>> it = subjects.entrySet()
+                .iterator(); it.hasNext();) {
+            Map.Entry<Long, ?> entry = it.next();
+            if (entry.getValue() instanceof ChangingObservable
+                    && !this.ids.containsKey(entry.getValue())) {
+                long id = entry.getKey().longValue();
+                this.ids.put(entry.getValue(), Long.valueOf(id));
+                this.nextId = Math.max(this.nextId, id + 1);
+                ((ChangingObservable) entry.getValue()).addObserver(this);
+            }
+        }
+    }
+
+    /**
+     * Stop tracking an object. It is left out of later checkpoints, but a
+     * full checkpoint is needed to remove it from the directory.
+     *
+     * @param subject
+     *        the object
+     */
+    public synchronized void untrack(final ChangingObservable subject) {
+        if (this.ids.remove(subject) != null) {
+            this.dirty.remove(subject);
+            subject.deleteObserver(this);
+        }
+    }
+
+    /**
+     * Answer the id of a tracked object.
+     *
+     * @param subject
+     *        the object
+     * @return its id, or -1 when it is not tracked
+     */
+    public synchronized long idOf(final Object subject) {
+        Long id = this.ids.get(subject);
+        return id == null ? -1 : id.longValue();
+    }
+
+    /**
+     * @return the number of objects changed since the last checkpoint
+     */
+    public synchronized int getDirtyCount() {
+        return this.dirty.size();
+    }
+
+    /**
+     * Write the aspects of the objects changed since the last checkpoint.
+     *
+     * @return the number of objects written
+     * @throws IOException
+     *         when the checkpoint cannot be written; every tracked object
+     *         is then dirty, so that the next checkpoint writes them all
+     */
+    public int checkpoint() throws IOException {
+        Object[] changed;
+        long number;
+        synchronized (this) {
+            if (this.dirty.isEmpty()) {
+                return 0;
+            }
+            changed = this.dirty.toArray();
+            this.dirty = newIdentitySet();
+            number = this.nextNumber++;
+        }
+        boolean done = false;
+        try {
+            int written = this.write(changed, number);
+            done = true;
+            return written;
+        } finally {
+            if (!done) {
+                this.redirtyAll();
+            }
+        }
+    }
+
+    /**
+     * Write the aspects of every tracked object, and delete the older
+     * checkpoints.
+     *
+     * @return the number of objects written
+     * @throws IOException
+     *         when the checkpoint cannot be written
+     */
+    public int fullCheckpoint() throws IOException {
+        long first;
+        synchronized (this) {
+            this.dirty.addAll(this.ids.keySet());
+            first = this.nextNumber;
+        }
+        int written = this.checkpoint();
+        File[] files = checkpointFiles(this.directory);
+        for (int i = 0; i < files.length; i++) {
+            if (numberOf(files[i]) < first && !files[i].delete()) {
+                throw new IOException("Cannot delete " + files[i]);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Restore the objects of the checkpoints in a directory, creating them
+     * with their public constructor without arguments.
+     *
+     * @param directory
+     *        the checkpoint directory
+     * @return the objects by id
+     * @throws IOException
+     *         when a checkpoint cannot be read or applied
+     */
+    public static Map<Long, Object> load(final File directory)
+            throws IOException {
+        return load(directory, Journal.DEFAULT_FACTORY, Runtime.getRuntime()
+                .availableProcessors());
+    }
+
+    /**
+     * Restore the objects of the checkpoints in a directory: create them
+     * with the factory and set their aspects, oldest checkpoint first, in
+     * parallel partitions by id and with notifications suppressed.
+     *
+     * @param directory
+     *        the checkpoint directory
+     * @param factory
+     *        creates the objects
+     * @param parallelism
+     *        the number of partitions restored in parallel
+     * @return the objects by id
+     * @throws IOException
+     *         when a checkpoint cannot be read or applied
+     */
+    public static Map<Long, Object> load(final File directory,
+            final Journal.Factory factory, final int parallelism)
+            throws IOException {
+        List<JournalRecord> records = new ArrayList<JournalRecord>();
+        File[] files = checkpointFiles(directory);
+        for (int i = 0; i < files.length; i++) {
+            RandomAccessFile file = new RandomAccessFile(files[i], "r");
+            try {
+                FileChannel channel = file.getChannel();
+                Journal.scan(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size()), records);
+            } finally {
+                file.close();
+            }
+        }
+        return Journal.apply(records, factory, parallelism);
+    }
+
+    /**
+     * Mark the source of the event dirty.
+     *
+     * @param event
+     *        the change
+     */
+    public void changed(final ChangeEvent event) {
+        this.markDirty(event.getSource());
+    }
+
+    /**
+     * Mark the sender dirty.
+     *
+     * @param sender
+     *        the object that changed
+     * @param arg
+     *        the aspect that changed
+     */
+    public void update(final Object sender, final Object arg) {
+        this.markDirty(sender);
+    }
+
+    private synchronized void markDirty(final Object subject) {
+        if (this.ids.containsKey(subject)) {
+            this.dirty.add(subject);
+        }
+    }
+
+    private synchronized void redirtyAll() {
+        this.dirty.addAll(this.ids.keySet());
+    }
+
+    /**
+     * Track one object. When it was not tracked yet it is dirty, or, when
+     * it is found while writing a checkpoint, added to the <code>work</code>
+     * of that checkpoint.
+     */
+    private synchronized long trackOne(final ChangingObservable subject,
+            final ArrayDeque<Object> work) {
+        Long id = this.ids.get(subject);
+        if (id == null) {
+            id = Long.valueOf(this.nextId++);
+            this.ids.put(subject, id);
+            subject.addObserver(this);
+            if (work != null) {
+                work.add(subject);
+            } else {
+                this.dirty.add(subject);
+            }
+        }
+        return id.longValue();
+    }
+
+    /**
+     * Write a checkpoint file with the aspects of the given objects, and of
+     * the objects they refer to that were not tracked yet.
+     */
+    private int write(final Object[] subjects, final long number)
+            throws IOException {
+        File target = new File(this.directory, PREFIX
+                + String.format("%016d", Long.valueOf(number)) + SUFFIX);
+        File temporary = new File(this.directory, target.getName() + ".tmp");
+        ArrayDeque<Object> work = new ArrayDeque<Object>(Arrays
+                .asList(subjects));
+        int written = 0;
+        ByteBuffer scratch = ByteBuffer.allocate(256);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        CRC32 crc = new CRC32();
+        RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+        boolean done = false;
+        try {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            while (!work.isEmpty()) {
+                Object subject = work.poll();
+                long id = this.idOf(subject);
+                if (id < 0) {
+                    continue;
+                }
+                String type = subject.getClass().getName();
+                String[] aspects = AccessorCache.aspectsOf(subject.getClass());
+                for (int i = 0; i < aspects.length; i++) {
+                    Object value = read(subject, aspects[i]);
+                    if (value instanceof ChangingObservable) {
+                        value = new JournalRecord.Reference(this.trackOne(
+                                (ChangingObservable) value, work), value
+                                .getClass().getName());
+                    }
+                    scratch = JournalRecord.encode(scratch, id, type,
+                            aspects[i], value);
+                    crc.reset();
+                    crc.update(scratch.array(), 0, scratch.remaining());
+                    header.clear();
+                    header.putInt(scratch.remaining());
+                    header.putInt((int) crc.getValue());
+                    header.flip();
+                    while (header.hasRemaining() || scratch.hasRemaining()) {
+                        channel.write(new ByteBuffer[] { header, scratch });
+                    }
+                }
+                written++;
+            }
+            channel.force(true);
+            file.close();
+            Files.move(temporary.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            done = true;
+        } finally {
+            if (!done) {
+                file.close();
+                temporary.delete();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Read an aspect of an object, <code>null</code> when it has no getter.
+     * A getter that fails fails the checkpoint, instead of writing
+     * <code>null</code> as if that were the value.
+     */
+    private static Object read(final Object subject, final String aspect)
+            throws IOException {
+        try {
+            return AccessorCache.forAspect(subject.getClass(), aspect).get(
+                    subject);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            throw new IOException("Cannot read " + aspect + " of "
+                    + subject.getClass().getName(), e.getCause());
+        }
+    }
+
+    /**
+     * Answer the checkpoint files of a directory, oldest first.
+     */
+    private static File[] checkpointFiles(final File directory) {
+        File[] files = directory.listFiles();
+        List<File> checkpoints = new ArrayList<File>();
+        for (int i = 0; files != null && i < files.length; i++) {
+            String name = files[i].getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                checkpoints.add(files[i]);
+            }
+        }
+        File[] sorted = checkpoints.toArray(new File[checkpoints.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static long numberOf(final File checkpoint) {
+        String name = checkpoint.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length()
+                - SUFFIX.length()));
+    }
+
+    private static Set<Object> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+}
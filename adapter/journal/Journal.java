@@ -0,0 +1,815 @@
+package sepher.saf.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import sepher.saf.adapter.AccessorCache;
+import sepher.saf.adapter.ChangeBatch;
+
+/**
+ * An append-only log of changes of domain objects, kept in memory-mapped
+ * segment files in one directory. Appending a change copies it into the
+ * mapped segment; when a segment is full the next one is created. Each record
+ * carries a checksum, so a record torn by a crash ends the log instead of
+ * corrupting it.
+ * <p>
+ * When records reach the disk is set by a <code>SyncPolicy</code>. With
+ * <code>ALWAYS</code> the threads appending at the same time share one force
+ * of the segment: the first one forces, the others wait for it and find
+ * their records written as well (group commit).
+ * <p>
+ * <code>replay</code> rebuilds the domain objects by creating every subject
+ * and setting the aspects in the order they were appended. The records are
+ * partitioned by subject id and the partitions replayed in parallel on a
+ * fork/join pool; each subject is only set by the task of its partition.
+ * <code>compact</code> rewrites the log with only the last value of every
+ * aspect of every subject.
+ * <p>
+ * Usage, with a <code>JournalObserver</code> feeding the journal:
+ *
+ * <pre><code>
+ *     Journal journal = new Journal(new File(&quot;data&quot;));
+ *     JournalObserver observer = new JournalObserver(journal);
+ *     observer.attachAll(journal.replay());
+ *     ...
+ *     journal.close();
+ * </code></pre>
+ *
+ * @see JournalObserver
+ * @see SyncPolicy
+ */
+public final class Journal implements AutoCloseable {
+
+    /**
+     * The default size of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final String PREFIX = "journal-";
+
+    private static final String SUFFIX = ".log";
+
+    /**
+     * The size of the length and checksum in front of each record.
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * Creates the subjects of a journal when it is replayed.
+     */
+    public interface Factory {
+
+        /**
+         * Answer a new subject.
+         *
+         * @param id
+         *        the id of the subject in the journal
+         * @param type
+         *        the name of its class
+         * @return the subject
+         * @throws Exception
+         *         when it cannot be created
+         */
+        Object create(long id, String type) throws Exception;
+    }
+
+    /**
+     * Creates subjects with the public constructor without arguments of their
+     * class.
+     */
+    public static final Factory DEFAULT_FACTORY = new Factory() {
+        public Object create(final long id, final String type)
+                throws Exception {
+            return Class.forName(type).getConstructor().newInstance();
+        }
+    };
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final SyncPolicy syncPolicy;
+
+    /**
+     * The full segments, oldest first.
+     */
+    private final ArrayList<File> sealed = new ArrayList<File>();
+
+    /**
+     * The segment appended to.
+     */
+    private File activeFile;
+
+    private long activeNumber;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * The number of bytes appended since the journal was opened.
+     */
+    private long written;
+
+    /**
+     * Encodes the record being appended.
+     */
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+    private final CRC32 crc = new CRC32();
+
+    private boolean closed;
+
+    /**
+     * Guards the group commit state.
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * Up to where the appended bytes have been forced.
+     */
+    private long durable;
+
+    /**
+     * Whether a thread is forcing.
+     */
+    private boolean forcing;
+
+    private long syncCount;
+
+    private final LongAdder syncFailures = new LongAdder();
+
+    private volatile IOException lastSyncFailure;
+
+    /**
+     * Forces every interval with <code>SyncPolicy.INTERVAL</code>.
+     */
+    private final Thread syncer;
+
+    /**
+     * Constructor for a journal with segments of 64 Mb that leaves writing to
+     * disk to the operating system.
+     *
+     * @param directory
+     *        the directory holding the segments, created when needed
+     * @throws IOException
+     *         when the segments cannot be opened
+     */
+    public Journal(final File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, SyncPolicy.NEVER, 0);
+    }
+
+    /**
+     * Constructor for a journal.
+     *
+     * @param directory
+     *        the directory holding the segments, created when needed
+     * @param segmentSize
+     *        the size of a segment file in bytes
+     * @param syncPolicy
+     *        when records are forced to disk
+     * @param syncInterval
+     *        the milliseconds between forces with
+     *        <code>SyncPolicy.INTERVAL</code>
+     * @throws IOException
+     *         when the segments cannot be opened
+     */
+    public Journal(final File directory, final int segmentSize,
+            final SyncPolicy syncPolicy, final long syncInterval)
+            throws IOException {
+        if (segmentSize < 64 || syncPolicy == null
+                || (syncPolicy == SyncPolicy.INTERVAL && syncInterval <= 0)) {
+            throw new IllegalArgumentException();
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncPolicy = syncPolicy;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File[] files = this.segmentFiles();
+        if (files.length == 0) {
+            this.openSegment(0, segmentSize);
+        } else {
+            for (int i = 0; i < files.length - 1; i++) {
+                this.sealed.add(files[i]);
+            }
+            File last = files[files.length - 1];
+            this.openSegment(numberOf(last), (int) Math.max(last.length(),
+                    segmentSize));
+            this.buffer.position(scan(this.buffer, null));
+        }
+        if (syncPolicy == SyncPolicy.INTERVAL) {
+            this.syncer = new Thread("saf-journal-sync") {
+                public void run() {
+                    syncEvery(syncInterval);
+                }
+            };
+            this.syncer.setDaemon(true);
+            this.syncer.start();
+        } else {
+            this.syncer = null;
+        }
+    }
+
+    /**
+     * Append a change.
+     *
+     * @param subjectId
+     *        the id of the subject that changed
+     * @param type
+     *        the name of the class of the subject
+     * @param aspect
+     *        the name of the aspect that changed
+     * @param value
+     *        the new value
+     * @return the position after the record, as passed to
+     *         <code>sync</code>
+     * @throws IOException
+     *         when the record cannot be written
+     * @throws IllegalArgumentException
+     *         when the value cannot be journaled
+     */
+    public long append(final long subjectId, final String type,
+            final String aspect, final Object value) throws IOException {
+        long position;
+        synchronized (this) {
+            this.ensureOpen();
+            position = this.appendLocked(subjectId, type, aspect, value);
+        }
+        if (this.syncPolicy == SyncPolicy.ALWAYS) {
+            this.sync(position);
+        }
+        return position;
+    }
+
+    /**
+     * Force everything appended so far to disk.
+     *
+     * @throws IOException
+     *         when forcing fails
+     */
+    public void sync() throws IOException {
+        long position;
+        synchronized (this) {
+            position = this.written;
+        }
+        this.sync(position);
+    }
+
+    /**
+     * Force the records up to a position to disk, unless another thread
+     * already did. When a thread is forcing, wait for it: it may well cover
+     * the position.
+     */
+    private void sync(final long position) throws IOException {
+        while (true) {
+            synchronized (this.syncLock) {
+                while (this.durable < position && this.forcing) {
+                    try {
+                        this.syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (this.durable >= position) {
+                    return;
+                }
+                this.forcing = true;
+            }
+            try {
+                long upTo;
+                MappedByteBuffer current;
+                synchronized (this) {
+                    upTo = this.written;
+                    current = this.buffer;
+                }
+                // full segments were forced when they were sealed
+                force(current);
+                synchronized (this.syncLock) {
+                    this.durable = Math.max(this.durable, upTo);
+                    this.syncCount++;
+                }
+            } finally {
+                synchronized (this.syncLock) {
+                    this.forcing = false;
+                    this.syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Answer all records, in the order they were appended.
+     *
+     * @return the records
+     * @throws IOException
+     *         when a segment cannot be read
+     */
+    public synchronized List<JournalRecord> read() throws IOException {
+        this.ensureOpen();
+        List<JournalRecord> records = new ArrayList<JournalRecord>();
+        for (int i = 0; i < this.sealed.size(); i++) {
+            RandomAccessFile file = new RandomAccessFile(this.sealed.get(i),
+                    "r");
+            try {
+                FileChannel sealedChannel = file.getChannel();
+                scan(sealedChannel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        sealedChannel.size()), records);
+            } finally {
+                file.close();
+            }
+        }
+        ByteBuffer active = this.buffer.duplicate();
+        active.flip();
+        scan(active, records);
+        return records;
+    }
+
+    /**
+     * Rebuild the subjects of the journal, creating them with their public
+     * constructor without arguments. The records are replayed in parallel,
+     * partitioned by subject id, on as many threads as there are processors.
+     *
+     * @return the subjects by id
+     * @throws IOException
+     *         when the journal cannot be read or a record cannot be applied
+     */
+    public Map<Long, Object> replay() throws IOException {
+        return this.replay(DEFAULT_FACTORY, Runtime.getRuntime()
+                .availableProcessors());
+    }
+
+    /**
+     * Rebuild the subjects of the journal: create each subject with the
+     * factory, and set its aspects to the values recorded, in order. A
+     * <code>Reference</code> value is set as the subject it refers to. The
+     * changes made while replaying are not notified.
+     *
+     * @param factory
+     *        creates the subjects
+     * @param parallelism
+     *        the number of partitions replayed in parallel
+     * @return the subjects by id
+     * @throws IOException
+     *         when the journal cannot be read or a record cannot be applied
+     */
+    public Map<Long, Object> replay(final Factory factory,
+            final int parallelism) throws IOException {
+        return apply(this.read(), factory, parallelism);
+    }
+
+    /**
+     * Create the subjects of a list of records and apply the records to them,
+     * partitioned by subject id, with notifications suppressed.
+     */
+    static Map<Long, Object> apply(final List<JournalRecord> records,
+            final Factory factory, final int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException();
+        }
+        @SuppressWarnings("unchecked")
+        List<JournalRecord>[] partitions = (List<JournalRecord>[]) new List<?>[
+                parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            partitions[i] = new ArrayList<JournalRecord>();
+        }
+        for (int i = 0; i < records.size(); i++) {
+            JournalRecord record = records.get(i);
+            partitions[(int) Math.floorMod(record.getSubjectId(),
+                    (long) parallelism)].add(record);
+        }
+        Replay replay = new Replay(factory, partitions, 0, parallelism);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(replay);
+        } catch (ReplayException e) {
+            throw (IOException) e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        return replay.subjects;
+    }
+
+    /**
+     * Replays a range of partitions, splitting it until it is one partition.
+     */
+    private static final class Replay extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final Factory factory;
+
+        final List<JournalRecord>[] partitions;
+
+        final int from;
+
+        final int to;
+
+        final ConcurrentHashMap<Long, Object> subjects;
+
+        Replay(final Factory factory, final List<JournalRecord>[] partitions,
+                final int from, final int to) {
+            this(factory, partitions, from, to,
+                    new ConcurrentHashMap<Long, Object>());
+        }
+
+        private Replay(final Factory factory,
+                final List<JournalRecord>[] partitions, final int from,
+                final int to, final ConcurrentHashMap<Long, Object> subjects) {
+            this.factory = factory;
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+            this.subjects = subjects;
+        }
+
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new Replay(this.factory, this.partitions, this.from,
+                        middle, this.subjects), new Replay(this.factory,
+                        this.partitions, middle, this.to, this.subjects));
+                return;
+            }
+            final List<JournalRecord> partition = this.partitions[this.from];
+            ChangeBatch.suppress(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < partition.size(); i++) {
+                        try {
+                            apply(partition.get(i));
+                        } catch (IOException e) {
+                            throw new ReplayException(e);
+                        }
+                    }
+                }
+            });
+        }
+
+        private void apply(final JournalRecord record) throws IOException {
+            Object subject = this.subjectOf(record.getSubjectId(), record
+                    .getType());
+            Object value = record.getValue();
+            if (value instanceof JournalRecord.Reference) {
+                JournalRecord.Reference reference = (JournalRecord.Reference) value;
+                value = this.subjectOf(reference.getId(), reference.getType());
+            }
+            try {
+                AccessorCache.forAspect(subject.getClass(), record.getAspect())
+                        .set(subject, value);
+            } catch (NoSuchMethodException e) {
+                throw new IOException("Cannot replay " + record, e);
+            } catch (InvocationTargetException e) {
+                throw new IOException("Cannot replay " + record, e
+                        .getTargetException());
+            }
+        }
+
+        private Object subjectOf(final long id, final String type)
+                throws IOException {
+            Long key = Long.valueOf(id);
+            Object subject = this.subjects.get(key);
+            if (subject != null) {
+                return subject;
+            }
+            try {
+                subject = this.factory.create(id, type);
+            } catch (Exception e) {
+                throw new IOException("Cannot create #" + id + " " + type, e);
+            }
+            Object other = this.subjects.putIfAbsent(key, subject);
+            return other != null ? other : subject;
+        }
+    }
+
+    /**
+     * Carries an <code>IOException</code> out of a replay task.
+     */
+    private static final class ReplayException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ReplayException(final IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the last record of every aspect of every
+     * subject, and delete the old segments. Appending waits until the
+     * compaction is done. The compacted records are written after the old
+     * ones before those are deleted, so a crash halfway replays the same
+     * state.
+     *
+     * @return the number of records dropped
+     * @throws IOException
+     *         when the journal cannot be rewritten
+     */
+    public synchronized int compact() throws IOException {
+        List<JournalRecord> records = this.read();
+        HashMap<Key, Integer> last = new HashMap<Key, Integer>();
+        for (int i = 0; i < records.size(); i++) {
+            JournalRecord record = records.get(i);
+            last.put(new Key(record.getSubjectId(), record.getAspect()),
+                    Integer.valueOf(i));
+        }
+        ArrayList<File> old = new ArrayList<File>(this.sealed);
+        old.add(this.activeFile);
+        this.sealActive();
+        this.sealed.clear();
+        this.openSegment(this.activeNumber + 1, this.segmentSize);
+        int kept = 0;
+        for (int i = 0; i < records.size(); i++) {
+            JournalRecord record = records.get(i);
+            if (last.get(new Key(record.getSubjectId(), record.getAspect()))
+                    .intValue() == i) {
+                this.appendLocked(record.getSubjectId(), record.getType(),
+                        record.getAspect(), record.getValue());
+                kept++;
+            }
+        }
+        force(this.buffer);
+        for (int i = 0; i < old.size(); i++) {
+            if (!old.get(i).delete()) {
+                throw new IOException("Cannot delete " + old.get(i));
+            }
+        }
+        synchronized (this.syncLock) {
+            this.durable = Math.max(this.durable, this.written);
+        }
+        return records.size() - kept;
+    }
+
+    /**
+     * The key of an aspect of a subject.
+     */
+    private static final class Key {
+        final long id;
+
+        final String aspect;
+
+        Key(final long id, final String aspect) {
+            this.id = id;
+            this.aspect = aspect;
+        }
+
+        public boolean equals(final Object other) {
+            return other instanceof Key && ((Key) other).id == this.id
+                    && ((Key) other).aspect.equals(this.aspect);
+        }
+
+        public int hashCode() {
+            return (int) (this.id ^ (this.id >>> 32)) * 31
+                    + this.aspect.hashCode();
+        }
+    }
+
+    /**
+     * Answer the number of segment files.
+     *
+     * @return the number of full segments plus one
+     */
+    public synchronized int getSegmentCount() {
+        return this.sealed.size() + 1;
+    }
+
+    /**
+     * Answer the number of times the journal was forced to disk by
+     * <code>sync</code>, which with <code>SyncPolicy.ALWAYS</code> is less
+     * than the number of records appended when threads append at the same
+     * time.
+     *
+     * @return the number of forces
+     */
+    public long getSyncCount() {
+        synchronized (this.syncLock) {
+            return this.syncCount;
+        }
+    }
+
+    /**
+     * @return the number of times forcing every interval failed
+     */
+    public long getSyncFailureCount() {
+        return this.syncFailures.sum();
+    }
+
+    /**
+     * @return the exception of the last interval force that failed, or
+     *         <code>null</code>
+     */
+    public IOException getLastSyncFailure() {
+        return this.lastSyncFailure;
+    }
+
+    /**
+     * @return the directory holding the segments
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * @return when records are forced to disk
+     */
+    public SyncPolicy getSyncPolicy() {
+        return this.syncPolicy;
+    }
+
+    /**
+     * Force the journal to disk and close it.
+     *
+     * @throws IOException
+     *         when forcing or closing fails
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        if (this.syncer != null) {
+            this.syncer.interrupt();
+        }
+        synchronized (this) {
+            try {
+                force(this.buffer);
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+
+    /**
+     * Write a record into the active segment, sealing it first when the
+     * record does not fit.
+     */
+    private long appendLocked(final long subjectId, final String type,
+            final String aspect, final Object value) throws IOException {
+        this.scratch = JournalRecord.encode(this.scratch, subjectId, type,
+                aspect, value);
+        int length = this.scratch.remaining();
+        this.crc.reset();
+        this.crc.update(this.scratch.array(), 0, length);
+        // keep room for the zero length that ends the segment
+        if (this.buffer.remaining() < HEADER + length + 4) {
+            this.sealActive();
+            this.openSegment(this.activeNumber + 1, Math.max(this.segmentSize,
+                    HEADER + length + 4));
+        }
+        this.buffer.putInt(length);
+        this.buffer.putInt((int) this.crc.getValue());
+        this.buffer.put(this.scratch);
+        this.written += HEADER + length;
+        return this.written;
+    }
+
+    /**
+     * Force the active segment and add it to the full ones.
+     */
+    private void sealActive() throws IOException {
+        force(this.buffer);
+        this.channel.close();
+        this.sealed.add(this.activeFile);
+    }
+
+    /**
+     * Create or open a segment and map it for appending.
+     */
+    private void openSegment(final long number, final int size)
+            throws IOException {
+        File file = new File(this.directory, PREFIX
+                + String.format("%016d", Long.valueOf(number)) + SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        if (raf.length() < size) {
+            raf.setLength(size);
+        }
+        this.channel = raf.getChannel();
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                raf.length());
+        this.activeFile = file;
+        this.activeNumber = number;
+    }
+
+    /**
+     * Answer the segment files, oldest first.
+     */
+    private File[] segmentFiles() {
+        File[] files = this.directory.listFiles();
+        List<File> segments = new ArrayList<File>();
+        for (int i = 0; files != null && i < files.length; i++) {
+            String name = files[i].getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                segments.add(files[i]);
+            }
+        }
+        File[] sorted = segments.toArray(new File[segments.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static long numberOf(final File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length()
+                - SUFFIX.length()));
+    }
+
+    /**
+     * Read the records of a segment from its start, adding them to
+     * <code>records</code> unless it is <code>null</code>.
+     *
+     * @return the position after the last valid record
+     */
+    static int scan(final ByteBuffer segment,
+            final List<JournalRecord> records) throws IOException {
+        CRC32 check = new CRC32();
+        int position = 0;
+        while (segment.limit() - position >= HEADER) {
+            int length = segment.getInt(position);
+            if (length <= 0 || length > segment.limit() - position - HEADER) {
+                break;
+            }
+            ByteBuffer body = segment.duplicate();
+            body.position(position + HEADER);
+            body.limit(position + HEADER + length);
+            check.reset();
+            check.update(body.duplicate());
+            if ((int) check.getValue() != segment.getInt(position + 4)) {
+                // torn by a crash
+                break;
+            }
+            if (records != null) {
+                records.add(JournalRecord.decode(body));
+            }
+            position += HEADER + length;
+        }
+        return position;
+    }
+
+    private void syncEvery(final long interval) {
+        while (true) {
+            try {
+                Thread.sleep(interval);
+                synchronized (this) {
+                    if (this.closed) {
+                        return;
+                    }
+                }
+                this.sync();
+            } catch (InterruptedException e) {
+                return;
+            } catch (InterruptedIOException e) {
+                return;
+            } catch (IOException e) {
+                this.syncFailures.increment();
+                this.lastSyncFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Force a mapped segment to disk, failing with the
+     * <code>IOException</code> that <code>force</code> wraps in an unchecked
+     * one.
+     */
+    private static void force(final MappedByteBuffer segment)
+            throws IOException {
+        try {
+            segment.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Journal is closed");
+        }
+    }
+
+    /**
+     * @return String describing the receiver
+     */
+    public String toString() {
+        return "journal " + this.directory;
+    }
+}
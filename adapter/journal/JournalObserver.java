@@ -0,0 +1,200 @@
+package sepher.saf.adapter.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import sepher.saf.adapter.AccessorCache;
+import sepher.saf.adapter.Aspect;
+import sepher.saf.adapter.ChangeEvent;
+import sepher.saf.adapter.ChangeEventObserver;
+import sepher.saf.adapter.ChangingObservable;
+
+/**
+ * Appends every change of the subjects attached to it to a
+ * <code>Journal</code>. Each subject has an id in the journal, given when it
+ * is attached. A change reported with its new value is journaled as is;
+ * for other changes the value is read through the getter of the aspect, and
+ * changes of aspects without a getter and setter are skipped.
+ * <p>
+ * A value that is itself a <code>ChangingObservable</code> is journaled as a
+ * <code>Reference</code> to it. When it is not attached yet it is attached
+ * with the next free id; its state before that is not in the journal, so
+ * attach domain objects before they are referred to.
+ *
+ * @see Journal
+ */
+public class JournalObserver implements ChangeEventObserver {
+
+    private final Journal journal;
+
+    /**
+     * The ids of the attached subjects.
+     */
+    private final IdentityHashMap<Object, Long> ids = new IdentityHashMap<Object, Long>();
+
+    private long nextId = 1;
+
+    /**
+     * Constructor for an observer appending to a journal.
+     *
+     * @param journal
+     *        the journal
+     */
+    public JournalObserver(final Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return the journal I append to
+     */
+    public final Journal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Journal the changes of a subject under the next free id.
+     *
+     * @param subject
+     *        the subject
+     * @return its id
+     */
+    public long attach(final ChangingObservable subject) {
+        synchronized (this) {
+            Long id = this.ids.get(subject);
+            if (id != null) {
+                return id.longValue();
+            }
+            id = Long.valueOf(this.nextId++);
+            this.ids.put(subject, id);
+            subject.addObserver(this);
+            return id.longValue();
+        }
+    }
+
+    /**
+     * Journal the changes of a subject under a given id, such as the id it
+     * had when it was replayed.
+     *
+     * @param subject
+     *        the subject
+     * @param id
+     *        its id
+     */
+    public synchronized void attach(final ChangingObservable subject,
+            final long id) {
+        this.ids.put(subject, Long.valueOf(id));
+        this.nextId = Math.max(this.nextId, id + 1);
+        subject.addObserver(this);
+    }
+
+    /**
+     * Attach the subjects answered by <code>Journal.replay</code> under their
+     * ids.
+     *
+     * @param subjects
+     *        the subjects by id
+     */
+    public void attachAll(final Map<Long, ?> subjects) {
+        for (Iterator<? extends Map.Entry<Long, ?>> it = subjects.entrySet()
+                .iterator(); it.hasNext();) {
+            Map.Entry<Long, ?> entry = it.next();
+            if (entry.getValue() instanceof ChangingObservable) {
+                this.attach((ChangingObservable) entry.getValue(), entry
+                        .getKey().longValue());
+            }
+        }
+    }
+
+    /**
+     * Stop journaling the changes of a subject.
+     *
+     * @param subject
+     *        the subject
+     */
+    public synchronized void detach(final ChangingObservable subject) {
+        if (this.ids.remove(subject) != null) {
+            subject.deleteObserver(this);
+        }
+    }
+
+    /**
+     * Answer the id of a subject.
+     *
+     * @param subject
+     *        the subject
+     * @return its id, or -1 when it is not attached
+     */
+    public synchronized long idOf(final Object subject) {
+        Long id = this.ids.get(subject);
+        return id == null ? -1 : id.longValue();
+    }
+
+    /**
+     * Journal a change with its new value.
+     *
+     * @param event
+     *        the change
+     */
+    public void changed(final ChangeEvent event) {
+        this.record(event.getSource(), event.getAspect().getName(), event
+                .getNewValue());
+    }
+
+    /**
+     * Journal a change, reading the new value from the subject.
+     *
+     * @param sender
+     *        the subject
+     * @param arg
+     *        the aspect that changed, or its name; other arguments are
+     *        ignored
+     */
+    public void update(final Object sender, final Object arg) {
+        String aspect;
+        if (arg instanceof Aspect) {
+            aspect = ((Aspect) arg).getName();
+        } else if (arg instanceof String) {
+            aspect = (String) arg;
+        } else {
+            return;
+        }
+        Object value;
+        try {
+            value = AccessorCache.forAspect(sender.getClass(), aspect).get(
+                    sender);
+        } catch (NoSuchMethodException e) {
+            return;
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Cannot read " + aspect
+                    + " of " + sender, e.getTargetException());
+        }
+        this.record(sender, aspect, value);
+    }
+
+    /**
+     * Append a change of an attached subject.
+     */
+    private void record(final Object subject, final String aspect,
+            final Object value) {
+        long id = this.idOf(subject);
+        if (id < 0) {
+            return;
+        }
+        Object journaled = value;
+        if (value instanceof ChangingObservable) {
+            journaled = new JournalRecord.Reference(this
+                    .attach((ChangingObservable) value), value.getClass()
+                    .getName());
+        }
+        try {
+            this.journal.append(id, subject.getClass().getName(), aspect,
+                    journaled);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
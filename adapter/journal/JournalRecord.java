@@ -0,0 +1,303 @@
+package sepher.saf.adapter.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One change in a <code>Journal</code>: the id and class of the subject, the
+ * aspect that changed and its new value.
+ * <p>
+ * Values are <code>null</code>, strings, boxed primitives,
+ * <code>Reference</code>s to other subjects in the journal, or else
+ * <code>Serializable</code> objects, which are written with Java
+ * serialization.
+ *
+ * @see Journal
+ */
+public final class JournalRecord {
+
+    private static final byte NULL = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte INTEGER = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte DOUBLE = 4;
+
+    private static final byte BOOLEAN = 5;
+
+    private static final byte REFERENCE = 6;
+
+    private static final byte SERIALIZED = 7;
+
+    /**
+     * A value referring to another subject in the journal, resolved to that
+     * subject when the journal is replayed.
+     */
+    public static final class Reference {
+
+        private final long id;
+
+        private final String type;
+
+        /**
+         * Constructor for a reference.
+         *
+         * @param id
+         *        the id of the subject referred to
+         * @param type
+         *        the name of its class
+         */
+        public Reference(final long id, final String type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        /**
+         * @return the id of the subject referred to
+         */
+        public long getId() {
+            return this.id;
+        }
+
+        /**
+         * @return the name of the class of the subject referred to
+         */
+        public String getType() {
+            return this.type;
+        }
+
+        public boolean equals(final Object other) {
+            return other instanceof Reference
+                    && ((Reference) other).id == this.id;
+        }
+
+        public int hashCode() {
+            return (int) (this.id ^ (this.id >>> 32));
+        }
+
+        public String toString() {
+            return "#" + this.id;
+        }
+    }
+
+    private final long subjectId;
+
+    private final String type;
+
+    private final String aspect;
+
+    private final Object value;
+
+    /**
+     * Constructor for a record.
+     *
+     * @param subjectId
+     *        the id of the subject that changed
+     * @param type
+     *        the name of the class of the subject
+     * @param aspect
+     *        the name of the aspect that changed
+     * @param value
+     *        the new value
+     */
+    public JournalRecord(final long subjectId, final String type,
+            final String aspect, final Object value) {
+        this.subjectId = subjectId;
+        this.type = type;
+        this.aspect = aspect;
+        this.value = value;
+    }
+
+    /**
+     * @return the id of the subject that changed
+     */
+    public long getSubjectId() {
+        return this.subjectId;
+    }
+
+    /**
+     * @return the name of the class of the subject
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the name of the aspect that changed
+     */
+    public String getAspect() {
+        return this.aspect;
+    }
+
+    /**
+     * @return the new value
+     */
+    public Object getValue() {
+        return this.value;
+    }
+
+    public String toString() {
+        return "(#" + this.subjectId + " " + this.aspect + " = " + this.value
+                + ")";
+    }
+
+    /**
+     * Write the body of a record into a buffer, which grows when it is too
+     * small.
+     *
+     * @return the buffer written into
+     */
+    static ByteBuffer encode(ByteBuffer buffer, final long subjectId,
+            final String type, final String aspect, final Object value) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        byte[] aspectBytes = aspect.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = null;
+        int valueSize;
+        if (value == null) {
+            valueSize = 1;
+        } else if (value instanceof String) {
+            valueBytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            valueSize = 5 + valueBytes.length;
+        } else if (value instanceof Integer) {
+            valueSize = 5;
+        } else if (value instanceof Long || value instanceof Double) {
+            valueSize = 9;
+        } else if (value instanceof Boolean) {
+            valueSize = 2;
+        } else if (value instanceof Reference) {
+            valueBytes = ((Reference) value).type
+                    .getBytes(StandardCharsets.UTF_8);
+            valueSize = 11 + valueBytes.length;
+        } else {
+            valueBytes = serialize(value);
+            valueSize = 5 + valueBytes.length;
+        }
+        int size = 12 + typeBytes.length + aspectBytes.length + valueSize;
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.putLong(subjectId);
+        buffer.putShort((short) typeBytes.length);
+        buffer.put(typeBytes);
+        buffer.putShort((short) aspectBytes.length);
+        buffer.put(aspectBytes);
+        if (value == null) {
+            buffer.put(NULL);
+        } else if (value instanceof String) {
+            buffer.put(STRING);
+            buffer.putInt(valueBytes.length);
+            buffer.put(valueBytes);
+        } else if (value instanceof Integer) {
+            buffer.put(INTEGER);
+            buffer.putInt(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            buffer.put(LONG);
+            buffer.putLong(((Long) value).longValue());
+        } else if (value instanceof Double) {
+            buffer.put(DOUBLE);
+            buffer.putDouble(((Double) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            buffer.put(BOOLEAN);
+            buffer.put((byte) (((Boolean) value).booleanValue() ? 1 : 0));
+        } else if (value instanceof Reference) {
+            buffer.put(REFERENCE);
+            buffer.putLong(((Reference) value).id);
+            buffer.putShort((short) valueBytes.length);
+            buffer.put(valueBytes);
+        } else {
+            buffer.put(SERIALIZED);
+            buffer.putInt(valueBytes.length);
+            buffer.put(valueBytes);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Read the body of a record.
+     */
+    static JournalRecord decode(final ByteBuffer body) throws IOException {
+        long subjectId = body.getLong();
+        String type = string(body, body.getShort() & 0xFFFF);
+        String aspect = string(body, body.getShort() & 0xFFFF);
+        Object value;
+        byte tag = body.get();
+        switch (tag) {
+        case NULL:
+            value = null;
+            break;
+        case STRING:
+            value = string(body, body.getInt());
+            break;
+        case INTEGER:
+            value = Integer.valueOf(body.getInt());
+            break;
+        case LONG:
+            value = Long.valueOf(body.getLong());
+            break;
+        case DOUBLE:
+            value = Double.valueOf(body.getDouble());
+            break;
+        case BOOLEAN:
+            value = Boolean.valueOf(body.get() != 0);
+            break;
+        case REFERENCE:
+            long id = body.getLong();
+            value = new Reference(id, string(body, body.getShort() & 0xFFFF));
+            break;
+        case SERIALIZED:
+            byte[] bytes = new byte[body.getInt()];
+            body.get(bytes);
+            value = deserialize(bytes);
+            break;
+        default:
+            throw new IOException("Unknown value tag " + tag);
+        }
+        return new JournalRecord(subjectId, type, aspect, value);
+    }
+
+    private static String string(final ByteBuffer body, final int length) {
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] serialize(final Object value) {
+        if (!(value instanceof Serializable)) {
+            throw new IllegalArgumentException("Cannot journal a "
+                    + value.getClass().getName());
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot journal a "
+                    + value.getClass().getName(), e);
+        }
+    }
+
+    private static Object deserialize(final byte[] bytes) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+}
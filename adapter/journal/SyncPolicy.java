@@ -0,0 +1,28 @@
+package sepher.saf.adapter.journal;
+
+/**
+ * When a <code>Journal</code> forces its appended records to disk.
+ *
+ * @see Journal
+ */
+public enum SyncPolicy {
+
+    /**
+     * Leave it to the operating system. Fastest; a crash of the process loses
+     * nothing, a crash of the machine may lose the last records.
+     */
+    NEVER,
+
+    /**
+     * Force every sync interval, on a background thread. A crash of the
+     * machine loses at most the records of the last interval.
+     */
+    INTERVAL,
+
+    /**
+     * Force before <code>append</code> returns. Threads appending at the same
+     * time share one force, so the cost of a force is spread over all records
+     * written while the previous one was running.
+     */
+    ALWAYS
+}
@@ -0,0 +1,356 @@
+package sepher.saf.adapter.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates the aspect constants and adapters of the classes annotated with
+ * <code>GenerateAdapters</code>. For a class <code>Person</code> it writes
+ * <code>PersonAspects</code> in the same package, with for the property
+ * <code>name</code>:
+ *
+ * <pre><code>
+ *     public static final Aspect NAME = Aspect.of(Person.class, &quot;name&quot;);
+ *
+ *     public static final class NameAdapter extends InterfaceAdapter { ... }
+ * </code></pre>
+ *
+ * The adapter behaves like an <code>AspectAdapter</code> on the same aspect,
+ * but reads and writes the property with a plain method call.
+ * <p>
+ * The processor is registered in <code>META-INF/services</code>, so javac
+ * finds it when the SAF jar is on the processor path. It can also be named
+ * explicitly:
+ *
+ * <pre><code>
+ *     javac -processorpath &lt;saf classes&gt; \
+ *             -processor sepher.saf.adapter.processor.AdapterProcessor ...
+ * </code></pre>
+ *
+ * @see sepher.saf.adapter.GenerateAdapters
+ */
+public class AdapterProcessor extends AbstractProcessor {
+
+    /**
+     * The annotation I process.
+     */
+    private static final String ANNOTATION = "sepher.saf.adapter.GenerateAdapters";
+
+    /**
+     * The package of the framework; its own getters and setters, such as
+     * <code>getDispatcher</code>, are not properties of a domain class.
+     */
+    private static final String FRAMEWORK = "sepher.saf.adapter";
+
+    /**
+     * A getter and setter pair of an annotated class.
+     */
+    private static final class Property {
+        final String name;
+
+        final ExecutableElement getter;
+
+        final ExecutableElement setter;
+
+        Property(final String name, final ExecutableElement getter,
+                final ExecutableElement setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(final Set<? extends TypeElement> annotations,
+            final RoundEnvironment roundEnv) {
+        TypeElement annotation = this.processingEnv.getElementUtils()
+                .getTypeElement(ANNOTATION);
+        if (annotation == null) {
+            return false;
+        }
+        for (Iterator<? extends Element> it = roundEnv
+                .getElementsAnnotatedWith(annotation).iterator(); it.hasNext();) {
+            Element element = it.next();
+            if (this.check(element)) {
+                this.generate((TypeElement) element);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answer whether an annotated element is a top level, public subclass of
+     * <code>ChangingObservable</code>, reporting an error when it is not.
+     */
+    private boolean check(final Element element) {
+        if (element.getKind() != ElementKind.CLASS
+                || ((TypeElement) element).getNestingKind() != NestingKind.TOP_LEVEL
+                || !element.getModifiers().contains(Modifier.PUBLIC)) {
+            this.error(element, "@GenerateAdapters needs a public top level class");
+            return false;
+        }
+        TypeElement observable = this.processingEnv.getElementUtils()
+                .getTypeElement(FRAMEWORK + ".ChangingObservable");
+        if (!this.processingEnv.getTypeUtils().isSubtype(element.asType(),
+                observable.asType())) {
+            this.error(element,
+                    "@GenerateAdapters needs a subclass of ChangingObservable");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Answer the properties of a class, including the inherited ones, in the
+     * order of their getters.
+     */
+    private List<Property> propertiesOf(final TypeElement type) {
+        List<Property> properties = new ArrayList<Property>();
+        List<ExecutableElement> methods = ElementFilter
+                .methodsIn(this.processingEnv.getElementUtils().getAllMembers(
+                        type));
+        for (Iterator<ExecutableElement> it = methods.iterator(); it.hasNext();) {
+            ExecutableElement getter = it.next();
+            String methodName = getter.getSimpleName().toString();
+            if (!methodName.startsWith("get") || methodName.length() == 3
+                    || !getter.getParameters().isEmpty()
+                    || getter.getReturnType().getKind() == TypeKind.VOID
+                    || !this.isProperty(getter)) {
+                continue;
+            }
+            String postFix = methodName.substring(3);
+            ExecutableElement setter = this.setterOf(methods, "set" + postFix,
+                    getter.getReturnType());
+            if (setter != null) {
+                properties.add(new Property(Character.toLowerCase(postFix
+                        .charAt(0))
+                        + postFix.substring(1), getter, setter));
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Answer whether a method can be part of a property: public, not static,
+     * and not declared by the framework or by <code>Object</code>.
+     */
+    private boolean isProperty(final ExecutableElement method) {
+        if (!method.getModifiers().contains(Modifier.PUBLIC)
+                || method.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        PackageElement declaredIn = this.processingEnv.getElementUtils()
+                .getPackageOf(method);
+        String packageName = declaredIn.getQualifiedName().toString();
+        return !packageName.equals(FRAMEWORK)
+                && !packageName.equals("java.lang");
+    }
+
+    /**
+     * Answer the setter with the given name taking the type a getter answers.
+     */
+    private ExecutableElement setterOf(final List<ExecutableElement> methods,
+            final String name, final TypeMirror type) {
+        for (Iterator<ExecutableElement> it = methods.iterator(); it.hasNext();) {
+            ExecutableElement setter = it.next();
+            if (setter.getSimpleName().contentEquals(name)
+                    && setter.getParameters().size() == 1
+                    && this.isProperty(setter)
+                    && this.processingEnv.getTypeUtils().isSameType(
+                            setter.getParameters().get(0).asType(), type)) {
+                return setter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write the aspects class of an annotated class.
+     */
+    private void generate(final TypeElement type) {
+        String packageName = this.processingEnv.getElementUtils()
+                .getPackageOf(type).getQualifiedName().toString();
+        String simpleName = type.getSimpleName().toString();
+        String generatedName = simpleName + "Aspects";
+        List<Property> properties = this.propertiesOf(type);
+        try {
+            JavaFileObject file = this.processingEnv.getFiler()
+                    .createSourceFile(
+                            packageName.length() == 0 ? generatedName
+                                    : packageName + "." + generatedName, type);
+            PrintWriter out = new PrintWriter(file.openWriter());
+            try {
+                this.write(out, packageName, simpleName, generatedName,
+                        properties);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            this.error(type, "Cannot write " + generatedName + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the source of an aspects class.
+     */
+    private void write(final PrintWriter out, final String packageName,
+            final String simpleName, final String generatedName,
+            final List<Property> properties) {
+        if (packageName.length() > 0) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        out.println("import sepher.saf.adapter.Aspect;");
+        out.println("import sepher.saf.adapter.InterfaceAdapter;");
+        out.println();
+        out.println("/**");
+        out.println(" * The aspects of <code>" + simpleName
+                + "</code>, and an adapter per property.");
+        out.println(" */");
+        out.println("@javax.annotation.processing.Generated(\""
+                + AdapterProcessor.class.getName() + "\")");
+        out.println("public final class " + generatedName + " {");
+        for (Iterator<Property> it = properties.iterator(); it.hasNext();) {
+            Property property = it.next();
+            out.println();
+            out.println("    /**");
+            out.println("     * The aspect <code>" + property.name + "</code>.");
+            out.println("     */");
+            out.println("    public static final Aspect "
+                    + constantOf(property.name) + " = Aspect.of(" + simpleName
+                    + ".class, \"" + property.name + "\");");
+        }
+        out.println();
+        out.println("    private " + generatedName + "() {");
+        out.println("    }");
+        for (Iterator<Property> it = properties.iterator(); it.hasNext();) {
+            this.writeAdapter(out, simpleName, it.next());
+        }
+        out.println("}");
+    }
+
+    /**
+     * Write the adapter of a property.
+     */
+    private void writeAdapter(final PrintWriter out, final String simpleName,
+            final Property property) {
+        String constant = constantOf(property.name);
+        String adapter = Character.toUpperCase(property.name.charAt(0))
+                + property.name.substring(1) + "Adapter";
+        TypeMirror valueType = property.getter.getReturnType();
+        String castType = this.processingEnv.getTypeUtils().erasure(
+                valueType.getKind().isPrimitive() ? this.processingEnv
+                        .getTypeUtils().boxedClass(
+                                this.processingEnv.getTypeUtils()
+                                        .getPrimitiveType(valueType.getKind()))
+                        .asType() : valueType).toString();
+        out.println();
+        out.println("    /**");
+        out.println("     * Adapts the <code>" + property.name + "</code> of a <code>"
+                + simpleName + "</code>.");
+        out.println("     */");
+        out.println("    public static final class " + adapter
+                + " extends InterfaceAdapter {");
+        out.println();
+        out.println("        public " + adapter + "(final " + simpleName
+                + " subject) {");
+        out.println("            this.setSubject(subject);");
+        out.println("        }");
+        out.println();
+        out.println("        public Aspect getAspect() {");
+        out.println("            return this.subject == null ? null : "
+                + constant + ";");
+        out.println("        }");
+        out.println();
+        out.println("        protected Object getValueUsingTarget(final Object target) {");
+        out.println("            return target == null ? null : ((" + simpleName
+                + ") target)." + property.getter.getSimpleName() + "();");
+        out.println("        }");
+        out.println();
+        if (!valueType.getKind().isPrimitive()
+                && !this.processingEnv.getTypeUtils().isSameType(valueType,
+                        this.processingEnv.getTypeUtils().erasure(valueType))) {
+            out.println("        @SuppressWarnings(\"unchecked\")");
+        }
+        out.println("        protected void setValueUsingTarget(final Object target,");
+        out.println("                final Object value) {");
+        out.println("            ((" + simpleName + ") target)."
+                + property.setter.getSimpleName() + "((" + castType
+                + ") value);");
+        out.println("        }");
+        out.println();
+        out.println("        public void update(final Object sender, final Object arg) {");
+        out.println("            if (sender == this.subject && \"" + property.name
+                + "\".equals(arg)) {");
+        out.println("                this.setChanged();");
+        out.println("                this.notifyObservers(arg);");
+        out.println("            } else {");
+        out.println("                super.update(sender, arg);");
+        out.println("            }");
+        out.println("        }");
+        out.println();
+        out.println("        public void update(final Object sender, final Aspect anAspect) {");
+        out.println("            if (sender == this.subject && anAspect == " + constant
+                + ") {");
+        out.println("                this.setChanged();");
+        out.println("                this.notifyObservers(anAspect);");
+        out.println("            } else {");
+        out.println("                this.update(sender, (Object) anAspect.getName());");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Answer the name of the constant of a property: <code>firstName</code>
+     * becomes <code>FIRST_NAME</code>.
+     */
+    private static String constantOf(final String property) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < property.length(); i++) {
+            char c = property.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Report an error on an element.
+     */
+    private void error(final Element element, final String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                message, element);
+    }
+}
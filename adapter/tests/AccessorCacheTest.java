@@ -0,0 +1,126 @@
+package sepher.saf.adapter.tests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor AccessorCache.
+ */
+public class AccessorCacheTest extends TestCase {
+
+    /**
+     * Class loader with its own copy of <code>Address</code>.
+     */
+    private static final class AddressLoader extends ClassLoader {
+        AddressLoader() {
+            super(AccessorCacheTest.class.getClassLoader());
+        }
+
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.equals(Address.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (this.getClassLoadingLock(name)) {
+                Class<?> type = this.findLoadedClass(name);
+                if (type == null) {
+                    byte[] bytes;
+                    try {
+                        InputStream in = this.getParent().getResourceAsStream(
+                                name.replace('.', '/') + ".class");
+                        try {
+                            bytes = in.readAllBytes();
+                        } finally {
+                            in.close();
+                        }
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                    type = this.defineClass(name, bytes, 0, bytes.length);
+                }
+                return type;
+            }
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     * 
+     * @param testNaam
+     *        java.lang.String
+     */
+    public AccessorCacheTest(String testNaam) {
+        super(testNaam);
+    }
+
+    /**
+     * A unit test suite for JUnit
+     * 
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("AccessorCacheTest");
+        suite.addTest(new TestSuite(AccessorCacheTest.class));
+        return suite;
+    }
+
+    public void testForAspectIsShared() throws NoSuchMethodException {
+        Accessor first = AccessorCache.forAspect(Person.class, "name");
+        Accessor second = AccessorCache.forAspect(Person.class, "name");
+        assertSame(first, second);
+        assertSame(first, AccessorCache.forSignatures(Person.class,
+                "setName", "getName"));
+    }
+
+    public void testForAspectWithoutMethods() {
+        try {
+            AccessorCache.forAspect(Person.class, "age");
+            fail("expected a NoSuchMethodException");
+        } catch (NoSuchMethodException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A cached accessor does not keep its class, or the class loader of that
+     * class, reachable.
+     */
+    public void testClassLoaderNotKept() throws Exception {
+        WeakReference<ClassLoader> loader = useAddressOfOtherLoader();
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("class loader was kept reachable", loader.get());
+    }
+
+    /**
+     * Set and get an aspect of an <code>Address</code> loaded by a class
+     * loader of its own, and answer a weak reference to that loader.
+     */
+    private static WeakReference<ClassLoader> useAddressOfOtherLoader()
+            throws Exception {
+        ClassLoader loader = new AddressLoader();
+        Class<?> type = loader.loadClass(Address.class.getName());
+        assertNotSame(Address.class, type);
+        Object address = type.getConstructor().newInstance();
+        Accessor accessor = AccessorCache.forAspect(type, "street");
+        accessor.set(address, "Dorpsstraat");
+        assertEquals("Dorpsstraat", accessor.get(address));
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    public void testPrewarm() throws NoSuchMethodException {
+        AccessorCache.prewarm(new Class[] { DynamicValue.class });
+        Accessor accessor = AccessorCache.forSignatures(DynamicValue.class,
+                "setValue", "getValue");
+        assertSame(accessor, AccessorCache
+                .forAspect(DynamicValue.class, "value"));
+    }
+}
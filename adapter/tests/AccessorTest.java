@@ -0,0 +1,100 @@
+package sepher.saf.adapter.tests;
+
+import java.lang.reflect.InvocationTargetException;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor Accessor.
+ */
+public class AccessorTest extends TestCase {
+
+    private Person person;
+
+    /**
+     * Domain class that is not public, so that the accessor has to fall back
+     * on method handles.
+     */
+    private static class aHiddenObservable extends ChangingObservable {
+        private Integer count = new Integer(0);
+
+        public Integer getCount() {
+            return count;
+        }
+
+        public void setCount(Integer newCount) {
+            this.count = newCount;
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     * 
+     * @param testNaam
+     *        java.lang.String
+     */
+    public AccessorTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.person = new Person();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     * 
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("AccessorTest");
+        suite.addTest(new TestSuite(AccessorTest.class));
+        return suite;
+    }
+
+    public void tearDown() {
+        this.person = null;
+    }
+
+    public void testForMethods() throws Exception {
+        Accessor accessor = Accessor.forMethods(Person.class.getMethod(
+                "getName", new Class[0]), Person.class.getMethod("setName",
+                new Class[] { String.class }));
+        accessor.set(person, "Janssen");
+        assertEquals("Janssen", person.getName());
+        assertEquals("Janssen", accessor.get(person));
+    }
+
+    public void testForMethodsOfHiddenClass() throws Exception {
+        aHiddenObservable hidden = new aHiddenObservable();
+        Accessor accessor = Accessor.forMethods(aHiddenObservable.class
+                .getMethod("getCount", new Class[0]), aHiddenObservable.class
+                .getMethod("setCount", new Class[] { Integer.class }));
+        accessor.set(hidden, new Integer(3));
+        assertEquals(new Integer(3), accessor.get(hidden));
+    }
+
+    public void testOf() throws Exception {
+        Accessor accessor = Accessor.of(Person::getName, Person::setName);
+        accessor.set(person, "Pietersen");
+        assertEquals("Pietersen", accessor.get(person));
+    }
+
+    public void testBound() throws Exception {
+        Accessor accessor = Accessor.bound(person::getName, person::setName);
+        accessor.set(null, "Klaassen");
+        assertEquals("Klaassen", accessor.get(null));
+    }
+
+    public void testExceptionIsWrapped() {
+        Accessor accessor = Accessor.of(Person::getName, Person::setName);
+        try {
+            accessor.get(null);
+            fail("expected an InvocationTargetException");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+    }
+}
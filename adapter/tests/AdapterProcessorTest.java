@@ -0,0 +1,188 @@
+package sepher.saf.adapter.tests;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.processor.AdapterProcessor;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor AdapterProcessor. Compiles a domain class with the
+ * processor and uses the adapters it generated.
+ */
+public class AdapterProcessorTest extends TestCase {
+
+    private static final String CUSTOMER = "package shop;\n"
+            + "import java.util.List;\n"
+            + "import sepher.saf.adapter.*;\n"
+            + "@GenerateAdapters\n"
+            + "public class Customer extends ChangingObservable {\n"
+            + "    private String name;\n"
+            + "    private int age;\n"
+            + "    private List<String> tags;\n"
+            + "    public String getName() { return name; }\n"
+            + "    public void setName(String n) { name = n; setChanged(\"name\"); }\n"
+            + "    public int getAge() { return age; }\n"
+            + "    public void setAge(int a) { age = a; setChanged(\"age\"); }\n"
+            + "    public List<String> getTags() { return tags; }\n"
+            + "    public void setTags(List<String> t) { tags = t; }\n"
+            + "    public String getReadOnly() { return \"\"; }\n"
+            + "}\n";
+
+    private File output;
+
+    private StringWriter diagnostics;
+
+    /**
+     * Source held in memory.
+     */
+    private static class aSource extends SimpleJavaFileObject {
+        private final String code;
+
+        aSource(String name, String code) {
+            super(URI.create("string:///" + name.replace('.', '/') + ".java"),
+                    JavaFileObject.Kind.SOURCE);
+            this.code = code;
+        }
+
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public AdapterProcessorTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() throws Exception {
+        this.output = File.createTempFile("saf", "processor");
+        this.output.delete();
+        this.output.mkdirs();
+        this.diagnostics = new StringWriter();
+    }
+
+    public void tearDown() {
+        delete(this.output);
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("AdapterProcessorTest");
+        suite.addTest(new TestSuite(AdapterProcessorTest.class));
+        return suite;
+    }
+
+    /**
+     * Compile a source with the processor into the output directory.
+     */
+    private boolean compile(String name, String code) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = Arrays.asList(new String[] { "-d",
+                this.output.getPath(), "-classpath",
+                System.getProperty("java.class.path") });
+        JavaCompiler.CompilationTask task = compiler.getTask(this.diagnostics,
+                null, null, options, null, Collections
+                        .singletonList(new aSource(name, code)));
+        task.setProcessors(Collections.singletonList(new AdapterProcessor()));
+        return task.call().booleanValue();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        for (int i = 0; children != null && i < children.length; i++) {
+            delete(children[i]);
+        }
+        file.delete();
+    }
+
+    /**
+     * The generated adapters get, set and notify like an
+     * <code>AspectAdapter</code>, for objects, primitives and generic types.
+     */
+    public void testGeneratedAdapters() throws Exception {
+        assertTrue(this.diagnostics.toString(), this.compile("shop.Customer",
+                CUSTOMER));
+        assertTrue(new File(this.output, "shop/CustomerAspects.class")
+                .exists());
+        URLClassLoader loader = new URLClassLoader(new URL[] { this.output
+                .toURI().toURL() }, this.getClass().getClassLoader());
+        Class<?> customerClass = loader.loadClass("shop.Customer");
+        Class<?> aspects = loader.loadClass("shop.CustomerAspects");
+        ChangingObservable customer = (ChangingObservable) customerClass
+                .newInstance();
+        assertSame(Aspect.of(customerClass, "name"), aspects.getField("NAME")
+                .get(null));
+        try {
+            aspects.getField("READ_ONLY");
+            fail();
+        } catch (NoSuchFieldException expected) {
+        }
+
+        Constructor<?> nameConstructor = loader.loadClass(
+                "shop.CustomerAspects$NameAdapter").getConstructor(
+                new Class[] { customerClass });
+        InterfaceAdapter name = (InterfaceAdapter) nameConstructor
+                .newInstance(new Object[] { customer });
+        final int[] updates = new int[1];
+        name.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updates[0]++;
+            }
+        });
+        name.setSubjectSendsUpdates(Boolean.TRUE);
+        name.setValue("Janssen");
+        assertEquals("Janssen", customerClass.getMethod("getName",
+                new Class[0]).invoke(customer, new Object[0]));
+        assertEquals("Janssen", name.getValue());
+        assertEquals(1, updates[0]);
+
+        InterfaceAdapter age = (InterfaceAdapter) loader.loadClass(
+                "shop.CustomerAspects$AgeAdapter").getConstructor(
+                new Class[] { customerClass }).newInstance(
+                new Object[] { customer });
+        age.setValue(new Integer(42));
+        assertEquals(new Integer(42), age.getValue());
+
+        InterfaceAdapter tags = (InterfaceAdapter) loader.loadClass(
+                "shop.CustomerAspects$TagsAdapter").getConstructor(
+                new Class[] { customerClass }).newInstance(
+                new Object[] { customer });
+        tags.setValue(Collections.singletonList("vip"));
+        assertEquals(Collections.singletonList("vip"), tags.getValue());
+        loader.close();
+    }
+
+    /**
+     * A class that is not observable is refused.
+     */
+    public void testNotObservable() {
+        assertFalse(this.compile("shop.Product", "package shop;\n"
+                + "@sepher.saf.adapter.GenerateAdapters\n"
+                + "public class Product {\n" + "}\n"));
+        assertTrue(this.diagnostics.toString().indexOf(
+                "subclass of ChangingObservable") >= 0);
+    }
+}
@@ -14,11 +14,34 @@ public class AllTests extends TestSuite {
     public static Test suite() {
 
         TestSuite suite = new TestSuite("All JUnit Tests for package adapter");
+        suite.addTest(AccessorCacheTest.suite());
+        suite.addTest(AdapterProcessorTest.suite());
+        suite.addTest(AccessorTest.suite());
         suite.addTest(AspectAdapterTest.suite());
+        suite.addTest(AspectTest.suite());
+        suite.addTest(ChangeBatchTest.suite());
+        suite.addTest(ChangeEventTest.suite());
+        suite.addTest(ChangePolicyTest.suite());
+        suite.addTest(ChangePublisherTest.suite());
         suite.addTest(BufferedDynamicValueTest.suite());
         suite.addTest(ChangingObservableTest.suite());
+        suite.addTest(ComputedValueTest.suite());
+        suite.addTest(CheckpointerTest.suite());
+        suite.addTest(CommitGroupTest.suite());
         suite.addTest(DynamicValueTest.suite());
         suite.addTest(InterfaceAdapterTest.suite());
+        suite.addTest(JournalTest.suite());
+        suite.addTest(NotificationMetricsTest.suite());
+        suite.addTest(OrderedDispatcherTest.suite());
+        suite.addTest(PathAdapterTest.suite());
+        suite.addTest(PrimitiveValueTest.suite());
+        suite.addTest(QueuedObserverTest.suite());
+        suite.addTest(RingBufferDispatcherTest.suite());
+        suite.addTest(SAFObservableTest.suite());
+        suite.addTest(TimedValueTest.suite());
+        suite.addTest(TimingWheelTest.suite());
+        suite.addTest(WeakObserverTest.suite());
+        suite.addTest(WriteBehindObserverTest.suite());
 
         return suite;
     }
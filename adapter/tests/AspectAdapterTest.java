@@ -1,5 +1,7 @@
 package sepher.saf.adapter.tests;
 
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
 import junit.framework.*;
 
 /**
@@ -7,6 +9,8 @@ import junit.framework.*;
  */
 public class AspectAdapterTest extends TestCase {
 
+    private Person person;
+
     /**
      * Constructor voor de class
      * 
@@ -21,7 +25,7 @@ public class AspectAdapterTest extends TestCase {
      * Setup objects to link the <code>AspectAdapter</code> with.
      */
     public void setUp() {
-
+        this.person = new Person();
     }
 
     /**
@@ -37,7 +41,67 @@ public class AspectAdapterTest extends TestCase {
     }
 
     public void tearDown() {
+        this.person.untie();
+        this.person = null;
+    }
 
+    /**
+     * Get and set the value through a reflectively resolved adapter.
+     */
+    public void testGetSetValue() throws NoSuchMethodException {
+        AspectAdapter adapter = new AspectAdapter(person, "name");
+        adapter.setValue("Janssen");
+        assertEquals("Janssen", person.getName());
+        assertEquals("Janssen", adapter.getValue());
+    }
+
+    /**
+     * An adapter that observes its subject does so for its own aspect only.
+     */
+    public void testHookupForAspect() throws NoSuchMethodException {
+        AspectAdapter adapter = new AspectAdapter(person, "name");
+        adapter.setSubjectSendsUpdates(Boolean.TRUE);
+        final boolean[] updated = new boolean[1];
+        adapter.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updated[0] = true;
+            }
+        });
+        assertTrue(person.countObservers() == 1);
+        person.setName("Janssen");
+        assertTrue(updated[0]);
+        adapter.setSubjectSendsUpdates(Boolean.FALSE);
+        assertTrue(person.countObservers() == 0);
+    }
+
+    /**
+     * Get and set the value through an adapter built from lambdas.
+     */
+    public void testGetSetValueWithLambdas() {
+        AspectAdapter adapter = new AspectAdapter(person, "name",
+                person::getName, person::setName);
+        adapter.setValue("Pietersen");
+        assertEquals("Pietersen", person.getName());
+        assertEquals("Pietersen", adapter.getValue());
+    }
+
+    /**
+     * An unchanged value is not written to the subject, so the subject does
+     * not notify.
+     */
+    public void testSetValueUnchanged() throws NoSuchMethodException {
+        AspectAdapter adapter = new AspectAdapter(person, "name");
+        adapter.setChangePolicy(ChangePolicy.comparing(String.CASE_INSENSITIVE_ORDER));
+        final int[] updates = new int[1];
+        person.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updates[0]++;
+            }
+        });
+        adapter.setValue("Janssen");
+        adapter.setValue("JANSSEN");
+        assertEquals(1, updates[0]);
+        assertEquals("Janssen", person.getName());
     }
 
     /**
@@ -0,0 +1,118 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor Aspect.
+ */
+public class AspectTest extends TestCase {
+
+    private Aspect received = null;
+
+    /**
+     * Observer that remembers the aspect it received.
+     */
+    private class anObserver implements SAFObserver {
+        public void update(Object sender, Object aspect) {
+            fail("aspects should be received as Aspect");
+        }
+
+        public void update(Object sender, Aspect aspect) {
+            received = aspect;
+        }
+    }
+
+    /**
+     * Subclass of a domain class, sharing its aspects.
+     */
+    private static class anEmployee extends Person {
+    }
+
+    /**
+     * Observable sending free-form names.
+     */
+    private static class aFreeFormSubject extends ChangingObservable {
+        void fire(String name) {
+            this.setChanged(name);
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     * 
+     * @param testNaam
+     *        java.lang.String
+     */
+    public AspectTest(String testNaam) {
+        super(testNaam);
+    }
+
+    /**
+     * A unit test suite for JUnit
+     * 
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("AspectTest");
+        suite.addTest(new TestSuite(AspectTest.class));
+        return suite;
+    }
+
+    public void testOfIsInterned() {
+        assertSame(Person.NAME, Aspect.of(Person.class, "name"));
+        assertSame(Person.NAME, Aspect.of(anEmployee.class, "name"));
+        assertNotSame(Person.NAME, Aspect.of(DynamicValue.class, "name"));
+        assertSame(Person.class, Person.NAME.getDomainClass());
+    }
+
+    public void testIdsAreDense() {
+        Aspect[] aspects = Aspect.aspectsOf(anEmployee.class);
+        for (int i = 0; i < aspects.length; i++) {
+            assertEquals(i, aspects[i].getId());
+        }
+        Aspect added = Aspect.of(anEmployee.class, "salary");
+        assertEquals(aspects.length, added.getId());
+    }
+
+    public void testIn() {
+        Aspect value = Aspect.of(DynamicValue.class, "value");
+        assertSame(DynamicValue.VALUE, value.in(BufferedDynamicValue.class));
+        assertSame(InterfaceAdapter.VALUE, value.in(AspectAdapter.class));
+    }
+
+    public void testStringIsMappedToAspect() {
+        Person person = new anEmployee();
+        person.addObserver(new anObserver());
+        person.setName("Janssen");
+        assertSame(Person.NAME, received);
+    }
+
+    public void testUnknownStringIsNotInterned() {
+        final List<Object> names = new ArrayList<Object>();
+        aFreeFormSubject subject = new aFreeFormSubject();
+        subject.addObserver(new SAFObserver() {
+            public void update(Object sender, Object arg) {
+                names.add(arg);
+            }
+        });
+        int known = Aspect.aspectsOf(aFreeFormSubject.class).length;
+        for (int i = 0; i < 100; i++) {
+            subject.fire("request " + i);
+        }
+        assertEquals(known, Aspect.aspectsOf(aFreeFormSubject.class).length);
+        assertEquals(100, names.size());
+        assertEquals("request 0", names.get(0));
+    }
+
+    public void testObserverForStringAspect() {
+        Person person = new Person();
+        person.addObserver(new anObserver(), "name");
+        person.setName("Janssen");
+        assertSame(Person.NAME, received);
+    }
+}
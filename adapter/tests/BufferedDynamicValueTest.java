@@ -1,6 +1,7 @@
 package sepher.saf.adapter.tests;
 
 import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
 import junit.framework.*;
 
 /**
@@ -63,7 +64,20 @@ public class BufferedDynamicValueTest extends TestCase {
 
 	}
 
-	public void testUpdate() {
-
+	/**
+	 * Setting the trigger channel to true flushes the buffered value to the
+	 * domain object.
+	 */
+	public void testUpdate() throws NoSuchMethodException {
+		Person person = new Person();
+		DynamicValue trigger = new DynamicValue(Boolean.FALSE);
+		BufferedDynamicValue buffer = new BufferedDynamicValue(
+				new AspectAdapter(person, "name"), trigger);
+		buffer.setValue("Janssen");
+		assertEquals("", person.getName());
+		assertEquals("Janssen", buffer.getValue());
+		trigger.setValue(Boolean.TRUE);
+		assertEquals("Janssen", person.getName());
+		assertEquals("Janssen", buffer.getValue());
 	}
 }
@@ -0,0 +1,228 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor ChangeBatch.
+ */
+public class ChangeBatchTest extends TestCase {
+
+    private List<Object> updates;
+
+    /**
+     * Observer recording the sender and aspect of every update.
+     */
+    private class anObserver implements SAFObserver {
+        public void update(Object sender, Object aspect) {
+            updates.add(sender);
+            updates.add(aspect);
+        }
+    }
+
+    /**
+     * Observable with two aspects.
+     */
+    public static class aSubject extends ChangingObservable {
+        public static final Aspect FIRST = Aspect.of(aSubject.class, "first");
+
+        public static final Aspect SECOND = Aspect.of(aSubject.class, "second");
+
+        public void changeFirst() {
+            this.setChanged(FIRST);
+        }
+
+        public void changeSecond() {
+            this.setChanged(SECOND);
+        }
+
+        public void changeFirstByName() {
+            this.setChanged("first");
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public ChangeBatchTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.updates = new ArrayList<Object>();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("ChangeBatchTest");
+        suite.addTest(new TestSuite(ChangeBatchTest.class));
+        return suite;
+    }
+
+    /**
+     * Changes are delivered when the batch closes, once per aspect, in the
+     * order in which they were first made.
+     */
+    public void testCoalesce() {
+        aSubject subject = new aSubject();
+        subject.addObserver(new anObserver());
+        ChangeBatch batch = ChangeBatch.begin();
+        try {
+            subject.changeSecond();
+            subject.changeFirst();
+            subject.changeSecond();
+            subject.changeFirstByName();
+            assertTrue(updates.isEmpty());
+            assertEquals(4, batch.getRecordedCount());
+            assertEquals(2, batch.getPendingCount());
+        } finally {
+            batch.close();
+        }
+        assertEquals(4, updates.size());
+        assertEquals("second", updates.get(1));
+        assertEquals("first", updates.get(3));
+        assertFalse(ChangeBatch.isOpen());
+    }
+
+    /**
+     * A batch covers several subjects.
+     */
+    public void testSubjects() {
+        final aSubject first = new aSubject();
+        final aSubject second = new aSubject();
+        first.addObserver(new anObserver());
+        second.addObserver(new anObserver());
+        first.batch(new Runnable() {
+            public void run() {
+                second.changeFirst();
+                first.changeFirst();
+                second.changeFirst();
+            }
+        });
+        assertEquals(4, updates.size());
+        assertSame(second, updates.get(0));
+        assertSame(first, updates.get(2));
+    }
+
+    /**
+     * Only closing the outermost batch delivers.
+     */
+    public void testNested() {
+        aSubject subject = new aSubject();
+        subject.addObserver(new anObserver());
+        ChangeBatch outer = ChangeBatch.begin();
+        ChangeBatch inner = ChangeBatch.begin();
+        assertSame(outer, inner);
+        subject.changeFirst();
+        inner.close();
+        assertTrue(updates.isEmpty());
+        assertTrue(ChangeBatch.isOpen());
+        subject.changeFirst();
+        outer.close();
+        assertEquals(2, updates.size());
+    }
+
+    /**
+     * The changes are delivered when the code in the batch throws.
+     */
+    public void testException() {
+        Person person = new Person();
+        person.addObserver(new anObserver());
+        try {
+            ChangeBatch.run(new Runnable() {
+                public void run() {
+                    new Person().setName("Pietersen");
+                    throw new IllegalStateException();
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertFalse(ChangeBatch.isOpen());
+        person.setName("Janssen");
+        assertEquals(2, updates.size());
+    }
+
+    /**
+     * Changes made by observers during delivery are delivered immediately.
+     */
+    public void testChangeDuringDelivery() {
+        final aSubject subject = new aSubject();
+        subject.addObserver(new anObserver());
+        subject.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                if ("first".equals(aspect)) {
+                    subject.changeSecond();
+                }
+            }
+        });
+        subject.batch(new Runnable() {
+            public void run() {
+                subject.changeFirst();
+            }
+        });
+        assertEquals(4, updates.size());
+        assertEquals("second", updates.get(3));
+    }
+
+    /**
+     * A batch can only be closed on its own thread.
+     */
+    public void testCloseOtherThread() throws InterruptedException {
+        final ChangeBatch batch = ChangeBatch.begin();
+        final List<Object> failures = new ArrayList<Object>();
+        Thread other = new Thread() {
+            public void run() {
+                try {
+                    batch.close();
+                } catch (IllegalStateException e) {
+                    failures.add(e);
+                }
+            }
+        };
+        other.start();
+        other.join();
+        batch.close();
+        assertEquals(1, failures.size());
+    }
+
+    /**
+     * Suppressed changes are dropped, also inside an open batch, whose own
+     * changes are still delivered.
+     */
+    public void testSuppress() {
+        final aSubject subject = new aSubject();
+        subject.addObserver(new anObserver());
+        ChangeBatch.suppress(new Runnable() {
+            public void run() {
+                subject.changeFirst();
+            }
+        });
+        assertTrue(this.updates.isEmpty());
+        ChangeBatch batch = ChangeBatch.begin();
+        try {
+            subject.changeSecond();
+            ChangeBatch.suppress(new Runnable() {
+                public void run() {
+                    subject.changeFirst();
+                }
+            });
+        } finally {
+            batch.close();
+        }
+        assertEquals(2, this.updates.size());
+        assertEquals("second", this.updates.get(1));
+    }
+}
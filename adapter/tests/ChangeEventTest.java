@@ -0,0 +1,212 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor ChangeEvent.
+ */
+public class ChangeEventTest extends TestCase {
+
+    private Person person;
+
+    private List<ChangeEvent> events;
+
+    private List<Object> updates;
+
+    /**
+     * Keeps a copy of every event.
+     */
+    private class Recorder implements ChangeEventObserver {
+        public void changed(ChangeEvent event) {
+            events.add(event.copy());
+        }
+
+        public void update(Object sender, Object aspect) {
+            updates.add(aspect);
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public ChangeEventTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.person = new Person();
+        this.person.setName("Janssen");
+        this.events = new ArrayList<ChangeEvent>();
+        this.updates = new ArrayList<Object>();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("ChangeEventTest");
+        suite.addTest(new TestSuite(ChangeEventTest.class));
+        return suite;
+    }
+
+    /**
+     * An event observer receives the old and new value, numbered in order.
+     */
+    public void testValues() {
+        this.person.addObserver(new Recorder());
+        this.person.setName("Pietersen");
+        this.person.setName("Klaassen");
+        assertEquals(2, this.events.size());
+        ChangeEvent first = this.events.get(0);
+        assertSame(this.person, first.getSource());
+        assertSame(Person.NAME, first.getAspect());
+        assertEquals("Janssen", first.getOldValue());
+        assertEquals("Pietersen", first.getNewValue());
+        ChangeEvent second = this.events.get(1);
+        assertEquals("Pietersen", second.getOldValue());
+        assertEquals("Klaassen", second.getNewValue());
+        assertEquals(first.getSequence() + 1, second.getSequence());
+        assertEquals(second.getSequence(), this.person.getChangeSequence());
+        assertTrue(second.getTimestamp() > 0);
+        assertTrue(this.updates.isEmpty());
+    }
+
+    /**
+     * Other observers of the same subject still receive the aspect.
+     */
+    public void testPlainObserver() {
+        this.person.addObserver(new Recorder());
+        this.person.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updates.add(aspect);
+            }
+        });
+        this.person.setName("Pietersen");
+        assertEquals(1, this.events.size());
+        assertEquals(1, this.updates.size());
+        assertEquals("name", this.updates.get(0));
+    }
+
+    /**
+     * Without event observers no event is numbered.
+     */
+    public void testNoEventObservers() {
+        this.person.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updates.add(aspect);
+            }
+        });
+        this.person.setName("Pietersen");
+        assertEquals(1, this.updates.size());
+        assertEquals(0, this.person.getChangeSequence());
+    }
+
+    /**
+     * An event is recycled after delivery, a copy is not.
+     */
+    public void testRecycled() {
+        final ChangeEvent[] kept = new ChangeEvent[2];
+        this.person.addObserver(new ChangeEventObserver() {
+            public void changed(ChangeEvent event) {
+                kept[0] = event;
+                kept[1] = event.copy();
+            }
+
+            public void update(Object sender, Object aspect) {
+            }
+        });
+        this.person.setName("Pietersen");
+        assertNull(kept[0].getNewValue());
+        assertEquals("Pietersen", kept[1].getNewValue());
+        ChangeEvent delivered = kept[0];
+        this.person.setName("Klaassen");
+        assertSame(delivered, kept[0]);
+    }
+
+    /**
+     * Changes made by an event observer get their own event.
+     */
+    public void testNested() {
+        final DynamicValue echo = new DynamicValue("");
+        echo.addObserver(new Recorder());
+        this.person.addObserver(new ChangeEventObserver() {
+            public void changed(ChangeEvent event) {
+                echo.setValue(event.getNewValue());
+                events.add(event.copy());
+            }
+
+            public void update(Object sender, Object aspect) {
+            }
+        });
+        this.person.setName("Pietersen");
+        assertEquals(2, this.events.size());
+        assertEquals("Pietersen", this.events.get(0).getNewValue());
+        assertSame(echo, this.events.get(0).getSource());
+        assertSame(this.person, this.events.get(1).getSource());
+        assertEquals("Janssen", this.events.get(1).getOldValue());
+    }
+
+    /**
+     * A weakly registered event observer receives the event.
+     */
+    public void testWeakObserver() {
+        Recorder recorder = new Recorder();
+        this.person.addWeakObserver(recorder, Person.NAME);
+        this.person.setName("Pietersen");
+        assertEquals(1, this.events.size());
+        assertEquals("Janssen", this.events.get(0).getOldValue());
+    }
+
+    /**
+     * Inside a batch the events of one aspect are coalesced: the first old
+     * value, the last new value.
+     */
+    public void testBatch() {
+        this.person.addObserver(new Recorder());
+        this.person.batch(new Runnable() {
+            public void run() {
+                person.setName("Pietersen");
+                person.setName("Klaassen");
+                assertTrue(events.isEmpty());
+            }
+        });
+        assertEquals(1, this.events.size());
+        ChangeEvent event = this.events.get(0);
+        assertEquals("Janssen", event.getOldValue());
+        assertEquals("Klaassen", event.getNewValue());
+        assertEquals(this.person.getChangeSequence(), event.getSequence());
+    }
+
+    /**
+     * A dispatcher delivers a copy, valid after the change returned.
+     */
+    public void testDispatcher() {
+        this.person.addObserver(new Recorder());
+        this.person.setDispatcher(OrderedDispatcher.SHARED);
+        this.person.setName("Pietersen");
+        assertEquals(1, this.events.size());
+        assertEquals("Pietersen", this.events.get(0).getNewValue());
+    }
+
+    /**
+     * Primitive values report boxed values.
+     */
+    public void testPrimitiveValue() {
+        IntValue count = new IntValue(3);
+        count.addObserver(new Recorder());
+        count.setInt(4);
+        assertEquals(1, this.events.size());
+        assertEquals(Integer.valueOf(3), this.events.get(0).getOldValue());
+        assertEquals(Integer.valueOf(4), this.events.get(0).getNewValue());
+    }
+}
@@ -0,0 +1,113 @@
+package sepher.saf.adapter.tests;
+
+import java.util.Comparator;
+
+import sepher.saf.adapter.*;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor ChangePolicy.
+ */
+public class ChangePolicyTest extends TestCase {
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public ChangePolicyTest(String testNaam) {
+        super(testNaam);
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("ChangePolicyTest");
+        suite.addTest(new TestSuite(ChangePolicyTest.class));
+        return suite;
+    }
+
+    public void testAlways() {
+        assertTrue(ChangePolicy.ALWAYS.isChange("a", "a"));
+        assertTrue(ChangePolicy.ALWAYS.isChange(null, null));
+    }
+
+    public void testIdentity() {
+        String value = "waarde";
+        assertFalse(ChangePolicy.IDENTITY.isChange(value, value));
+        assertTrue(ChangePolicy.IDENTITY.isChange(value, new String(value)));
+    }
+
+    public void testEquals() {
+        assertFalse(ChangePolicy.EQUALS.isChange("a", new String("a")));
+        assertFalse(ChangePolicy.EQUALS.isChange(null, null));
+        assertTrue(ChangePolicy.EQUALS.isChange(null, "a"));
+        assertTrue(ChangePolicy.EQUALS.isChange("a", null));
+    }
+
+    public void testComparing() {
+        ChangePolicy policy = ChangePolicy.comparing(new Comparator<String>() {
+            public int compare(String first, String second) {
+                return first.compareToIgnoreCase(second);
+            }
+        });
+        assertFalse(policy.isChange("Janssen", "JANSSEN"));
+        assertTrue(policy.isChange("Janssen", "Pietersen"));
+        assertTrue(policy.isChange(null, "Janssen"));
+        assertEquals(1, policy.getSuppressedCount());
+    }
+
+    public void testWithin() {
+        ChangePolicy policy = ChangePolicy.within(0.1);
+        assertFalse(policy.isChange(new Double(20.0), new Double(20.05)));
+        assertTrue(policy.isChange(new Double(20.0), new Double(20.2)));
+        assertFalse(policy.isChange(new Integer(20), new Double(20.0)));
+        assertFalse(policy.isChange(new Double(Double.NaN), new Double(Double.NaN)));
+        assertTrue(policy.isChange(new Double(Double.NaN), new Double(20.0)));
+        assertFalse(policy.isChange("a", "a"));
+        assertEquals(4, policy.getSuppressedCount());
+        policy.resetSuppressedCount();
+        assertEquals(0, policy.getSuppressedCount());
+    }
+
+    /**
+     * An epsilon of zero only suppresses equal numbers; a negative one is
+     * refused.
+     */
+    public void testWithinZero() {
+        ChangePolicy policy = ChangePolicy.within(0);
+        assertFalse(policy.isChange(new Integer(20), new Double(20.0)));
+        assertTrue(policy.isChange(new Double(20.0), new Double(20.01)));
+        try {
+            ChangePolicy.within(-0.1);
+            fail("negative epsilon accepted");
+        } catch (IllegalArgumentException e) {
+            assertEquals("epsilon must not be negative", e.getMessage());
+        }
+    }
+
+    /**
+     * A value that is not a change is neither stored nor notified.
+     */
+    public void testDynamicValue() {
+        final int[] updates = new int[1];
+        DynamicValue value = new DynamicValue(new Double(20.0));
+        value.setChangePolicy(ChangePolicy.within(0.1));
+        value.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updates[0]++;
+            }
+        });
+        value.setValue(new Double(20.06));
+        value.setValue(new Double(20.09));
+        assertEquals(0, updates[0]);
+        assertEquals(new Double(20.0), value.getValue());
+        value.setValue(new Double(20.2));
+        assertEquals(1, updates[0]);
+        assertEquals(2, value.getChangePolicy().getSuppressedCount());
+    }
+}
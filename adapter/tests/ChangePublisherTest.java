@@ -0,0 +1,307 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor ChangePublisher and ValueSubscriber.
+ */
+public class ChangePublisherTest extends TestCase {
+
+    /**
+     * Records what it receives and requests nothing by itself.
+     */
+    private static class Recorder implements Flow.Subscriber<Object> {
+        final List<Object> items = new ArrayList<Object>();
+
+        Flow.Subscription subscription;
+
+        Throwable failure;
+
+        boolean completed;
+
+        /**
+         * Set when a signal came before onSubscribe.
+         */
+        boolean early;
+
+        public synchronized void onSubscribe(Flow.Subscription s) {
+            this.subscription = s;
+        }
+
+        public synchronized void onNext(Object item) {
+            this.early |= this.subscription == null;
+            this.items.add(item);
+            this.notifyAll();
+        }
+
+        public synchronized void onError(Throwable t) {
+            this.early |= this.subscription == null;
+            this.failure = t;
+            this.notifyAll();
+        }
+
+        public synchronized void onComplete() {
+            this.early |= this.subscription == null;
+            this.completed = true;
+            this.notifyAll();
+        }
+
+        synchronized void awaitItems(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (this.items.size() < count
+                    && System.currentTimeMillis() < deadline) {
+                this.wait(100);
+            }
+            assertEquals(count, this.items.size());
+        }
+
+        synchronized void awaitEnd() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!this.completed && this.failure == null
+                    && System.currentTimeMillis() < deadline) {
+                this.wait(100);
+            }
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public ChangePublisherTest(String testNaam) {
+        super(testNaam);
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("ChangePublisherTest");
+        suite.addTest(new TestSuite(ChangePublisherTest.class));
+        return suite;
+    }
+
+    /**
+     * Nothing is delivered before it is requested, and then in order.
+     */
+    public void testDemand() throws InterruptedException {
+        Person person = new Person();
+        ChangePublisher<ChangeEvent> publisher = ChangePublisher.changesOf(
+                person, null, 10, OverflowPolicy.BLOCK);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        person.setName("Janssen");
+        person.setName("Pietersen");
+        person.setName("Klaassen");
+        Thread.sleep(50);
+        assertTrue(recorder.items.isEmpty());
+        recorder.subscription.request(2);
+        recorder.awaitItems(2);
+        ChangeEvent first = (ChangeEvent) recorder.items.get(0);
+        assertSame(person, first.getSource());
+        assertEquals("Janssen", first.getNewValue());
+        assertEquals("Pietersen", ((ChangeEvent) recorder.items.get(1))
+                .getNewValue());
+        recorder.subscription.request(10);
+        recorder.awaitItems(3);
+    }
+
+    /**
+     * A publisher of one aspect leaves out the others.
+     */
+    public void testAspectFilter() throws InterruptedException {
+        Person person = new Person();
+        ChangePublisher<ChangeEvent> publisher = ChangePublisher.changesOf(
+                person, Person.ADDRESS, 10, OverflowPolicy.BLOCK);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        person.setName("Janssen");
+        Address address = new Address();
+        person.setAddress(address);
+        recorder.awaitItems(1);
+        assertSame(address, ((ChangeEvent) recorder.items.get(0))
+                .getNewValue());
+    }
+
+    /**
+     * Conflation keeps the latest change per aspect until it is requested.
+     */
+    public void testConflate() throws InterruptedException {
+        Person person = new Person();
+        ChangePublisher<ChangeEvent> publisher = ChangePublisher.changesOf(
+                person, null, 10, OverflowPolicy.CONFLATE);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        person.setName("Janssen");
+        person.setAddress(new Address());
+        person.setName("Pietersen");
+        person.setName("Klaassen");
+        assertEquals(2, publisher.getConflatedCount());
+        recorder.subscription.request(10);
+        recorder.awaitItems(2);
+        ChangeEvent name = (ChangeEvent) recorder.items.get(0);
+        assertEquals("", name.getOldValue());
+        assertEquals("Klaassen", name.getNewValue());
+    }
+
+    /**
+     * A full buffer drops as the policy says.
+     */
+    public void testDropNewest() throws InterruptedException {
+        Person person = new Person();
+        ChangePublisher<ChangeEvent> publisher = ChangePublisher.changesOf(
+                person, null, 2, OverflowPolicy.DROP_NEWEST);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        for (int i = 0; i < 5; i++) {
+            person.setName("name " + i);
+        }
+        assertEquals(3, publisher.getDroppedCount());
+        recorder.subscription.request(10);
+        recorder.awaitItems(2);
+        assertEquals("name 1", ((ChangeEvent) recorder.items.get(1))
+                .getNewValue());
+    }
+
+    /**
+     * The values of a value start with the current one and are conflated
+     * to the latest.
+     */
+    public void testValues() throws InterruptedException {
+        DynamicValue value = new DynamicValue("first");
+        ChangePublisher<Object> publisher = ChangePublisher.valuesOf(value);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        value.setValue("second");
+        value.setValue("third");
+        recorder.subscription.request(1);
+        recorder.awaitItems(1);
+        assertEquals("third", recorder.items.get(0));
+        value.setValue("fourth");
+        recorder.subscription.request(1);
+        recorder.awaitItems(2);
+        assertEquals("fourth", recorder.items.get(1));
+    }
+
+    /**
+     * By default the changes of an aspect waiting for a subscriber are
+     * conflated, without changing the events other subscribers received.
+     */
+    public void testDefaultConflates() throws InterruptedException {
+        final Person person = new Person();
+        ChangePublisher<ChangeEvent> publisher = ChangePublisher
+                .changesOf(person);
+        Recorder eager = new Recorder();
+        Recorder idle = new Recorder();
+        publisher.subscribe(eager);
+        publisher.subscribe(idle);
+        eager.subscription.request(10);
+        ChangeBatch.run(new Runnable() {
+            public void run() {
+                person.setName("A");
+            }
+        });
+        eager.awaitItems(1);
+        ChangeBatch.run(new Runnable() {
+            public void run() {
+                person.setName("C");
+            }
+        });
+        eager.awaitItems(2);
+        assertEquals("A", ((ChangeEvent) eager.items.get(0)).getNewValue());
+        idle.subscription.request(10);
+        idle.awaitItems(1);
+        ChangeEvent merged = (ChangeEvent) idle.items.get(0);
+        assertEquals("", merged.getOldValue());
+        assertEquals("C", merged.getNewValue());
+        assertEquals(1, publisher.getConflatedCount());
+        publisher.close();
+    }
+
+    /**
+     * Cancelling removes the registration; close completes the others after
+     * their buffer, and a non-positive request fails.
+     */
+    public void testCancelCloseAndError() throws InterruptedException {
+        Person person = new Person();
+        ChangePublisher<ChangeEvent> publisher = ChangePublisher
+                .changesOf(person);
+        Recorder cancelled = new Recorder();
+        Recorder closed = new Recorder();
+        Recorder failed = new Recorder();
+        publisher.subscribe(cancelled);
+        publisher.subscribe(closed);
+        publisher.subscribe(failed);
+        assertEquals(3, person.countObservers());
+        cancelled.subscription.cancel();
+        assertEquals(2, person.countObservers());
+        failed.subscription.request(0);
+        failed.awaitEnd();
+        assertTrue(failed.failure instanceof IllegalArgumentException);
+        person.setName("Janssen");
+        publisher.close();
+        closed.subscription.request(5);
+        closed.awaitEnd();
+        assertTrue(closed.completed);
+        assertEquals(1, closed.items.size());
+        assertEquals(0, publisher.getSubscriberCount());
+        assertEquals(0, person.countObservers());
+
+        Recorder late = new Recorder();
+        publisher.subscribe(late);
+        late.awaitEnd();
+        assertTrue(late.completed);
+        assertFalse(late.early);
+        assertEquals(0, person.countObservers());
+    }
+
+    /**
+     * A subscriber drives a value from a publisher.
+     */
+    public void testValueSubscriber() throws InterruptedException {
+        DynamicValue value = new DynamicValue();
+        ValueSubscriber subscriber = new ValueSubscriber(value, 4);
+        SubmissionPublisher<Object> source = new SubmissionPublisher<Object>();
+        source.subscribe(subscriber);
+        for (int i = 0; i < 20; i++) {
+            source.submit(Integer.valueOf(i));
+        }
+        source.close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!subscriber.isCompleted() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(subscriber.isCompleted());
+        assertEquals(Integer.valueOf(19), value.getValue());
+    }
+
+    /**
+     * Values chain: the values of one value drive another.
+     */
+    public void testValueToValue() throws InterruptedException {
+        DynamicValue source = new DynamicValue("first");
+        DynamicValue target = new DynamicValue();
+        ChangePublisher.valuesOf(source).subscribe(new ValueSubscriber(target));
+        source.setValue("second");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!"second".equals(target.getValue())
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("second", target.getValue());
+    }
+}
@@ -0,0 +1,205 @@
+package sepher.saf.adapter.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import sepher.saf.adapter.journal.*;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor Checkpointer.
+ */
+public class CheckpointerTest extends TestCase {
+
+    private File directory;
+
+    private Checkpointer checkpointer;
+
+    private Person person;
+
+    private Address address;
+
+    /**
+     * An object with an aspect that cannot be read.
+     */
+    public static class Broken extends ChangingObservable {
+        public String getState() {
+            throw new IllegalStateException("unreadable");
+        }
+
+        public void setState(String state) {
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public CheckpointerTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() throws IOException {
+        this.directory = File.createTempFile("checkpoint", "");
+        this.directory.delete();
+        this.checkpointer = new Checkpointer(this.directory);
+        this.person = new Person();
+        this.person.setName("Janssen");
+        this.address = new Address();
+        this.address.setStreet("Dorpsstraat");
+        this.person.setAddress(this.address);
+    }
+
+    public void tearDown() {
+        File[] files = this.directory.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("CheckpointerTest");
+        suite.addTest(new TestSuite(CheckpointerTest.class));
+        return suite;
+    }
+
+    /**
+     * The aspects of a class leave out the state of the framework.
+     */
+    public void testAspectsOf() {
+        String[] aspects = AccessorCache.aspectsOf(Person.class);
+        assertEquals(2, aspects.length);
+        assertEquals("address", aspects[0]);
+        assertEquals("name", aspects[1]);
+    }
+
+    /**
+     * Tracking a root tracks what it refers to; the first checkpoint writes
+     * both and load restores the graph.
+     */
+    public void testFullGraph() throws IOException {
+        long personId = this.checkpointer.track(this.person);
+        assertTrue(this.checkpointer.idOf(this.address) > 0);
+        assertEquals(2, this.checkpointer.checkpoint());
+        assertEquals(0, this.checkpointer.getDirtyCount());
+        Map<Long, Object> restored = Checkpointer.load(this.directory);
+        Person copy = (Person) restored.get(Long.valueOf(personId));
+        assertEquals("Janssen", copy.getName());
+        assertEquals("Dorpsstraat", copy.getAddress().getStreet());
+        assertSame(restored.get(Long.valueOf(this.checkpointer
+                .idOf(this.address))), copy.getAddress());
+    }
+
+    /**
+     * A later checkpoint only writes the objects that changed.
+     */
+    public void testIncremental() throws IOException {
+        long personId = this.checkpointer.track(this.person);
+        this.checkpointer.checkpoint();
+        this.address.setStreet("Kerkstraat");
+        assertEquals(1, this.checkpointer.getDirtyCount());
+        assertEquals(1, this.checkpointer.checkpoint());
+        assertEquals(0, this.checkpointer.checkpoint());
+        assertEquals(2, this.directory.list().length);
+        Person copy = (Person) Checkpointer.load(this.directory).get(
+                Long.valueOf(personId));
+        assertEquals("Kerkstraat", copy.getAddress().getStreet());
+    }
+
+    /**
+     * An object referred to after tracking is written by the next
+     * checkpoint.
+     */
+    public void testNewReference() throws IOException {
+        long personId = this.checkpointer.track(this.person);
+        this.checkpointer.checkpoint();
+        Address other = new Address();
+        other.setStreet("Molenweg");
+        this.person.setAddress(other);
+        this.checkpointer.checkpoint();
+        Person copy = (Person) Checkpointer.load(this.directory).get(
+                Long.valueOf(personId));
+        assertEquals("Molenweg", copy.getAddress().getStreet());
+        other.setStreet("Veldweg");
+        assertEquals(1, this.checkpointer.getDirtyCount());
+    }
+
+    /**
+     * A full checkpoint replaces the older ones.
+     */
+    public void testFullCheckpoint() throws IOException {
+        long personId = this.checkpointer.track(this.person);
+        this.checkpointer.checkpoint();
+        this.person.setName("Pietersen");
+        this.checkpointer.checkpoint();
+        assertEquals(2, this.checkpointer.fullCheckpoint());
+        assertEquals(1, this.directory.list().length);
+        Person copy = (Person) Checkpointer.load(this.directory).get(
+                Long.valueOf(personId));
+        assertEquals("Pietersen", copy.getName());
+    }
+
+    /**
+     * An aspect whose getter fails fails the checkpoint instead of being
+     * written as <code>null</code>, and the object stays dirty.
+     */
+    public void testUnreadableAspect() {
+        this.checkpointer.track(new Broken());
+        try {
+            this.checkpointer.checkpoint();
+            fail("unreadable aspect written");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(1, this.checkpointer.getDirtyCount());
+        assertEquals(0, this.directory.list().length);
+    }
+
+    /**
+     * Restored objects are tracked again under their ids, and restoring
+     * notifies nobody.
+     */
+    public void testRestart() throws IOException {
+        long personId = this.checkpointer.track(this.person);
+        this.checkpointer.checkpoint();
+        final List<Object> updates = new ArrayList<Object>();
+        Map<Long, Object> restored = Checkpointer.load(this.directory,
+                new Journal.Factory() {
+                    public Object create(long id, String type)
+                            throws Exception {
+                        ChangingObservable subject = (ChangingObservable) Class
+                                .forName(type).getConstructor().newInstance();
+                        subject.addObserver(new SAFObserver() {
+                            public void update(Object sender, Object arg) {
+                                updates.add(arg);
+                            }
+                        });
+                        return subject;
+                    }
+                }, 2);
+        assertTrue(updates.isEmpty());
+        Checkpointer restarted = new Checkpointer(this.directory);
+        restarted.attachAll(restored);
+        assertEquals(0, restarted.getDirtyCount());
+        Person copy = (Person) restored.get(Long.valueOf(personId));
+        copy.setName("Pietersen");
+        assertEquals(1, restarted.getDirtyCount());
+        assertEquals(1, restarted.checkpoint());
+        assertEquals("Pietersen", ((Person) Checkpointer.load(this.directory)
+                .get(Long.valueOf(personId))).getName());
+    }
+}
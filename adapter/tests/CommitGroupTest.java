@@ -0,0 +1,174 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor CommitGroup.
+ */
+public class CommitGroupTest extends TestCase {
+
+    private Person person;
+
+    private Address address;
+
+    private BufferedDynamicValue name;
+
+    private BufferedDynamicValue addressBuffer;
+
+    private List<Object> updates;
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public CommitGroupTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() throws NoSuchMethodException {
+        this.person = new Person();
+        this.person.setName("Janssen");
+        this.address = new Address();
+        this.updates = new ArrayList<Object>();
+        this.person.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                // both values are written before anything is notified
+                assertEquals("Pietersen", person.getName());
+                updates.add(aspect);
+            }
+        });
+        this.name = new BufferedDynamicValue(new AspectAdapter(person, "name"),
+                new DynamicValue(Boolean.FALSE));
+        this.addressBuffer = new BufferedDynamicValue(new AspectAdapter(
+                person, "address"), new DynamicValue(Boolean.FALSE));
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("CommitGroupTest");
+        suite.addTest(new TestSuite(CommitGroupTest.class));
+        return suite;
+    }
+
+    /**
+     * All pending values are written before the domain object notifies,
+     * once per aspect.
+     */
+    public void testCommit() {
+        CommitGroup group = new CommitGroup();
+        group.add(this.name);
+        group.add(this.addressBuffer);
+        group.add(this.name);
+        assertEquals(2, group.size());
+        this.name.setValue("Pietersen");
+        this.addressBuffer.setValue(this.address);
+        assertEquals(2, group.getPendingCount());
+        assertEquals(2, group.commit());
+        assertEquals(0, group.getPendingCount());
+        assertSame(this.address, this.person.getAddress());
+        assertEquals(2, this.updates.size());
+        assertEquals("name", this.updates.get(0));
+        assertEquals("address", this.updates.get(1));
+        assertEquals("Pietersen", this.name.getValue());
+    }
+
+    /**
+     * Values that were never assigned are not written.
+     */
+    public void testSkipUnassigned() {
+        CommitGroup group = new CommitGroup();
+        group.add(this.name);
+        group.add(this.addressBuffer);
+        this.name.setValue("Pietersen");
+        assertEquals(1, group.commit());
+        assertNull(this.person.getAddress());
+        assertEquals(1, this.updates.size());
+        assertEquals(0, group.commit());
+        assertEquals(1, this.updates.size());
+    }
+
+    /**
+     * A value its subject refuses stays pending, and the values written
+     * before it stay written.
+     */
+    public void testSubjectThrows() {
+        BufferedDynamicValue refused = new BufferedDynamicValue(
+                new DynamicValue() {
+                    public void setValue(Object anObject) {
+                        throw new IllegalArgumentException("refused");
+                    }
+                }, new DynamicValue(Boolean.FALSE));
+        CommitGroup group = new CommitGroup();
+        group.add(this.name);
+        group.add(refused);
+        this.name.setValue("Pietersen");
+        refused.setValue("anything");
+        try {
+            group.commit();
+            fail("refused value committed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("Pietersen", this.person.getName());
+        assertEquals(1, this.updates.size());
+        assertFalse(this.name.hasPendingValue());
+        assertTrue(refused.hasPendingValue());
+        assertEquals("anything", refused.getValue());
+    }
+
+    /**
+     * Rolling back discards the pending values, and notifies the observers
+     * of the buffered values.
+     */
+    public void testRollback() {
+        CommitGroup group = new CommitGroup();
+        group.add(this.name);
+        group.add(this.addressBuffer);
+        final List<Object> bufferUpdates = new ArrayList<Object>();
+        this.name.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                bufferUpdates.add(aspect);
+            }
+        });
+        this.name.setValue("Pietersen");
+        bufferUpdates.clear();
+        assertEquals(1, group.rollback());
+        assertFalse(this.name.hasPendingValue());
+        assertEquals("Janssen", this.name.getValue());
+        assertEquals(1, bufferUpdates.size());
+        assertEquals(0, this.updates.size());
+    }
+
+    /**
+     * The trigger channel of the group commits and rolls back, the trigger
+     * channels of the members no longer do.
+     */
+    public void testTriggerChannel() {
+        DynamicValue ownTrigger = this.name.getTriggerChannel();
+        BooleanValue trigger = new BooleanValue();
+        CommitGroup group = new CommitGroup(trigger);
+        group.add(this.name);
+        assertNull(this.name.getTriggerChannel());
+        assertEquals(0, ownTrigger.countObservers());
+        this.name.setValue("Pietersen");
+        trigger.setBoolean(true);
+        assertEquals("Pietersen", this.person.getName());
+        this.name.setValue("Jansen");
+        trigger.setBoolean(false);
+        assertEquals("Pietersen", this.name.getValue());
+        group.untie();
+        assertEquals(0, trigger.countObservers());
+    }
+}
@@ -0,0 +1,313 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor ComputedValue.
+ */
+public class ComputedValueTest extends TestCase {
+
+    private List<Object> values;
+
+    private SAFObserver recorder;
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public ComputedValueTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.values = new ArrayList<Object>();
+        this.recorder = new SAFObserver() {
+            public void update(Object sender, Object arg) {
+                values.add(((IValue) sender).getValue());
+            }
+        };
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("ComputedValueTest");
+        suite.addTest(new TestSuite(ComputedValueTest.class));
+        return suite;
+    }
+
+    /**
+     * Without observers a computed value is computed when asked for, and
+     * only when what it read changed.
+     */
+    public void testLazy() {
+        final IntValue a = new IntValue(2);
+        final IntValue b = new IntValue(3);
+        final int[] computed = new int[1];
+        ComputedValue sum = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                computed[0]++;
+                return Integer.valueOf(a.getAsInt() + b.getAsInt());
+            }
+        });
+        assertEquals(0, computed[0]);
+        assertEquals(Integer.valueOf(5), sum.getValue());
+        assertEquals(Integer.valueOf(5), sum.getValue());
+        assertEquals(1, computed[0]);
+        assertEquals(2, sum.getDependencyCount());
+
+        a.setInt(4);
+        b.setInt(5);
+        assertEquals(1, computed[0]);
+        assertEquals(Integer.valueOf(9), sum.getValue());
+        assertEquals(2, computed[0]);
+    }
+
+    /**
+     * In a diamond the bottom value is computed once per change, after both
+     * sides, and never sees one side changed and the other not.
+     */
+    public void testDiamond() {
+        final IntValue price = new IntValue(10);
+        final int[] computed = new int[3];
+        final List<String> glitches = new ArrayList<String>();
+        final ComputedValue total = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                computed[0]++;
+                return Integer.valueOf(price.getAsInt() * 2);
+            }
+        });
+        final ComputedValue tax = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                computed[1]++;
+                return Integer.valueOf(price.getAsInt() / 10);
+            }
+        });
+        ComputedValue invoice = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                computed[2]++;
+                int t = ((Integer) total.getValue()).intValue();
+                int x = ((Integer) tax.getValue()).intValue();
+                if (t != x * 20) {
+                    glitches.add(t + "/" + x);
+                }
+                return Integer.valueOf(t + x);
+            }
+        });
+        invoice.addObserver(this.recorder);
+        assertEquals(Integer.valueOf(21), invoice.getValue());
+
+        price.setInt(20);
+        assertEquals(1, this.values.size());
+        assertEquals(Integer.valueOf(42), this.values.get(0));
+        assertEquals(2, computed[0]);
+        assertEquals(2, computed[1]);
+        assertEquals(2, computed[2]);
+        assertTrue(glitches.toString(), glitches.isEmpty());
+
+        price.setInt(30);
+        assertEquals(Integer.valueOf(63), this.values.get(1));
+        assertEquals(3, computed[2]);
+        assertTrue(glitches.toString(), glitches.isEmpty());
+    }
+
+    /**
+     * What a computed value depends on follows what its last computation
+     * read.
+     */
+    public void testDynamicDependencies() {
+        final BooleanValue useFirst = new BooleanValue(true);
+        final DynamicValue first = new DynamicValue("first");
+        final DynamicValue second = new DynamicValue("second");
+        final int[] computed = new int[1];
+        ComputedValue chosen = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                computed[0]++;
+                return useFirst.getAsBoolean() ? first.getValue() : second
+                        .getValue();
+            }
+        });
+        chosen.addObserver(this.recorder);
+        assertEquals("first", chosen.getValue());
+        assertEquals(2, chosen.getDependencyCount());
+        assertEquals(0, second.countObservers());
+
+        second.setValue("other");
+        assertEquals(1, computed[0]);
+
+        useFirst.setBoolean(false);
+        assertEquals("other", chosen.getValue());
+        assertEquals(0, first.countObservers());
+        assertEquals(1, second.countObservers());
+        first.setValue("ignored");
+        assertEquals(2, computed[0]);
+        assertEquals(1, this.values.size());
+    }
+
+    /**
+     * A computation that answers an equal value notifies nobody, and the
+     * values computed from it are not computed again.
+     */
+    public void testEqualValue() {
+        final IntValue number = new IntValue(2);
+        final int[] computed = new int[1];
+        final ComputedValue parity = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                return (number.getAsInt() % 2) == 0 ? "even" : "odd";
+            }
+        });
+        ComputedValue label = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                computed[0]++;
+                return "number is " + parity.getValue();
+            }
+        });
+        label.addObserver(this.recorder);
+        assertEquals("number is even", label.getValue());
+
+        number.setInt(4);
+        assertTrue(this.values.isEmpty());
+        assertEquals(1, computed[0]);
+
+        number.setInt(5);
+        assertEquals(1, this.values.size());
+        assertEquals("number is odd", this.values.get(0));
+        assertEquals(2, computed[0]);
+    }
+
+    /**
+     * Values a computation only writes are not what it depends on, also
+     * when setting them compares with or records the old value.
+     */
+    public void testWriteIsNoDependency() throws Exception {
+        final IntValue number = new IntValue(1);
+        final DynamicValue last = new DynamicValue();
+        last.addObserver(new ChangeEventObserver() {
+            public void changed(ChangeEvent event) {
+            }
+
+            public void update(Object sender, Object aspect) {
+            }
+        });
+        final Person person = new Person();
+        final AspectAdapter name = new AspectAdapter(person, "name");
+        name.setChangePolicy(ChangePolicy.EQUALS);
+        ComputedValue copy = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                Integer value = Integer.valueOf(number.getAsInt());
+                last.setValue(value);
+                name.setValue(value.toString());
+                return value;
+            }
+        });
+        assertEquals(Integer.valueOf(1), copy.getValue());
+        assertEquals(1, last.countObservers());
+        assertEquals(0, name.countObservers());
+    }
+
+    /**
+     * A buffered value read while nothing is buffered is still a dependency,
+     * so writing the buffer recomputes.
+     */
+    public void testEmptyBuffer() {
+        final BufferedDynamicValue buffer = new BufferedDynamicValue(
+                new DynamicValue("A"), new DynamicValue(Boolean.FALSE));
+        ComputedValue prefixed = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                return "x" + buffer.getValue();
+            }
+        });
+        prefixed.addObserver(this.recorder);
+        assertEquals("xA", prefixed.getValue());
+
+        buffer.setValue("B");
+        assertEquals("xB", prefixed.getValue());
+        assertEquals(1, this.values.size());
+    }
+
+    /**
+     * A computed value that reads itself fails instead of recursing.
+     */
+    public void testCycle() {
+        final ComputedValue[] self = new ComputedValue[1];
+        self[0] = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                return self[0].getValue();
+            }
+        });
+        try {
+            self[0].getValue();
+            fail("cycle not detected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Aspects of domain objects are tracked directly and through aspect
+     * adapters.
+     */
+    public void testDomainObject() throws Exception {
+        final Person person = new Person();
+        person.setName("Ann");
+        final AspectAdapter name = new AspectAdapter(person, "name");
+        name.setSubjectSendsUpdates(Boolean.TRUE);
+        ComputedValue greeting = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                return "Hello " + person.getName();
+            }
+        });
+        ComputedValue shout = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                return ((String) name.getValue()).toUpperCase();
+            }
+        });
+        greeting.addObserver(this.recorder);
+        shout.addObserver(this.recorder);
+        assertEquals("Hello Ann", greeting.getValue());
+        assertEquals("ANN", shout.getValue());
+
+        person.setName("Bob");
+        assertTrue(this.values.toString(), this.values.contains("Hello Bob"));
+        assertTrue(this.values.toString(), this.values.contains("BOB"));
+        assertEquals(2, this.values.size());
+        name.untie();
+    }
+
+    /**
+     * Untie detaches a computed value; its value cannot be set.
+     */
+    public void testUntie() {
+        final DynamicValue source = new DynamicValue("a");
+        ComputedValue copy = new ComputedValue(new Supplier<Object>() {
+            public Object get() {
+                return source.getValue();
+            }
+        });
+        assertEquals("a", copy.getValue());
+        assertEquals(1, source.countObservers());
+        try {
+            copy.setValue("b");
+            fail("computed value set");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        copy.untie();
+        assertEquals(0, source.countObservers());
+        assertEquals(0, copy.getDependencyCount());
+        source.setValue("c");
+        assertEquals("c", copy.getValue());
+    }
+}
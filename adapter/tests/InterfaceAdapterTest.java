@@ -1,6 +1,7 @@
 package sepher.saf.adapter.tests;
 
 import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
 import junit.framework.*;
 
 /**
@@ -40,8 +41,23 @@ public class InterfaceAdapterTest extends TestCase {
 
     }
 
-    public void testGetSubjectChannel() {
-
+    /**
+     * Setting another subject in the subject channel retargets the adapter.
+     */
+    public void testGetSubjectChannel() throws NoSuchMethodException {
+        Person janssen = new Person();
+        janssen.setName("Janssen");
+        Person pietersen = new Person();
+        pietersen.setName("Pietersen");
+        DynamicValue channel = new DynamicValue(janssen);
+        AspectAdapter adapter = new AspectAdapter(pietersen, "name");
+        adapter.setSubjectChannel(channel);
+        assertSame(channel, adapter.getSubjectChannel());
+        assertSame(janssen, adapter.getSubject());
+        assertEquals("Janssen", adapter.getValue());
+        channel.setValue(pietersen);
+        assertSame(pietersen, adapter.getSubject());
+        assertEquals("Pietersen", adapter.getValue());
     }
 
     public void testGetValue() {
@@ -0,0 +1,316 @@
+package sepher.saf.adapter.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+
+import sepher.saf.adapter.DynamicValue;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import sepher.saf.adapter.journal.*;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor Journal en JournalObserver.
+ */
+public class JournalTest extends TestCase {
+
+    private File directory;
+
+    private Journal journal;
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public JournalTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() throws IOException {
+        this.directory = File.createTempFile("journal", "");
+        this.directory.delete();
+        this.journal = new Journal(this.directory, 4096, SyncPolicy.NEVER, 0);
+    }
+
+    public void tearDown() throws IOException {
+        this.journal.close();
+        File[] files = this.directory.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("JournalTest");
+        suite.addTest(new TestSuite(JournalTest.class));
+        return suite;
+    }
+
+    /**
+     * Appended records are read back in order, with their values.
+     */
+    public void testAppendAndRead() throws IOException {
+        this.journal.append(1, "T", "name", "Janssen");
+        this.journal.append(1, "T", "age", Integer.valueOf(42));
+        this.journal.append(2, "T", "ratio", Double.valueOf(0.5));
+        this.journal.append(2, "T", "active", Boolean.TRUE);
+        this.journal.append(2, "T", "total", Long.valueOf(7));
+        this.journal.append(2, "T", "other", null);
+        this.journal.append(2, "T", "file", new File("x"));
+        List<JournalRecord> records = this.journal.read();
+        assertEquals(7, records.size());
+        assertEquals("Janssen", records.get(0).getValue());
+        assertEquals(Integer.valueOf(42), records.get(1).getValue());
+        assertEquals(Double.valueOf(0.5), records.get(2).getValue());
+        assertEquals(Boolean.TRUE, records.get(3).getValue());
+        assertEquals(Long.valueOf(7), records.get(4).getValue());
+        assertNull(records.get(5).getValue());
+        assertEquals(new File("x"), records.get(6).getValue());
+        assertEquals(2, records.get(6).getSubjectId());
+        assertEquals("file", records.get(6).getAspect());
+    }
+
+    /**
+     * Full segments are sealed and a new one is started.
+     */
+    public void testSegments() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            this.journal.append(i, "T", "name", "name " + i);
+        }
+        assertTrue(this.journal.getSegmentCount() > 1);
+        assertEquals(200, this.journal.read().size());
+    }
+
+    /**
+     * A reopened journal appends after its last record.
+     */
+    public void testReopen() throws IOException {
+        this.journal.append(1, "T", "name", "Janssen");
+        this.journal.close();
+        this.journal = new Journal(this.directory, 4096, SyncPolicy.NEVER, 0);
+        this.journal.append(1, "T", "name", "Pietersen");
+        List<JournalRecord> records = this.journal.read();
+        assertEquals(2, records.size());
+        assertEquals("Pietersen", records.get(1).getValue());
+    }
+
+    /**
+     * A record torn by a crash ends the journal.
+     */
+    public void testTornRecord() throws IOException {
+        this.journal.append(1, "T", "name", "Janssen");
+        this.journal.append(1, "T", "name", "Pietersen");
+        this.journal.close();
+        RandomAccessFile file = new RandomAccessFile(this.directory
+                .listFiles()[0], "rw");
+        int second = 8 + file.readInt();
+        file.seek(second + 20);
+        file.write(0xFF);
+        file.close();
+        this.journal = new Journal(this.directory, 4096, SyncPolicy.NEVER, 0);
+        assertEquals(1, this.journal.read().size());
+        this.journal.append(1, "T", "name", "Klaassen");
+        List<JournalRecord> records = this.journal.read();
+        assertEquals(2, records.size());
+        assertEquals("Klaassen", records.get(1).getValue());
+    }
+
+    /**
+     * An observer journals the changes of attached subjects, and replay
+     * rebuilds them, references included.
+     */
+    public void testReplay() throws IOException {
+        JournalObserver observer = new JournalObserver(this.journal);
+        Person person = new Person();
+        Address address = new Address();
+        long personId = observer.attach(person);
+        long addressId = observer.attach(address);
+        person.setName("Janssen");
+        address.setStreet("Dorpsstraat");
+        person.setAddress(address);
+        person.setName("Pietersen");
+        Map<Long, Object> subjects = this.journal.replay(
+                Journal.DEFAULT_FACTORY, 3);
+        assertEquals(2, subjects.size());
+        Person replayed = (Person) subjects.get(Long.valueOf(personId));
+        assertEquals("Pietersen", replayed.getName());
+        assertSame(subjects.get(Long.valueOf(addressId)), replayed
+                .getAddress());
+        assertEquals("Dorpsstraat", replayed.getAddress().getStreet());
+    }
+
+    /**
+     * A change without a value is journaled by reading the aspect.
+     */
+    public void testPlainChange() throws IOException {
+        JournalObserver observer = new JournalObserver(this.journal);
+        DynamicValue value = new DynamicValue("a");
+        observer.attach(value, 10);
+        value.setValue("b");
+        List<JournalRecord> records = this.journal.read();
+        assertEquals(1, records.size());
+        assertEquals("b", records.get(0).getValue());
+        assertEquals(10, records.get(0).getSubjectId());
+        assertEquals(11, observer.attach(new DynamicValue()));
+    }
+
+    /**
+     * A notification whose argument is not an aspect journals nothing.
+     */
+    public void testOtherArgument() throws IOException {
+        JournalObserver observer = new JournalObserver(this.journal);
+        DynamicValue value = new DynamicValue("a");
+        observer.attach(value, 10);
+        observer.update(value, Integer.valueOf(1));
+        observer.update(value, null);
+        assertTrue(this.journal.read().isEmpty());
+    }
+
+    /**
+     * Compaction keeps the last value of every aspect.
+     */
+    public void testCompact() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            this.journal.append(i % 2, "T", "name", "name " + i);
+        }
+        this.journal.append(0, "T", "street", "Dorpsstraat");
+        assertEquals(98, this.journal.compact());
+        List<JournalRecord> records = this.journal.read();
+        assertEquals(3, records.size());
+        assertEquals("name 98", records.get(0).getValue());
+        assertEquals("name 99", records.get(1).getValue());
+        assertEquals("Dorpsstraat", records.get(2).getValue());
+        assertEquals(1, this.journal.getSegmentCount());
+        this.journal.append(0, "T", "name", "again");
+        assertEquals(4, this.journal.read().size());
+    }
+
+    /**
+     * Threads appending at the same time share forces.
+     */
+    public void testGroupCommit() throws Exception {
+        this.journal.close();
+        this.journal = new Journal(this.directory, 1 << 16,
+                SyncPolicy.ALWAYS, 0);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            journal.append(id, "T", "count", Integer
+                                    .valueOf(i));
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        assertEquals(200, this.journal.read().size());
+        assertTrue(this.journal.getSyncCount() > 0);
+        assertTrue(this.journal.getSyncCount() <= 200);
+    }
+
+    /**
+     * A force that fails is reported as an <code>IOException</code>, and
+     * does not count the records as forced.
+     */
+    public void testFailedSync() throws Exception {
+        this.journal.append(0, "T", "name", "a");
+        MappedByteBuffer active = this.swapSegment(unmappedSegment());
+        try {
+            this.journal.sync();
+            fail("failed force not reported");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            this.swapSegment(active);
+        }
+        assertEquals(0, this.journal.getSyncCount());
+        this.journal.sync();
+        assertEquals(1, this.journal.getSyncCount());
+    }
+
+    /**
+     * A force every interval that fails is recorded, and the next interval
+     * tries again.
+     */
+    public void testFailedIntervalSync() throws Exception {
+        this.journal.close();
+        this.journal = new Journal(this.directory, 4096, SyncPolicy.INTERVAL,
+                100);
+        MappedByteBuffer unmapped = unmappedSegment();
+        this.journal.append(0, "T", "name", "a");
+        MappedByteBuffer active = this.swapSegment(unmapped);
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (this.journal.getSyncFailureCount() < 2
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            this.swapSegment(active);
+        }
+        assertTrue(this.journal.getSyncFailureCount() >= 2);
+        assertNotNull(this.journal.getLastSyncFailure());
+    }
+
+    /**
+     * Replace the active segment of the journal, answering the old one.
+     */
+    private MappedByteBuffer swapSegment(final MappedByteBuffer segment)
+            throws Exception {
+        Field field = Journal.class.getDeclaredField("buffer");
+        field.setAccessible(true);
+        synchronized (this.journal) {
+            MappedByteBuffer old = (MappedByteBuffer) field.get(this.journal);
+            field.set(this.journal, segment);
+            return old;
+        }
+    }
+
+    /**
+     * Answer a mapped buffer that has been unmapped, so that forcing it
+     * fails.
+     */
+    private static MappedByteBuffer unmappedSegment() throws Exception {
+        File file = File.createTempFile("segment", "");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer segment;
+        try {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    4096);
+        } finally {
+            raf.close();
+        }
+        Field field = Class.forName("sun.misc.Unsafe").getDeclaredField(
+                "theUnsafe");
+        field.setAccessible(true);
+        Object unsafe = field.get(null);
+        unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(
+                unsafe, segment);
+        return segment;
+    }
+}
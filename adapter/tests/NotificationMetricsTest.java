@@ -0,0 +1,238 @@
+package sepher.saf.adapter.tests;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor NotificationMetrics.
+ */
+public class NotificationMetricsTest extends TestCase {
+
+    /**
+     * Observer doing nothing.
+     */
+    private static class aQuickObserver implements SAFObserver {
+        public void update(Object sender, Object aspect) {
+        }
+    }
+
+    /**
+     * Observer taking at least a millisecond.
+     */
+    private static class aSlowObserver implements SAFObserver {
+        public void update(Object sender, Object aspect) {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Observer taking 40 milliseconds on its first call only.
+     */
+    private static class aPausingObserver implements SAFObserver {
+        private boolean paused;
+
+        public void update(Object sender, Object aspect) {
+            if (this.paused) {
+                return;
+            }
+            this.paused = true;
+            try {
+                Thread.sleep(40);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Person that can send any argument.
+     */
+    private static class aTalkingPerson extends Person {
+        void say(String remark) {
+            this.setChanged(remark);
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public NotificationMetricsTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        NotificationMetrics.reset();
+        NotificationMetrics.enable();
+    }
+
+    public void tearDown() throws Exception {
+        NotificationMetrics.disable();
+        NotificationMetrics.reset();
+        NotificationMetrics.setSlowObserverThreshold(1000000L);
+        NotificationMetrics.unregisterMBean();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("NotificationMetricsTest");
+        suite.addTest(new TestSuite(NotificationMetricsTest.class));
+        return suite;
+    }
+
+    /**
+     * Changes, notifications and observer calls are counted per class and
+     * aspect.
+     */
+    public void testCounts() {
+        // no call of an observer doing nothing takes a second
+        NotificationMetrics.setSlowObserverThreshold(1000000000L);
+        Person person = new Person();
+        person.addObserver(new aQuickObserver());
+        person.addObserver(new aQuickObserver());
+        person.setName("Janssen");
+        person.setName("Pietersen");
+        DynamicValue value = new DynamicValue();
+        value.addObserver(new aQuickObserver());
+        value.setValue("Janssen");
+        NotificationMetrics.AspectStatistics name = NotificationMetrics
+                .getAspectStatistics(Person.class, "name");
+        assertEquals(2, name.getChangeCount());
+        assertEquals(2, name.getNotificationCount());
+        assertEquals(4, name.getObserverCallCount());
+        assertEquals(2.0, name.getMeanFanOut(), 0.0);
+        assertEquals(2, name.getLatency().getCount());
+        assertEquals(1, NotificationMetrics.getAspectStatistics(
+                DynamicValue.class, "value").getNotificationCount());
+        assertEquals(name, NotificationMetrics.getAspectStatistics().get(0));
+        NotificationMetrics.ObserverStatistics observer = NotificationMetrics
+                .getObserverStatistics(aQuickObserver.class);
+        assertEquals(5, observer.getCallCount());
+        assertFalse(observer.isSlow());
+    }
+
+    /**
+     * A name of an aspect is counted as that aspect; other strings are
+     * counted together, instead of one entry per string.
+     */
+    public void testFreeFormArguments() {
+        aTalkingPerson person = new aTalkingPerson();
+        person.addObserver(new aQuickObserver());
+        for (int i = 0; i < 100; i++) {
+            person.say("remark " + i);
+        }
+        person.say("name");
+        assertEquals(100, NotificationMetrics.getAspectStatistics(
+                aTalkingPerson.class, String.class.getName())
+                .getNotificationCount());
+        assertEquals(1, NotificationMetrics.getAspectStatistics(
+                aTalkingPerson.class, "name").getNotificationCount());
+        assertNull(NotificationMetrics.getAspectStatistics(
+                aTalkingPerson.class, "remark 0"));
+    }
+
+    /**
+     * Coalesced changes are counted as changes, and not as notifications.
+     */
+    public void testBatch() {
+        final Person person = new Person();
+        person.addObserver(new aQuickObserver());
+        person.batch(new Runnable() {
+            public void run() {
+                person.setName("Janssen");
+                person.setName("Pietersen");
+            }
+        });
+        NotificationMetrics.AspectStatistics name = NotificationMetrics
+                .getAspectStatistics(Person.class, "name");
+        assertEquals(2, name.getChangeCount());
+        assertEquals(1, name.getNotificationCount());
+    }
+
+    /**
+     * An observer class taking longer than the threshold is flagged slow.
+     */
+    public void testSlowObserver() {
+        Person person = new Person();
+        person.addObserver(new aQuickObserver());
+        person.addObserver(new aSlowObserver());
+        person.setName("Janssen");
+        List<NotificationMetrics.ObserverStatistics> slow = NotificationMetrics
+                .getSlowObservers();
+        assertEquals(1, slow.size());
+        assertEquals(aSlowObserver.class.getName(), slow.get(0)
+                .getObserverClass());
+        assertEquals(1, slow.get(0).getSlowCallCount());
+        assertTrue(slow.get(0).getLatency().getMaxNanos() >= 1000000L);
+        assertTrue(slow.get(0).getLatency().getP99Nanos() >= 1000000L / 2);
+    }
+
+    /**
+     * One slow call among many does not flag an observer class slow.
+     */
+    public void testOccasionalSlowCall() {
+        NotificationMetrics.setSlowObserverThreshold(20000000L);
+        Person person = new Person();
+        person.addObserver(new aPausingObserver());
+        for (int i = 0; i < 300; i++) {
+            person.setName("name " + i);
+        }
+        NotificationMetrics.ObserverStatistics observer = NotificationMetrics
+                .getObserverStatistics(aPausingObserver.class);
+        assertEquals(300, observer.getCallCount());
+        assertTrue(observer.getSlowCallCount() >= 1);
+        assertFalse(observer.isSlow());
+        assertTrue(NotificationMetrics.getSlowObservers().isEmpty());
+    }
+
+    /**
+     * Nothing is measured while disabled.
+     */
+    public void testDisabled() {
+        NotificationMetrics.disable();
+        Person person = new Person();
+        person.addObserver(new aQuickObserver());
+        person.setName("Janssen");
+        assertNull(NotificationMetrics.getAspectStatistics(Person.class,
+                "name"));
+        assertTrue(NotificationMetrics.getObserverStatistics().isEmpty());
+    }
+
+    /**
+     * The figures can be read and the metrics switched through JMX.
+     */
+    public void testMBean() throws Exception {
+        ObjectName name = NotificationMetrics.registerMBean();
+        assertEquals(name, NotificationMetrics.registerMBean());
+        Person person = new Person();
+        person.addObserver(new aQuickObserver());
+        person.setName("Janssen");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        CompositeData[] aspects = (CompositeData[]) server.getAttribute(name,
+                "AspectStatistics");
+        assertEquals(1, aspects.length);
+        assertEquals("name", aspects[0].get("aspect"));
+        assertEquals(new Long(1), aspects[0].get("notificationCount"));
+        server.setAttribute(name, new javax.management.Attribute("Enabled",
+                Boolean.FALSE));
+        assertFalse(NotificationMetrics.isEnabled());
+    }
+}
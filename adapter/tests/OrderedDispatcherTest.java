@@ -0,0 +1,170 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sepher.saf.adapter.*;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor OrderedDispatcher.
+ */
+public class OrderedDispatcherTest extends TestCase {
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public OrderedDispatcherTest(String testNaam) {
+        super(testNaam);
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("OrderedDispatcherTest");
+        suite.addTest(new TestSuite(OrderedDispatcherTest.class));
+        return suite;
+    }
+
+    /**
+     * Observers are called on the changing thread, without the subject being
+     * locked, and see the value that was set.
+     */
+    public void testNotLocked() {
+        final DynamicValue value = new DynamicValue("one");
+        value.setDispatcher(OrderedDispatcher.SHARED);
+        final List<Object> seen = new ArrayList<Object>();
+        value.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                assertFalse(Thread.holdsLock(sender));
+                seen.add(value.getValue());
+            }
+        });
+        value.setValue("two");
+        value.setValue("three");
+        assertEquals(2, seen.size());
+        assertEquals("two", seen.get(0));
+        assertEquals("three", seen.get(1));
+    }
+
+    /**
+     * A change made by an observer is delivered after the notification that
+     * caused it has reached all observers.
+     */
+    public void testChangeDuringDelivery() {
+        final IntValue value = new IntValue();
+        value.setDispatcher(OrderedDispatcher.SHARED);
+        final StringBuffer seen = new StringBuffer();
+        value.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                seen.append('a');
+                if (value.getAsInt() < 3) {
+                    value.setInt(value.getAsInt() + 1);
+                }
+            }
+        });
+        value.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                seen.append('b');
+            }
+        });
+        value.setInt(1);
+        assertEquals("ababab", seen.toString());
+        assertEquals(3, value.getAsInt());
+    }
+
+    /**
+     * An exception thrown by an observer reaches the changing thread, and
+     * does not stop the delivery of the notifications queued after it.
+     */
+    public void testObserverFails() {
+        final DynamicValue value = new DynamicValue();
+        value.setDispatcher(OrderedDispatcher.SHARED);
+        final List<Object> seen = new ArrayList<Object>();
+        value.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                seen.add(value.getValue());
+                if ("fail".equals(value.getValue())) {
+                    value.setValue("after");
+                    throw new IllegalStateException();
+                }
+            }
+        });
+        try {
+            value.setValue("fail");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(2, seen.size());
+        assertEquals("after", seen.get(1));
+        value.setValue("again");
+        assertEquals(3, seen.size());
+    }
+
+    /**
+     * With many writers, every change is notified, and never by two threads
+     * at the same time.
+     */
+    public void testConcurrentWriters() throws InterruptedException {
+        final LongValue value = new LongValue();
+        value.setDispatcher(OrderedDispatcher.SHARED);
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger updates = new AtomicInteger();
+        value.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                if (inside.incrementAndGet() != 1) {
+                    overlaps.incrementAndGet();
+                }
+                updates.incrementAndGet();
+                inside.decrementAndGet();
+            }
+        });
+        final int writes = 10000;
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < writes; j++) {
+                        value.setLong(j);
+                    }
+                }
+            };
+            writers[i].start();
+        }
+        for (int i = 0; i < writers.length; i++) {
+            writers[i].join();
+        }
+        assertEquals(0, overlaps.get());
+        assertEquals(writers.length * writes, updates.get());
+    }
+
+    /**
+     * The changed flag is visible without locking, and cleared once.
+     */
+    public void testChangedFlag() {
+        ChangingObservable observable = new ChangingObservable() {
+            {
+                this.setChanged();
+            }
+        };
+        final AtomicInteger updates = new AtomicInteger();
+        observable.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updates.incrementAndGet();
+            }
+        });
+        assertTrue(observable.hasChanged());
+        observable.notifyObservers();
+        observable.notifyObservers();
+        assertFalse(observable.hasChanged());
+        assertEquals(1, updates.get());
+    }
+}
@@ -0,0 +1,154 @@
+package sepher.saf.adapter.tests;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor PathAdapter.
+ */
+public class PathAdapterTest extends TestCase {
+
+    private Person person;
+
+    private Address address;
+
+    private int updates;
+
+    /**
+     * Observer counting its updates.
+     */
+    private class anObserver implements SAFObserver {
+        public void update(Object sender, Object aspect) {
+            updates++;
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public PathAdapterTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.person = new Person();
+        this.address = new Address();
+        this.address.setStreet("Kerkstraat");
+        this.person.setAddress(this.address);
+        this.updates = 0;
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("PathAdapterTest");
+        suite.addTest(new TestSuite(PathAdapterTest.class));
+        return suite;
+    }
+
+    /**
+     * Create an adapter on the street of the address of the person, that
+     * observes the path.
+     */
+    private PathAdapter newObservingAdapter() throws NoSuchMethodException {
+        PathAdapter adapter = new PathAdapter(person, "address.street");
+        adapter.setSubjectSendsUpdates(Boolean.TRUE);
+        adapter.addObserver(new anObserver());
+        return adapter;
+    }
+
+    /**
+     * Get and set the value at the end of the path, without updates.
+     */
+    public void testGetSetValue() throws NoSuchMethodException {
+        PathAdapter adapter = new PathAdapter(person, "address.street");
+        assertEquals("Kerkstraat", adapter.getValue());
+        adapter.setValue("Dorpsstraat");
+        assertEquals("Dorpsstraat", address.getStreet());
+        Address other = new Address();
+        other.setStreet("Molenweg");
+        person.setAddress(other);
+        assertEquals("Molenweg", adapter.getValue());
+        assertSame(other, adapter.getTarget());
+    }
+
+    /**
+     * A path with an aspect that does not exist is refused.
+     */
+    public void testNoSuchAspect() {
+        try {
+            new PathAdapter(person, "address.number");
+            fail();
+        } catch (NoSuchMethodException expected) {
+        }
+    }
+
+    /**
+     * A change of the last aspect is notified.
+     */
+    public void testChangeLastHop() throws NoSuchMethodException {
+        PathAdapter adapter = this.newObservingAdapter();
+        address.setStreet("Dorpsstraat");
+        assertEquals(1, updates);
+        assertEquals("Dorpsstraat", adapter.getValue());
+        adapter.setValue("Molenweg");
+        assertEquals(2, updates);
+        assertEquals("Molenweg", address.getStreet());
+    }
+
+    /**
+     * Replacing an intermediate object moves the registration to the new
+     * one, and is only notified when the value at the end changed.
+     */
+    public void testReplaceIntermediate() throws NoSuchMethodException {
+        PathAdapter adapter = this.newObservingAdapter();
+        Address other = new Address();
+        other.setStreet("Kerkstraat");
+        person.setAddress(other);
+        assertEquals(0, updates);
+        assertEquals(0, address.countObservers());
+        assertEquals(1, other.countObservers());
+        address.setStreet("Dorpsstraat");
+        assertEquals(0, updates);
+        other.setStreet("Molenweg");
+        assertEquals(1, updates);
+        assertEquals("Molenweg", adapter.getValue());
+    }
+
+    /**
+     * A broken path has the value <code>null</code>, and is repaired when
+     * the missing object is set.
+     */
+    public void testNullHop() throws NoSuchMethodException {
+        PathAdapter adapter = this.newObservingAdapter();
+        person.setAddress(null);
+        assertEquals(1, updates);
+        assertNull(adapter.getValue());
+        adapter.setValue("Dorpsstraat");
+        person.setAddress(address);
+        assertEquals(2, updates);
+        assertEquals("Kerkstraat", adapter.getValue());
+    }
+
+    /**
+     * Without updates nothing is registered with the objects on the path,
+     * and untie removes the registrations.
+     */
+    public void testRegistrations() throws NoSuchMethodException {
+        PathAdapter adapter = new PathAdapter(person, "address.street");
+        assertEquals(0, address.countObservers());
+        adapter.setSubjectSendsUpdates(Boolean.TRUE);
+        assertEquals(1, address.countObservers());
+        adapter.setSubjectSendsUpdates(Boolean.FALSE);
+        assertEquals(0, address.countObservers());
+        assertEquals("(" + person + " address.street)", adapter.toString());
+    }
+}
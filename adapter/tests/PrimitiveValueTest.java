@@ -0,0 +1,190 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sepher.saf.adapter.*;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor IntValue, LongValue, DoubleValue en BooleanValue.
+ */
+public class PrimitiveValueTest extends TestCase {
+
+    private List<Object> updates;
+
+    /**
+     * Observer recording the primitive values it receives, and the aspects
+     * of other updates.
+     */
+    private class anObserver implements PrimitiveObserver {
+        public void intChanged(IntValue sender, int newValue) {
+            updates.add("int " + newValue);
+        }
+
+        public void longChanged(LongValue sender, long newValue) {
+            updates.add("long " + newValue);
+        }
+
+        public void doubleChanged(DoubleValue sender, double newValue) {
+            updates.add("double " + newValue);
+        }
+
+        public void update(Object sender, Object aspect) {
+            updates.add(aspect);
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public PrimitiveValueTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.updates = new ArrayList<Object>();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("PrimitiveValueTest");
+        suite.addTest(new TestSuite(PrimitiveValueTest.class));
+        return suite;
+    }
+
+    public void testIntValue() {
+        IntValue value = new IntValue(3);
+        value.addObserver(new anObserver());
+        assertEquals(3, value.getAsInt());
+        value.setInt(4);
+        assertEquals(4, value.getAsInt());
+        assertEquals(new Integer(4), value.getValue());
+        value.setValue(new Long(5));
+        assertEquals(5, value.getAsInt());
+        value.setIntSilently(6);
+        assertEquals(2, updates.size());
+        assertEquals("int 4", updates.get(0));
+        assertEquals("int 5", updates.get(1));
+    }
+
+    public void testLongValue() {
+        LongValue value = new LongValue();
+        value.addObserver(new anObserver());
+        value.setLong(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, value.getAsLong());
+        assertEquals(new Long(Long.MAX_VALUE), value.getValue());
+        assertEquals("long " + Long.MAX_VALUE, updates.get(0));
+    }
+
+    public void testDoubleValue() {
+        DoubleValue value = new DoubleValue(1.5);
+        value.addObserver(new anObserver());
+        value.setDouble(2.5);
+        assertEquals(2.5, value.getAsDouble(), 0);
+        assertEquals(new Double(2.5), value.getValue());
+        assertEquals("double 2.5", updates.get(0));
+    }
+
+    /**
+     * A callback that is not overridden falls back to update.
+     */
+    public void testBooleanValue() {
+        BooleanValue value = new BooleanValue();
+        value.addObserver(new anObserver());
+        value.setBoolean(true);
+        assertTrue(value.getAsBoolean());
+        assertSame(Boolean.TRUE, value.getValue());
+        assertEquals(1, updates.size());
+        assertEquals("value", updates.get(0));
+    }
+
+    /**
+     * A value that does not fit is refused through <code>IValue</code>, and
+     * leaves the value and its observers alone.
+     */
+    public void testInvalidValue() {
+        IValue[] values = new IValue[] { new IntValue(1), new LongValue(1),
+                new DoubleValue(1.0), new BooleanValue(true) };
+        Object[] invalid = new Object[] { null, "1" };
+        for (int i = 0; i < values.length; i++) {
+            ((DynamicValue) values[i]).addObserver(new anObserver());
+            Object before = values[i].getValue();
+            for (int j = 0; j < invalid.length; j++) {
+                try {
+                    values[i].setValue(invalid[j]);
+                    fail(values[i] + " accepted " + invalid[j]);
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                try {
+                    ((DynamicValue) values[i]).setValueSilently(invalid[j]);
+                    fail(values[i] + " accepted " + invalid[j]);
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+            assertEquals(before, values[i].getValue());
+        }
+        assertTrue(updates.isEmpty());
+        IntValue number = new IntValue();
+        number.setValue(Long.valueOf(3));
+        assertEquals(3, number.getAsInt());
+    }
+
+    /**
+     * Primitive values are compared without boxing by the shared policies.
+     */
+    public void testChangePolicy() {
+        LongValue value = new LongValue(7);
+        value.setChangePolicy(ChangePolicy.EQUALS);
+        value.addObserver(new anObserver());
+        long suppressed = ChangePolicy.EQUALS.getSuppressedCount();
+        value.setLong(7);
+        value.setLong(8);
+        assertEquals(1, updates.size());
+        assertEquals(suppressed + 1, ChangePolicy.EQUALS.getSuppressedCount());
+        DoubleValue temperature = new DoubleValue(20.0);
+        temperature.setChangePolicy(ChangePolicy.within(0.1));
+        temperature.addObserver(new anObserver());
+        temperature.setDouble(20.05);
+        temperature.setDouble(20.5);
+        assertEquals(2, updates.size());
+        assertEquals("double 20.5", updates.get(1));
+    }
+
+    /**
+     * A plain observer is notified with the aspect name as before.
+     */
+    public void testPlainObserver() {
+        IntValue value = new IntValue();
+        value.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                updates.add(aspect);
+            }
+        });
+        value.setInt(1);
+        assertEquals("value", updates.get(0));
+    }
+
+    /**
+     * A BooleanValue can trigger a BufferedDynamicValue.
+     */
+    public void testTrigger() {
+        IntValue subject = new IntValue(1);
+        BooleanValue trigger = new BooleanValue();
+        BufferedDynamicValue buffer = new BufferedDynamicValue(subject,
+                trigger);
+        buffer.setValue(new Integer(2));
+        assertEquals(1, subject.getAsInt());
+        trigger.setBoolean(true);
+        assertEquals(2, subject.getAsInt());
+    }
+}
@@ -0,0 +1,277 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor QueuedObserver.
+ */
+public class QueuedObserverTest extends TestCase {
+
+    private List<Object> received;
+
+    private CountDownLatch entered;
+
+    private CountDownLatch gate;
+
+    private SAFObserver slow;
+
+    private Person person;
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public QueuedObserverTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.received = new ArrayList<Object>();
+        this.entered = new CountDownLatch(1);
+        this.gate = new CountDownLatch(1);
+        this.slow = new ChangeEventObserver() {
+            public void changed(ChangeEvent event) {
+                this.await();
+                synchronized (received) {
+                    received.add(event.getNewValue());
+                }
+            }
+
+            public void update(Object sender, Object arg) {
+                this.await();
+                synchronized (received) {
+                    received.add(arg);
+                }
+            }
+
+            private void await() {
+                entered.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        this.person = new Person();
+    }
+
+    public void tearDown() {
+        this.gate.countDown();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("QueuedObserverTest");
+        suite.addTest(new TestSuite(QueuedObserverTest.class));
+        return suite;
+    }
+
+    /**
+     * Change the name and wait until the observer is stuck delivering it.
+     */
+    private void stall() throws InterruptedException {
+        this.person.setName("first");
+        assertTrue(this.entered.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Release the observer and wait for it to catch up.
+     */
+    private void release(QueuedObserver queued) throws InterruptedException {
+        this.gate.countDown();
+        assertTrue(queued.awaitDelivery(5000));
+    }
+
+    /**
+     * A slow observer does not hold up the change, and receives it later.
+     */
+    public void testDelivery() throws InterruptedException {
+        QueuedObserver queued = this.person.addQueuedObserver(this.slow, 10,
+                OverflowPolicy.BLOCK);
+        long start = System.nanoTime();
+        this.stall();
+        this.person.setName("second");
+        assertTrue(System.nanoTime() - start < 1000000000L);
+        assertEquals(1, queued.getQueueDepth());
+        this.release(queued);
+        assertEquals(2, this.received.size());
+        assertEquals("first", this.received.get(0));
+        assertEquals("second", this.received.get(1));
+        assertEquals(2, queued.getDeliveredCount());
+        assertEquals(0, queued.getDroppedCount());
+    }
+
+    /**
+     * Drop-newest keeps the changes queued first.
+     */
+    public void testDropNewest() throws InterruptedException {
+        QueuedObserver queued = this.person.addQueuedObserver(this.slow, 2,
+                OverflowPolicy.DROP_NEWEST);
+        this.stall();
+        for (int i = 0; i < 5; i++) {
+            this.person.setName("name " + i);
+        }
+        assertEquals(2, queued.getQueueDepth());
+        assertEquals(3, queued.getDroppedCount());
+        this.release(queued);
+        assertEquals("name 1", this.received.get(this.received.size() - 1));
+    }
+
+    /**
+     * Drop-oldest keeps the latest changes.
+     */
+    public void testDropOldest() throws InterruptedException {
+        QueuedObserver queued = this.person.addQueuedObserver(this.slow, 2,
+                OverflowPolicy.DROP_OLDEST);
+        this.stall();
+        for (int i = 0; i < 5; i++) {
+            this.person.setName("name " + i);
+        }
+        assertEquals(3, queued.getDroppedCount());
+        assertEquals(2, queued.getMaxQueueDepth());
+        this.release(queued);
+        assertEquals(3, this.received.size());
+        assertEquals("name 3", this.received.get(1));
+        assertEquals("name 4", this.received.get(2));
+    }
+
+    /**
+     * Conflation keeps one change per aspect, with the old value of the
+     * first and the new value of the last.
+     */
+    public void testConflate() throws InterruptedException {
+        final List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+        final CountDownLatch first = new CountDownLatch(1);
+        QueuedObserver queued = this.person.addQueuedObserver(
+                new ChangeEventObserver() {
+                    public void changed(ChangeEvent event) {
+                        events.add(event);
+                        try {
+                            first.countDown();
+                            gate.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+
+                    public void update(Object sender, Object arg) {
+                    }
+                }, 2, OverflowPolicy.CONFLATE);
+        this.person.setName("first");
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            this.person.setName("name " + i);
+        }
+        assertEquals(1, queued.getQueueDepth());
+        assertEquals(4, queued.getConflatedCount());
+        assertEquals(0, queued.getDroppedCount());
+        this.release(queued);
+        assertEquals(2, events.size());
+        assertEquals("first", events.get(1).getOldValue());
+        assertEquals("name 4", events.get(1).getNewValue());
+    }
+
+    /**
+     * Conflation does not change an event that another observer received
+     * and kept.
+     */
+    public void testConflateSharedEvent() throws InterruptedException {
+        final List<ChangeEvent> kept = new ArrayList<ChangeEvent>();
+        QueuedObserver fast = this.person.addQueuedObserver(
+                new ChangeEventObserver() {
+                    public void changed(ChangeEvent event) {
+                        synchronized (kept) {
+                            kept.add(event);
+                        }
+                    }
+
+                    public void update(Object sender, Object arg) {
+                    }
+                }, 10, OverflowPolicy.CONFLATE);
+        QueuedObserver stalled = this.person.addQueuedObserver(this.slow, 10,
+                OverflowPolicy.CONFLATE);
+        this.stall();
+        assertTrue(fast.awaitDelivery(5000));
+        ChangeBatch.run(new Runnable() {
+            public void run() {
+                person.setName("A");
+            }
+        });
+        assertTrue(fast.awaitDelivery(5000));
+        ChangeBatch.run(new Runnable() {
+            public void run() {
+                person.setName("C");
+            }
+        });
+        assertTrue(fast.awaitDelivery(5000));
+        assertEquals(1, stalled.getConflatedCount());
+        assertEquals(3, kept.size());
+        assertEquals("A", kept.get(1).getNewValue());
+        assertEquals("C", kept.get(2).getNewValue());
+        this.release(stalled);
+        assertEquals("C", this.received.get(this.received.size() - 1));
+    }
+
+    /**
+     * Block makes the changing thread wait for room, and loses nothing.
+     */
+    public void testBlock() throws InterruptedException {
+        final QueuedObserver queued = this.person.addQueuedObserver(
+                this.slow, 1, OverflowPolicy.BLOCK);
+        this.stall();
+        this.person.setName("second");
+        Thread writer = new Thread() {
+            public void run() {
+                person.setName("third");
+            }
+        };
+        writer.start();
+        writer.join(200);
+        assertTrue(writer.isAlive());
+        this.release(queued);
+        writer.join(5000);
+        assertTrue(queued.awaitDelivery(5000));
+        assertEquals(3, this.received.size());
+        assertEquals("third", this.received.get(2));
+        assertEquals(1, queued.getBlockedCount());
+    }
+
+    /**
+     * An exception of the observer is counted and does not stop delivery.
+     */
+    public void testFailure() throws InterruptedException {
+        final List<Object> names = new ArrayList<Object>();
+        QueuedObserver queued = new QueuedObserver(new SAFObserver() {
+            public void update(Object sender, Object arg) {
+                if (names.isEmpty()) {
+                    names.add(arg);
+                    throw new IllegalStateException("audit down");
+                }
+                names.add(arg);
+            }
+        }, 10, OverflowPolicy.DROP_NEWEST);
+        this.person.addObserver(queued);
+        this.person.setName("first");
+        this.person.setName("second");
+        assertTrue(queued.awaitDelivery(5000));
+        assertEquals(2, names.size());
+        assertEquals(1, queued.getFailureCount());
+        assertEquals("audit down", queued.getLastFailure().getMessage());
+        this.person.deleteObserver(queued);
+        assertEquals(0, this.person.countObservers());
+    }
+}
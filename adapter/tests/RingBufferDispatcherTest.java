@@ -0,0 +1,176 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor RingBufferDispatcher.
+ */
+public class RingBufferDispatcherTest extends TestCase {
+
+    private RingBufferDispatcher dispatcher;
+
+    private List<Object> names;
+
+    private List<Thread> threads;
+
+    /**
+     * Observer recording the name of the person and the thread it was
+     * notified on.
+     */
+    private class anObserver implements SAFObserver {
+        public void update(Object sender, Object aspect) {
+            names.add(((Person) sender).getName());
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     * 
+     * @param testNaam
+     *        java.lang.String
+     */
+    public RingBufferDispatcherTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.dispatcher = new RingBufferDispatcher(2, 8, WaitStrategy.YIELD);
+        this.names = Collections.synchronizedList(new ArrayList<Object>());
+        this.threads = Collections.synchronizedList(new ArrayList<Thread>());
+    }
+
+    /**
+     * A unit test suite for JUnit
+     * 
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("RingBufferDispatcherTest");
+        suite.addTest(new TestSuite(RingBufferDispatcherTest.class));
+        return suite;
+    }
+
+    public void tearDown() throws InterruptedException {
+        this.dispatcher.shutdown();
+    }
+
+    /**
+     * Notifications are delivered on a consumer thread.
+     */
+    public void testDispatch() {
+        Person person = new Person();
+        person.addObserver(new anObserver());
+        person.setDispatcher(dispatcher);
+        person.setName("Janssen");
+        dispatcher.flush();
+        assertEquals(1, names.size());
+        assertEquals("Janssen", names.get(0));
+        assertNotSame(Thread.currentThread(), threads.get(0));
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    /**
+     * Observable sending numbered aspects.
+     */
+    private static class aCounter extends ChangingObservable {
+        public void fire(int i) {
+            this.setChanged(String.valueOf(i));
+        }
+    }
+
+    /**
+     * The notifications of a subject keep their order, also when the ring is
+     * smaller than the number of changes.
+     */
+    public void testOrder() {
+        final List<Object> received = Collections
+                .synchronizedList(new ArrayList<Object>());
+        aCounter counter = new aCounter();
+        counter.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                received.add(aspect);
+            }
+        });
+        counter.setDispatcher(dispatcher);
+        for (int i = 0; i < 100; i++) {
+            counter.fire(i);
+        }
+        dispatcher.flush();
+        assertEquals(100, received.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.valueOf(i), received.get(i));
+        }
+    }
+
+    /**
+     * An observer that fills the ring of its own partition does not wait for
+     * itself, and its notifications keep their order.
+     */
+    public void testObserverFillsRing() {
+        final List<Object> received = Collections
+                .synchronizedList(new ArrayList<Object>());
+        final aCounter counter = new aCounter();
+        counter.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                received.add(aspect);
+                if ("0".equals(aspect)) {
+                    for (int i = 1; i <= 20; i++) {
+                        counter.fire(i);
+                    }
+                }
+            }
+        });
+        counter.setDispatcher(dispatcher);
+        counter.fire(0);
+        dispatcher.flush();
+        assertEquals(21, received.size());
+        for (int i = 0; i <= 20; i++) {
+            assertEquals(String.valueOf(i), received.get(i));
+        }
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    /**
+     * An exception of an observer is counted and does not stop the consumer.
+     */
+    public void testFailure() {
+        final List<Object> received = Collections
+                .synchronizedList(new ArrayList<Object>());
+        aCounter counter = new aCounter();
+        counter.addObserver(new SAFObserver() {
+            public void update(Object sender, Object aspect) {
+                if ("0".equals(aspect)) {
+                    throw new IllegalStateException("observer down");
+                }
+                received.add(aspect);
+            }
+        });
+        counter.setDispatcher(dispatcher);
+        counter.fire(0);
+        counter.fire(1);
+        dispatcher.flush();
+        assertEquals(1, received.size());
+        assertEquals(1, dispatcher.getFailureCount());
+        assertEquals("observer down", dispatcher.getLastFailure().getMessage());
+    }
+
+    /**
+     * Removing the dispatcher makes notification synchronous again.
+     */
+    public void testSetDispatcherNull() {
+        Person person = new Person();
+        person.addObserver(new anObserver());
+        person.setDispatcher(dispatcher);
+        person.setDispatcher(null);
+        person.setName("Janssen");
+        assertEquals(1, names.size());
+        assertSame(Thread.currentThread(), threads.get(0));
+    }
+}
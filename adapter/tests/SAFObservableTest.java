@@ -6,8 +6,14 @@
  */
 package sepher.saf.adapter.tests;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import sepher.saf.adapter.SAFObservable;
+import sepher.saf.adapter.SAFObserver;
+import junit.framework.Test;
 import junit.framework.TestCase;
+import junit.framework.TestSuite;
 
 /**
  * @author rob
@@ -18,6 +24,29 @@ import junit.framework.TestCase;
 public class SAFObservableTest extends TestCase {
     SAFObservable testObservable;
 
+    /**
+     * Observers in the order in which they received an update.
+     */
+    List<SAFObserver> updated = new ArrayList<SAFObserver>();
+
+    /**
+     * Observer recording that it was updated.
+     */
+    private class anObserver implements SAFObserver {
+        public void update(Object sender, Object arg) {
+            updated.add(this);
+        }
+    }
+
+    /**
+     * Observable that makes <code>setChanged</code> accessible.
+     */
+    private static class anObservable extends SAFObservable {
+        public void testSetChanged() {
+            this.setChanged();
+        }
+    }
+
     /*
      * @see TestCase#setUp()
      */
@@ -34,6 +63,17 @@ public class SAFObservableTest extends TestCase {
         testObservable = null;
     }
 
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("SAFObservableTest");
+        suite.addTest(new TestSuite(SAFObservableTest.class));
+        return suite;
+    }
+
     public final void testSAFObservable() {
         //Test default constructor, which should result in
         //an empty set of observers.
@@ -42,7 +82,44 @@ public class SAFObservableTest extends TestCase {
     }
 
     public final void testAddObserver() {
-        //TODO Implement addObserver().
+        SAFObserver observer = new anObserver();
+        testObservable.addObserver(observer);
+        testObservable.addObserver(observer);
+        this.assertTrue(testObservable.countObservers() == 1);
+    }
+
+    /**
+     * Observers added for an aspect are only notified of that aspect.
+     */
+    public final void testAddObserverForAspect() {
+        anObservable observable = new anObservable();
+        SAFObserver all = new anObserver();
+        SAFObserver name = new anObserver();
+        SAFObserver nameOrStreet = new anObserver();
+        observable.addObserver(all);
+        observable.addObserver(name, "name");
+        observable.addObserver(nameOrStreet, new String[] { "name", "street" });
+        this.assertTrue(observable.countObservers() == 4);
+        observable.testSetChanged();
+        observable.notifyObservers("street");
+        this.assertEquals(2, updated.size());
+        this.assertSame(all, updated.get(0));
+        this.assertSame(nameOrStreet, updated.get(1));
+        updated.clear();
+        observable.testSetChanged();
+        observable.notifyObservers("name");
+        this.assertEquals(3, updated.size());
+        this.assertSame(all, updated.get(0));
+    }
+
+    public final void testDeleteObserverForAspect() {
+        anObservable observable = new anObservable();
+        SAFObserver observer = new anObserver();
+        observable.addObserver(observer, new String[] { "name", "street" });
+        observable.deleteObserver(observer, "name");
+        this.assertTrue(observable.countObservers() == 1);
+        observable.deleteObserver(observer);
+        this.assertTrue(observable.countObservers() == 0);
     }
 
     public final void testClearChanged() {
@@ -50,26 +127,52 @@ public class SAFObservableTest extends TestCase {
     }
 
     public final void testCountObservers() {
-        //TODO Implement countObservers().
+        testObservable.addObserver(new anObserver());
+        testObservable.addObserver(new anObserver());
+        this.assertTrue(testObservable.countObservers() == 2);
     }
 
     public final void testDeleteObserver() {
-        //TODO Implement deleteObserver().
+        SAFObserver first = new anObserver();
+        SAFObserver second = new anObserver();
+        testObservable.addObserver(first);
+        testObservable.addObserver(second);
+        testObservable.deleteObserver(first);
+        testObservable.deleteObserver(first);
+        this.assertTrue(testObservable.countObservers() == 1);
     }
 
     public final void testDeleteObservers() {
-        //TODO Implement deleteObservers().
+        testObservable.addObserver(new anObserver());
+        testObservable.deleteObservers();
+        this.assertTrue(testObservable.countObservers() == 0);
     }
 
     public final void testHasChanged() {
-        //TODO Implement hasChanged().
+        anObservable observable = new anObservable();
+        this.assertFalse(observable.hasChanged());
+        observable.testSetChanged();
+        this.assertTrue(observable.hasChanged());
+        observable.notifyObservers();
+        this.assertFalse(observable.hasChanged());
     }
 
     /*
      * Class under test for void notifyObservers()
      */
     public final void testNotifyObservers() {
-        //TODO Implement notifyObservers().
+        anObservable observable = new anObservable();
+        SAFObserver first = new anObserver();
+        SAFObserver second = new anObserver();
+        observable.addObserver(first);
+        observable.addObserver(second);
+        observable.notifyObservers();
+        this.assertTrue(updated.isEmpty());
+        observable.testSetChanged();
+        observable.notifyObservers();
+        this.assertEquals(2, updated.size());
+        this.assertSame(first, updated.get(0));
+        this.assertSame(second, updated.get(1));
     }
 
     /*
@@ -79,8 +182,65 @@ public class SAFObservableTest extends TestCase {
         //TODO Implement notifyObservers().
     }
 
+    /**
+     * Observers that delete themselves and add others while being notified
+     * must not disturb the notification in progress.
+     */
+    public final void testChangeObserversDuringNotify() {
+        final anObservable observable = new anObservable();
+        final SAFObserver added = new anObserver();
+        SAFObserver deleting = new SAFObserver() {
+            public void update(Object sender, Object arg) {
+                observable.deleteObserver(this);
+                observable.addObserver(added);
+                updated.add(this);
+            }
+        };
+        SAFObserver last = new anObserver();
+        observable.addObserver(deleting);
+        observable.addObserver(last);
+        observable.testSetChanged();
+        observable.notifyObservers("value");
+        this.assertEquals(2, updated.size());
+        this.assertSame(last, updated.get(1));
+        this.assertTrue(observable.countObservers() == 2);
+    }
+
     public final void testSetChanged() {
         //TODO Implement setChanged().
     }
 
+    /**
+     * Observers are notified in order and can be deleted one by one, however
+     * many there are.
+     */
+    public final void testManyObservers() {
+        anObservable observable = new anObservable();
+        List<SAFObserver> observers = new ArrayList<SAFObserver>();
+        for (int i = 0; i < 20; i++) {
+            SAFObserver observer = new anObserver();
+            observers.add(observer);
+            observable.addObserver(observer);
+            observable.addObserver(observer);
+            this.assertEquals(i + 1, observable.countObservers());
+        }
+        observable.testSetChanged();
+        observable.notifyObservers();
+        this.assertEquals(observers, updated);
+        for (int i = 19; i >= 0; i -= 2) {
+            observable.deleteObserver(observers.get(i));
+        }
+        this.assertEquals(10, observable.countObservers());
+        updated.clear();
+        observable.testSetChanged();
+        observable.notifyObservers();
+        this.assertEquals(10, updated.size());
+        this.assertSame(observers.get(0), updated.get(0));
+        this.assertSame(observers.get(18), updated.get(9));
+        for (int i = 0; i < 20; i += 2) {
+            observable.deleteObserver(observers.get(i));
+        }
+        this.assertEquals(0, observable.countObservers());
+    }
+
 }
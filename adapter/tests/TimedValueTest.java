@@ -0,0 +1,197 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import sepher.saf.adapter.*;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor DebouncedValue, ThrottledValue and SampledValue.
+ */
+public class TimedValueTest extends TestCase {
+
+    private DynamicValue source;
+
+    private List<Object> values;
+
+    private SAFObserver recorder;
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public TimedValueTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.source = new DynamicValue("start");
+        this.values = new ArrayList<Object>();
+        this.recorder = new SAFObserver() {
+            public void update(Object sender, Object arg) {
+                synchronized (values) {
+                    values.add(((IValue) sender).getValue());
+                    values.notifyAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("TimedValueTest");
+        suite.addTest(new TestSuite(TimedValueTest.class));
+        return suite;
+    }
+
+    /**
+     * Wait until the recorder has seen a number of values.
+     */
+    private void awaitValues(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (this.values) {
+            while (this.values.size() < count
+                    && System.currentTimeMillis() < deadline) {
+                this.values.wait(100);
+            }
+        }
+        assertEquals(count, this.values.size());
+    }
+
+    /**
+     * A burst of changes is passed on once, when the source is quiet.
+     */
+    public void testDebounce() throws InterruptedException {
+        DebouncedValue debounced = new DebouncedValue(this.source, 50,
+                TimeUnit.MILLISECONDS);
+        debounced.addObserver(this.recorder);
+        assertEquals("start", debounced.getValue());
+        for (int i = 0; i < 10; i++) {
+            this.source.setValue(Integer.valueOf(i));
+        }
+        assertEquals("start", debounced.getValue());
+        this.awaitValues(1);
+        assertEquals(Integer.valueOf(9), this.values.get(0));
+        Thread.sleep(100);
+        assertEquals(1, this.values.size());
+        assertEquals(10, debounced.getReceivedCount());
+        assertEquals(1, debounced.getPublishedCount());
+    }
+
+    /**
+     * The first change is passed on at once, the rest at the end of the
+     * interval.
+     */
+    public void testThrottle() throws InterruptedException {
+        ThrottledValue throttled = new ThrottledValue(this.source, 50,
+                TimeUnit.MILLISECONDS);
+        throttled.addObserver(this.recorder);
+        for (int i = 0; i < 10; i++) {
+            this.source.setValue(Integer.valueOf(i));
+        }
+        assertEquals(1, this.values.size());
+        assertEquals(Integer.valueOf(0), this.values.get(0));
+        this.awaitValues(2);
+        assertEquals(Integer.valueOf(9), this.values.get(1));
+        Thread.sleep(150);
+        this.source.setValue("again");
+        assertEquals(3, this.values.size());
+    }
+
+    /**
+     * The latest value is passed on at the end of the interval, and nothing
+     * when the source does not change.
+     */
+    public void testSample() throws InterruptedException {
+        SampledValue sampled = new SampledValue(this.source, 50,
+                TimeUnit.MILLISECONDS);
+        sampled.addObserver(this.recorder);
+        this.source.setValue("one");
+        this.source.setValue("two");
+        assertTrue(this.values.isEmpty());
+        this.awaitValues(1);
+        assertEquals("two", this.values.get(0));
+        Thread.sleep(150);
+        assertEquals(1, this.values.size());
+        assertEquals(1, sampled.getPublishedCount());
+    }
+
+    /**
+     * A source that is missing or does not notify is refused before it is
+     * read.
+     */
+    public void testInvalidSource() {
+        final int[] reads = new int[1];
+        IValue silent = new IValue() {
+            public Object getValue() {
+                reads[0]++;
+                return "silent";
+            }
+
+            public void setValue(Object arg) {
+            }
+
+            public void update(Object sender, Object arg) {
+            }
+        };
+        IValue[] sources = new IValue[] { null, silent };
+        for (int i = 0; i < sources.length; i++) {
+            try {
+                new ThrottledValue(sources[i], 20, TimeUnit.MILLISECONDS);
+                fail("source accepted: " + sources[i]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(0, reads[0]);
+        try {
+            new SampledValue(this.source, 0, TimeUnit.MILLISECONDS);
+            fail("empty interval accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A timed value can be adapted like any value, writes through to its
+     * source, and stops following it when untied.
+     */
+    public void testAdapters() throws Exception {
+        DebouncedValue debounced = new DebouncedValue(this.source, 20,
+                TimeUnit.MILLISECONDS);
+        AspectAdapter adapter = new AspectAdapter(debounced, "value");
+        adapter.setSubjectSendsUpdates(Boolean.TRUE);
+        adapter.addObserver(this.recorder);
+        assertEquals("start", adapter.getValue());
+        DynamicValue trigger = new DynamicValue(Boolean.FALSE);
+        BufferedDynamicValue buffer = new BufferedDynamicValue(adapter,
+                trigger);
+        buffer.addObserver(new SAFObserver() {
+            public void update(Object sender, Object arg) {
+            }
+        });
+        buffer.setValue("edited");
+        assertEquals("start", this.source.getValue());
+        trigger.setValue(Boolean.TRUE);
+        assertEquals("edited", this.source.getValue());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (debounced.getPublishedCount() == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("edited", adapter.getValue());
+        assertEquals("edited", this.values.get(this.values.size() - 1));
+        debounced.untie();
+        this.source.setValue("ignored");
+        Thread.sleep(60);
+        assertEquals("edited", debounced.getValue());
+    }
+}
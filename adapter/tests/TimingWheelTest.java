@@ -0,0 +1,177 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import sepher.saf.adapter.*;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor TimingWheel.
+ */
+public class TimingWheelTest extends TestCase {
+
+    private TimingWheel wheel;
+
+    private List<Object> expired;
+
+    private List<Object> early;
+
+    /**
+     * Records its name when it expires, and notes when it expired before
+     * its delay.
+     */
+    private class Named extends TimingWheel.Timeout {
+        private final String name;
+
+        private final long scheduled = System.nanoTime();
+
+        private long delayNanos;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        Named(String name, long delayMillis) {
+            this(name);
+            this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        protected void expired() {
+            synchronized (expired) {
+                if (System.nanoTime() - this.scheduled < this.delayNanos) {
+                    early.add(this.name);
+                }
+                expired.add(this.name);
+                expired.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public TimingWheelTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+        this.expired = new ArrayList<Object>();
+        this.early = new ArrayList<Object>();
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("TimingWheelTest");
+        suite.addTest(new TestSuite(TimingWheelTest.class));
+        return suite;
+    }
+
+    /**
+     * Wait until a number of timeouts expired.
+     */
+    private void awaitExpired(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (this.expired) {
+            while (this.expired.size() < count
+                    && System.currentTimeMillis() < deadline) {
+                this.expired.wait(100);
+            }
+        }
+        assertEquals(count, this.expired.size());
+    }
+
+    /**
+     * Timeouts expire in the order of their deadlines, also when they are
+     * on higher levels of the wheel, and not before their delay.
+     */
+    public void testOrder() throws InterruptedException {
+        this.wheel.schedule(new Named("300", 300), 300,
+                TimeUnit.MILLISECONDS);
+        this.wheel.schedule(new Named("100", 100), 100,
+                TimeUnit.MILLISECONDS);
+        assertEquals(2, this.wheel.size());
+        this.wheel.schedule(new Named("5", 5), 5, TimeUnit.MILLISECONDS);
+        this.awaitExpired(3);
+        assertTrue(this.early.toString(), this.early.isEmpty());
+        assertEquals("5", this.expired.get(0));
+        assertEquals("100", this.expired.get(1));
+        assertEquals("300", this.expired.get(2));
+        assertEquals(0, this.wheel.size());
+        assertEquals(3, this.wheel.getExpiredCount());
+    }
+
+    /**
+     * Scheduling a timeout again moves it; a cancelled timeout does not
+     * expire.
+     */
+    public void testRescheduleAndCancel() throws InterruptedException {
+        Named moved = new Named("moved");
+        Named cancelled = new Named("cancelled");
+        this.wheel.schedule(moved, 10, TimeUnit.MILLISECONDS);
+        this.wheel.schedule(cancelled, 20, TimeUnit.MILLISECONDS);
+        this.wheel.schedule(moved, 80, TimeUnit.MILLISECONDS);
+        assertEquals(2, this.wheel.size());
+        assertTrue(this.wheel.cancel(cancelled));
+        assertFalse(this.wheel.cancel(cancelled));
+        this.wheel.schedule(new Named("first"), 40, TimeUnit.MILLISECONDS);
+        this.awaitExpired(2);
+        assertEquals("first", this.expired.get(0));
+        assertEquals("moved", this.expired.get(1));
+        assertFalse(this.wheel.isScheduled(moved));
+    }
+
+    /**
+     * A timeout may schedule itself again, and an exception of one does not
+     * stop the wheel.
+     */
+    public void testRepeatAndFailure() throws InterruptedException {
+        this.wheel.schedule(new TimingWheel.Timeout() {
+            protected void expired() {
+                throw new IllegalStateException("broken");
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        this.wheel.schedule(new Named("repeated") {
+            private int count;
+
+            protected void expired() {
+                super.expired();
+                if (++this.count < 3) {
+                    wheel.schedule(this, 2, TimeUnit.MILLISECONDS);
+                }
+            }
+        }, 2, TimeUnit.MILLISECONDS);
+        this.awaitExpired(3);
+        assertEquals(1, this.wheel.getFailureCount());
+        assertEquals("broken", this.wheel.getLastFailure().getMessage());
+    }
+
+    /**
+     * Many timeouts cost one thread.
+     */
+    public void testMany() throws InterruptedException {
+        int threads = Thread.activeCount();
+        for (int i = 0; i < 10000; i++) {
+            this.wheel.schedule(new TimingWheel.Timeout() {
+                protected void expired() {
+                }
+            }, 1 + i % 50, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(Thread.activeCount() <= threads + 1);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.wheel.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, this.wheel.size());
+        assertEquals(10000, this.wheel.getExpiredCount());
+    }
+}
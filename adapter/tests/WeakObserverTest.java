@@ -0,0 +1,161 @@
+package sepher.saf.adapter.tests;
+
+import java.lang.ref.WeakReference;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor WeakObserver.
+ */
+public class WeakObserverTest extends TestCase {
+
+    private Person person;
+
+    private int updates;
+
+    /**
+     * Observer counting its updates.
+     */
+    private class anObserver implements SAFObserver {
+        public void update(Object sender, Object aspect) {
+            updates++;
+        }
+    }
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public WeakObserverTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.person = new Person();
+        this.updates = 0;
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("WeakObserverTest");
+        suite.addTest(new TestSuite(WeakObserverTest.class));
+        return suite;
+    }
+
+    public void tearDown() {
+        this.person.untie();
+    }
+
+    /**
+     * Run the garbage collector until the reference has been cleared.
+     */
+    private static void collect(final WeakReference<?> reference)
+            throws InterruptedException {
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("observer was not reclaimed", reference.get());
+    }
+
+    /**
+     * A weakly registered observer is notified while it is reachable.
+     */
+    public void testNotify() {
+        SAFObserver observer = new anObserver();
+        person.addWeakObserver(observer);
+        person.addWeakObserver(observer, Person.NAME);
+        person.setName("Janssen");
+        assertEquals(2, updates);
+        assertEquals(2, person.countObservers());
+    }
+
+    /**
+     * A weak registration is removed by deleting the observer itself, and an
+     * observer is registered once however it was added.
+     */
+    public void testDelete() {
+        SAFObserver observer = new anObserver();
+        person.addWeakObserver(observer);
+        person.addObserver(observer);
+        assertEquals(1, person.countObservers());
+        person.deleteObserver(observer);
+        assertEquals(0, person.countObservers());
+        person.addWeakObserver(observer, Person.NAME);
+        person.deleteObserver(observer, Person.NAME);
+        assertEquals(0, person.countObservers());
+    }
+
+    /**
+     * A reclaimed observer is purged during the next notification.
+     */
+    public void testPurge() throws InterruptedException {
+        SAFObserver kept = new anObserver();
+        person.addObserver(kept);
+        SAFObserver observer = new anObserver();
+        person.addWeakObserver(observer);
+        person.addWeakObserver(observer, Person.NAME);
+        WeakReference<SAFObserver> reference = new WeakReference<SAFObserver>(
+                observer);
+        observer = null;
+        collect(reference);
+        long purged = WeakObserver.getPurgedCount();
+        assertEquals(3, person.countObservers());
+        person.setName("Janssen");
+        assertEquals(1, updates);
+        assertEquals(1, person.countObservers());
+        assertEquals(purged + 2, WeakObserver.getPurgedCount());
+    }
+
+    /**
+     * Reclaimed observers are purged also when there are many observers.
+     */
+    public void testPurgeMany() throws InterruptedException {
+        SAFObserver[] kept = new SAFObserver[20];
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = new anObserver();
+            person.addObserver(kept[i]);
+        }
+        SAFObserver observer = new anObserver();
+        person.addWeakObserver(observer);
+        person.addWeakObserver(observer);
+        assertEquals(21, person.countObservers());
+        WeakReference<SAFObserver> reference = new WeakReference<SAFObserver>(
+                observer);
+        observer = null;
+        collect(reference);
+        long purged = WeakObserver.getPurgedCount();
+        person.setName("Janssen");
+        assertEquals(20, updates);
+        assertEquals(20, person.countObservers());
+        assertEquals(purged + 1, WeakObserver.getPurgedCount());
+    }
+
+    /**
+     * An adapter with a weak hookup is not kept reachable by its subject.
+     */
+    public void testWeakHookup() throws Exception {
+        AspectAdapter adapter = new AspectAdapter(person, "name");
+        adapter.setWeakHookup(true);
+        adapter.setSubjectSendsUpdates(Boolean.TRUE);
+        adapter.addObserver(new anObserver());
+        person.setName("Janssen");
+        assertEquals(1, updates);
+        assertEquals(1, person.countObservers());
+        WeakReference<AspectAdapter> reference = new WeakReference<AspectAdapter>(
+                adapter);
+        adapter = null;
+        collect(reference);
+        person.setName("Pietersen");
+        assertEquals(1, updates);
+        assertEquals(0, person.countObservers());
+    }
+}
@@ -0,0 +1,220 @@
+package sepher.saf.adapter.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sepher.saf.adapter.*;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import junit.framework.*;
+
+/**
+ * JUnit test class voor WriteBehindObserver.
+ */
+public class WriteBehindObserverTest extends TestCase {
+
+    private List<List<WriteBehindObserver.Write>> batches;
+
+    private volatile boolean failing;
+
+    private volatile long delay;
+
+    private WriteBehindObserver.Store store;
+
+    private WriteBehindObserver writeBehind;
+
+    /**
+     * Constructor met de naam van de test class.
+     *
+     * @param testNaam
+     *        java.lang.String
+     */
+    public WriteBehindObserverTest(String testNaam) {
+        super(testNaam);
+    }
+
+    public void setUp() {
+        this.batches = new ArrayList<List<WriteBehindObserver.Write>>();
+        this.store = new WriteBehindObserver.Store() {
+            public void write(List<WriteBehindObserver.Write> writes)
+                    throws Exception {
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                if (failing) {
+                    throw new Exception("store down");
+                }
+                synchronized (batches) {
+                    batches.add(writes);
+                    batches.notifyAll();
+                }
+            }
+        };
+    }
+
+    public void tearDown() throws InterruptedException {
+        if (this.writeBehind != null) {
+            this.writeBehind.shutdown();
+        }
+    }
+
+    /**
+     * A unit test suite for JUnit
+     *
+     * @return The test suite
+     */
+    public static Test suite() {
+        TestSuite suite = new TestSuite("WriteBehindObserverTest");
+        suite.addTest(new TestSuite(WriteBehindObserverTest.class));
+        return suite;
+    }
+
+    /**
+     * Wait until the store received a number of batches.
+     */
+    private void awaitBatches(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (this.batches) {
+            while (this.batches.size() < count
+                    && System.currentTimeMillis() < deadline) {
+                this.batches.wait(100);
+            }
+        }
+        assertTrue(this.batches.size() >= count);
+    }
+
+    /**
+     * Repeated changes of one aspect are written once, with the last value.
+     */
+    public void testCoalesce() {
+        this.writeBehind = new WriteBehindObserver(this.store, 100, 60000);
+        Person person = new Person();
+        person.addObserver(this.writeBehind);
+        person.setName("Janssen");
+        person.setName("Pietersen");
+        person.setName("Klaassen");
+        assertEquals(1, this.writeBehind.getQueueDepth());
+        assertEquals(1, this.writeBehind.flush());
+        assertEquals(1, this.batches.size());
+        WriteBehindObserver.Write write = this.batches.get(0).get(0);
+        assertSame(person, write.getSubject());
+        assertEquals("name", write.getAspect());
+        assertEquals("Klaassen", write.getValue());
+        assertEquals(3, this.writeBehind.getRecordedCount());
+        assertEquals(2, this.writeBehind.getCoalescedCount());
+        assertEquals(1, this.writeBehind.getWrittenCount());
+    }
+
+    /**
+     * Event observers write the value of the event, in the order the
+     * aspects became dirty.
+     */
+    public void testEventValues() {
+        this.writeBehind = new WriteBehindObserver(this.store, 100, 60000);
+        Person person = new Person();
+        Address address = new Address();
+        person.addObserver(this.writeBehind);
+        address.addObserver(this.writeBehind);
+        person.setName("Janssen");
+        address.setStreet("Dorpsstraat");
+        person.setAddress(address);
+        this.writeBehind.flush();
+        List<WriteBehindObserver.Write> writes = this.batches.get(0);
+        assertEquals(3, writes.size());
+        assertEquals("Janssen", writes.get(0).getValue());
+        assertEquals("Dorpsstraat", writes.get(1).getValue());
+        assertSame(address, writes.get(2).getValue());
+    }
+
+    /**
+     * Plain changes are read when they are written.
+     */
+    public void testPlainChange() {
+        this.writeBehind = new WriteBehindObserver(this.store, 100, 60000);
+        Person person = new Person();
+        this.writeBehind.update(person, "name");
+        person.setName("Janssen");
+        this.writeBehind.update(person, "unknown");
+        assertEquals(1, this.writeBehind.flush());
+        assertEquals(1, this.batches.get(0).size());
+        assertEquals("Janssen", this.batches.get(0).get(0).getValue());
+    }
+
+    /**
+     * Reaching the batch size flushes on the flusher thread.
+     */
+    public void testBatchSize() throws InterruptedException {
+        this.writeBehind = new WriteBehindObserver(this.store, 3, 60000);
+        for (int i = 0; i < 3; i++) {
+            Person person = new Person();
+            person.addObserver(this.writeBehind);
+            person.setName("Janssen");
+        }
+        this.awaitBatches(1);
+        assertEquals(3, this.batches.get(0).size());
+        assertEquals(3, this.writeBehind.getMaxQueueDepth());
+    }
+
+    /**
+     * The flush interval flushes a partial batch.
+     */
+    public void testInterval() throws InterruptedException {
+        this.writeBehind = new WriteBehindObserver(this.store, 100, 20);
+        Person person = new Person();
+        person.addObserver(this.writeBehind);
+        person.setName("Janssen");
+        this.awaitBatches(1);
+        // the latency is recorded after the store returns
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.writeBehind.getFlushLatency().getCount() == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(this.writeBehind.getFlushLatency().getCount() > 0);
+    }
+
+    /**
+     * A failed batch is merged with later changes and written again.
+     */
+    public void testFailure() {
+        this.writeBehind = new WriteBehindObserver(this.store, 100, 60000);
+        Person person = new Person();
+        Address address = new Address();
+        person.addObserver(this.writeBehind);
+        address.addObserver(this.writeBehind);
+        person.setName("Janssen");
+        this.failing = true;
+        assertEquals(0, this.writeBehind.flush());
+        assertEquals(1, this.writeBehind.getFailureCount());
+        assertEquals("store down", this.writeBehind.getLastFailure()
+                .getMessage());
+        address.setStreet("Dorpsstraat");
+        person.setName("Pietersen");
+        this.failing = false;
+        assertEquals(2, this.writeBehind.flush());
+        List<WriteBehindObserver.Write> writes = this.batches.get(0);
+        assertEquals("Pietersen", writes.get(0).getValue());
+        assertEquals("Dorpsstraat", writes.get(1).getValue());
+    }
+
+    /**
+     * A slow store does not slow down the domain, and shutdown writes what
+     * is left.
+     */
+    public void testSlowStoreAndShutdown() throws InterruptedException {
+        this.delay = 200;
+        this.writeBehind = new WriteBehindObserver(this.store, 1, 60000);
+        Person person = new Person();
+        person.addObserver(this.writeBehind);
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            person.setName("name " + i);
+        }
+        assertTrue(System.nanoTime() - start < 150000000L);
+        assertEquals(0, this.writeBehind.shutdown());
+        this.writeBehind = null;
+        List<WriteBehindObserver.Write> last = this.batches.get(this.batches
+                .size() - 1);
+        assertEquals("name 99", last.get(last.size() - 1).getValue());
+    }
+}
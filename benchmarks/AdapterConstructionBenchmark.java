@@ -0,0 +1,65 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.AspectAdapter;
+import sepher.saf.adapter.BufferedDynamicValue;
+import sepher.saf.adapter.DynamicValue;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures building adapters on a <code>Person</code>, as done for every
+ * field of a screen: an <code>AspectAdapter</code> by aspect name (a lookup
+ * in the <code>AccessorCache</code>), one from method references, one that
+ * registers with its subject and unregisters again, and a buffered one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AdapterConstructionBenchmark {
+
+    private Person person;
+
+    private DynamicValue trigger;
+
+    @Setup
+    public void setUp() {
+        person = new Person();
+        trigger = new DynamicValue(Boolean.FALSE);
+    }
+
+    @Benchmark
+    public AspectAdapter byName() throws NoSuchMethodException {
+        return new AspectAdapter(person, "name");
+    }
+
+    @Benchmark
+    public AspectAdapter byMethodReferences() {
+        return new AspectAdapter(person, "name", person::getName,
+                person::setName);
+    }
+
+    @Benchmark
+    public AspectAdapter hookupAndUnhook() throws NoSuchMethodException {
+        AspectAdapter adapter = new AspectAdapter(person, "name");
+        adapter.setSubjectSendsUpdates(Boolean.TRUE);
+        adapter.setSubjectSendsUpdates(Boolean.FALSE);
+        return adapter;
+    }
+
+    @Benchmark
+    public BufferedDynamicValue buffered() throws NoSuchMethodException {
+        BufferedDynamicValue buffer = new BufferedDynamicValue(
+                new AspectAdapter(person, "name"), trigger);
+        buffer.untie();
+        return buffer;
+    }
+}
@@ -0,0 +1,67 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.AspectAdapter;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures get and set round trips through an <code>AspectAdapter</code> on a
+ * <code>Person</code>, with an accessor resolved by reflection and with one
+ * built from method references.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AspectAdapterBenchmark {
+
+    /**
+     * How the accessor of the adapter is made.
+     */
+    @Param({ "reflective", "lambda" })
+    public String accessor;
+
+    private Person person;
+
+    private AspectAdapter adapter;
+
+    private final String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        person = new Person();
+        if ("lambda".equals(accessor)) {
+            adapter = new AspectAdapter(person, "name", person::getName,
+                    person::setName);
+        } else {
+            adapter = new AspectAdapter(person, "name");
+        }
+    }
+
+    @Benchmark
+    public Object get() {
+        return adapter.getValue();
+    }
+
+    @Benchmark
+    public void set() {
+        adapter.setValue(names[next++ & 1]);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        adapter.setValue(names[next++ & 1]);
+        return adapter.getValue();
+    }
+}
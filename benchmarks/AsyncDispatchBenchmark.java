@@ -0,0 +1,78 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import sepher.saf.adapter.RingBufferDispatcher;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.WaitStrategy;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures the time a mutating thread spends in <code>setName</code> on a
+ * <code>Person</code> with slow observers, with synchronous notification and
+ * with a <code>RingBufferDispatcher</code>.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AsyncDispatchBenchmark {
+
+    /**
+     * Whether notifications go through the ring buffer.
+     */
+    @Param({ "false", "true" })
+    public boolean async;
+
+    private Person person;
+
+    private RingBufferDispatcher dispatcher;
+
+    /**
+     * Observer that takes about a microsecond per update, like an observer
+     * that writes to a log or an index.
+     */
+    static final class aSlowObserver implements SAFObserver {
+        public void update(final Object sender, final Object arg) {
+            long end = System.nanoTime() + 1000;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        person = new Person();
+        for (int i = 0; i < 4; i++) {
+            person.addObserver(new aSlowObserver());
+        }
+        if (async) {
+            dispatcher = new RingBufferDispatcher(1, 1 << 16,
+                    WaitStrategy.YIELD);
+            person.setDispatcher(dispatcher);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (dispatcher != null) {
+            person.setDispatcher(null);
+            dispatcher.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName("Janssen");
+    }
+}
@@ -0,0 +1,65 @@
+package sepher.saf.adapter.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of the framework with the GC profiler, so that every
+ * result has its allocation rate (<code>gc.alloc.rate.norm</code>, bytes per
+ * operation) next to its throughput or latency, and writes the results as
+ * JSON to <code>saf-benchmarks-&lt;release&gt;.json</code> to be compared
+ * between releases.
+ * <p>
+ * Usage:
+ *
+ * <pre><code>
+ *     java -cp benchmarks.jar sepher.saf.adapter.benchmarks.BenchmarkSuite 1.2 [jmh options]
+ * </code></pre>
+ *
+ * The first argument is the release label; any further arguments are JMH
+ * command line options, for instance a regular expression selecting
+ * benchmarks or <code>-f 1 -wi 3 -i 5</code> for a quick run.
+ */
+public final class BenchmarkSuite {
+
+    /**
+     * No instances.
+     */
+    private BenchmarkSuite() {
+    }
+
+    /**
+     * Run the suite.
+     *
+     * @param args
+     *        the release label followed by JMH options
+     * @throws RunnerException
+     *         when a benchmark fails
+     * @throws CommandLineOptionException
+     *         when the JMH options are not valid
+     */
+    public static void main(final String[] args) throws RunnerException,
+            CommandLineOptionException {
+        String release = args.length > 0 ? args[0] : "snapshot";
+        String[] jmhArgs = new String[Math.max(0, args.length - 1)];
+        System.arraycopy(args, Math.min(1, args.length), jmhArgs, 0,
+                jmhArgs.length);
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(BenchmarkSuite.class.getPackage().getName()
+                    + "\\.");
+        }
+        Options options = builder.addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("saf-benchmarks-" + release + ".json").build();
+        new Runner(options).run();
+    }
+}
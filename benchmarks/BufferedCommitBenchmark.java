@@ -0,0 +1,64 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.AspectAdapter;
+import sepher.saf.adapter.BooleanValue;
+import sepher.saf.adapter.BufferedDynamicValue;
+import sepher.saf.adapter.DynamicValue;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures committing a <code>BufferedDynamicValue</code> through its trigger
+ * channel: the buffered value is set and the trigger is set to
+ * <code>TRUE</code>, which writes the value through an
+ * <code>AspectAdapter</code> to a <code>Person</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class BufferedCommitBenchmark {
+
+    /**
+     * The class of the trigger channel.
+     */
+    @Param({ "DynamicValue", "BooleanValue" })
+    public String trigger;
+
+    private BufferedDynamicValue buffer;
+
+    private DynamicValue triggerChannel;
+
+    private final String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        Person person = new Person();
+        triggerChannel = "BooleanValue".equals(trigger) ? new BooleanValue()
+                : new DynamicValue(Boolean.FALSE);
+        buffer = new BufferedDynamicValue(new AspectAdapter(person, "name"),
+                triggerChannel);
+        buffer.addObserver(new SAFObserver() {
+            public void update(final Object sender, final Object arg) {
+            }
+        });
+    }
+
+    @Benchmark
+    public void commit() {
+        buffer.setValue(names[next++ & 1]);
+        triggerChannel.setValue(Boolean.TRUE);
+    }
+}
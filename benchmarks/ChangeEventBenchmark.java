@@ -0,0 +1,73 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sepher.saf.adapter.ChangeEvent;
+import sepher.saf.adapter.ChangeEventObserver;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures <code>setName</code> on a <code>Person</code> with ten observers
+ * that read the new name: plain observers read it from the person, event
+ * observers from the <code>ChangeEvent</code>. Run with
+ * <code>-prof gc</code> to see that recycled events allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ChangeEventBenchmark {
+
+    /**
+     * Whether the observers take events.
+     */
+    @Param({ "false", "true" })
+    public boolean events;
+
+    private Person person;
+
+    private Blackhole blackhole;
+
+    private String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    @Setup
+    public void setUp(final Blackhole bh) {
+        blackhole = bh;
+        person = new Person();
+        for (int i = 0; i < 10; i++) {
+            if (events) {
+                person.addObserver(new ChangeEventObserver() {
+                    public void changed(final ChangeEvent event) {
+                        blackhole.consume(event.getNewValue());
+                    }
+
+                    public void update(final Object sender, final Object arg) {
+                    }
+                });
+            } else {
+                person.addObserver(new SAFObserver() {
+                    public void update(final Object sender, final Object arg) {
+                        blackhole.consume(((Person) sender).getName());
+                    }
+                });
+            }
+        }
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName(names[next++ & 1]);
+    }
+}
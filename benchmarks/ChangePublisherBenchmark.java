@@ -0,0 +1,81 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import sepher.saf.adapter.ChangeEvent;
+import sepher.saf.adapter.ChangePublisher;
+import sepher.saf.adapter.OverflowPolicy;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures <code>setName</code> on a <code>Person</code> published by a
+ * <code>ChangePublisher</code> to a subscriber that requests 64 changes at a
+ * time, with a buffer that blocks or conflates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ChangePublisherBenchmark {
+
+    @Param({ "BLOCK", "CONFLATE" })
+    public String policy;
+
+    private Person person;
+
+    private ChangePublisher<ChangeEvent> publisher;
+
+    private String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        person = new Person();
+        publisher = ChangePublisher.changesOf(person, null, 1024,
+                OverflowPolicy.valueOf(policy));
+        publisher.subscribe(new Flow.Subscriber<ChangeEvent>() {
+            private Flow.Subscription subscription;
+
+            private int received;
+
+            public void onSubscribe(final Flow.Subscription s) {
+                subscription = s;
+                s.request(64);
+            }
+
+            public void onNext(final ChangeEvent item) {
+                if (++received == 32) {
+                    received = 0;
+                    subscription.request(32);
+                }
+            }
+
+            public void onError(final Throwable throwable) {
+            }
+
+            public void onComplete() {
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        publisher.close();
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName(names[next++ & 1]);
+    }
+}
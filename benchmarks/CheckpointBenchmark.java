@@ -0,0 +1,82 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+import sepher.saf.adapter.journal.Checkpointer;
+
+/**
+ * Measures restoring a checkpoint of <code>persons</code> persons, each
+ * with an address, and an incremental checkpoint after one percent of them
+ * changed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CheckpointBenchmark {
+
+    @Param({ "100000" })
+    public int persons;
+
+    private File directory;
+
+    private Checkpointer checkpointer;
+
+    private Person[] graph;
+
+    private int round;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("checkpoint", "");
+        directory.delete();
+        checkpointer = new Checkpointer(directory);
+        graph = new Person[persons];
+        for (int i = 0; i < persons; i++) {
+            Address address = new Address();
+            address.setStreet("Dorpsstraat " + i);
+            graph[i] = new Person();
+            graph[i].setName("Janssen " + i);
+            graph[i].setAddress(address);
+            checkpointer.track(graph[i]);
+        }
+        checkpointer.fullCheckpoint();
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public Map<Long, Object> load() throws IOException {
+        return Checkpointer.load(directory);
+    }
+
+    @Benchmark
+    public int incremental() throws IOException {
+        round++;
+        for (int i = 0; i < persons; i += 100) {
+            graph[i].setName("Pietersen " + round);
+        }
+        return checkpointer.checkpoint();
+    }
+}
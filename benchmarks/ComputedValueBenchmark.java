@@ -0,0 +1,96 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.ComputedValue;
+import sepher.saf.adapter.DynamicValue;
+import sepher.saf.adapter.IntValue;
+import sepher.saf.adapter.SAFObserver;
+
+/**
+ * Measures a change of the price at the top of a diamond: a total and a tax
+ * computed from the price, and an invoice computed from both, which has an
+ * observer. <code>EAGER</code> wires the diamond with observers by hand, so
+ * the invoice is computed twice per change, the first time from a new total
+ * and an old tax; <code>COMPUTED</code> uses computed values, which compute
+ * the invoice once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ComputedValueBenchmark {
+
+    @Param({ "EAGER", "COMPUTED" })
+    public String wiring;
+
+    private IntValue price;
+
+    private DynamicValue invoice;
+
+    private final SAFObserver observer = new SAFObserver() {
+        public void update(final Object sender, final Object arg) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        price = new IntValue(100);
+        if ("EAGER".equals(wiring)) {
+            final IntValue total = new IntValue(200);
+            final IntValue tax = new IntValue(10);
+            invoice = new IntValue(210);
+            price.addObserver(new SAFObserver() {
+                public void update(final Object sender, final Object arg) {
+                    total.setInt(price.getAsInt() * 2);
+                    tax.setInt(price.getAsInt() / 10);
+                }
+            });
+            SAFObserver sum = new SAFObserver() {
+                public void update(final Object sender, final Object arg) {
+                    ((IntValue) invoice).setInt(total.getAsInt()
+                            + tax.getAsInt());
+                }
+            };
+            total.addObserver(sum);
+            tax.addObserver(sum);
+        } else {
+            final ComputedValue total = new ComputedValue(
+                    new Supplier<Object>() {
+                        public Object get() {
+                            return Integer.valueOf(price.getAsInt() * 2);
+                        }
+                    });
+            final ComputedValue tax = new ComputedValue(
+                    new Supplier<Object>() {
+                        public Object get() {
+                            return Integer.valueOf(price.getAsInt() / 10);
+                        }
+                    });
+            invoice = new ComputedValue(new Supplier<Object>() {
+                public Object get() {
+                    return Integer.valueOf(((Integer) total.getValue())
+                            .intValue()
+                            + ((Integer) tax.getValue()).intValue());
+                }
+            });
+        }
+        invoice.addObserver(observer);
+        invoice.getValue();
+    }
+
+    @Benchmark
+    public Object setPrice() {
+        price.setInt(price.getAsInt() + 10);
+        return invoice.getValue();
+    }
+}
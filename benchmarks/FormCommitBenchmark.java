@@ -0,0 +1,84 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.AspectAdapter;
+import sepher.saf.adapter.BooleanValue;
+import sepher.saf.adapter.BufferedDynamicValue;
+import sepher.saf.adapter.CommitGroup;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures committing a form of buffered fields on one <code>Person</code>
+ * whose observer takes about a microsecond per update, like a view that
+ * redraws: every field observing a shared trigger channel, or all fields in
+ * a <code>CommitGroup</code> observing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FormCommitBenchmark {
+
+    /**
+     * The number of buffered fields.
+     */
+    @Param({ "5", "50" })
+    public int fields;
+
+    /**
+     * Whether the fields are committed by a <code>CommitGroup</code>.
+     */
+    @Param({ "false", "true" })
+    public boolean group;
+
+    private BufferedDynamicValue[] buffers;
+
+    private BooleanValue trigger;
+
+    private final String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        Person person = new Person();
+        person.addObserver(new SAFObserver() {
+            public void update(final Object sender, final Object arg) {
+                long end = System.nanoTime() + 1000;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+            }
+        });
+        trigger = new BooleanValue();
+        CommitGroup commitGroup = group ? new CommitGroup(trigger) : null;
+        buffers = new BufferedDynamicValue[fields];
+        for (int i = 0; i < fields; i++) {
+            buffers[i] = new BufferedDynamicValue(new AspectAdapter(person,
+                    "name"), trigger);
+            if (commitGroup != null) {
+                commitGroup.add(buffers[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public void commit() {
+        String name = names[next++ & 1];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i].setValue(name);
+        }
+        trigger.setBoolean(true);
+        trigger.setBoolean(false);
+    }
+}
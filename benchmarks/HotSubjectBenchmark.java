@@ -0,0 +1,65 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import sepher.saf.adapter.OrderedDispatcher;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures the time four threads spend in <code>setName</code> on one shared
+ * <code>Person</code> with a slow observer, with synchronous notification
+ * (the subject is locked while its observers run) and with an
+ * <code>OrderedDispatcher</code> (a writer queues its notification and
+ * returns when another thread is notifying).
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+public class HotSubjectBenchmark {
+
+    /**
+     * Whether notifications go through an <code>OrderedDispatcher</code>.
+     */
+    @Param({ "false", "true" })
+    public boolean ordered;
+
+    private Person person;
+
+    /**
+     * Observer that takes about a microsecond per update.
+     */
+    static final class aSlowObserver implements SAFObserver {
+        public void update(final Object sender, final Object arg) {
+            long end = System.nanoTime() + 1000;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        person = new Person();
+        person.addObserver(new aSlowObserver());
+        if (ordered) {
+            person.setDispatcher(OrderedDispatcher.SHARED);
+        }
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName("Janssen");
+    }
+}
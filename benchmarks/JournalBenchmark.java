@@ -0,0 +1,68 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import sepher.saf.adapter.examples.Person;
+import sepher.saf.adapter.journal.Journal;
+import sepher.saf.adapter.journal.JournalObserver;
+import sepher.saf.adapter.journal.SyncPolicy;
+
+/**
+ * Measures <code>setName</code> on a <code>Person</code> journaled by a
+ * <code>JournalObserver</code>, per <code>SyncPolicy</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+    @Param({ "NEVER", "INTERVAL", "ALWAYS" })
+    public SyncPolicy policy;
+
+    private File directory;
+
+    private Journal journal;
+
+    private Person person;
+
+    private String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        journal = new Journal(directory, Journal.DEFAULT_SEGMENT_SIZE, policy,
+                10);
+        person = new Person();
+        new JournalObserver(journal).attach(person);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName(names[next++ & 1]);
+    }
+}
@@ -0,0 +1,61 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import sepher.saf.adapter.NotificationMetrics;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures the cost of <code>NotificationMetrics</code>: <code>setName</code>
+ * on a <code>Person</code> with ten observers, with the metrics disabled and
+ * enabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MetricsOverheadBenchmark {
+
+    /**
+     * Whether the metrics are enabled.
+     */
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    private Person person;
+
+    @Setup
+    public void setUp() {
+        person = new Person();
+        for (int i = 0; i < 10; i++) {
+            person.addObserver(new SAFObserver() {
+                public void update(final Object sender, final Object arg) {
+                }
+            });
+        }
+        if (metrics) {
+            NotificationMetrics.enable();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        NotificationMetrics.disable();
+        NotificationMetrics.reset();
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName("Janssen");
+    }
+}
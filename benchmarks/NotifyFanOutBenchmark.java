@@ -0,0 +1,86 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sepher.saf.adapter.Aspect;
+import sepher.saf.adapter.SAFObservable;
+import sepher.saf.adapter.SAFObserver;
+
+/**
+ * Measures <code>SAFObservable.notifyObservers</code> for fan-outs from one
+ * to ten thousand observers, with a <code>String</code> aspect (mapped to its
+ * <code>Aspect</code> on every notification) and with an interned
+ * <code>Aspect</code>.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class NotifyFanOutBenchmark {
+
+    /**
+     * The number of observers.
+     */
+    @Param({ "1", "10", "100", "1000", "10000" })
+    public int observers;
+
+    private aSubject subject;
+
+    /**
+     * Observable that lets the benchmark mark it changed.
+     */
+    static final class aSubject extends SAFObservable {
+        static final Aspect VALUE = Aspect.of(aSubject.class, "value");
+
+        void change(final Object arg) {
+            this.setChanged();
+            this.notifyObservers(arg);
+        }
+    }
+
+    /**
+     * Observer that only consumes its arguments.
+     */
+    static final class anObserver implements SAFObserver {
+        private final Blackhole blackhole;
+
+        anObserver(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        public void update(final Object sender, final Object arg) {
+            this.blackhole.consume(arg);
+        }
+
+        public void update(final Object sender, final Aspect aspect) {
+            this.blackhole.consume(aspect);
+        }
+    }
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        subject = new aSubject();
+        for (int i = 0; i < observers; i++) {
+            subject.addObserver(new anObserver(blackhole));
+        }
+    }
+
+    @Benchmark
+    public void notifyString() {
+        subject.change("value");
+    }
+
+    @Benchmark
+    public void notifyAspect() {
+        subject.change(aSubject.VALUE);
+    }
+}
@@ -0,0 +1,109 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sepher.saf.adapter.SAFObservable;
+import sepher.saf.adapter.SAFObserver;
+
+/**
+ * Measures notification of one shared <code>SAFObservable</code> from many
+ * threads, with and without a thread that keeps adding and deleting an
+ * observer at the same time. Run with an increasing number of threads (for
+ * instance <code>-t 1</code>, <code>-t 2</code>, <code>-t 4</code>) to see
+ * how dispatch scales with the number of cores:
+ *
+ * <pre><code>
+ *     java -jar benchmarks.jar ObserverContentionBenchmark -t 4
+ * </code></pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ObserverContentionBenchmark {
+
+    /**
+     * The number of observers of the shared subject.
+     */
+    @Param({ "1", "10", "100" })
+    public int observers;
+
+    private aSubject subject;
+
+    private SAFObserver registering;
+
+    /**
+     * Observable that is marked changed before every notification. When
+     * threads interleave, the changes of two threads may be notified once.
+     */
+    static final class aSubject extends SAFObservable {
+        void change(final Object arg) {
+            this.setChanged();
+            this.notifyObservers(arg);
+        }
+    }
+
+    /**
+     * Observer doing a minimal amount of work per update. It only reads, so
+     * that the observers themselves do not cause contention between cores.
+     */
+    static final class aCountingObserver implements SAFObserver {
+        long count;
+
+        public void update(final Object sender, final Object arg) {
+            if (arg == sender) {
+                count++;
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        subject = new aSubject();
+        for (int i = 0; i < observers; i++) {
+            subject.addObserver(new aCountingObserver());
+        }
+        registering = new aCountingObserver();
+    }
+
+    /**
+     * Notification only; all threads of the benchmark dispatch.
+     */
+    @Benchmark
+    public void dispatch() {
+        subject.change("value");
+    }
+
+    /**
+     * Notification while another thread registers and deletes an observer.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedDispatch() {
+        subject.change("value");
+    }
+
+    /**
+     * The registering side of the mixed benchmark.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedRegister(final Blackhole bh) {
+        subject.addObserver(registering);
+        subject.deleteObserver(registering);
+        bh.consume(subject.countObservers());
+    }
+}
@@ -0,0 +1,55 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.ChangingObservable;
+import sepher.saf.adapter.SAFObserver;
+
+/**
+ * Measures the memory taken by a <code>ChangingObservable</code> with a given
+ * number of observers. Run with <code>-prof gc</code>: the allocation per
+ * operation (<code>gc.alloc.rate.norm</code>) is the number of bytes per
+ * instance, including the storage of its observers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ObserverFootprintBenchmark {
+
+    /**
+     * The number of observers per instance.
+     */
+    @Param({ "0", "1", "2", "4", "32" })
+    public int observers;
+
+    private SAFObserver[] shared;
+
+    @Setup
+    public void setUp() {
+        shared = new SAFObserver[observers];
+        for (int i = 0; i < observers; i++) {
+            shared[i] = new SAFObserver() {
+                public void update(final Object sender, final Object arg) {
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public ChangingObservable instance() {
+        ChangingObservable observable = new ChangingObservable();
+        for (int i = 0; i < shared.length; i++) {
+            observable.addObserver(shared[i]);
+        }
+        return observable;
+    }
+}
@@ -0,0 +1,67 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.PathAdapter;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Address;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures a <code>PathAdapter</code> on <code>address.street</code>:
+ * reading the value, which walks the path unless the adapter observes it, and
+ * replacing the address, which re-registers the part of the path below the
+ * person.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PathAdapterBenchmark {
+
+    /**
+     * Whether the adapter observes the objects on its path.
+     */
+    @Param({ "false", "true" })
+    public boolean observing;
+
+    private Person person;
+
+    private PathAdapter adapter;
+
+    private final Address[] addresses = { new Address(), new Address() };
+
+    private int next;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        person = new Person();
+        addresses[0].setStreet("Kerkstraat");
+        addresses[1].setStreet("Molenweg");
+        person.setAddress(addresses[0]);
+        adapter = new PathAdapter(person, "address.street");
+        adapter.setSubjectSendsUpdates(Boolean.valueOf(observing));
+        adapter.addObserver(new SAFObserver() {
+            public void update(final Object sender, final Object arg) {
+            }
+        });
+    }
+
+    @Benchmark
+    public Object getValue() {
+        return adapter.getValue();
+    }
+
+    @Benchmark
+    public void replaceAddress() {
+        person.setAddress(addresses[next++ & 1]);
+    }
+}
@@ -0,0 +1,60 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sepher.saf.adapter.DynamicValue;
+import sepher.saf.adapter.LongValue;
+import sepher.saf.adapter.PrimitiveObserver;
+
+/**
+ * Compares updating a counter held in a <code>DynamicValue</code>, boxed on
+ * every <code>setValue</code>, with one held in a <code>LongValue</code>.
+ * Run with <code>-prof gc</code> to see the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PrimitiveValueBenchmark {
+
+    private DynamicValue boxed;
+
+    private LongValue primitive;
+
+    private long counter = 1 << 20;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        boxed = new DynamicValue(Long.valueOf(0));
+        primitive = new LongValue();
+        PrimitiveObserver observer = new PrimitiveObserver() {
+            public void longChanged(final LongValue sender, final long newValue) {
+                blackhole.consume(newValue);
+            }
+
+            public void update(final Object sender, final Object aspect) {
+                blackhole.consume(((DynamicValue) sender).getValue());
+            }
+        };
+        boxed.addObserver(observer);
+        primitive.addObserver(observer);
+    }
+
+    @Benchmark
+    public void boxedSetValue() {
+        boxed.setValue(Long.valueOf(counter++));
+    }
+
+    @Benchmark
+    public void primitiveSetLong() {
+        primitive.setLong(counter++);
+    }
+}
@@ -0,0 +1,62 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.OverflowPolicy;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures <code>setName</code> on a <code>Person</code> observed by an
+ * observer that takes 50 microseconds per change: notified directly, or
+ * behind a <code>QueuedObserver</code> of 1000 changes with an overflow
+ * policy that does not block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class QueuedObserverBenchmark {
+
+    @Param({ "DIRECT", "DROP_OLDEST", "CONFLATE" })
+    public String policy;
+
+    private Person person;
+
+    private String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    private final SAFObserver slow = new SAFObserver() {
+        public void update(final Object sender, final Object arg) {
+            long end = System.nanoTime() + 50000;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        person = new Person();
+        if ("DIRECT".equals(policy)) {
+            person.addObserver(slow);
+        } else {
+            person.addQueuedObserver(slow, 1000, OverflowPolicy
+                    .valueOf(policy));
+        }
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName(names[next++ & 1]);
+    }
+}
@@ -0,0 +1,69 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import sepher.saf.adapter.AspectAdapter;
+import sepher.saf.adapter.DynamicValue;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures retargeting <code>InterfaceAdapter</code>s. A group of adapters
+ * shares a subject channel, and the benchmark either sets another subject in
+ * the channel, or gives one adapter another channel with
+ * <code>setSubjectChannel</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SubjectChannelBenchmark {
+
+    /**
+     * The number of adapters sharing the channel.
+     */
+    @Param({ "1", "10", "100" })
+    public int adapters;
+
+    private final Person[] persons = { new Person(), new Person() };
+
+    private final DynamicValue[] channels = new DynamicValue[2];
+
+    private AspectAdapter adapter;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        SAFObserver observer = new SAFObserver() {
+            public void update(final Object sender, final Object arg) {
+            }
+        };
+        channels[0] = new DynamicValue(persons[0]);
+        channels[1] = new DynamicValue(persons[1]);
+        for (int i = 0; i < adapters; i++) {
+            adapter = new AspectAdapter(persons[0], "name");
+            adapter.setSubjectSendsUpdates(Boolean.TRUE);
+            adapter.addObserver(observer);
+            adapter.setSubjectChannel(channels[0]);
+        }
+    }
+
+    @Benchmark
+    public void setChannelValue() {
+        channels[0].setValue(persons[next++ & 1]);
+    }
+
+    @Benchmark
+    public void setSubjectChannel() {
+        adapter.setSubjectChannel(channels[next++ & 1]);
+    }
+}
@@ -0,0 +1,86 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import sepher.saf.adapter.DebouncedValue;
+import sepher.saf.adapter.DynamicValue;
+import sepher.saf.adapter.IntValue;
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.SampledValue;
+import sepher.saf.adapter.ThrottledValue;
+import sepher.saf.adapter.TimedValue;
+
+/**
+ * Measures a change of one of 100,000 values, each observed directly or
+ * through a timed value with an interval of 200 milliseconds on the shared
+ * timing wheel. The observer does nothing; the difference is what the timing
+ * rule costs the thread that makes the change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class TimedValueBenchmark {
+
+    private static final int VALUES = 100000;
+
+    @Param({ "DIRECT", "DEBOUNCE", "THROTTLE", "SAMPLE" })
+    public String rule;
+
+    private IntValue[] sources;
+
+    private TimedValue[] timed;
+
+    private int next;
+
+    private final SAFObserver observer = new SAFObserver() {
+        public void update(final Object sender, final Object arg) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        sources = new IntValue[VALUES];
+        timed = new TimedValue[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            sources[i] = new IntValue(0);
+            DynamicValue follower = sources[i];
+            if ("DEBOUNCE".equals(rule)) {
+                follower = timed[i] = new DebouncedValue(sources[i], 200,
+                        TimeUnit.MILLISECONDS);
+            } else if ("THROTTLE".equals(rule)) {
+                follower = timed[i] = new ThrottledValue(sources[i], 200,
+                        TimeUnit.MILLISECONDS);
+            } else if ("SAMPLE".equals(rule)) {
+                follower = timed[i] = new SampledValue(sources[i], 200,
+                        TimeUnit.MILLISECONDS);
+            }
+            follower.addObserver(observer);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < VALUES; i++) {
+            if (timed[i] != null) {
+                timed[i].untie();
+            }
+        }
+    }
+
+    @Benchmark
+    public void setValue() {
+        IntValue source = sources[next];
+        next = next + 1 == VALUES ? 0 : next + 1;
+        source.setInt(source.getAsInt() + 1);
+    }
+}
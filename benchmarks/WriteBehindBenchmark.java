@@ -0,0 +1,81 @@
+package sepher.saf.adapter.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import sepher.saf.adapter.SAFObserver;
+import sepher.saf.adapter.WriteBehindObserver;
+import sepher.saf.adapter.examples.Person;
+
+/**
+ * Measures <code>setName</code> on a <code>Person</code> persisted to a store
+ * that takes 50 microseconds per write: from <code>update</code> on the
+ * thread that changed the person, or through a
+ * <code>WriteBehindObserver</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class WriteBehindBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean writeBehind;
+
+    private Person person;
+
+    private WriteBehindObserver observer;
+
+    private String[] names = { "Janssen", "Pietersen" };
+
+    private int next;
+
+    private final WriteBehindObserver.Store store = new WriteBehindObserver.Store() {
+        public void write(final List<WriteBehindObserver.Write> writes) {
+            slowWrite();
+        }
+    };
+
+    private static void slowWrite() {
+        long end = System.nanoTime() + 50000;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        person = new Person();
+        if (writeBehind) {
+            observer = new WriteBehindObserver(store, 1000, 100);
+            person.addObserver(observer);
+        } else {
+            person.addObserver(new SAFObserver() {
+                public void update(final Object sender, final Object arg) {
+                    slowWrite();
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (observer != null) {
+            observer.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void setName() {
+        person.setName(names[next++ & 1]);
+    }
+}